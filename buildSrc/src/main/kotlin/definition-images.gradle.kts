@@ -0,0 +1,45 @@
+// Compiles state machine definitions into binary images at build time, and packages them as resources under
+// definition-images/, where DefinitionImage.load(...) finds them. Usage:
+//
+// plugins {
+//     id("definition-images")
+// }
+//
+// definitionImages {
+//     // A Supplier<StateMachineDefinition<?, ?>> or an AbstractStateMachine subclass, and the name of its image
+//     definitions.put("com.example.orders.OrderDefinition", "orders")
+// }
+plugins {
+    java
+}
+
+interface DefinitionImagesExtension {
+    val definitions: MapProperty<String, String>
+}
+
+val definitionImages = extensions.create<DefinitionImagesExtension>("definitionImages")
+val imagesDirectory = layout.buildDirectory.dir("generated/definition-images")
+
+val compileDefinitionImages by tasks.registering(JavaExec::class) {
+    group = "build"
+    description = "Compiles the state machine definitions into binary images"
+
+    // Only the compiled classes, not the resources, since the images are resources themselves
+    classpath = files(sourceSets.main.get().output.classesDirs, configurations.runtimeClasspath)
+    mainClass.set("io.github.steingen.statemachine.DefinitionImageCompiler")
+
+    inputs.property("definitions", definitionImages.definitions)
+    outputs.dir(imagesDirectory)
+    onlyIf { definitionImages.definitions.get().isNotEmpty() }
+
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(imagesDirectory.get().asFile.path) +
+            definitionImages.definitions.get().flatMap { (definition, name) -> listOf(definition, name) }
+    })
+}
+
+tasks.processResources {
+    from(compileDefinitionImages) {
+        into("definition-images")
+    }
+}
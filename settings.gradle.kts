@@ -2,6 +2,7 @@ rootProject.name = "state-machine"
 
 include("state-machine-core")
 include("state-machine-demo")
+include("state-machine-benchmarks")
 
 dependencyResolutionManagement {
     versionCatalogs {
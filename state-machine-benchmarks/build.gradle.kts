@@ -0,0 +1,35 @@
+plugins {
+    id("app-base")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+group = "io.github.steingen"
+version = "1.0-SNAPSHOT"
+
+
+dependencies {
+    implementation(platform(springboot.bom))
+
+    implementation(project(":state-machine-core"))
+    implementation("jakarta.annotation:jakarta.annotation-api")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+
+    // Narrow the run down with e.g. `gradle :state-machine-benchmarks:jmh -PjmhIncludes=Dispatch`
+    if (project.hasProperty("jmhIncludes")) {
+        includes.set(listOf(project.property("jmhIncludes").toString()))
+    }
+
+    // The gc profiler reports the allocation rate (gc.alloc.rate.norm is the number of bytes allocated per operation)
+    profilers.set(listOf("gc"))
+
+    // Machine-readable results, so that runs can be compared between releases
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+}
@@ -0,0 +1,96 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.benchmarks.Workflows.SmallState;
+import io.github.steingen.bitstore.BitStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the BitStore operations on a small enum (single long) and on a 128-constant enum (word array).
+ * None of these should allocate, which the gc profiler confirms.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BitStoreBenchmark {
+    private BitStore<SmallState> small;
+    private BitStore<SmallState> smallOther;
+    private BitStore<LargeState> large;
+    private BitStore<LargeState> largeOther;
+
+    @Setup
+    public void setUp() {
+        small = BitStore.ofAll(SmallState.INITIAL, SmallState.COMPLETED);
+        smallOther = BitStore.ofAll(SmallState.PAUSED);
+        large = BitStore.ofAll(LargeState.S1, LargeState.S70, LargeState.S127);
+        largeOther = BitStore.ofAll(LargeState.S2, LargeState.S100);
+    }
+
+    @Benchmark
+    public boolean smallGet() {
+        return small.get(SmallState.COMPLETED);
+    }
+
+    @Benchmark
+    public boolean largeGet() {
+        return large.get(LargeState.S127);
+    }
+
+    @Benchmark
+    public boolean smallSetAndClear() {
+        small.set(SmallState.PROCESSING);
+        small.clear(SmallState.PROCESSING);
+        return small.isEmpty();
+    }
+
+    @Benchmark
+    public boolean largeSetAndClear() {
+        large.set(LargeState.S90);
+        large.clear(LargeState.S90);
+        return large.isEmpty();
+    }
+
+    @Benchmark
+    public int smallOrAndNot() {
+        small.or(smallOther);
+        small.andNot(smallOther);
+        return small.cardinality();
+    }
+
+    @Benchmark
+    public int largeOrAndNot() {
+        large.or(largeOther);
+        large.andNot(largeOther);
+        return large.cardinality();
+    }
+
+    @Benchmark
+    public boolean largeGetAll() {
+        return large.getAll(largeOther);
+    }
+
+    @Benchmark
+    public int smallIterate() {
+        int sum = 0;
+        for (int i = small.nextSetBit(0); i >= 0; i = small.nextSetBit(i + 1)) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int largeIterate() {
+        int sum = 0;
+        for (int i = large.nextSetBit(0); i >= 0; i = large.nextSetBit(i + 1)) {
+            sum += i;
+        }
+        return sum;
+    }
+}
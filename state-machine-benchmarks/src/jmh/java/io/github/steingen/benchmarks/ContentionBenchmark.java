@@ -0,0 +1,75 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.benchmarks.Workflows.SmallEvent;
+import io.github.steingen.benchmarks.Workflows.SmallState;
+import io.github.steingen.statemachine.ConcurrentStateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateMachineInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several threads sending events to the same entity: the lock-free {@link ConcurrentStateMachine}
+ * against a {@code synchronized} baseline around a {@link StateMachineInstance}.
+ * Run with {@code -t} (or change {@link Threads}) to vary the contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedMachines {
+        ConcurrentStateMachine<SmallState, SmallEvent> concurrent;
+        StateMachineInstance<SmallState, SmallEvent> synchronizedInstance;
+
+        @Setup
+        public void setUp() {
+            StateMachineDefinition<SmallState, SmallEvent> definition = Workflows.smallDefinition();
+
+            concurrent = new ConcurrentStateMachine<>(definition, SmallState.INITIAL);
+            synchronizedInstance = definition.newInstance(SmallState.INITIAL);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EventCursor {
+        int cursor;
+
+        SmallEvent next() {
+            if (++cursor == Workflows.SMALL_CYCLE.length) {
+                cursor = 0;
+            }
+            return Workflows.SMALL_CYCLE[cursor];
+        }
+    }
+
+    @Benchmark
+    public int compareAndSet(SharedMachines machines, EventCursor events) {
+        machines.concurrent.sendEvent(events.next());
+        return machines.concurrent.getCurrentStateOrdinal();
+    }
+
+    @Benchmark
+    public ConcurrentStateMachine.Attempt compareAndSetSingleAttempt(SharedMachines machines, EventCursor events) {
+        return machines.concurrent.trySendEvent(events.next());
+    }
+
+    @Benchmark
+    public int synchronizedBaseline(SharedMachines machines, EventCursor events) {
+        StateMachineInstance<SmallState, SmallEvent> instance = machines.synchronizedInstance;
+
+        synchronized (instance) {
+            instance.sendEvent(events.next());
+            return instance.getCurrentStateOrdinal();
+        }
+    }
+}
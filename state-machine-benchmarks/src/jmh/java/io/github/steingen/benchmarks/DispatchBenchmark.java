@@ -0,0 +1,106 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.benchmarks.Workflows.LargeEvent;
+import io.github.steingen.benchmarks.Workflows.LargeStateMachine;
+import io.github.steingen.benchmarks.Workflows.SmallEvent;
+import io.github.steingen.benchmarks.Workflows.SmallState;
+import io.github.steingen.benchmarks.Workflows.SmallStateMachine;
+import io.github.steingen.statemachine.StateMachineInstance;
+import io.github.steingen.statemachine.Transition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code sendEvent(...)} for the scanning and compiled {@code AbstractStateMachine} dispatch, and for
+ * definition-backed instances, on a small enum and on a 128-state enum whose single event has 128 transitions.
+ * Also covers {@code isValidTransition(...)} and {@code Transition.apply(...)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+    private SmallStateMachine smallScanning;
+    private SmallStateMachine smallCompiled;
+    private StateMachineInstance<SmallState, SmallEvent> smallInstance;
+    private LargeStateMachine largeScanning;
+    private LargeStateMachine largeCompiled;
+    private StateMachineInstance<LargeState, LargeEvent> largeInstance;
+    private Transition<SmallState> transition;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        smallScanning = new SmallStateMachine(false);
+        smallCompiled = new SmallStateMachine(true);
+        smallInstance = Workflows.smallDefinition().newInstance(SmallState.INITIAL);
+        largeScanning = new LargeStateMachine(false);
+        largeCompiled = new LargeStateMachine(true);
+        largeInstance = Workflows.largeDefinition(null).newInstance(LargeState.S0);
+        transition = Transition.of(SmallState.INITIAL, SmallState.PROCESSING, (from, to) -> true);
+    }
+
+    private SmallEvent nextSmallEvent() {
+        if (++cursor == Workflows.SMALL_CYCLE.length) {
+            cursor = 0;
+        }
+        return Workflows.SMALL_CYCLE[cursor];
+    }
+
+    @Benchmark
+    public SmallState smallScanningSendEvent() {
+        smallScanning.sendEvent(nextSmallEvent());
+        return smallScanning.getCurrentState();
+    }
+
+    @Benchmark
+    public SmallState smallCompiledSendEvent() {
+        smallCompiled.sendEvent(nextSmallEvent());
+        return smallCompiled.getCurrentState();
+    }
+
+    @Benchmark
+    public SmallState smallInstanceSendEvent() {
+        smallInstance.sendEvent(nextSmallEvent());
+        return smallInstance.getCurrentState();
+    }
+
+    @Benchmark
+    public LargeState largeScanningSendEvent() {
+        largeScanning.sendEvent(LargeEvent.ADVANCE);
+        return largeScanning.getCurrentState();
+    }
+
+    @Benchmark
+    public LargeState largeCompiledSendEvent() {
+        largeCompiled.sendEvent(LargeEvent.ADVANCE);
+        return largeCompiled.getCurrentState();
+    }
+
+    @Benchmark
+    public LargeState largeInstanceSendEvent() {
+        largeInstance.sendEvent(LargeEvent.ADVANCE);
+        return largeInstance.getCurrentState();
+    }
+
+    @Benchmark
+    public boolean smallIsValidTransition() {
+        return smallScanning.isValidTransition(SmallState.INITIAL, SmallState.PROCESSING);
+    }
+
+    @Benchmark
+    public boolean largeIsValidTransition() {
+        return largeScanning.isValidTransition(LargeState.S100, LargeState.S101);
+    }
+
+    @Benchmark
+    public SmallState transitionApply() {
+        return transition.apply(null);
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.benchmarks.Workflows.LargeEvent;
+import io.github.steingen.statemachine.StateMachineInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of guard evaluation during dispatch, from the default guard (which needs no call at all)
+ * to custom guards that burn a configurable amount of CPU.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GuardBenchmark {
+
+    /**
+     * Kept apart from {@link CustomGuard}, so that the default guard is not re-run for each of its params
+     * */
+    @State(Scope.Thread)
+    public static class DefaultGuard {
+        private StateMachineInstance<LargeState, LargeEvent> instance;
+
+        @Setup
+        public void setUp() {
+            instance = Workflows.largeDefinition(null).newInstance(LargeState.S0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CustomGuard {
+        /**
+         * The amount of work done by the custom guard, in {@link Blackhole#consumeCPU(long)} tokens
+         * */
+        @Param({"0", "32", "512"})
+        public long guardTokens;
+
+        private StateMachineInstance<LargeState, LargeEvent> instance;
+
+        @Setup
+        public void setUp() {
+            long tokens = guardTokens;
+
+            instance = Workflows.largeDefinition((from, to) -> {
+                Blackhole.consumeCPU(tokens);
+                return true;
+            }).newInstance(LargeState.S0);
+        }
+    }
+
+    @Benchmark
+    public LargeState defaultGuard(DefaultGuard state) {
+        state.instance.sendEvent(LargeEvent.ADVANCE);
+        return state.instance.getCurrentState();
+    }
+
+    @Benchmark
+    public LargeState customGuard(CustomGuard state) {
+        state.instance.sendEvent(LargeEvent.ADVANCE);
+        return state.instance.getCurrentState();
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.benchmarks.Workflows.LargeEvent;
+import io.github.steingen.benchmarks.Workflows.SmallEvent;
+import io.github.steingen.benchmarks.Workflows.SmallState;
+import io.github.steingen.statemachine.ParallelReplayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a log of a million events into one entity, serially and over a pool of {@code parallelism} threads.
+ * {@code parallelCompose} always takes the parallel path, whose cost grows with the number of states, while
+ * {@code pooledReplay} only takes it when the pool has more threads than the definition has states. The 4-state
+ * workflow is split from 8 threads on; the 128-state one never is, so its parallel compose is the slowest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ParallelReplayBenchmark {
+    private static final int LOG_LENGTH = 1 << 20;
+
+    @Param({"2", "8", "16"})
+    int parallelism;
+
+    private ForkJoinPool pool;
+    private ParallelReplayer<SmallState, SmallEvent> smallSerial;
+    private ParallelReplayer<SmallState, SmallEvent> smallPooled;
+    private ParallelReplayer<LargeState, LargeEvent> largeSerial;
+    private ParallelReplayer<LargeState, LargeEvent> largePooled;
+    private int[] smallLog;
+    private int[] largeLog;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism);
+        smallSerial = new ParallelReplayer<>(Workflows.smallDefinition());
+        smallPooled = new ParallelReplayer<>(Workflows.smallDefinition(), pool);
+        largeSerial = new ParallelReplayer<>(Workflows.largeDefinition(null));
+        largePooled = new ParallelReplayer<>(Workflows.largeDefinition(null), pool);
+        smallLog = randomLog(SmallEvent.values().length);
+        largeLog = randomLog(LargeEvent.values().length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static int[] randomLog(int eventCount) {
+        Random random = new Random(42);
+        int[] log = new int[LOG_LENGTH];
+
+        for (int i = 0; i < log.length; i++) {
+            log[i] = random.nextInt(eventCount);
+        }
+        return log;
+    }
+
+    @Benchmark
+    public int smallSerialReplay() {
+        return smallSerial.replay(SmallState.INITIAL.ordinal(), smallLog);
+    }
+
+    @Benchmark
+    public int smallParallelCompose() {
+        return smallPooled.compose(smallLog, 0, smallLog.length).apply(SmallState.INITIAL.ordinal());
+    }
+
+    @Benchmark
+    public int smallPooledReplay() {
+        return smallPooled.replay(SmallState.INITIAL.ordinal(), smallLog);
+    }
+
+    @Benchmark
+    public int largeSerialReplay() {
+        return largeSerial.replay(LargeState.S0.ordinal(), largeLog);
+    }
+
+    @Benchmark
+    public int largeParallelCompose() {
+        return largePooled.compose(largeLog, 0, largeLog.length).apply(LargeState.S0.ordinal());
+    }
+
+    @Benchmark
+    public int largePooledReplay() {
+        return largePooled.replay(LargeState.S0.ordinal(), largeLog);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.steingen.benchmarks;
+
+import io.github.steingen.statemachine.AbstractStateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.Transition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * The state machines that are shared by the benchmarks. Each workflow comes with a cyclic event sequence that
+ * causes a transition on every event, so that the benchmarks measure dispatch rather than rejected events.
+ */
+public final class Workflows {
+
+    public enum SmallState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum SmallEvent {
+        START,
+        PAUSE,
+        COMPLETE,
+        RESET
+    }
+
+    public enum LargeEvent {
+        ADVANCE,
+        RESET
+    }
+
+    /**
+     * INITIAL -> PROCESSING -> PAUSED -> PROCESSING -> COMPLETED -> INITIAL
+     * */
+    public static final SmallEvent[] SMALL_CYCLE = {
+        SmallEvent.START, SmallEvent.PAUSE, SmallEvent.START, SmallEvent.COMPLETE, SmallEvent.RESET
+    };
+
+    private Workflows() {
+    }
+
+    public static StateMachineDefinition<SmallState, SmallEvent> smallDefinition() {
+        return StateMachineDefinition.builder(SmallState.class, SmallEvent.class)
+            .transition(SmallEvent.START, SmallState.INITIAL, SmallState.PROCESSING)
+            .transition(SmallEvent.START, SmallState.PAUSED, SmallState.PROCESSING)
+            .transition(SmallEvent.PAUSE, SmallState.PROCESSING, SmallState.PAUSED)
+            .transition(SmallEvent.COMPLETE, SmallState.PROCESSING, SmallState.COMPLETED)
+            .transition(SmallEvent.RESET, SmallState.COMPLETED, SmallState.INITIAL)
+            .build();
+    }
+
+    /**
+     * A single ADVANCE event with one transition per state, S0 -> S1 -> ... -> S127 -> S0
+     * <p>
+     * @param guard - The guard of every transition, or null for unguarded transitions
+     * */
+    public static StateMachineDefinition<LargeState, LargeEvent> largeDefinition(BiPredicate<LargeState, LargeState> guard) {
+        StateMachineDefinition.Builder<LargeState, LargeEvent> builder =
+            StateMachineDefinition.builder(LargeState.class, LargeEvent.class);
+        LargeState[] states = LargeState.values();
+
+        for (int i = 0; i < states.length; i++) {
+            LargeState to = states[(i + 1) % states.length];
+
+            if (null == guard) {
+                builder.transition(LargeEvent.ADVANCE, states[i], to);
+            } else {
+                builder.transition(LargeEvent.ADVANCE, states[i], to, guard);
+            }
+        }
+        return builder.build();
+    }
+
+    public static class SmallStateMachine extends AbstractStateMachine<SmallState, SmallEvent> {
+        public SmallStateMachine(boolean compiled) {
+            super(true);
+            this.eventRules.putAll(
+                Map.of(
+                    SmallEvent.START, List.of(
+                        newTransition(SmallState.INITIAL, SmallState.PROCESSING),
+                        newTransition(SmallState.PAUSED, SmallState.PROCESSING)
+                    ),
+                    SmallEvent.PAUSE, List.of(newTransition(SmallState.PROCESSING, SmallState.PAUSED)),
+                    SmallEvent.COMPLETE, List.of(newTransition(SmallState.PROCESSING, SmallState.COMPLETED)),
+                    SmallEvent.RESET, List.of(newTransition(SmallState.COMPLETED, SmallState.INITIAL))
+                )
+            );
+            populateAllowedTransitions();
+            if (compiled) {
+                compileTransitions();
+            }
+            setCurrentState(SmallState.INITIAL);
+        }
+    }
+
+    public static class LargeStateMachine extends AbstractStateMachine<LargeState, LargeEvent> {
+        public LargeStateMachine(boolean compiled) {
+            super(true);
+            LargeState[] states = LargeState.values();
+            List<Transition<LargeState>> transitions = new ArrayList<>(states.length);
+
+            for (int i = 0; i < states.length; i++) {
+                transitions.add(newTransition(states[i], states[(i + 1) % states.length]));
+            }
+            this.eventRules.put(LargeEvent.ADVANCE, transitions);
+            populateAllowedTransitions();
+            if (compiled) {
+                compileTransitions();
+            }
+            setCurrentState(LargeState.S0);
+        }
+    }
+}
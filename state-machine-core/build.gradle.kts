@@ -42,3 +42,11 @@ dependencies {
     implementation("jakarta.annotation:jakarta.annotation-api")
 }
 
+tasks.named<Test>("integrationTest") {
+    // The test JVM does not inherit the properties of the build, so the replay performance gate is enabled and tuned
+    // with project properties, e.g. `./gradlew integrationTest -Preplay.gate=true -Preplay.minThroughput=500000`
+    listOf("replay.gate", "replay.minThroughput", "replay.maxP99Nanos", "replay.maxBytesPerEvent").forEach { name ->
+        providers.gradleProperty(name).orNull?.let { systemProperty(name, it) }
+    }
+}
+
@@ -1,6 +1,9 @@
 package io.github.steingen.bitstore;
 
 
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
 /**
  * @author Lewis
  * <p>
@@ -8,12 +11,24 @@ package io.github.steingen.bitstore;
  * Time: 11:06 AM
  * <p>
  *     This class uses a bitmask to represent the presence or absence of enum values.
+ * <p>
+ *     The first 64 ordinals are kept in a single {@code long}, which is all that enums with up to 64 constants ever use.
+ *     For larger enums, the remaining ordinals are kept in a word array. Unless the BitStore is sized up front with
+ *     {@link #noneOf(Class)}, that array is allocated by the first {@link #set(Enum)} of an ordinal of 64 or above,
+ *     or grown by {@link #or(BitStore)} with a larger BitStore. None of the other operations allocate.
  */
 public class BitStore<E extends Enum<E>> {
+    private static final long[] NO_WORDS = new long[0];
+
     private long bitMask;
+    /**
+     * Holds ordinals 64 and above. Word {@code i} holds ordinals {@code 64 * (i + 1)} to {@code 64 * (i + 2) - 1}
+     * */
+    private long[] words;
 
     public BitStore() {
         this.bitMask = 0;
+        this.words = NO_WORDS;
     }
 
 
@@ -21,6 +36,18 @@ public class BitStore<E extends Enum<E>> {
         return new BitStore<>();
     }
 
+    /**
+     * Creates an empty BitStore that is already sized for all the constants of the given enum,
+     * so that none of its operations will allocate
+     * */
+    public static <E extends Enum<E>> BitStore<E> noneOf(Class<E> enumType) {
+        BitStore<E> bitStore = empty();
+
+        bitStore.words = newWords(enumType.getEnumConstants().length);
+
+        return bitStore;
+    }
+
     /**
      * Creates a BitStore with the bits corresponding to the ordinal values of the provided enums set
      * */
@@ -44,12 +71,36 @@ public class BitStore<E extends Enum<E>> {
         return bitStore;
     }
 
+    /**
+     * Creates a BitStore with the same bits set as the provided one
+     * */
+    public static <E extends Enum<E>> BitStore<E> copyOf(BitStore<E> other) {
+        BitStore<E> bitStore = empty();
+
+        bitStore.bitMask = other.bitMask;
+        bitStore.words = other.words.length == 0 ? NO_WORDS : other.words.clone();
+
+        return bitStore;
+    }
+
     /**
      * Checks if the bit corresponding to the provided enum value is set. It uses the enum ordinal as the bit number
      * */
     public boolean get(E enumValue) {
-        long bit = 1L << enumValue.ordinal();
-        return (bitMask & bit) != 0;
+        return get(enumValue.ordinal());
+    }
+
+    /**
+     * Checks if the bit with the provided ordinal is set
+     * */
+    public boolean get(int ordinal) {
+        if (ordinal < 64) {
+            long bit = 1L << ordinal;
+            return (bitMask & bit) != 0;
+        }
+
+        int wordIndex = (ordinal >>> 6) - 1;
+        return wordIndex < words.length && (words[wordIndex] & (1L << ordinal)) != 0;
     }
 
     /**
@@ -61,7 +112,7 @@ public class BitStore<E extends Enum<E>> {
      */
     public boolean getAll(BitStore<E> other) {
         // Check if all bits in `other.bitMask` are also present in this `bitMask`
-        return (this.bitMask & other.bitMask) == other.bitMask;
+        return (this.bitMask & other.bitMask) == other.bitMask && containsAllWords(other, -1, 0);
     }
 
     /**
@@ -73,18 +124,35 @@ public class BitStore<E extends Enum<E>> {
      * @return true if all bits in `other` (except for `enumValue`) are set in this BitStore, false otherwise
      */
     public boolean getAllExcept(BitStore<E> other, E enumValue) {
-        // Create a bitmask with the bit of enumValue cleared
-        long clearedBitMask = other.bitMask & ~(1L << enumValue.ordinal());
+        int ordinal = enumValue.ordinal();
 
-        // Check if all the remaining bits in `clearedBitMask` are set in this `bitMask`
-        return (this.bitMask & clearedBitMask) == clearedBitMask;
+        if (ordinal < 64) {
+            // Create a bitmask with the bit of enumValue cleared
+            long clearedBitMask = other.bitMask & ~(1L << ordinal);
+
+            // Check if all the remaining bits in `clearedBitMask` are set in this `bitMask`
+            return (this.bitMask & clearedBitMask) == clearedBitMask && containsAllWords(other, -1, 0);
+        }
+
+        return (this.bitMask & other.bitMask) == other.bitMask
+            && containsAllWords(other, (ordinal >>> 6) - 1, 1L << ordinal);
     }
 
     /**
      * Sets the bit corresponding to the provided enum value. It uses the enum ordinal as the bit number
      * */
     public void set(E enumValue) {
-        bitMask |= 1L << enumValue.ordinal();
+        int ordinal = enumValue.ordinal();
+
+        if (ordinal < 64) {
+            bitMask |= 1L << ordinal;
+            return;
+        }
+
+        if (words.length == 0) {
+            words = newWords(enumValue.getDeclaringClass().getEnumConstants().length);
+        }
+        words[(ordinal >>> 6) - 1] |= 1L << ordinal;
     }
 
     /**
@@ -105,4 +173,159 @@ public class BitStore<E extends Enum<E>> {
             set(enumValue);
         }
     }
+
+    /**
+     * Clears the bit corresponding to the provided enum value
+     * */
+    public void clear(E enumValue) {
+        int ordinal = enumValue.ordinal();
+
+        if (ordinal < 64) {
+            bitMask &= ~(1L << ordinal);
+            return;
+        }
+
+        int wordIndex = (ordinal >>> 6) - 1;
+        if (wordIndex < words.length) {
+            words[wordIndex] &= ~(1L << ordinal);
+        }
+    }
+
+    /**
+     * Clears all the bits
+     * */
+    public void clear() {
+        bitMask = 0;
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Keeps only the bits that are also set in the provided BitStore (intersection)
+     * */
+    public void and(BitStore<E> other) {
+        bitMask &= other.bitMask;
+
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= i < other.words.length ? other.words[i] : 0L;
+        }
+    }
+
+    /**
+     * Sets the bits that are set in the provided BitStore (union).
+     * If `other` holds ordinals of 64 and above and this BitStore has not been sized for them yet,
+     * this BitStore is sized to match `other` first.
+     * */
+    public void or(BitStore<E> other) {
+        bitMask |= other.bitMask;
+
+        if (words.length < other.words.length) {
+            words = Arrays.copyOf(words, other.words.length);
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    /**
+     * Clears the bits that are set in the provided BitStore (difference)
+     * */
+    public void andNot(BitStore<E> other) {
+        bitMask &= ~other.bitMask;
+
+        int commonLength = Math.min(words.length, other.words.length);
+        for (int i = 0; i < commonLength; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * @return The number of bits that are set
+     * */
+    public int cardinality() {
+        int cardinality = Long.bitCount(bitMask);
+
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return true if no bits are set
+     * */
+    public boolean isEmpty() {
+        if (bitMask != 0) {
+            return false;
+        }
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ordinal of the next set bit, starting at {@code fromOrdinal} (inclusive).
+     * This allows iterating over the set ordinals without allocating:
+     * <pre>{@code
+     * for (int i = bitStore.nextSetBit(0); i >= 0; i = bitStore.nextSetBit(i + 1)) { ... }
+     * }</pre>
+     * @return The ordinal, or -1 if no bits are set from {@code fromOrdinal} onwards
+     * */
+    public int nextSetBit(int fromOrdinal) {
+        if (fromOrdinal < 64) {
+            long word = bitMask & (-1L << fromOrdinal);
+            if (word != 0) {
+                return Long.numberOfTrailingZeros(word);
+            }
+            fromOrdinal = 64;
+        }
+
+        int wordIndex = (fromOrdinal >>> 6) - 1;
+        if (wordIndex >= words.length) {
+            return -1;
+        }
+
+        long word = words[wordIndex] & (-1L << fromOrdinal);
+        while (true) {
+            if (word != 0) {
+                return ((wordIndex + 1) << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == words.length) {
+                return -1;
+            }
+            word = words[wordIndex];
+        }
+    }
+
+    /**
+     * Calls the consumer with the ordinal of every set bit, in ascending order
+     * */
+    public void forEachOrdinal(IntConsumer consumer) {
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            consumer.accept(i);
+        }
+    }
+
+    /**
+     * Checks that every word of `other` is contained in this BitStore's words, ignoring the bits of `ignoredBits`
+     * in the word at `ignoredWordIndex`
+     * */
+    private boolean containsAllWords(BitStore<E> other, int ignoredWordIndex, long ignoredBits) {
+        for (int i = 0; i < other.words.length; i++) {
+            long otherWord = i == ignoredWordIndex ? other.words[i] & ~ignoredBits : other.words[i];
+            long word = i < words.length ? words[i] : 0L;
+
+            if ((word & otherWord) != otherWord) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] newWords(int universeSize) {
+        int wordCount = ((universeSize + 63) >>> 6) - 1;
+        return wordCount <= 0 ? NO_WORDS : new long[wordCount];
+    }
 }
@@ -0,0 +1,231 @@
+package io.github.steingen.bitstore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * A thread-safe bitmap of dense, non-negative ids, e.g. entity ids. Like in {@link BitStore}, id {@code i} is bit
+ * {@code i % 64} of a {@code long} word, so counting and unions work a word at a time.
+ * <p>
+ * The words are split into chunks of {@value #CHUNK_SIZE} ids, which are only allocated once an id in their range is
+ * set, so sparse id ranges cost nothing. Bits are set and cleared lock-free, with a compare-and-set on their word,
+ * and the cardinality is kept in a {@link LongAdder}, so concurrent updates do not contend on a single counter.
+ * Reads are weakly consistent: they see every update that completed before they started, and may or may not see
+ * concurrent ones.
+ */
+public final class ConcurrentBitmap {
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int WORDS_PER_CHUNK = CHUNK_SIZE >>> 6;
+    private static final AtomicLongArray[] NO_CHUNKS = new AtomicLongArray[0];
+
+    private volatile AtomicLongArray[] chunks = NO_CHUNKS;
+    private final LongAdder cardinality = new LongAdder();
+
+    /**
+     * Sets the bit of the id
+     * <p>
+     * @return true if the bit was not set before
+     * */
+    public boolean set(long id) {
+        AtomicLongArray chunk = chunkForWrite(id);
+        int word = wordIndex(id);
+        long mask = 1L << id;
+
+        while (true) {
+            long current = chunk.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (chunk.compareAndSet(word, current, current | mask)) {
+                cardinality.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Clears the bit of the id
+     * <p>
+     * @return true if the bit was set before
+     * */
+    public boolean clear(long id) {
+        AtomicLongArray chunk = chunk(checkId(id));
+        if (null == chunk) {
+            return false;
+        }
+
+        int word = wordIndex(id);
+        long mask = 1L << id;
+
+        while (true) {
+            long current = chunk.get(word);
+            if ((current & mask) == 0) {
+                return false;
+            }
+            if (chunk.compareAndSet(word, current, current & ~mask)) {
+                cardinality.decrement();
+                return true;
+            }
+        }
+    }
+
+    public boolean get(long id) {
+        AtomicLongArray chunk = chunk(checkId(id));
+        return null != chunk && (chunk.get(wordIndex(id)) & (1L << id)) != 0;
+    }
+
+    /**
+     * @return The number of set bits, without scanning the words
+     * */
+    public long cardinality() {
+        return cardinality.sum();
+    }
+
+    public boolean isEmpty() {
+        return 0 == cardinality.sum();
+    }
+
+    /**
+     * Returns the next set id, starting at {@code fromId} (inclusive). This allows iterating without allocating:
+     * <pre>{@code
+     * for (long id = bitmap.nextSetBit(0); id >= 0; id = bitmap.nextSetBit(id + 1)) { ... }
+     * }</pre>
+     * @return The id, or -1 if no bits are set from {@code fromId} onwards
+     * */
+    public long nextSetBit(long fromId) {
+        AtomicLongArray[] current = chunks;
+        int chunkIndex = (int) (checkId(fromId) >>> CHUNK_SHIFT);
+        int word = wordIndex(fromId);
+        long mask = -1L << fromId;
+
+        for (; chunkIndex < current.length; chunkIndex++, word = 0, mask = -1L) {
+            AtomicLongArray chunk = current[chunkIndex];
+            if (null == chunk) {
+                continue;
+            }
+
+            for (; word < WORDS_PER_CHUNK; word++, mask = -1L) {
+                long bits = chunk.get(word) & mask;
+                if (bits != 0) {
+                    return ((long) chunkIndex << CHUNK_SHIFT) + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calls the consumer with every set id, in ascending order
+     * */
+    public void forEach(LongConsumer consumer) {
+        forEachUnion(consumer, this);
+    }
+
+    /**
+     * Calls the consumer with every id that is set in any of the bitmaps, once and in ascending order.
+     * The union is computed a word at a time, without materializing it
+     * */
+    public static void forEachUnion(LongConsumer consumer, ConcurrentBitmap... bitmaps) {
+        int chunkCount = maxChunkCount(bitmaps);
+
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            long base = (long) chunkIndex << CHUNK_SHIFT;
+
+            for (int word = 0; word < WORDS_PER_CHUNK; word++) {
+                long bits = unionWord(bitmaps, chunkIndex, word);
+
+                while (bits != 0) {
+                    consumer.accept(base + ((long) word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of ids that are set in any of the bitmaps
+     * */
+    public static long unionCardinality(ConcurrentBitmap... bitmaps) {
+        int chunkCount = maxChunkCount(bitmaps);
+        long count = 0;
+
+        for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+            for (int word = 0; word < WORDS_PER_CHUNK; word++) {
+                count += Long.bitCount(unionWord(bitmaps, chunkIndex, word));
+            }
+        }
+        return count;
+    }
+
+    private static long unionWord(ConcurrentBitmap[] bitmaps, int chunkIndex, int word) {
+        long bits = 0;
+
+        for (ConcurrentBitmap bitmap : bitmaps) {
+            AtomicLongArray[] current = bitmap.chunks;
+
+            if (chunkIndex < current.length && null != current[chunkIndex]) {
+                bits |= current[chunkIndex].get(word);
+            }
+        }
+        return bits;
+    }
+
+    private static int maxChunkCount(ConcurrentBitmap[] bitmaps) {
+        int chunkCount = 0;
+
+        for (ConcurrentBitmap bitmap : bitmaps) {
+            chunkCount = Math.max(chunkCount, bitmap.chunks.length);
+        }
+        return chunkCount;
+    }
+
+    private AtomicLongArray chunk(long id) {
+        AtomicLongArray[] current = chunks;
+        int chunkIndex = (int) (id >>> CHUNK_SHIFT);
+
+        return chunkIndex < current.length ? current[chunkIndex] : null;
+    }
+
+    private AtomicLongArray chunkForWrite(long id) {
+        AtomicLongArray chunk = chunk(checkId(id));
+        return null != chunk ? chunk : allocateChunk((int) (id >>> CHUNK_SHIFT));
+    }
+
+    /**
+     * Allocates a chunk. This only happens once per chunk, so it takes a lock, and publishes the chunks through the
+     * volatile field
+     * */
+    private synchronized AtomicLongArray allocateChunk(int chunkIndex) {
+        AtomicLongArray[] current = chunks;
+
+        if (chunkIndex >= current.length) {
+            AtomicLongArray[] grown = new AtomicLongArray[Math.max(chunkIndex + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        } else if (null != current[chunkIndex]) {
+            return current[chunkIndex];
+        } else {
+            current = current.clone();
+        }
+
+        AtomicLongArray chunk = new AtomicLongArray(WORDS_PER_CHUNK);
+        current[chunkIndex] = chunk;
+        chunks = current;
+
+        return chunk;
+    }
+
+    private static int wordIndex(long id) {
+        return (int) (id >>> 6) & (WORDS_PER_CHUNK - 1);
+    }
+
+    private static long checkId(long id) {
+        if (id < 0 || id >>> CHUNK_SHIFT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+        return id;
+    }
+}
@@ -31,6 +31,35 @@ public class AbstractStateMachine<S extends Enum<S>, E extends Enum<E>> implemen
      * after the transitions have been defined.
      * */
     protected final Map<S, BitStore<S>> allowedTransitions = new HashMap<>();
+    /**
+     * Optional dispatch table indexed by {@code [event.ordinal()][state.ordinal()]}.
+     * It stays null unless {@code compileTransitions()} is called, in which case {@code sendEvent(...)} resolves the
+     * candidate transition with a single array lookup instead of scanning the event rules.
+     * */
+    private Transition<S>[][] dispatchTable;
+    private TransitionListener transitionListener = TransitionListener.NOOP;
+    private boolean timingGuards;
+    /**
+     * Whether the transitions created by {@code newTransition(from, to)} are marked so that the dispatcher compares
+     * the states inline instead of calling {@code defaultGuard(...)}
+     * */
+    private final boolean inlineDefaultGuard;
+
+    /**
+     * Creates a state machine whose transitions created by {@code newTransition(from, to)} call {@code defaultGuard(...)}
+     * */
+    public AbstractStateMachine() {
+        this(false);
+    }
+
+    /**
+     * @param inlineDefaultGuard - true to have the dispatcher compare the states inline for the transitions created by
+     *                           {@code newTransition(from, to)}, instead of calling {@code defaultGuard(...)}.
+     *                           Only pass true if neither this class nor its subclasses override {@code defaultGuard(...)}
+     * */
+    protected AbstractStateMachine(boolean inlineDefaultGuard) {
+        this.inlineDefaultGuard = inlineDefaultGuard;
+    }
 
     /**
      * Derives the allowed transitions from the defined transitions that are in the eventRules
@@ -49,6 +78,44 @@ public class AbstractStateMachine<S extends Enum<S>, E extends Enum<E>> implemen
     }
 
 
+    /**
+     * Freezes the event rules into a dense {@code [event.ordinal()][state.ordinal()]} dispatch table.
+     * This is opt-in, and should be called in the constructor after the event rules have been defined.
+     * <p>
+     * Once compiled, a transition is only considered when the current state is its {@code fromState},
+     * and at most one guard is evaluated per event. For that reason, each (event, from state) pair may only be
+     * declared once.
+     * <p>
+     * @throws IllegalStateException if more than one transition is declared for the same event and from state
+     * */
+    @SuppressWarnings("unchecked")
+    protected void compileTransitions() {
+        Transition<S>[][] table = null;
+
+        for (Map.Entry<E, List<Transition<S>>> rule : eventRules.entrySet()) {
+            E ruleEvent = rule.getKey();
+
+            for (Transition<S> transition : rule.getValue()) {
+                S fromState = transition.getFromState();
+
+                if (null == table) {
+                    int eventCount = ruleEvent.getDeclaringClass().getEnumConstants().length;
+                    int stateCount = fromState.getDeclaringClass().getEnumConstants().length;
+                    table = new Transition[eventCount][stateCount];
+                }
+
+                Transition<S>[] row = table[ruleEvent.ordinal()];
+                if (null != row[fromState.ordinal()]) {
+                    throw new IllegalStateException("More than one transition is defined for event " + ruleEvent
+                        + " from state " + fromState);
+                }
+                row[fromState.ordinal()] = transition;
+            }
+        }
+
+        this.dispatchTable = table;
+    }
+
     @Override
     public S getCurrentState() {
         return currentState;
@@ -56,22 +123,111 @@ public class AbstractStateMachine<S extends Enum<S>, E extends Enum<E>> implemen
 
     @Override
     public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    @Override
+    public long sendEventForResult(E event) {
         this.event = event;
 
+        if (null != dispatchTable) {
+            return sendCompiledEvent(event);
+        }
+
         List<Transition<S>> eventTransitions = eventRules.getOrDefault(this.event, List.of());
+        S fromState = this.currentState;
+        // The target of the first transition declared from the current state, in case all the guards reject the event
+        S rejectedState = null;
 
         for (Transition<S> transition : eventTransitions) {
-            S newStatus = transition.apply(null);
+            boolean passed = transition.isFromCurrent()
+                ? transition.getFromState() == fromState
+                : canTransition(transition, event);
 
-            if (null != newStatus) {
-                this.currentState = newStatus;
+            if (passed) {
+                this.currentState = transition.getToState();
                 // The transition changed the state. Short-circuit the loop.
                 // We are only interested in the first valid transition, and anyway we only expect there to be one
                 // NB: This can also be known by checking if transition.canTransition() is true
                 // since that is the condition that is checked when determining whether to transition to the next state
-                break;
+                return transitioned(event, fromState, this.currentState);
+            }
+            if (null == rejectedState && transition.getFromState() == fromState) {
+                rejectedState = transition.getToState();
             }
         }
+
+        return notTransitioned(event, fromState, rejectedState);
+    }
+
+
+    private long sendCompiledEvent(E event) {
+        S fromState = this.currentState;
+
+        if (null == fromState) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.UNMATCHED, event.ordinal(),
+                TransitionResult.NO_STATE);
+        }
+
+        Transition<S> transition = dispatchTable[event.ordinal()][fromState.ordinal()];
+
+        if (null == transition) {
+            return notTransitioned(event, fromState, null);
+        }
+        // The table is indexed by the current state, so transitions guarded by the default guard need no check at all
+        if (!transition.isFromCurrent() && !canTransition(transition, event)) {
+            return notTransitioned(event, fromState, transition.getToState());
+        }
+
+        this.currentState = transition.getToState();
+        return transitioned(event, fromState, this.currentState);
+    }
+
+    private boolean canTransition(Transition<S> transition, E event) {
+        if (!timingGuards || null == this.currentState) {
+            return transition.canTransition();
+        }
+
+        long start = System.nanoTime();
+        boolean passed = transition.canTransition();
+        transitionListener.onGuardEvaluated(event.ordinal(), this.currentState.ordinal(), System.nanoTime() - start);
+
+        return passed;
+    }
+
+    private long transitioned(E event, S fromState, S toState) {
+        if (null == fromState) {
+            return TransitionResult.transitioned(event.ordinal(), TransitionResult.NO_STATE, toState.ordinal());
+        }
+
+        transitionListener.onTransition(event.ordinal(), fromState.ordinal(), toState.ordinal());
+        return TransitionResult.transitioned(event.ordinal(), fromState.ordinal(), toState.ordinal());
+    }
+
+    private long notTransitioned(E event, S fromState, S rejectedState) {
+        if (null == fromState) {
+            TransitionResult.Status status = null != rejectedState
+                ? TransitionResult.Status.REJECTED
+                : TransitionResult.Status.UNMATCHED;
+            return TransitionResult.notTransitioned(status, event.ordinal(), TransitionResult.NO_STATE);
+        }
+
+        if (null != rejectedState) {
+            transitionListener.onRejected(event.ordinal(), fromState.ordinal(), rejectedState.ordinal());
+            return TransitionResult.notTransitioned(TransitionResult.Status.REJECTED, event.ordinal(), fromState.ordinal());
+        }
+
+        transitionListener.onUnmatched(event.ordinal(), fromState.ordinal());
+        return TransitionResult.notTransitioned(TransitionResult.Status.UNMATCHED, event.ordinal(), fromState.ordinal());
+    }
+
+    /**
+     * Sets the listener that is notified of the outcome of every event sent to this state machine
+     * */
+    public AbstractStateMachine<S, E> setTransitionListener(TransitionListener transitionListener) {
+        this.transitionListener = Objects.requireNonNull(transitionListener, "transitionListener");
+        this.timingGuards = transitionListener.isTimingGuards();
+        return this;
     }
 
 
@@ -89,7 +245,10 @@ public class AbstractStateMachine<S extends Enum<S>, E extends Enum<E>> implemen
     }
 
     protected Transition<S> newTransition(S from, S to) {
-        return newTransition(from, to, this::defaultGuard);
+        if (inlineDefaultGuard) {
+            return Transition.fromCurrent(from, to, this::defaultGuard);
+        }
+        return Transition.ofDefaultGuard(from, to, this::defaultGuard);
     }
 
     protected boolean defaultGuard(S from, S to) {
@@ -0,0 +1,35 @@
+package io.github.steingen.statemachine;
+
+import java.util.Arrays;
+
+/**
+ * The actions of one cell of the action table, precomputed when the definition is built:
+ * the exit actions, then the transition action, then the entry actions.
+ */
+final class ActionSequence implements TransitionAction {
+    private final TransitionAction[] actions;
+
+    private ActionSequence(TransitionAction[] actions) {
+        this.actions = actions;
+    }
+
+    /**
+     * @return null if there are no actions, the action itself if there is only one, or else a sequence of them
+     * */
+    static TransitionAction of(TransitionAction[] actions, int length) {
+        if (0 == length) {
+            return null;
+        }
+        if (1 == length) {
+            return actions[0];
+        }
+        return new ActionSequence(Arrays.copyOf(actions, length));
+    }
+
+    @Override
+    public void execute(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        for (TransitionAction action : actions) {
+            action.execute(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.steingen.statemachine;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies events to many entities at once. The entities are represented column-wise, as an array holding one state
+ * ordinal per entity, and the transition table of the shared {@link StateMachineDefinition} is applied to the array
+ * in place. This replaces one {@code sendEvent(...)} call per state machine object with a tight loop.
+ * <p>
+ * {@code byte[]} arrays can hold up to 256 states and {@code short[]} arrays up to {@link TransitionResult#MAX_STATES} states
+ * (the ordinals are read as unsigned values).
+ * <p>
+ * If a {@link ForkJoinPool} is provided, batches larger than the split threshold are divided over the pool.
+ * The split points are aligned to 64 entities so that the tasks never write to the same word of the rejection bitmap.
+ * The actions of the definition are run with the index of the entity in the array as its id, on the thread that
+ * processes the entity, which is a thread of the pool for a batch that is split.
+ */
+public final class BatchDispatcher<S extends Enum<S>, E extends Enum<E>> {
+    private static final int DEFAULT_SPLIT_THRESHOLD = 1 << 14;
+
+    private final StateMachineDefinition<S, E> definition;
+    private final ForkJoinPool pool;
+    private final int splitThreshold;
+
+    /**
+     * Creates a dispatcher that processes each batch on the calling thread
+     * */
+    public BatchDispatcher(StateMachineDefinition<S, E> definition) {
+        this(definition, null, DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    public BatchDispatcher(StateMachineDefinition<S, E> definition, ForkJoinPool pool) {
+        this(definition, pool, DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    /**
+     * @param pool           - The pool to split large batches over, or null to process batches on the calling thread
+     * @param splitThreshold - The number of entities below which a batch is no longer split. It is rounded up to a multiple of 64
+     * */
+    public BatchDispatcher(StateMachineDefinition<S, E> definition, ForkJoinPool pool, int splitThreshold) {
+        if (splitThreshold <= 0) {
+            throw new IllegalArgumentException("splitThreshold must be positive");
+        }
+
+        this.definition = Objects.requireNonNull(definition, "definition");
+        this.pool = pool;
+        this.splitThreshold = (splitThreshold + 63) & ~63;
+    }
+
+    /**
+     * Applies the same event to every entity in the array
+     * */
+    public BatchResult apply(byte[] states, E event) {
+        checkCapacity(256);
+        int eventOrdinal = event.ordinal();
+        int[] targets = definition.targetRow(eventOrdinal);
+        TransitionGuard<S, E>[] guards = definition.guardRow(eventOrdinal);
+
+        return run(states.length, (from, to, rejected) -> {
+            for (int i = from; i < to; i++) {
+                int stateOrdinal = states[i] & 0xFF;
+                int toOrdinal = targets[stateOrdinal];
+
+                if (isAccepted(guards, eventOrdinal, stateOrdinal, toOrdinal)) {
+                    definition.onTransition(i, eventOrdinal, stateOrdinal, toOrdinal);
+                    states[i] = (byte) toOrdinal;
+                } else {
+                    definition.notTransitioned(eventOrdinal, stateOrdinal);
+                    rejected[i >>> 6] |= 1L << i;
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies the same event to every entity in the array
+     * */
+    public BatchResult apply(short[] states, E event) {
+        checkCapacity(TransitionResult.MAX_STATES);
+        int eventOrdinal = event.ordinal();
+        int[] targets = definition.targetRow(eventOrdinal);
+        TransitionGuard<S, E>[] guards = definition.guardRow(eventOrdinal);
+
+        return run(states.length, (from, to, rejected) -> {
+            for (int i = from; i < to; i++) {
+                int stateOrdinal = states[i] & 0xFFFF;
+                int toOrdinal = targets[stateOrdinal];
+
+                if (isAccepted(guards, eventOrdinal, stateOrdinal, toOrdinal)) {
+                    definition.onTransition(i, eventOrdinal, stateOrdinal, toOrdinal);
+                    states[i] = (short) toOrdinal;
+                } else {
+                    definition.notTransitioned(eventOrdinal, stateOrdinal);
+                    rejected[i >>> 6] |= 1L << i;
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies {@code events[i]} to the entity at {@code states[i]}
+     * */
+    public BatchResult apply(byte[] states, E[] events) {
+        checkCapacity(256);
+        checkLengths(states.length, events.length);
+
+        return run(states.length, (from, to, rejected) -> {
+            for (int i = from; i < to; i++) {
+                int eventOrdinal = events[i].ordinal();
+                int stateOrdinal = states[i] & 0xFF;
+                int toOrdinal = definition.dispatchStateOrdinal(null, eventOrdinal, stateOrdinal);
+
+                if (StateMachineDefinition.NO_TRANSITION != toOrdinal) {
+                    definition.onTransition(i, eventOrdinal, stateOrdinal, toOrdinal);
+                    states[i] = (byte) toOrdinal;
+                } else {
+                    definition.notTransitioned(eventOrdinal, stateOrdinal);
+                    rejected[i >>> 6] |= 1L << i;
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies {@code events[i]} to the entity at {@code states[i]}
+     * */
+    public BatchResult apply(short[] states, E[] events) {
+        checkCapacity(TransitionResult.MAX_STATES);
+        checkLengths(states.length, events.length);
+
+        return run(states.length, (from, to, rejected) -> {
+            for (int i = from; i < to; i++) {
+                int eventOrdinal = events[i].ordinal();
+                int stateOrdinal = states[i] & 0xFFFF;
+                int toOrdinal = definition.dispatchStateOrdinal(null, eventOrdinal, stateOrdinal);
+
+                if (StateMachineDefinition.NO_TRANSITION != toOrdinal) {
+                    definition.onTransition(i, eventOrdinal, stateOrdinal, toOrdinal);
+                    states[i] = (short) toOrdinal;
+                } else {
+                    definition.notTransitioned(eventOrdinal, stateOrdinal);
+                    rejected[i >>> 6] |= 1L << i;
+                }
+            }
+        });
+    }
+
+    private boolean isAccepted(TransitionGuard<S, E>[] guards, int eventOrdinal, int stateOrdinal, int toOrdinal) {
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            return false;
+        }
+
+        TransitionGuard<S, E> guard = guards[stateOrdinal];
+        return null == guard || definition.testGuard(guard, null, eventOrdinal, stateOrdinal, toOrdinal);
+    }
+
+    private BatchResult run(int size, RangeTask task) {
+        long[] rejected = new long[(size + 63) >>> 6];
+
+        if (null == pool || size <= splitThreshold) {
+            task.apply(0, size, rejected);
+        } else {
+            pool.invoke(new SplitTask(task, rejected, 0, size, splitThreshold));
+        }
+
+        return new BatchResult(size, rejected);
+    }
+
+    private void checkCapacity(int maxStates) {
+        if (definition.stateCount() > maxStates) {
+            throw new IllegalArgumentException("The definition has " + definition.stateCount()
+                + " states, which cannot be represented in this array type");
+        }
+    }
+
+    private static void checkLengths(int statesLength, int eventsLength) {
+        if (statesLength != eventsLength) {
+            throw new IllegalArgumentException("Expected one event per entity, but got " + eventsLength
+                + " events for " + statesLength + " entities");
+        }
+    }
+
+
+    @FunctionalInterface
+    private interface RangeTask {
+        void apply(int from, int to, long[] rejected);
+    }
+
+    private static final class SplitTask extends RecursiveAction {
+        private final RangeTask task;
+        private final long[] rejected;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        SplitTask(RangeTask task, long[] rejected, int from, int to, int threshold) {
+            this.task = task;
+            this.rejected = rejected;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                task.apply(from, to, rejected);
+                return;
+            }
+
+            // Align the split point to a word boundary of the rejection bitmap
+            int middle = ((from + (to - from) / 2) + 63) & ~63;
+
+            invokeAll(new SplitTask(task, rejected, from, middle, threshold),
+                new SplitTask(task, rejected, middle, to, threshold));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.steingen.statemachine;
+
+/**
+ * The outcome of a {@link BatchDispatcher} run. The new state ordinals are written in place into the array that was
+ * passed in, so this only carries a bitmap of the entities that did not transition, one bit per array index.
+ */
+public final class BatchResult {
+    private final int size;
+    private final long[] rejected;
+    private final int rejectedCount;
+
+    BatchResult(int size, long[] rejected) {
+        this.size = size;
+        this.rejected = rejected;
+
+        int count = 0;
+        for (long word : rejected) {
+            count += Long.bitCount(word);
+        }
+        this.rejectedCount = count;
+    }
+
+    /**
+     * @return The number of entities in the batch
+     * */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of entities that did not transition
+     * */
+    public int rejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return The number of entities that transitioned
+     * */
+    public int acceptedCount() {
+        return size - rejectedCount;
+    }
+
+    /**
+     * Checks if the entity at the given index did not transition
+     * */
+    public boolean isRejected(int index) {
+        return (rejected[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the index of the next entity, starting at {@code fromIndex} (inclusive), that did not transition.
+     * This allows iterating over the rejections without allocating:
+     * <pre>{@code
+     * for (int i = result.nextRejected(0); i >= 0; i = result.nextRejected(i + 1)) { ... }
+     * }</pre>
+     * @return The index, or -1 if there are no more rejections
+     * */
+    public int nextRejected(int fromIndex) {
+        if (fromIndex >= size) {
+            return -1;
+        }
+
+        int wordIndex = fromIndex >>> 6;
+        long word = rejected[wordIndex] & (-1L << fromIndex);
+
+        while (true) {
+            if (word != 0) {
+                int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                return index < size ? index : -1;
+            }
+            if (++wordIndex == rejected.length) {
+                return -1;
+            }
+            word = rejected[wordIndex];
+        }
+    }
+
+    /**
+     * Exposes the raw rejection bitmap. Bit {@code i % 64} of word {@code i / 64} is set if entity {@code i}
+     * did not transition. The returned array must not be modified.
+     * */
+    public long[] rejectedWords() {
+        return rejected;
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.steingen.statemachine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A thread-safe, lock-free variant of {@link StateMachineInstance}. The current state ordinal is kept in a volatile
+ * field, and transitions are committed with compare-and-set, so an event is never applied to a stale state.
+ * <p>
+ * {@link #sendEvent(Enum)} retries when another thread changes the state in the meantime, re-evaluating the
+ * transition against the new state. {@link #trySendEvent(Enum)} and {@link #tryTransition(Enum, Enum)} make a single
+ * attempt and report the conflict instead.
+ * Since guards may be evaluated more than once, they should be free of side effects.
+ */
+public class ConcurrentStateMachine<S extends Enum<S>, E extends Enum<E>> implements StateMachine<S, E> {
+    private static final VarHandle STATE_ORDINAL;
+
+    static {
+        try {
+            STATE_ORDINAL = MethodHandles.lookup()
+                .findVarHandle(ConcurrentStateMachine.class, "stateOrdinal", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The outcome of a single {@link #trySendEvent(Enum)} attempt
+     * */
+    public enum Attempt {
+        /**
+         * The state was changed by the event
+         * */
+        TRANSITIONED,
+        /**
+         * No transition is defined for the event from the current state, or its guard rejected it
+         * */
+        REJECTED,
+        /**
+         * Another thread changed the state between reading it and committing the transition
+         * */
+        CONFLICT
+    }
+
+    private final StateMachineDefinition<S, E> definition;
+    private final long entityId;
+    @SuppressWarnings("unused") // Accessed through the STATE_ORDINAL VarHandle
+    private volatile int stateOrdinal;
+
+    public ConcurrentStateMachine(StateMachineDefinition<S, E> definition, S initialState) {
+        this(definition, TransitionAction.NO_ENTITY, initialState);
+    }
+
+    /**
+     * @param entityId - The id passed to the actions of this state machine
+     * */
+    public ConcurrentStateMachine(StateMachineDefinition<S, E> definition, long entityId, S initialState) {
+        this.definition = definition;
+        this.entityId = entityId;
+        this.stateOrdinal = definition.entryStateOrdinal(initialState.ordinal());
+    }
+
+    public StateMachineDefinition<S, E> getDefinition() {
+        return definition;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public S getCurrentState() {
+        return definition.state(stateOrdinal);
+    }
+
+    public int getCurrentStateOrdinal() {
+        return stateOrdinal;
+    }
+
+    public ConcurrentStateMachine<S, E> setCurrentState(S currentState) {
+        this.stateOrdinal = currentState.ordinal();
+        return this;
+    }
+
+    @Override
+    public boolean isValidTransition(S newState) {
+        return definition.isValidTransition(stateOrdinal, newState.ordinal());
+    }
+
+    /**
+     * Applies the event, retrying against the latest state whenever another thread wins the race
+     * */
+    @Override
+    public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    /**
+     * Applies the event, retrying against the latest state whenever another thread wins the race.
+     * The result therefore never has the {@link TransitionResult.Status#CONFLICT} status
+     * */
+    @Override
+    public long sendEventForResult(E event) {
+        int eventOrdinal = event.ordinal();
+
+        while (true) {
+            int fromOrdinal = stateOrdinal;
+            int toOrdinal = definition.dispatchStateOrdinal(this, eventOrdinal, fromOrdinal);
+
+            if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+                return definition.notTransitioned(eventOrdinal, fromOrdinal);
+            }
+            if (STATE_ORDINAL.compareAndSet(this, fromOrdinal, toOrdinal)) {
+                definition.onTransition(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+                return TransitionResult.transitioned(eventOrdinal, fromOrdinal, toOrdinal);
+            }
+        }
+    }
+
+    /**
+     * Applies the event only if the state machine is in the expected state, with a single compare-and-set.
+     * It never retries, so a {@link TransitionResult.Status#CONFLICT} result means that another thread got there first
+     * */
+    @Override
+    public long tryTransition(E event, S expectedState) {
+        int eventOrdinal = event.ordinal();
+        int fromOrdinal = expectedState.ordinal();
+        int currentOrdinal = stateOrdinal;
+
+        if (currentOrdinal != fromOrdinal) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.CONFLICT, eventOrdinal, currentOrdinal);
+        }
+
+        int toOrdinal = definition.dispatchStateOrdinal(this, eventOrdinal, fromOrdinal);
+
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            return definition.notTransitioned(eventOrdinal, fromOrdinal);
+        }
+        if (!STATE_ORDINAL.compareAndSet(this, fromOrdinal, toOrdinal)) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.CONFLICT, eventOrdinal, stateOrdinal);
+        }
+
+        definition.onTransition(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+        return TransitionResult.transitioned(eventOrdinal, fromOrdinal, toOrdinal);
+    }
+
+    /**
+     * Makes a single attempt to apply the event.
+     * <p>
+     * @return {@link Attempt#CONFLICT} if another thread changed the state before the transition could be committed
+     * */
+    public Attempt trySendEvent(E event) {
+        int fromOrdinal = stateOrdinal;
+        int toOrdinal = definition.dispatchStateOrdinal(this, event.ordinal(), fromOrdinal);
+
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            definition.notTransitioned(event.ordinal(), fromOrdinal);
+            return Attempt.REJECTED;
+        }
+
+        if (!STATE_ORDINAL.compareAndSet(this, fromOrdinal, toOrdinal)) {
+            return Attempt.CONFLICT;
+        }
+
+        definition.onTransition(entityId, event.ordinal(), fromOrdinal, toOrdinal);
+        return Attempt.TRANSITIONED;
+    }
+}
@@ -0,0 +1,203 @@
+package io.github.steingen.statemachine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Writes a {@link StateMachineDefinition} as a compact binary image of its flattened dispatch table, hierarchy and
+ * timeouts, and loads it back. Images are meant to be compiled at build time (see {@link DefinitionImageCompiler}),
+ * so that a service does not run the construction code of its state machines on every start.
+ * Loading an image reads the flattened tables straight into a definition, without going through the builder again:
+ * it uses no reflection, so it also works in a GraalVM native image. The hierarchy and the initial substates are
+ * part of the image, so that {@link StateMachineDefinition#isInState(int, Enum)} and the entry states of the loaded
+ * definition match those of its source.
+ * <p>
+ * Guards are code, so they cannot be part of an image. The image only records which transitions have a custom
+ * guard, and those guards have to be supplied when the image is loaded. The names of the states and events are
+ * recorded too, so that an image compiled against a different version of the enums is rejected instead of being
+ * silently misread.
+ */
+public final class DefinitionImage {
+    /**
+     * The classpath directory that {@link #load(String, Class, Class)} reads images from
+     * */
+    public static final String RESOURCE_DIRECTORY = "definition-images/";
+    public static final String FILE_EXTENSION = ".smimg";
+
+    private static final int MAGIC = 0x534D494D;
+    private static final int VERSION = 2;
+    private static final byte HAS_GUARD = 1;
+
+    private DefinitionImage() {
+    }
+
+    public static void write(StateMachineDefinition<?, ?> definition, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        int stateCount = definition.stateCount();
+        int eventCount = definition.eventCount();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(stateCount);
+        for (int state = 0; state < stateCount; state++) {
+            out.writeUTF(definition.state(state).name());
+        }
+        out.writeInt(eventCount);
+        for (int event = 0; event < eventCount; event++) {
+            out.writeUTF(definition.event(event).name());
+        }
+
+        for (int state = 0; state < stateCount; state++) {
+            out.writeInt(definition.parentOrdinal(state));
+            out.writeInt(definition.entryStateOrdinal(state));
+            out.writeLong(definition.timeoutMillis(state));
+            out.writeInt(definition.timeoutEventOrdinal(state));
+        }
+
+        for (int event = 0; event < eventCount; event++) {
+            int[] targets = definition.targetRow(event);
+
+            for (int state = 0; state < stateCount; state++) {
+                out.writeInt(targets[state]);
+                out.writeByte(definition.hasGuard(event, state) ? HAS_GUARD : 0);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Loads an image that has no custom guards
+     * <p>
+     * @throws IOException if the image is not valid, was compiled for different state or event enums, or has custom guards
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> read(
+        InputStream inputStream, Class<S> stateType, Class<E> eventType) throws IOException {
+        return read(inputStream, stateType, eventType, (event, from) -> null, TransitionListener.NOOP);
+    }
+
+    /**
+     * Loads an image
+     * <p>
+     * @param guards   - Supplies the guard of each transition that had a custom guard when the image was compiled,
+     *                 given its event and from state
+     * @param listener - The listener of the loaded definition
+     * <p>
+     * @throws IOException if the image is not valid, was compiled for different state or event enums, or a guard is missing
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> read(
+        InputStream inputStream, Class<S> stateType, Class<E> eventType,
+        BiFunction<? super E, ? super S, TransitionGuard<S, E>> guards, TransitionListener listener) throws IOException {
+        Objects.requireNonNull(listener, "listener");
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        S[] states = stateType.getEnumConstants();
+        E[] events = eventType.getEnumConstants();
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unsupported definition image format");
+        }
+        checkNames(in, states, stateType);
+        checkNames(in, events, eventType);
+
+        int[] parents = new int[states.length];
+        int[] entryStates = new int[states.length];
+        long[] timeouts = new long[states.length];
+        int[] timeoutEvents = new int[states.length];
+
+        for (int state = 0; state < states.length; state++) {
+            int parent = in.readInt();
+            parents[state] = StateMachineDefinition.NO_PARENT == parent ? parent : checkOrdinal(parent, states.length);
+            entryStates[state] = checkOrdinal(in.readInt(), states.length);
+            timeouts[state] = in.readLong();
+            timeoutEvents[state] = in.readInt();
+
+            if (StateMachineDefinition.NO_TIMEOUT != timeouts[state]) {
+                checkOrdinal(timeoutEvents[state], events.length);
+            }
+        }
+        checkHierarchy(parents);
+
+        int[][] targets = new int[events.length][states.length];
+        @SuppressWarnings("unchecked")
+        TransitionGuard<S, E>[][] transitionGuards = new TransitionGuard[events.length][states.length];
+
+        for (E event : events) {
+            for (S state : states) {
+                int target = in.readInt();
+                targets[event.ordinal()][state.ordinal()] = StateMachineDefinition.NO_TRANSITION == target
+                    ? target
+                    : checkOrdinal(target, states.length);
+
+                if (HAS_GUARD != in.readByte() || StateMachineDefinition.NO_TRANSITION == target) {
+                    continue;
+                }
+
+                TransitionGuard<S, E> guard = guards.apply(event, state);
+                if (null == guard) {
+                    throw new IOException("No guard was supplied for event " + event + " from state " + state);
+                }
+                transitionGuards[event.ordinal()][state.ordinal()] = guard;
+            }
+        }
+
+        return StateMachineDefinition.ofTables(stateType, eventType, targets, transitionGuards, parents, entryStates,
+            timeouts, timeoutEvents, listener);
+    }
+
+    /**
+     * Loads an image that has no custom guards from {@value #RESOURCE_DIRECTORY}{@code <name>}{@value #FILE_EXTENSION}
+     * on the classpath of the state type
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> load(
+        String name, Class<S> stateType, Class<E> eventType) throws IOException {
+        String resource = RESOURCE_DIRECTORY + name + FILE_EXTENSION;
+
+        try (InputStream in = stateType.getClassLoader().getResourceAsStream(resource)) {
+            if (null == in) {
+                throw new FileNotFoundException("No definition image found at " + resource);
+            }
+            return read(in, stateType, eventType);
+        }
+    }
+
+    private static int checkOrdinal(int ordinal, int count) throws IOException {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IOException("The definition image is corrupt: ordinal " + ordinal + " is out of range");
+        }
+        return ordinal;
+    }
+
+    private static void checkHierarchy(int[] parents) throws IOException {
+        for (int state = 0; state < parents.length; state++) {
+            int depth = 0;
+
+            for (int ordinal = parents[state]; StateMachineDefinition.NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+                if (++depth >= parents.length) {
+                    throw new IOException("The definition image is corrupt: its states are nested in a cycle");
+                }
+            }
+        }
+    }
+
+    private static void checkNames(DataInputStream in, Enum<?>[] constants, Class<?> type) throws IOException {
+        int count = in.readInt();
+        boolean matches = count == constants.length;
+
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            matches &= i < constants.length && constants[i].name().equals(name);
+        }
+        if (!matches) {
+            throw new IOException("The definition image was compiled for a different version of " + type.getName());
+        }
+    }
+}
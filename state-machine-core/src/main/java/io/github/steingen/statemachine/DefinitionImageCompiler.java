@@ -0,0 +1,73 @@
+package io.github.steingen.statemachine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compiles definitions into {@link DefinitionImage}s at build time. It is the main class run by the
+ * {@code compileDefinitionImages} task of the {@code definition-images} Gradle plugin, and can be run by hand:
+ * <pre>{@code
+ * java -cp <classpath> io.github.steingen.statemachine.DefinitionImageCompiler <output dir> <class> <name> [<class> <name>...]
+ * }</pre>
+ * Each class is either a {@code Supplier<StateMachineDefinition<?, ?>>}, or an {@link AbstractStateMachine} subclass,
+ * whose event rules are compiled as described in {@link StateMachineDefinition.Builder#transitions(AbstractStateMachine)}.
+ * Both need a public no-argument constructor. The image is written to {@code <output dir>/<name>.smimg}.
+ */
+public final class DefinitionImageCompiler {
+
+    private DefinitionImageCompiler() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || 0 == args.length % 2) {
+            throw new IllegalArgumentException("Usage: DefinitionImageCompiler <output dir> <class> <name> [<class> <name>...]");
+        }
+
+        Path outputDirectory = Files.createDirectories(Path.of(args[0]));
+
+        for (int i = 1; i < args.length; i += 2) {
+            Object source = Class.forName(args[i]).getConstructor().newInstance();
+            compile(toDefinition(source), outputDirectory.resolve(args[i + 1] + DefinitionImage.FILE_EXTENSION));
+        }
+    }
+
+    public static void compile(StateMachineDefinition<?, ?> definition, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            DefinitionImage.write(definition, out);
+        }
+    }
+
+    /**
+     * Builds a definition from the event rules of the state machine. The state and event types are taken from the
+     * declared transitions, so at least one transition must be declared
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> toDefinition(
+        AbstractStateMachine<S, E> stateMachine) {
+        for (Map.Entry<E, List<Transition<S>>> rule : stateMachine.eventRules.entrySet()) {
+            if (!rule.getValue().isEmpty()) {
+                return StateMachineDefinition
+                    .builder(rule.getValue().get(0).getFromState().getDeclaringClass(), rule.getKey().getDeclaringClass())
+                    .transitions(stateMachine)
+                    .build();
+            }
+        }
+        throw new IllegalArgumentException(stateMachine.getClass().getName() + " does not declare any transitions");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static StateMachineDefinition<?, ?> toDefinition(Object source) {
+        if (source instanceof AbstractStateMachine) {
+            return toDefinition((AbstractStateMachine) source);
+        }
+        if (source instanceof Supplier) {
+            return (StateMachineDefinition<?, ?>) ((Supplier<?>) source).get();
+        }
+        throw new IllegalArgumentException(source.getClass().getName()
+            + " is neither a Supplier of a StateMachineDefinition nor an AbstractStateMachine");
+    }
+}
@@ -0,0 +1,231 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.bitstore.BitStore;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks a state machine for definition bugs once, e.g. in a unit test or when its image is compiled, instead of
+ * letting them surface as events that are silently ignored in production:
+ * <ul>
+ *     <li>conflicting transitions, i.e. more than one guarded candidate for the same event and from state</li>
+ *     <li>shadowed transitions, which can never be taken because an unguarded candidate is declared before them</li>
+ *     <li>states that are unreachable from the initial state</li>
+ *     <li>states without exits that are not final, and states from which no final state can be reached</li>
+ *     <li>timeouts whose event has no transition from the state</li>
+ * </ul>
+ * Guards are assumed to pass when following transitions. If no final states are given, the states without exits
+ * are taken as the final states.
+ * <p>
+ * The graph of a {@link StateMachineDefinition} is its flattened table, as described by its
+ * {@link StateMachineDefinition#reachability()}. A composite state only groups its substates: a transition to it
+ * enters its initial substate, so it is not reported as unreachable. It is only checked for exits when an entity
+ * can actually be in it, i.e. when it has no initial substate and is reachable itself. A composite initial state
+ * starts in its initial substate.
+ * <p>
+ * A {@link StateMachineDefinition} cannot hold conflicting or shadowed transitions, since its builder only accepts one
+ * transition per event and from state. The same guarantee can be checked on an {@link AbstractStateMachine}, whose
+ * {@code sendEvent(...)} otherwise silently takes the first candidate whose guard passes. The transitions created by
+ * its {@code newTransition(from, to)} count as unguarded, unless its class overrides {@code defaultGuard(...)}.
+ */
+public final class DefinitionValidator {
+
+    private DefinitionValidator() {
+    }
+
+    @SafeVarargs
+    public static <S extends Enum<S>, E extends Enum<E>> ValidationReport<S, E> validate(
+        StateMachineDefinition<S, E> definition, S initialState, S... finalStates) {
+        ValidationReport<S, E> report = new ValidationReport<>();
+        S[] states = definition.getStateType().getEnumConstants();
+        BitStore<S>[] exits = newExits(states.length);
+        @SuppressWarnings("unchecked")
+        BitStore<S>[] reachable = new BitStore[states.length];
+        BitStore<S> composites = BitStore.noneOf(definition.getStateType());
+        ReachabilityIndex<S, E> reachability = definition.reachability();
+
+        for (int state = 0; state < states.length; state++) {
+            BitStore<S> allowed = definition.allowedRow(state);
+            if (null != allowed) {
+                exits[state].or(allowed);
+            }
+            reachable[state] = reachability.reachableRow(state);
+
+            int parent = definition.parentOrdinal(state);
+            if (StateMachineDefinition.NO_PARENT != parent) {
+                composites.set(states[parent]);
+            }
+
+            if (StateMachineDefinition.NO_TIMEOUT != definition.timeoutMillis(state)) {
+                int eventOrdinal = definition.timeoutEventOrdinal(state);
+
+                if (StateMachineDefinition.NO_TRANSITION == definition.targetRow(eventOrdinal)[state]) {
+                    report.add(ValidationReport.Kind.UNHANDLED_TIMEOUT, states[state], definition.event(eventOrdinal),
+                        "The timeout event " + definition.event(eventOrdinal) + " of " + states[state]
+                            + " has no transition from it");
+                }
+            }
+        }
+
+        validateGraph(report, states, exits, reachable, composites, definition.entryState(initialState), finalStates);
+        return report;
+    }
+
+    /**
+     * Validates the event rules of the state machine, in the order in which {@code sendEvent(...)} scans them
+     * */
+    @SafeVarargs
+    public static <S extends Enum<S>, E extends Enum<E>> ValidationReport<S, E> validate(
+        AbstractStateMachine<S, E> stateMachine, S initialState, S... finalStates) {
+        ValidationReport<S, E> report = new ValidationReport<>();
+        S[] states = initialState.getDeclaringClass().getEnumConstants();
+        BitStore<S>[] exits = newExits(states.length);
+        boolean plainDefaultGuard = !overridesDefaultGuard(stateMachine.getClass());
+
+        for (Map.Entry<E, List<Transition<S>>> rule : stateMachine.eventRules.entrySet()) {
+            Map<S, List<Transition<S>>> candidates = new HashMap<>();
+
+            for (Transition<S> transition : rule.getValue()) {
+                exits[transition.getFromState().ordinal()].set(transition.getToState());
+                candidates.computeIfAbsent(transition.getFromState(), k -> new ArrayList<>()).add(transition);
+            }
+
+            for (List<Transition<S>> fromState : candidates.values()) {
+                validateCandidates(report, rule.getKey(), fromState, plainDefaultGuard);
+            }
+        }
+
+        BitStore<S>[] reachable = newExits(states.length);
+        for (int state = 0; state < states.length; state++) {
+            reachable[state].or(exits[state]);
+        }
+        ReachabilityIndex.close(reachable);
+
+        validateGraph(report, states, exits, reachable, BitStore.noneOf(initialState.getDeclaringClass()), initialState,
+            finalStates);
+        return report;
+    }
+
+    /**
+     * @return true if the class, or one of its superclasses below {@link AbstractStateMachine}, declares
+     * {@code defaultGuard(...)}, in which case the default guard may check more than the current state
+     * */
+    private static boolean overridesDefaultGuard(Class<?> stateMachineType) {
+        for (Class<?> type = stateMachineType; AbstractStateMachine.class != type; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if ("defaultGuard".equals(method.getName()) && 2 == method.getParameterCount()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the transitions declared for one event and from state, in declaration order
+     * <p>
+     * @param plainDefaultGuard - true if the default guard only checks the current state, so that the transitions
+     *                          guarded by it always pass
+     * */
+    private static <S extends Enum<S>, E extends Enum<E>> void validateCandidates(
+        ValidationReport<S, E> report, E event, List<Transition<S>> candidates, boolean plainDefaultGuard) {
+        if (candidates.size() < 2) {
+            return;
+        }
+
+        S from = candidates.get(0).getFromState();
+        // Everything after the first unguarded candidate is unreachable code
+        int live = candidates.size();
+        for (int i = 0; i < candidates.size(); i++) {
+            Transition<S> candidate = candidates.get(i);
+
+            if (candidate.isFromCurrent() || (plainDefaultGuard && candidate.isDefaultGuard())) {
+                live = i + 1;
+                break;
+            }
+        }
+
+        if (live > 1) {
+            report.add(ValidationReport.Kind.CONFLICT, from, event, live + " transitions are declared for event "
+                + event + " from " + from + ", so the first one whose guard passes wins: " + targets(candidates, 0, live));
+        }
+        if (live < candidates.size()) {
+            report.add(ValidationReport.Kind.SHADOWED, from, event, "The transitions for event " + event + " from "
+                + from + " to " + targets(candidates, live, candidates.size()) + " are never taken, because the transition to "
+                + candidates.get(live - 1).getToState() + " is declared before them without a guard");
+        }
+    }
+
+    /**
+     * @param reachable  - The states that can be reached from each state in one or more transitions
+     * @param composites - The states that have substates
+     * */
+    private static <S extends Enum<S>, E extends Enum<E>> void validateGraph(
+        ValidationReport<S, E> report, S[] states, BitStore<S>[] exits, BitStore<S>[] reachable, BitStore<S> composites,
+        S initialState, S[] finalStates) {
+        BitStore<S> finals = BitStore.noneOf(initialState.getDeclaringClass());
+
+        for (S finalState : finalStates) {
+            finals.set(finalState);
+        }
+        if (finals.isEmpty()) {
+            for (int state = 0; state < states.length; state++) {
+                if (exits[state].isEmpty()) {
+                    finals.set(states[state]);
+                }
+            }
+        }
+
+        for (int state = 0; state < states.length; state++) {
+            S current = states[state];
+
+            if (state != initialState.ordinal() && !reachable[initialState.ordinal()].get(state)) {
+                if (!composites.get(state)) {
+                    report.add(ValidationReport.Kind.UNREACHABLE, current, null,
+                        current + " cannot be reached from " + initialState);
+                }
+            } else if (exits[state].isEmpty() && !finals.get(state)) {
+                report.add(ValidationReport.Kind.NO_EXIT, current, null,
+                    current + " has no outgoing transitions, but it is not a final state");
+            } else if (!exits[state].isEmpty() && !canReach(reachable[state], finals)) {
+                report.add(ValidationReport.Kind.DEAD_END, current, null,
+                    "No final state can be reached from " + current);
+            }
+        }
+    }
+
+    /**
+     * @return true if one of the targets is among the reachable states
+     * */
+    private static <S extends Enum<S>> boolean canReach(BitStore<S> reachable, BitStore<S> targets) {
+        for (int state = targets.nextSetBit(0); state >= 0; state = targets.nextSetBit(state + 1)) {
+            if (reachable.get(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <S extends Enum<S>> String targets(List<Transition<S>> candidates, int from, int to) {
+        List<S> targets = new ArrayList<>();
+
+        for (int i = from; i < to; i++) {
+            targets.add(candidates.get(i).getToState());
+        }
+        return targets.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S extends Enum<S>> BitStore<S>[] newExits(int stateCount) {
+        BitStore<S>[] rows = new BitStore[stateCount];
+
+        for (int state = 0; state < stateCount; state++) {
+            rows[state] = BitStore.empty();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,463 @@
+package io.github.steingen.statemachine;
+
+import jakarta.annotation.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Applies events to many entities asynchronously, keeping the events of each entity in order while different
+ * entities are processed in parallel.
+ * <p>
+ * Entities are sharded by the hash of their key over a fixed number of mailboxes. Each mailbox is a bounded queue
+ * drained in batches by a single thread, which is the only thread that ever touches the state machines of its
+ * entities. The state machines therefore need no locking, and can be plain {@link StateMachineInstance}s.
+ * When a mailbox is full, {@link #dispatch(Object, Enum)} blocks the caller, and {@link #tryDispatch(Object, Enum)}
+ * gives up, so producers are slowed down to the rate at which events are applied.
+ * <p>
+ * The state machine of an entity is created on the mailbox thread the first time an event is dispatched to it,
+ * and kept until it is removed with {@link #remove(Object)}, or until it reaches a state matched by
+ * {@link Builder#evictWhen(Predicate)}. Without either, the mailboxes grow with the number of distinct keys.
+ * The result of each event is reported through a {@link CompletableFuture}, encoded as described in
+ * {@link TransitionResult}. The futures are completed on the mailbox thread, so dependent actions should be cheap,
+ * or use the async variants of the CompletableFuture methods.
+ */
+public final class EventDispatcher<K, S extends Enum<S>, E extends Enum<E>> implements AutoCloseable {
+    private static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    /**
+     * Put in a mailbox by {@link #close()} to stop its thread once the events before it are applied
+     * */
+    private static final Envelope<?, ?> CLOSE = new Envelope<>(null, null, null, null);
+    /**
+     * How often a producer that waits for space in a mailbox checks that its thread is still running
+     * */
+    private static final long LIVENESS_CHECK_MILLIS = 100;
+
+    private final Mailbox<K, S, E>[] mailboxes;
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    private EventDispatcher(Builder<K, S, E> builder) {
+        ThreadFactory threadFactory = builder.virtualThreads
+            ? virtualThreadFactory()
+            : platformThreadFactory();
+
+        this.mailboxes = new Mailbox[builder.shards];
+
+        for (int i = 0; i < mailboxes.length; i++) {
+            mailboxes[i] = new Mailbox<>(builder.stateMachineFactory, builder.evictWhen, builder.mailboxCapacity,
+                builder.batchSize);
+        }
+        for (Mailbox<K, S, E> mailbox : mailboxes) {
+            mailbox.thread = threadFactory.newThread(mailbox::run);
+            mailbox.thread.start();
+        }
+    }
+
+    /**
+     * @param stateMachineFactory - Creates the state machine of an entity, given its key. It is called on the mailbox thread
+     * */
+    public static <K, S extends Enum<S>, E extends Enum<E>> Builder<K, S, E> builder(
+        Function<? super K, ? extends StateMachine<S, E>> stateMachineFactory) {
+        return new Builder<>(stateMachineFactory);
+    }
+
+    /**
+     * Queues the event for the entity, waiting for space in its mailbox if it is full.
+     * <p>
+     * @return A future that is completed with the {@link TransitionResult} of the event once it is applied, or
+     * completed exceptionally if the state machine throws, or the dispatcher is closed before the event is applied.
+     * An {@link Error} thrown by the state machine is not caught: it stops the mailbox thread, and fails every event
+     * that is queued in the mailbox, including this one
+     * <p>
+     * @throws IllegalStateException if the dispatcher is closed
+     * */
+    public CompletableFuture<Long> dispatch(K key, E event) {
+        Envelope<K, E> envelope = Envelope.event(checkOpen(key), Objects.requireNonNull(event, "event"));
+
+        enqueue(envelope);
+        return envelope.result;
+    }
+
+    /**
+     * Queues the removal of the state machine of the entity, after the events that are already queued for it.
+     * The next event dispatched to the entity creates a new state machine.
+     * <p>
+     * @return A future that is completed with true if the entity had a state machine, or exceptionally as described
+     * in {@link #dispatch(Object, Enum)}
+     * <p>
+     * @throws IllegalStateException if the dispatcher is closed
+     * */
+    public CompletableFuture<Boolean> remove(K key) {
+        Envelope<K, E> envelope = Envelope.removal(checkOpen(key));
+
+        enqueue(envelope);
+        return envelope.removed;
+    }
+
+    /**
+     * Queues the event for the entity, unless its mailbox is full.
+     * <p>
+     * @return A future as described in {@link #dispatch(Object, Enum)}, or null if the mailbox is full
+     * <p>
+     * @throws IllegalStateException if the dispatcher is closed
+     * */
+    @Nullable
+    public CompletableFuture<Long> tryDispatch(K key, E event) {
+        Envelope<K, E> envelope = Envelope.event(checkOpen(key), Objects.requireNonNull(event, "event"));
+        Mailbox<K, S, E> mailbox = mailboxOf(key);
+
+        if (!mailbox.queue.offer(envelope)) {
+            return null;
+        }
+
+        afterQueued(mailbox, envelope);
+        return envelope.result;
+    }
+
+    public int shardCount() {
+        return mailboxes.length;
+    }
+
+    /**
+     * @return The shard that the events of the entity are dispatched to
+     * */
+    public int shardOf(K key) {
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), mailboxes.length);
+    }
+
+    /**
+     * Stops accepting events, and waits for the events that are already queued to be applied
+     * */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (Mailbox<K, S, E> mailbox : mailboxes) {
+            if (!put(mailbox, (Envelope<K, E>) CLOSE)) {
+                // The mailbox thread has stopped, so nothing would ever take the queued events
+                mailbox.failQueued(new IllegalStateException("The dispatcher is closed"));
+            }
+        }
+        for (Mailbox<K, S, E> mailbox : mailboxes) {
+            mailbox.thread.join();
+        }
+    }
+
+    private void enqueue(Envelope<K, E> envelope) {
+        Mailbox<K, S, E> mailbox = mailboxOf(envelope.key);
+
+        try {
+            if (!put(mailbox, envelope)) {
+                envelope.future().completeExceptionally(new IllegalStateException("The mailbox thread has stopped"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            envelope.future().completeExceptionally(e);
+            return;
+        }
+
+        afterQueued(mailbox, envelope);
+    }
+
+    /**
+     * Waits for space in the mailbox, unless its thread has stopped
+     * <p>
+     * @return false if the mailbox thread has stopped before there was space
+     * */
+    private boolean put(Mailbox<K, S, E> mailbox, Envelope<K, E> envelope) throws InterruptedException {
+        while (!mailbox.queue.offer(envelope, LIVENESS_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (mailbox.stopped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private K checkOpen(K key) {
+        Objects.requireNonNull(key, "key");
+
+        if (closed) {
+            throw new IllegalStateException("The dispatcher is closed");
+        }
+        return key;
+    }
+
+    private Mailbox<K, S, E> mailboxOf(K key) {
+        return mailboxes[shardOf(key)];
+    }
+
+    /**
+     * Fails the event if the dispatcher was closed, or the mailbox thread stopped, while it was being queued, since
+     * the mailbox thread may never take it. If the thread did take it, the event is applied as usual.
+     * */
+    private void afterQueued(Mailbox<K, S, E> mailbox, Envelope<K, E> envelope) {
+        if ((closed || mailbox.stopped) && mailbox.queue.remove(envelope)) {
+            envelope.future().completeExceptionally(new IllegalStateException("The dispatcher is closed"));
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, "event-dispatcher-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Resolves {@code Thread.ofVirtual()} reflectively, so that the library still runs on Java 17
+     * */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "event-dispatcher-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available", e);
+        }
+    }
+
+
+    public static final class Builder<K, S extends Enum<S>, E extends Enum<E>> {
+        private final Function<? super K, ? extends StateMachine<S, E>> stateMachineFactory;
+        private int shards = Runtime.getRuntime().availableProcessors();
+        private int mailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private Predicate<? super S> evictWhen;
+        private boolean virtualThreads;
+
+        private Builder(Function<? super K, ? extends StateMachine<S, E>> stateMachineFactory) {
+            this.stateMachineFactory = Objects.requireNonNull(stateMachineFactory, "stateMachineFactory");
+        }
+
+        /**
+         * Sets the number of mailboxes, each of which is drained by its own thread. Defaults to the number of processors
+         * */
+        public Builder<K, S, E> shards(int shards) {
+            this.shards = positive(shards, "shards");
+            return this;
+        }
+
+        /**
+         * Sets the number of events each mailbox can hold before producers are blocked
+         * */
+        public Builder<K, S, E> mailboxCapacity(int mailboxCapacity) {
+            this.mailboxCapacity = positive(mailboxCapacity, "mailboxCapacity");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of events a mailbox thread takes from its queue at once
+         * */
+        public Builder<K, S, E> batchSize(int batchSize) {
+            this.batchSize = positive(batchSize, "batchSize");
+            return this;
+        }
+
+        /**
+         * Drops the state machine of an entity once an event moves it to a state that matches the predicate, e.g. a
+         * terminal state, so that the mailboxes do not keep a state machine for every key ever seen.
+         * The next event dispatched to the entity creates a new state machine
+         * */
+        public Builder<K, S, E> evictWhen(Predicate<? super S> evictWhen) {
+            this.evictWhen = Objects.requireNonNull(evictWhen, "evictWhen");
+            return this;
+        }
+
+        /**
+         * Drains the mailboxes on virtual threads instead of a fixed pool of platform threads.
+         * {@link #build()} throws an {@link UnsupportedOperationException} if the runtime does not support them
+         * */
+        public Builder<K, S, E> virtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        public EventDispatcher<K, S, E> build() {
+            return new EventDispatcher<>(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return value;
+        }
+    }
+
+    private static final class Envelope<K, E> {
+        private final K key;
+        /**
+         * The event to apply, or null to remove the state machine of the entity
+         * */
+        @Nullable
+        private final E event;
+        /**
+         * Completed with the {@link TransitionResult} of the event. Null for a removal
+         * */
+        @Nullable
+        private final CompletableFuture<Long> result;
+        /**
+         * Completed with whether the entity had a state machine. Null for an event
+         * */
+        @Nullable
+        private final CompletableFuture<Boolean> removed;
+
+        private Envelope(K key, @Nullable E event, @Nullable CompletableFuture<Long> result,
+                         @Nullable CompletableFuture<Boolean> removed) {
+            this.key = key;
+            this.event = event;
+            this.result = result;
+            this.removed = removed;
+        }
+
+        static <K, E> Envelope<K, E> event(K key, E event) {
+            return new Envelope<>(key, event, new CompletableFuture<>(), null);
+        }
+
+        static <K, E> Envelope<K, E> removal(K key) {
+            return new Envelope<>(key, null, null, new CompletableFuture<>());
+        }
+
+        CompletableFuture<?> future() {
+            return null == event ? removed : result;
+        }
+    }
+
+    private static final class Mailbox<K, S extends Enum<S>, E extends Enum<E>> {
+        private final Function<? super K, ? extends StateMachine<S, E>> stateMachineFactory;
+        @Nullable
+        private final Predicate<? super S> evictWhen;
+        private final BlockingQueue<Envelope<K, E>> queue;
+        private final int batchSize;
+        /**
+         * Only accessed by the mailbox thread
+         * */
+        private final Map<K, StateMachine<S, E>> stateMachines = new HashMap<>();
+        private Thread thread;
+        /**
+         * Set once the mailbox thread no longer takes events from the queue
+         * */
+        private volatile boolean stopped;
+
+        Mailbox(Function<? super K, ? extends StateMachine<S, E>> stateMachineFactory,
+                @Nullable Predicate<? super S> evictWhen, int capacity, int batchSize) {
+            this.stateMachineFactory = stateMachineFactory;
+            this.evictWhen = evictWhen;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.batchSize = batchSize;
+        }
+
+        void run() {
+            List<Envelope<K, E>> batch = new ArrayList<>(batchSize);
+            int applied = 0;
+            // Stays null if an Error stops the thread
+            Throwable cause = null;
+
+            try {
+                while (true) {
+                    try {
+                        batch.add(queue.take());
+                    } catch (InterruptedException e) {
+                        cause = e;
+                        return;
+                    }
+                    queue.drainTo(batch, batchSize - 1);
+
+                    for (applied = 0; applied < batch.size(); applied++) {
+                        Envelope<K, E> envelope = batch.get(applied);
+
+                        if (CLOSE == envelope) {
+                            // Anything after the close marker raced with close(), and is failed rather than left hanging
+                            cause = new IllegalStateException("The dispatcher is closed");
+                            applied++;
+                            return;
+                        }
+                        apply(envelope);
+                    }
+                    batch.clear();
+                    applied = 0;
+                }
+            } catch (Exception e) {
+                // apply() only lets Errors through, so this is a failure of the mailbox itself
+                cause = e;
+                throw e;
+            } finally {
+                stopped = true;
+                if (null == cause) {
+                    cause = new IllegalStateException("The mailbox thread has stopped");
+                }
+                failAll(batch.subList(Math.min(applied, batch.size()), batch.size()), cause);
+                failQueued(cause);
+            }
+        }
+
+        /**
+         * Applies the event, or removes the state machine. An exception fails the future of the event rather than the
+         * mailbox, so that the events queued behind it are still applied. An {@link Error} stops the mailbox thread
+         * */
+        private void apply(Envelope<K, E> envelope) {
+            if (null == envelope.event) {
+                envelope.removed.complete(null != stateMachines.remove(envelope.key));
+                return;
+            }
+
+            long result;
+            try {
+                StateMachine<S, E> stateMachine = stateMachines.computeIfAbsent(envelope.key, stateMachineFactory);
+                result = stateMachine.sendEventForResult(envelope.event);
+
+                if (null != evictWhen && evictWhen.test(stateMachine.getCurrentState())) {
+                    stateMachines.remove(envelope.key);
+                }
+            } catch (Exception e) {
+                envelope.result.completeExceptionally(e);
+                return;
+            }
+            envelope.result.complete(result);
+        }
+
+        /**
+         * Fails every event left in the queue. It may be called from any thread once the mailbox thread has stopped
+         * */
+        void failQueued(Throwable cause) {
+            List<Envelope<K, E>> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            failAll(pending, cause);
+        }
+
+        private static <K, E> void failAll(List<Envelope<K, E>> envelopes, Throwable cause) {
+            for (Envelope<K, E> envelope : envelopes) {
+                if (CLOSE != envelope) {
+                    envelope.future().completeExceptionally(cause);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.steingen.statemachine;
+
+/**
+ * The {@link TransitionGuard#fromCurrent()} marker. Dispatchers compare against {@link #INSTANCE} and never call it;
+ * {@link #test(StateMachine, int, int)} is only used when the guard is invoked directly.
+ */
+final class FromCurrentGuard<S extends Enum<S>, E extends Enum<E>> implements TransitionGuard<S, E> {
+    @SuppressWarnings("rawtypes")
+    static final FromCurrentGuard INSTANCE = new FromCurrentGuard();
+
+    private FromCurrentGuard() {
+    }
+
+    @Override
+    public boolean test(StateMachine<S, E> machine, int fromOrdinal, int toOrdinal) {
+        S currentState = null == machine ? null : machine.getCurrentState();
+        return null != currentState && currentState.ordinal() == fromOrdinal;
+    }
+}
@@ -0,0 +1,203 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.statemachine.journal.EntityStateConsumer;
+import io.github.steingen.statemachine.journal.StateSnapshotCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rewrites stored state ordinals from an old version of a state enum to the current one, e.g. after states were
+ * renamed, reordered or removed. The migration is a single {@code int[]} from old ordinal to new ordinal, so it is
+ * applied without an object per entity: in place to arrays of ordinals, and on the fly to a snapshot stream that is
+ * decoded with a codec for the old state names (see {@link #migrating(EntityStateConsumer)}).
+ * A {@link StateStore} or a {@link ReloadableStateMachine} only ever holds the ordinals of its own enum, so their
+ * {@code migrate(...)} methods only take a migration within that enum, such as {@link #retire(Class, Enum, Enum)}.
+ * A file of a mapped store that was written for the old states is migrated as a whole when it is opened with
+ * {@link StateStore#map(StateMachineDefinition, java.nio.file.Path, long, Enum, OrdinalMigration)}.
+ * <p>
+ * The old states are identified by name, so a migration can be built after the old enum is gone, e.g. from the names
+ * recorded in a definition image. Old states are mapped to the current state with the same name, unless they are
+ * renamed or removed:
+ * <pre>{@code
+ * OrdinalMigration migration = OrdinalMigration.builder(List.of("NEW", "RUNNING", "PAUSED", "DONE"), OrderState.class)
+ *     .rename("RUNNING", OrderState.PROCESSING)
+ *     // Paused orders resume
+ *     .remove("PAUSED", OrderState.PROCESSING)
+ *     .rename("DONE", OrderState.COMPLETED)
+ *     .build();
+ * }</pre>
+ * Within the same enum, a migration retires a state that a reloaded definition no longer uses
+ * (see {@link #retire(Class, Enum, Enum)}).
+ */
+public final class OrdinalMigration {
+    private final int[] mapping;
+    /**
+     * The hash of the old state names, as computed by {@link StateSnapshotCodec#forStateNames(List)}
+     * */
+    private final long oldStateHash;
+
+    private OrdinalMigration(int[] mapping, long oldStateHash) {
+        this.mapping = mapping;
+        this.oldStateHash = oldStateHash;
+    }
+
+    public static <S extends Enum<S>> Builder<S> builder(List<String> oldStateNames, Class<S> stateType) {
+        return new Builder<>(oldStateNames, stateType);
+    }
+
+    public static <S extends Enum<S>> Builder<S> builder(Class<? extends Enum<?>> oldStateType, Class<S> stateType) {
+        List<String> names = new ArrayList<>();
+
+        for (Enum<?> state : oldStateType.getEnumConstants()) {
+            names.add(state.name());
+        }
+        return new Builder<>(names, stateType);
+    }
+
+    /**
+     * @return A migration within the same enum, which moves the entities in {@code state} to {@code replacement}
+     * */
+    public static <S extends Enum<S>> OrdinalMigration retire(Class<S> stateType, S state, S replacement) {
+        return builder(stateType, stateType).remove(state.name(), replacement).build();
+    }
+
+    /**
+     * @return The new ordinal of the old ordinal
+     * */
+    public int apply(int oldOrdinal) {
+        if (oldOrdinal < 0 || oldOrdinal >= mapping.length) {
+            throw new IllegalArgumentException("Invalid state ordinal: " + oldOrdinal);
+        }
+        return mapping[oldOrdinal];
+    }
+
+    /**
+     * Rewrites the ordinals in place. The ordinals are read as unsigned values, like in {@link BatchDispatcher}
+     * */
+    public void apply(byte[] states) {
+        for (int i = 0; i < states.length; i++) {
+            states[i] = (byte) apply(states[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Rewrites the ordinals in place. The ordinals are read as unsigned values, like in {@link BatchDispatcher}
+     * */
+    public void apply(short[] states) {
+        for (int i = 0; i < states.length; i++) {
+            states[i] = (short) apply(states[i] & 0xFFFF);
+        }
+    }
+
+    /**
+     * @return A consumer that migrates each ordinal before passing it on, e.g. to restore an old snapshot with
+     * {@code codec.read(channel, migration.migrating(store::setStateOrdinal))}
+     * */
+    public EntityStateConsumer migrating(EntityStateConsumer consumer) {
+        return (entityId, stateOrdinal) -> consumer.accept(entityId, apply(stateOrdinal));
+    }
+
+    /**
+     * @return The number of old states, i.e. of ordinals the migration accepts
+     * */
+    public int oldStateCount() {
+        return mapping.length;
+    }
+
+    /**
+     * @return The hash of the names of the old states, which identifies the files and snapshots written for them
+     * */
+    public long oldStateHash() {
+        return oldStateHash;
+    }
+
+    /**
+     * @return true if no ordinal changes
+     * */
+    public boolean isIdentity() {
+        for (int ordinal = 0; ordinal < mapping.length; ordinal++) {
+            if (mapping[ordinal] != ordinal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "OrdinalMigration" + Arrays.toString(mapping);
+    }
+
+    public static final class Builder<S extends Enum<S>> {
+        private final List<String> oldStateNames;
+        private final S[] states;
+        private final Map<String, S> overrides = new HashMap<>();
+
+        private Builder(List<String> oldStateNames, Class<S> stateType) {
+            this.oldStateNames = List.copyOf(oldStateNames);
+            this.states = stateType.getEnumConstants();
+        }
+
+        /**
+         * Maps the old state to a state with a different name
+         * */
+        public Builder<S> rename(String oldName, S state) {
+            return map(oldName, state);
+        }
+
+        /**
+         * Moves the entities in a state that no longer exists, or is no longer used, to the replacement state
+         * */
+        public Builder<S> remove(String oldName, S replacement) {
+            return map(oldName, replacement);
+        }
+
+        /**
+         * @throws IllegalStateException if an old state neither has a current state with the same name, nor is renamed or removed
+         * */
+        public OrdinalMigration build() {
+            int[] mapping = new int[oldStateNames.size()];
+            List<String> unmapped = new ArrayList<>();
+
+            for (int ordinal = 0; ordinal < mapping.length; ordinal++) {
+                String name = oldStateNames.get(ordinal);
+                S state = overrides.containsKey(name) ? overrides.get(name) : stateNamed(name);
+
+                if (null == state) {
+                    unmapped.add(name);
+                } else {
+                    mapping[ordinal] = state.ordinal();
+                }
+            }
+
+            if (!unmapped.isEmpty()) {
+                throw new IllegalStateException("The old states " + unmapped + " must be renamed or removed");
+            }
+            return new OrdinalMigration(mapping, StateSnapshotCodec.forStateNames(oldStateNames).definitionHash());
+        }
+
+        private Builder<S> map(String oldName, S state) {
+            Objects.requireNonNull(state, "state");
+
+            if (!oldStateNames.contains(oldName)) {
+                throw new IllegalArgumentException(oldName + " is not one of the old states " + oldStateNames);
+            }
+            overrides.put(oldName, state);
+            return this;
+        }
+
+        private S stateNamed(String name) {
+            for (S state : states) {
+                if (state.name().equals(name)) {
+                    return state;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.steingen.statemachine;
+
+import java.util.Objects;
+
+/**
+ * A composite state machine made of independent, concurrently active regions that react to the same events,
+ * e.g. the payment and the shipping of an order. Each region is a state machine of its own, with its own state type,
+ * so the combined state space is never enumerated: an event costs one table lookup per region.
+ * Like the regions it is made of, it is not thread-safe.
+ */
+public final class OrthogonalRegions<E extends Enum<E>> {
+    private final StateMachine<?, E>[] regions;
+
+    private OrthogonalRegions(StateMachine<?, E>[] regions) {
+        this.regions = regions;
+    }
+
+    @SafeVarargs
+    public static <E extends Enum<E>> OrthogonalRegions<E> of(StateMachine<?, E>... regions) {
+        if (0 == regions.length) {
+            throw new IllegalArgumentException("At least one region is required");
+        }
+        for (StateMachine<?, E> region : regions) {
+            Objects.requireNonNull(region, "region");
+        }
+        return new OrthogonalRegions<>(regions.clone());
+    }
+
+    public int regionCount() {
+        return regions.length;
+    }
+
+    public StateMachine<?, E> region(int index) {
+        return regions[index];
+    }
+
+    /**
+     * Sends the event to every region.
+     * <p>
+     * @return The number of regions that transitioned
+     * */
+    public int sendEvent(E event) {
+        int transitioned = 0;
+
+        for (StateMachine<?, E> region : regions) {
+            if (TransitionResult.isAccepted(region.sendEventForResult(event))) {
+                transitioned++;
+            }
+        }
+        return transitioned;
+    }
+
+    /**
+     * Sends the event to every region, and stores the {@link TransitionResult} of region {@code i} in {@code results[i]}
+     * */
+    public void sendEvent(E event, long[] results) {
+        if (results.length < regions.length) {
+            throw new IllegalArgumentException("Expected room for " + regions.length + " results, but got " + results.length);
+        }
+        for (int i = 0; i < regions.length; i++) {
+            results[i] = regions[i].sendEventForResult(event);
+        }
+    }
+}
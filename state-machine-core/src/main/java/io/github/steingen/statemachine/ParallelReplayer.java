@@ -0,0 +1,337 @@
+package io.github.steingen.statemachine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Rebuilds the state of a single entity from a long event log, e.g. when recovering a long-lived entity.
+ * Replaying the log with {@code sendEvent(...)} is strictly serial. Without custom guards however, each event is a
+ * pure function of the state, a {@link StateMapping}, and applying a log is composing the mappings of its events.
+ * Composition is associative, so the log is split over a {@link ForkJoinPool}: each task composes the mappings of
+ * its part of the log, and the parts are composed pairwise.
+ * <p>
+ * Composing a mapping costs one lookup per state and event, while applying an event to a single state costs one
+ * lookup, so a parallel replay does {@code stateCount} times the work of a serial one. It only finishes sooner if the
+ * pool has more threads than the definition has states: replays on a smaller pool, logs shorter than the split
+ * threshold, and replays without a pool are applied event by event. {@link #compose(int[], int, int)} has to compose
+ * the mappings either way, so it is split over any pool.
+ * The mappings of frequent event sequences can be memoized with {@link #sequence(Enum[])}.
+ * <p>
+ * A replay only rebuilds states: the transitions have already happened, so the listener and the actions of the
+ * definition are not run. Instances are thread safe.
+ */
+public final class ParallelReplayer<S extends Enum<S>, E extends Enum<E>> {
+    private static final int DEFAULT_SPLIT_THRESHOLD = 1 << 14;
+    private static final int DEFAULT_MAX_MEMOIZED = 1024;
+
+    private final StateMachineDefinition<S, E> definition;
+    /**
+     * The mapping of each event, indexed by event ordinal
+     * */
+    private final StateMapping[] eventMappings;
+    private final ForkJoinPool pool;
+    private final int splitThreshold;
+    private final int maxMemoized;
+    private final Map<SequenceKey, StateMapping> memoized = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a replayer that applies every log on the calling thread
+     * */
+    public ParallelReplayer(StateMachineDefinition<S, E> definition) {
+        this(definition, null, DEFAULT_SPLIT_THRESHOLD, DEFAULT_MAX_MEMOIZED);
+    }
+
+    public ParallelReplayer(StateMachineDefinition<S, E> definition, ForkJoinPool pool) {
+        this(definition, pool, DEFAULT_SPLIT_THRESHOLD, DEFAULT_MAX_MEMOIZED);
+    }
+
+    /**
+     * @param pool           - The pool to split long logs over, or null to apply logs on the calling thread
+     * @param splitThreshold - The number of events below which a log is no longer split
+     * @param maxMemoized    - The maximum number of event sequences whose mappings are memoized
+     * <p>
+     * @throws IllegalArgumentException if a transition of the definition has a custom guard
+     * */
+    public ParallelReplayer(StateMachineDefinition<S, E> definition, ForkJoinPool pool, int splitThreshold, int maxMemoized) {
+        if (splitThreshold <= 0) {
+            throw new IllegalArgumentException("splitThreshold must be positive");
+        }
+        if (maxMemoized < 0) {
+            throw new IllegalArgumentException("maxMemoized must not be negative");
+        }
+
+        this.definition = Objects.requireNonNull(definition, "definition");
+        this.pool = pool;
+        this.splitThreshold = splitThreshold;
+        this.maxMemoized = maxMemoized;
+        this.eventMappings = eventMappings(definition);
+    }
+
+    private static <S extends Enum<S>, E extends Enum<E>> StateMapping[] eventMappings(StateMachineDefinition<S, E> definition) {
+        StateMapping[] mappings = new StateMapping[definition.eventCount()];
+
+        for (int event = 0; event < mappings.length; event++) {
+            int[] row = definition.targetRow(event);
+            int[] targets = new int[row.length];
+
+            for (int state = 0; state < row.length; state++) {
+                if (definition.hasGuard(event, state)) {
+                    throw new IllegalArgumentException("The transition for " + definition.event(event) + " from "
+                        + definition.state(state) + " has a custom guard, so its outcome is not a function of the state");
+                }
+                targets[state] = StateMachineDefinition.NO_TRANSITION == row[state] ? state : row[state];
+            }
+            mappings[event] = new StateMapping(targets);
+        }
+        return mappings;
+    }
+
+    public StateMapping mapping(E event) {
+        return eventMappings[event.ordinal()];
+    }
+
+    /**
+     * Returns the mapping of an event sequence, which is memoized, e.g. for a sequence of events that is often sent
+     * together. Sequences beyond the memoization limit are composed on every call
+     * */
+    @SafeVarargs
+    public final StateMapping sequence(E... events) {
+        int[] eventOrdinals = ordinals(events);
+        SequenceKey key = new SequenceKey(eventOrdinals);
+        StateMapping mapping = memoized.get(key);
+
+        if (null == mapping) {
+            mapping = compose(eventOrdinals, 0, eventOrdinals.length);
+            if (memoized.size() < maxMemoized) {
+                memoized.putIfAbsent(key, mapping);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * @return The number of event sequences whose mappings are memoized
+     * */
+    public int memoizedCount() {
+        return memoized.size();
+    }
+
+    /**
+     * Composes the mappings of {@code eventOrdinals[from, to)}, in parallel if a pool was provided and the range is
+     * longer than the split threshold
+     * */
+    public StateMapping compose(int[] eventOrdinals, int from, int to) {
+        Objects.checkFromToIndex(from, to, eventOrdinals.length);
+
+        if (null == pool || to - from <= splitThreshold) {
+            return new StateMapping(composeRange(eventOrdinals, from, to));
+        }
+        return new StateMapping(pool.invoke(new ComposeTask(eventOrdinals, from, to)));
+    }
+
+    public StateMapping compose(E[] events) {
+        return compose(ordinals(events), 0, events.length);
+    }
+
+    /**
+     * Applies {@code eventOrdinals[from, to)} to the initial state
+     * <p>
+     * @return The ordinal of the final state
+     * */
+    public int replay(int initialOrdinal, int[] eventOrdinals, int from, int to) {
+        Objects.checkFromToIndex(from, to, eventOrdinals.length);
+
+        if (!isParallelFaster(to - from, definition.stateCount())) {
+            int stateOrdinal = initialOrdinal;
+
+            for (int i = from; i < to; i++) {
+                stateOrdinal = eventMappings[eventOrdinals[i]].targets()[stateOrdinal];
+            }
+            return stateOrdinal;
+        }
+        return pool.invoke(new ComposeTask(eventOrdinals, from, to))[initialOrdinal];
+    }
+
+    public int replay(int initialOrdinal, int[] eventOrdinals) {
+        return replay(initialOrdinal, eventOrdinals, 0, eventOrdinals.length);
+    }
+
+    public S replay(S initialState, E[] events) {
+        return definition.state(replay(initialState.ordinal(), ordinals(events)));
+    }
+
+    /**
+     * Computes the state after every event of the log, with a parallel prefix: the log is cut into blocks of the split
+     * threshold, the mapping of every block is composed in parallel, the start state of each block is resolved by
+     * applying the block mappings in order, and then every block is applied from its start state in parallel. This
+     * costs {@code stateCount + 1} lookups per event, so it is only used if the pool has more threads than that
+     * <p>
+     * @return The ordinal of the state after {@code eventOrdinals[i]}, at index {@code i}
+     * */
+    public int[] replayStates(int initialOrdinal, int[] eventOrdinals) {
+        int[] states = new int[eventOrdinals.length];
+
+        if (!isParallelFaster(eventOrdinals.length, definition.stateCount() + 1)) {
+            applyBlock(initialOrdinal, eventOrdinals, states, 0, eventOrdinals.length);
+            return states;
+        }
+
+        int blockCount = (eventOrdinals.length + splitThreshold - 1) / splitThreshold;
+        int[][] blockMappings = new int[blockCount][];
+        pool.invoke(new BlockTask(0, blockCount, block ->
+            blockMappings[block] = composeRange(eventOrdinals, blockStart(block), blockEnd(block, eventOrdinals.length))));
+
+        int[] blockStates = new int[blockCount];
+        blockStates[0] = initialOrdinal;
+        for (int block = 1; block < blockCount; block++) {
+            blockStates[block] = blockMappings[block - 1][blockStates[block - 1]];
+        }
+
+        pool.invoke(new BlockTask(0, blockCount, block ->
+            applyBlock(blockStates[block], eventOrdinals, states, blockStart(block), blockEnd(block, eventOrdinals.length))));
+
+        return states;
+    }
+
+    /**
+     * @param lookupsPerEvent - The lookups per event of the parallel algorithm, which the serial one does in one lookup
+     * */
+    boolean isParallelFaster(int length, int lookupsPerEvent) {
+        return null != pool && length > splitThreshold && pool.getParallelism() > lookupsPerEvent;
+    }
+
+    private int blockStart(int block) {
+        return block * splitThreshold;
+    }
+
+    private int blockEnd(int block, int length) {
+        return (int) Math.min((long) (block + 1) * splitThreshold, length);
+    }
+
+    private void applyBlock(int stateOrdinal, int[] eventOrdinals, int[] states, int from, int to) {
+        for (int i = from; i < to; i++) {
+            stateOrdinal = eventMappings[eventOrdinals[i]].targets()[stateOrdinal];
+            states[i] = stateOrdinal;
+        }
+    }
+
+    /**
+     * Composes the mappings of a range of events into a new array, one event at a time
+     * */
+    private int[] composeRange(int[] eventOrdinals, int from, int to) {
+        int stateCount = definition.stateCount();
+        int[] composed = new int[stateCount];
+
+        for (int state = 0; state < stateCount; state++) {
+            composed[state] = state;
+        }
+
+        for (int i = from; i < to; i++) {
+            int[] targets = eventMappings[eventOrdinals[i]].targets();
+
+            for (int state = 0; state < stateCount; state++) {
+                composed[state] = targets[composed[state]];
+            }
+        }
+        return composed;
+    }
+
+    private static int[] ordinals(Enum<?>[] events) {
+        int[] ordinals = new int[events.length];
+
+        for (int i = 0; i < events.length; i++) {
+            ordinals[i] = events[i].ordinal();
+        }
+        return ordinals;
+    }
+
+
+    private final class ComposeTask extends RecursiveTask<int[]> {
+        private final int[] eventOrdinals;
+        private final int from;
+        private final int to;
+
+        ComposeTask(int[] eventOrdinals, int from, int to) {
+            this.eventOrdinals = eventOrdinals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= splitThreshold) {
+                return composeRange(eventOrdinals, from, to);
+            }
+
+            int middle = from + (to - from) / 2;
+            ComposeTask left = new ComposeTask(eventOrdinals, from, middle);
+            ComposeTask right = new ComposeTask(eventOrdinals, middle, to);
+
+            left.fork();
+            int[] second = right.compute();
+            int[] first = left.join();
+
+            // The left part is applied first, so the result is right(left(state)), composed into the left array
+            for (int state = 0; state < first.length; state++) {
+                first[state] = second[first[state]];
+            }
+            return first;
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockConsumer {
+        void accept(int block);
+    }
+
+    private static final class BlockTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final BlockConsumer consumer;
+
+        BlockTask(int from, int to, BlockConsumer consumer) {
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                consumer.accept(from);
+                return;
+            }
+
+            int middle = from + (to - from) / 2;
+            invokeAll(new BlockTask(from, middle, consumer), new BlockTask(middle, to, consumer));
+        }
+    }
+
+    /**
+     * An event sequence, compared by content
+     * */
+    private static final class SequenceKey {
+        private final int[] eventOrdinals;
+        private final int hash;
+
+        SequenceKey(int[] eventOrdinals) {
+            this.eventOrdinals = eventOrdinals;
+            this.hash = Arrays.hashCode(eventOrdinals);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof SequenceKey other && Arrays.equals(eventOrdinals, other.eventOrdinals));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.bitstore.BitStore;
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed reachability and shortest-path tables over the transitions of a {@link StateMachineDefinition}.
+ * It is computed once per definition (see {@link StateMachineDefinition#reachability()}), after which
+ * "can X ever reach Y?" is a single bit lookup and the next hop of a shortest path is a single array lookup.
+ * <p>
+ * The index describes the structure of the transition graph, so guards are assumed to pass.
+ */
+public final class ReachabilityIndex<S extends Enum<S>, E extends Enum<E>> {
+    /**
+     * Returned by {@link #nextEventOrdinal(int, int)} and {@link #nextStateOrdinal(int, int)} when there is no path
+     * */
+    public static final int NO_PATH = -1;
+
+    private final StateMachineDefinition<S, E> definition;
+    /**
+     * The transitive closure, i.e. the states that can be reached from each state in one or more transitions
+     * */
+    private final BitStore<S>[] reachable;
+    /**
+     * The first event on a shortest path, indexed by {@code [from.ordinal()][to.ordinal()]}
+     * */
+    private final int[][] nextEvent;
+    /**
+     * The state after the first event on a shortest path, indexed by {@code [from.ordinal()][to.ordinal()]}
+     * */
+    private final int[][] nextState;
+    private final BitStore<S> terminalStates;
+    private final BitStore<S> deadEndStates;
+
+    @SuppressWarnings("unchecked")
+    ReachabilityIndex(StateMachineDefinition<S, E> definition) {
+        int stateCount = definition.stateCount();
+
+        this.definition = definition;
+        this.reachable = new BitStore[stateCount];
+        this.nextEvent = new int[stateCount][stateCount];
+        this.nextState = new int[stateCount][stateCount];
+        this.terminalStates = BitStore.noneOf(definition.getStateType());
+        this.deadEndStates = BitStore.noneOf(definition.getStateType());
+
+        computeClosure();
+        computeShortestPaths();
+        computeTerminalAndDeadEndStates();
+    }
+
+    /**
+     * Checks if {@code to} can be reached from {@code from} in one or more transitions
+     * */
+    public boolean canReach(S from, S to) {
+        return reachable[from.ordinal()].get(to.ordinal());
+    }
+
+    /**
+     * @return A copy of the states that can be reached from the given state in one or more transitions
+     * */
+    public BitStore<S> reachableFrom(S from) {
+        return BitStore.copyOf(reachable[from.ordinal()]);
+    }
+
+    /**
+     * Exposes the states that can be reached from the given state in one or more transitions. The returned BitStore
+     * must not be modified.
+     * */
+    BitStore<S> reachableRow(int fromOrdinal) {
+        return reachable[fromOrdinal];
+    }
+
+    /**
+     * @return The states that cannot be reached from the initial state. The initial state itself is always considered reachable
+     * */
+    public BitStore<S> unreachableFrom(S initialState) {
+        BitStore<S> unreachable = BitStore.noneOf(definition.getStateType());
+
+        for (int i = 0; i < definition.stateCount(); i++) {
+            if (i != initialState.ordinal() && !reachable[initialState.ordinal()].get(i)) {
+                unreachable.set(definition.state(i));
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * @return A copy of the states that have no outgoing transitions
+     * */
+    public BitStore<S> terminalStates() {
+        return BitStore.copyOf(terminalStates);
+    }
+
+    /**
+     * @return A copy of the states that have outgoing transitions, but from which no terminal state can be reached.
+     * An entity that enters one of these states can never complete
+     * */
+    public BitStore<S> deadEndStates() {
+        return BitStore.copyOf(deadEndStates);
+    }
+
+    public boolean isTerminal(S state) {
+        return terminalStates.get(state);
+    }
+
+    /**
+     * @return The ordinal of the first event on a shortest path from {@code fromOrdinal} to {@code toOrdinal},
+     * or {@link #NO_PATH} if there is none
+     * */
+    public int nextEventOrdinal(int fromOrdinal, int toOrdinal) {
+        return nextEvent[fromOrdinal][toOrdinal];
+    }
+
+    /**
+     * @return The ordinal of the state after the first event on a shortest path from {@code fromOrdinal} to {@code toOrdinal},
+     * or {@link #NO_PATH} if there is none
+     * */
+    public int nextStateOrdinal(int fromOrdinal, int toOrdinal) {
+        return nextState[fromOrdinal][toOrdinal];
+    }
+
+    /**
+     * Resolves a minimal sequence of events that moves an entity from one state to another.
+     * <p>
+     * @return The events, which are empty if both states are the same, or null if {@code to} cannot be reached
+     * */
+    @Nullable
+    public List<E> shortestPath(S from, S to) {
+        int current = from.ordinal();
+        int target = to.ordinal();
+
+        if (current == target) {
+            return List.of();
+        }
+        if (NO_PATH == nextEvent[current][target]) {
+            return null;
+        }
+
+        List<E> events = new ArrayList<>();
+        while (current != target) {
+            events.add(definition.event(nextEvent[current][target]));
+            current = nextState[current][target];
+        }
+        return events;
+    }
+
+    /**
+     * Computes the transitive closure with Warshall's algorithm, one BitStore row per state:
+     * whenever state i can reach state k, it can also reach everything that k can reach.
+     * */
+    private void computeClosure() {
+        int stateCount = definition.stateCount();
+
+        for (int i = 0; i < stateCount; i++) {
+            reachable[i] = BitStore.noneOf(definition.getStateType());
+
+            BitStore<S> allowed = definition.allowedRow(i);
+            if (null != allowed) {
+                reachable[i].or(allowed);
+            }
+        }
+
+        close(reachable);
+    }
+
+    /**
+     * Turns the rows of direct successors into the transitive closure in place, with Warshall's algorithm
+     * */
+    static <S extends Enum<S>> void close(BitStore<S>[] rows) {
+        for (int k = 0; k < rows.length; k++) {
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i].get(k)) {
+                    rows[i].or(rows[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a breadth-first search from every state, recording the first hop of the path to each state that is found
+     * */
+    private void computeShortestPaths() {
+        int stateCount = definition.stateCount();
+        int eventCount = definition.eventCount();
+        int[] queue = new int[stateCount];
+
+        for (int source = 0; source < stateCount; source++) {
+            int[] firstEvent = nextEvent[source];
+            int[] firstState = nextState[source];
+            Arrays.fill(firstEvent, NO_PATH);
+            Arrays.fill(firstState, NO_PATH);
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = source;
+
+            while (head < tail) {
+                int state = queue[head++];
+
+                for (int event = 0; event < eventCount; event++) {
+                    int target = definition.targetRow(event)[state];
+
+                    if (StateMachineDefinition.NO_TRANSITION == target || target == source
+                        || NO_PATH != firstEvent[target]) {
+                        continue;
+                    }
+
+                    firstEvent[target] = state == source ? event : firstEvent[state];
+                    firstState[target] = state == source ? target : firstState[state];
+                    queue[tail++] = target;
+                }
+            }
+        }
+    }
+
+    private void computeTerminalAndDeadEndStates() {
+        for (int i = 0; i < definition.stateCount(); i++) {
+            BitStore<S> allowed = definition.allowedRow(i);
+
+            if (null == allowed || allowed.isEmpty()) {
+                terminalStates.set(definition.state(i));
+            }
+        }
+
+        for (int i = 0; i < definition.stateCount(); i++) {
+            if (terminalStates.get(i)) {
+                continue;
+            }
+
+            BitStore<S> reachableTerminals = BitStore.copyOf(reachable[i]);
+            reachableTerminals.and(terminalStates);
+
+            if (reachableTerminals.isEmpty()) {
+                deadEndStates.set(definition.state(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.steingen.statemachine;
+
+import java.util.Objects;
+
+/**
+ * A {@link StateMachineDefinition} that can be replaced under live traffic, e.g. when a transition rule changes.
+ * The current version is published through a single volatile field, RCU-style: {@link ReloadableStateMachine}s read
+ * it once per event, so a dispatch that is in flight during a reload finishes on the version it started with,
+ * and every dispatch that starts after {@link #reload(StateMachineDefinition)} returns uses the new one.
+ * Since the definitions are immutable, readers never lock.
+ * <p>
+ * The state enum cannot change without a restart, so all the versions share the same states. States that a new
+ * version no longer uses can be retired by moving their entities with an {@link OrdinalMigration}.
+ */
+public final class ReloadableDefinition<S extends Enum<S>, E extends Enum<E>> {
+
+    /**
+     * A definition and its version number, published together
+     * */
+    public static final class Version<S extends Enum<S>, E extends Enum<E>> {
+        private final long number;
+        private final StateMachineDefinition<S, E> definition;
+
+        private Version(long number, StateMachineDefinition<S, E> definition) {
+            this.number = number;
+            this.definition = definition;
+        }
+
+        /**
+         * @return The version number, starting at 1 and incremented by each reload
+         * */
+        public long number() {
+            return number;
+        }
+
+        public StateMachineDefinition<S, E> definition() {
+            return definition;
+        }
+    }
+
+    private volatile Version<S, E> current;
+
+    private ReloadableDefinition(StateMachineDefinition<S, E> initial) {
+        this.current = new Version<>(1, initial);
+    }
+
+    public static <S extends Enum<S>, E extends Enum<E>> ReloadableDefinition<S, E> of(StateMachineDefinition<S, E> initial) {
+        return new ReloadableDefinition<>(Objects.requireNonNull(initial, "initial"));
+    }
+
+    public Version<S, E> current() {
+        return current;
+    }
+
+    public StateMachineDefinition<S, E> definition() {
+        return current.definition;
+    }
+
+    /**
+     * Publishes a new version of the definition
+     * <p>
+     * @return The new version number
+     * */
+    public synchronized long reload(StateMachineDefinition<S, E> definition) {
+        Objects.requireNonNull(definition, "definition");
+
+        Version<S, E> next = new Version<>(current.number + 1, definition);
+        current = next;
+
+        return next.number;
+    }
+
+    /**
+     * Creates a state machine that always uses the current version of the definition. A composite initial state enters
+     * its initial substate in the current version
+     * */
+    public ReloadableStateMachine<S, E> newInstance(long entityId, S initialState) {
+        return new ReloadableStateMachine<>(this, entityId, current.definition.entryStateOrdinal(initialState.ordinal()));
+    }
+
+    public ReloadableStateMachine<S, E> newInstance(S initialState) {
+        return newInstance(TransitionAction.NO_ENTITY, initialState);
+    }
+}
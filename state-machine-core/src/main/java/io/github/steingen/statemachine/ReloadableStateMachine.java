@@ -0,0 +1,94 @@
+package io.github.steingen.statemachine;
+
+/**
+ * A {@link StateMachineInstance} whose definition can be reloaded. Each event reads the current version of the
+ * {@link ReloadableDefinition} once, and is resolved and applied entirely against it.
+ * Instances are not thread-safe.
+ */
+public class ReloadableStateMachine<S extends Enum<S>, E extends Enum<E>> implements StateMachine<S, E> {
+    private final ReloadableDefinition<S, E> definitions;
+    private final long entityId;
+    private int stateOrdinal;
+
+    ReloadableStateMachine(ReloadableDefinition<S, E> definitions, long entityId, int stateOrdinal) {
+        this.definitions = definitions;
+        this.entityId = entityId;
+        this.stateOrdinal = stateOrdinal;
+    }
+
+    /**
+     * @return The current version of the definition
+     * */
+    public StateMachineDefinition<S, E> getDefinition() {
+        return definitions.definition();
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public S getCurrentState() {
+        return definitions.definition().state(stateOrdinal);
+    }
+
+    public int getCurrentStateOrdinal() {
+        return stateOrdinal;
+    }
+
+    public ReloadableStateMachine<S, E> setCurrentState(S currentState) {
+        this.stateOrdinal = currentState.ordinal();
+        return this;
+    }
+
+    /**
+     * Moves the state machine out of a state retired by the migration
+     * <p>
+     * @throws IllegalArgumentException if the migration maps the current state outside of the definition, in which
+     * case the state is left as it was
+     * */
+    public void migrate(OrdinalMigration migration) {
+        int migrated = migration.apply(stateOrdinal);
+
+        if (migrated >= definitions.definition().stateCount()) {
+            throw new IllegalArgumentException("The migration maps to state ordinal " + migrated
+                + ", but the definition has " + definitions.definition().stateCount() + " states");
+        }
+        this.stateOrdinal = migrated;
+    }
+
+    @Override
+    public boolean isValidTransition(S newState) {
+        return definitions.definition().isValidTransition(stateOrdinal, newState.ordinal());
+    }
+
+    @Override
+    public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    @Override
+    public long sendEventForResult(E event) {
+        StateMachineDefinition<S, E> definition = definitions.definition();
+        int eventOrdinal = event.ordinal();
+        int fromOrdinal = stateOrdinal;
+        int toOrdinal = definition.dispatchStateOrdinal(this, eventOrdinal, fromOrdinal);
+
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            return definition.notTransitioned(eventOrdinal, fromOrdinal);
+        }
+
+        this.stateOrdinal = toOrdinal;
+        definition.onTransition(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+
+        return TransitionResult.transitioned(eventOrdinal, fromOrdinal, toOrdinal);
+    }
+
+    @Override
+    public long tryTransition(E event, S expectedState) {
+        if (stateOrdinal != expectedState.ordinal()) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.CONFLICT, event.ordinal(), stateOrdinal);
+        }
+        return sendEventForResult(event);
+    }
+}
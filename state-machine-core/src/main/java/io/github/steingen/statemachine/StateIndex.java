@@ -0,0 +1,147 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.bitstore.ConcurrentBitmap;
+
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * A secondary index of entities by their current state, e.g. to find the entities that are PAUSED, or to count the
+ * entities in each state, without scanning every state machine. It holds one {@link ConcurrentBitmap} of entity ids
+ * per state ordinal, so entity ids should be dense.
+ * <p>
+ * The index is kept up to date as an action that runs after every transition:
+ * <pre>{@code
+ * StateIndex<OrderState> index = StateIndex.of(OrderState.class);
+ * StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+ *     ...
+ *     .onAnyTransition(index)
+ *     .build();
+ * // Registers the entities that already exist, in their current state
+ * store.forEachState(index::add);
+ * }</pre>
+ * Updates are lock-free, so one index can be shared by many threads, but the transitions of each entity must be
+ * applied by one thread at a time, in order, like the mailboxes of an {@link EventDispatcher} do. The index only
+ * sees the moves, so two moves of the same entity that run out of order would leave it in both states for good.
+ * This rules out sending the events of one entity from several threads to a {@link ConcurrentStateMachine}, whose
+ * actions run after its compare-and-set, outside of any ordering between threads. While an entity moves, a
+ * concurrent reader may briefly see it in neither state. Entity ids must not be negative, so the state machines
+ * must be created with an entity id (see {@link TransitionAction}).
+ */
+public final class StateIndex<S extends Enum<S>> implements TransitionAction {
+    private final S[] states;
+    private final ConcurrentBitmap[] bitmaps;
+
+    private StateIndex(Class<S> stateType) {
+        this.states = stateType.getEnumConstants();
+        this.bitmaps = new ConcurrentBitmap[states.length];
+
+        for (int state = 0; state < states.length; state++) {
+            bitmaps[state] = new ConcurrentBitmap();
+        }
+    }
+
+    public static <S extends Enum<S>> StateIndex<S> of(Class<S> stateType) {
+        return new StateIndex<>(Objects.requireNonNull(stateType, "stateType"));
+    }
+
+    /**
+     * Registers an entity in its current state. It has the shape of an
+     * {@link io.github.steingen.statemachine.journal.EntityStateConsumer}, so that an index can be filled with
+     * {@code store.forEachState(index::add)} or {@code journal.recover(index::add)}
+     * */
+    public void add(long entityId, int stateOrdinal) {
+        bitmaps[stateOrdinal].set(entityId);
+    }
+
+    public void add(long entityId, S state) {
+        add(entityId, state.ordinal());
+    }
+
+    /**
+     * Removes an entity from the index, e.g. when it is deleted
+     * */
+    public void remove(long entityId, S state) {
+        bitmaps[state.ordinal()].clear(entityId);
+    }
+
+    /**
+     * Moves an entity from one state to another
+     * */
+    public void move(long entityId, int fromOrdinal, int toOrdinal) {
+        if (fromOrdinal == toOrdinal) {
+            return;
+        }
+
+        bitmaps[fromOrdinal].clear(entityId);
+        bitmaps[toOrdinal].set(entityId);
+    }
+
+    @Override
+    public void execute(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        move(entityId, fromOrdinal, toOrdinal);
+    }
+
+    public boolean contains(long entityId, S state) {
+        return bitmaps[state.ordinal()].get(entityId);
+    }
+
+    /**
+     * @return The number of entities in the state
+     * */
+    public long count(S state) {
+        return bitmaps[state.ordinal()].cardinality();
+    }
+
+    /**
+     * @return The number of entities in each state, indexed by state ordinal
+     * */
+    public long[] counts() {
+        long[] counts = new long[states.length];
+
+        for (int state = 0; state < states.length; state++) {
+            counts[state] = bitmaps[state].cardinality();
+        }
+        return counts;
+    }
+
+    /**
+     * Calls the consumer with the id of every entity in the state, in ascending order
+     * */
+    public void forEach(S state, LongConsumer consumer) {
+        bitmaps[state.ordinal()].forEach(consumer);
+    }
+
+    /**
+     * Calls the consumer with the id of every entity in any of the states, in ascending order
+     * */
+    @SafeVarargs
+    public final void forEachIn(LongConsumer consumer, S... states) {
+        ConcurrentBitmap.forEachUnion(consumer, bitmapsOf(states));
+    }
+
+    /**
+     * @return The number of entities in any of the states
+     * */
+    @SafeVarargs
+    public final long countIn(S... states) {
+        return ConcurrentBitmap.unionCardinality(bitmapsOf(states));
+    }
+
+    /**
+     * @return The live bitmap of the entities in the state, e.g. to iterate it with
+     * {@link ConcurrentBitmap#nextSetBit(long)}
+     * */
+    public ConcurrentBitmap bitmap(S state) {
+        return bitmaps[state.ordinal()];
+    }
+
+    private ConcurrentBitmap[] bitmapsOf(S[] states) {
+        ConcurrentBitmap[] selected = new ConcurrentBitmap[states.length];
+
+        for (int i = 0; i < states.length; i++) {
+            selected[i] = bitmaps[states[i].ordinal()];
+        }
+        return selected;
+    }
+}
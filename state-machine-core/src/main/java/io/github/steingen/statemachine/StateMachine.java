@@ -13,4 +13,41 @@ public interface StateMachine<S extends Enum<S>, E extends Enum<E>> {
     boolean isValidTransition(S newState);
 
     void sendEvent(E event);
+
+    /**
+     * Sends the event and reports what happened, encoded as described in {@link TransitionResult}.
+     * <p>
+     * The default implementation compares the state before and after the event, so it cannot tell a self-transition
+     * from an event that was not accepted, nor a guard rejection from an undefined transition.
+     * The state machines in this library override it with an exact, allocation-free implementation.
+     * */
+    default long sendEventForResult(E event) {
+        int fromOrdinal = ordinal(getCurrentState());
+        sendEvent(event);
+        int toOrdinal = ordinal(getCurrentState());
+
+        return fromOrdinal != toOrdinal
+            ? TransitionResult.transitioned(event.ordinal(), fromOrdinal, toOrdinal)
+            : TransitionResult.notTransitioned(TransitionResult.Status.REJECTED, event.ordinal(), fromOrdinal);
+    }
+
+    /**
+     * Sends the event only if the state machine is currently in the expected state. This fails fast,
+     * without evaluating any guard, when another event got there first.
+     * <p>
+     * @return The result of the event, or a {@link TransitionResult.Status#CONFLICT} result if the current state
+     * was not the expected one
+     * */
+    default long tryTransition(E event, S expectedState) {
+        S currentState = getCurrentState();
+
+        if (currentState != expectedState) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.CONFLICT, event.ordinal(), ordinal(currentState));
+        }
+        return sendEventForResult(event);
+    }
+
+    private static int ordinal(Enum<?> state) {
+        return null == state ? TransitionResult.NO_STATE : state.ordinal();
+    }
 }
@@ -0,0 +1,803 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.bitstore.BitStore;
+import jakarta.annotation.Nullable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+
+/**
+ * An immutable, thread-safe description of a state machine: its states, events, transitions and the derived
+ * allowed transitions. It is built once (see {@link #builder(Class, Class)}) and shared by any number of
+ * {@link StateMachineInstance}s, each of which only holds the ordinal of its current state.
+ * <p>
+ * Transitions are frozen into a dense {@code [event.ordinal()][state.ordinal()]} table, so resolving the next state
+ * is a single array lookup followed by at most one guard call. Transitions guarded by
+ * {@link TransitionGuard#fromCurrent()} do not call a guard at all.
+ * <p>
+ * States may be nested (see {@link Builder#substate(Enum, Enum)}). A substate inherits the transitions of its
+ * ancestors for the events it does not handle itself, and a transition to a composite state enters its initial
+ * substate. The hierarchy is flattened into the table when the definition is built, so it costs nothing at dispatch time.
+ * As a consequence, a substate's own transition hides the transition of its ancestors for the same event entirely:
+ * if its guard rejects the event, the event is rejected, and the transition of the parent is not tried.
+ * <p>
+ * Entry, exit and transition actions (see {@link Builder#onEntry(Enum, TransitionAction)}) are precomputed into a
+ * second table with the same indices, which holds the actions to run for each transition in order, or null if there are none.
+ */
+public final class StateMachineDefinition<S extends Enum<S>, E extends Enum<E>> {
+    /**
+     * Returned by {@link #nextStateOrdinal(int, int)} when the event does not cause a transition
+     * */
+    public static final int NO_TRANSITION = -1;
+    /**
+     * The parent ordinal of a top-level state
+     * */
+    static final int NO_PARENT = -1;
+    /**
+     * Returned by {@link #timeoutMillis(int)} for a state without a timeout
+     * */
+    public static final long NO_TIMEOUT = -1;
+
+    private final Class<S> stateType;
+    private final Class<E> eventType;
+    private final S[] states;
+    private final E[] events;
+    /**
+     * The ordinal of the target state, indexed by {@code [event.ordinal()][fromState.ordinal()]}
+     * */
+    private final int[][] targets;
+    /**
+     * Custom guards, indexed like {@code targets}. A null entry means the {@link TransitionGuard#fromCurrent()} guard,
+     * i.e. the transition is allowed whenever the current state is the from state, which is already implied by the table lookup.
+     * */
+    private final TransitionGuard<S, E>[][] guards;
+    private final BitStore<S>[] allowedTransitions;
+    /**
+     * The actions to run after each transition, indexed like {@code targets}, or null for the transitions without actions
+     * */
+    private final TransitionAction[][] actions;
+    /**
+     * The ordinal of the parent of each state, or {@link #NO_PARENT}
+     * */
+    private final int[] parents;
+    /**
+     * The state that is entered when an entity starts in, or a transition targets, each state. A composite state enters
+     * its (nested) initial substate, any other state itself
+     * */
+    private final int[] entryStates;
+    /**
+     * The timeout of each state in milliseconds, or {@link #NO_TIMEOUT}, and the event it fires
+     * */
+    private final long[] timeouts;
+    private final int[] timeoutEvents;
+    private final TransitionListener listener;
+    private final boolean timingGuards;
+    /**
+     * Lazily computed by {@link #reachability()}. The index is immutable, so racing threads may at worst compute it twice.
+     * */
+    private volatile ReachabilityIndex<S, E> reachability;
+
+    private StateMachineDefinition(Builder<S, E> builder) {
+        this.stateType = builder.stateType;
+        this.eventType = builder.eventType;
+        this.states = builder.states;
+        this.events = builder.events;
+        this.targets = builder.flatTargets;
+        this.guards = builder.flatGuards;
+        this.allowedTransitions = builder.allowedTransitions;
+        this.actions = builder.flatActions;
+        this.parents = builder.parents;
+        this.entryStates = builder.entryStates;
+        this.timeouts = builder.timeouts;
+        this.timeoutEvents = builder.timeoutEvents;
+        this.listener = builder.listener;
+        this.timingGuards = builder.listener.isTimingGuards();
+    }
+
+    @SuppressWarnings("unchecked")
+    private StateMachineDefinition(Class<S> stateType, Class<E> eventType, int[][] targets, TransitionGuard<S, E>[][] guards,
+                                   int[] parents, int[] entryStates, long[] timeouts, int[] timeoutEvents,
+                                   TransitionListener listener) {
+        this.stateType = stateType;
+        this.eventType = eventType;
+        this.states = stateType.getEnumConstants();
+        this.events = eventType.getEnumConstants();
+        this.targets = targets;
+        this.guards = guards;
+        this.allowedTransitions = new BitStore[states.length];
+        this.actions = new TransitionAction[events.length][states.length];
+        this.parents = parents;
+        this.entryStates = entryStates;
+        this.timeouts = timeouts;
+        this.timeoutEvents = timeoutEvents;
+        this.listener = listener;
+        this.timingGuards = listener.isTimingGuards();
+
+        for (int[] row : targets) {
+            for (int state = 0; state < row.length; state++) {
+                if (NO_TRANSITION != row[state]) {
+                    if (null == allowedTransitions[state]) {
+                        allowedTransitions[state] = BitStore.empty();
+                    }
+                    allowedTransitions[state].set(states[row[state]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a definition from tables that are already flattened, as written by {@link DefinitionImage}, without
+     * actions. The arrays are used as they are, so they must not be modified afterwards.
+     * <p>
+     * @param targets     - The ordinal of the target state, indexed by {@code [event.ordinal()][fromState.ordinal()]},
+     *                    or {@link #NO_TRANSITION}
+     * @param guards      - The custom guards, indexed like {@code targets}, or null for {@link TransitionGuard#fromCurrent()}
+     * @param parents     - The ordinal of the parent of each state, or {@link #NO_PARENT}
+     * @param entryStates - The ordinal of the state that is entered when each state is entered
+     * */
+    static <S extends Enum<S>, E extends Enum<E>> StateMachineDefinition<S, E> ofTables(
+        Class<S> stateType, Class<E> eventType, int[][] targets, TransitionGuard<S, E>[][] guards, int[] parents,
+        int[] entryStates, long[] timeouts, int[] timeoutEvents, TransitionListener listener) {
+        return new StateMachineDefinition<>(stateType, eventType, targets, guards, parents, entryStates, timeouts,
+            timeoutEvents, listener);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the state enum has more than {@link TransitionResult#MAX_STATES} constants
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> Builder<S, E> builder(Class<S> stateType, Class<E> eventType) {
+        return new Builder<>(stateType, eventType);
+    }
+
+    /**
+     * Creates a new per-entity state machine that shares this definition. Its actions are passed
+     * {@link TransitionAction#NO_ENTITY} as the entity id. A composite initial state enters its initial substate
+     * */
+    public StateMachineInstance<S, E> newInstance(S initialState) {
+        return newInstance(TransitionAction.NO_ENTITY, initialState);
+    }
+
+    /**
+     * Creates a new per-entity state machine that shares this definition, with the entity id that is passed to its actions.
+     * A composite initial state enters its initial substate
+     * */
+    public StateMachineInstance<S, E> newInstance(long entityId, S initialState) {
+        return new StateMachineInstance<>(this, entityId, entryStateOrdinal(initialState.ordinal()));
+    }
+
+    /**
+     * Resolves the state that the given event moves the given state to, without a state machine context.
+     * Custom guards are passed a null {@link StateMachine}.
+     * <p>
+     * @param eventOrdinal - The ordinal of the incoming event
+     * @param stateOrdinal - The ordinal of the current state
+     * <p>
+     * @return The ordinal of the new state, or {@link #NO_TRANSITION} if no transition is defined or its guard rejects it
+     * */
+    public int nextStateOrdinal(int eventOrdinal, int stateOrdinal) {
+        return nextStateOrdinal(null, eventOrdinal, stateOrdinal);
+    }
+
+    /**
+     * Resolves the state that the given event moves the given state to. This is only a query: the listener is not
+     * notified, since the event is not applied to anything.
+     * <p>
+     * @param machine      - The state machine the event is dispatched to, which is passed on to custom guards
+     * @param eventOrdinal - The ordinal of the incoming event
+     * @param stateOrdinal - The ordinal of the current state
+     * <p>
+     * @return The ordinal of the new state, or {@link #NO_TRANSITION} if no transition is defined or its guard rejects it
+     * */
+    public int nextStateOrdinal(StateMachine<S, E> machine, int eventOrdinal, int stateOrdinal) {
+        int toOrdinal = targets[eventOrdinal][stateOrdinal];
+        TransitionGuard<S, E> guard = guards[eventOrdinal][stateOrdinal];
+
+        if (NO_TRANSITION == toOrdinal || null == guard || guard.test(machine, stateOrdinal, toOrdinal)) {
+            return toOrdinal;
+        }
+        return NO_TRANSITION;
+    }
+
+    /**
+     * Like {@link #nextStateOrdinal(StateMachine, int, int)}, for the state machines that apply the event: the guard
+     * is timed if the listener asks for it. They report the outcome through {@link #onTransition(long, int, int, int)}
+     * or {@link #notTransitioned(int, int)}
+     * */
+    int dispatchStateOrdinal(StateMachine<S, E> machine, int eventOrdinal, int stateOrdinal) {
+        int toOrdinal = targets[eventOrdinal][stateOrdinal];
+        TransitionGuard<S, E> guard = guards[eventOrdinal][stateOrdinal];
+
+        if (NO_TRANSITION == toOrdinal || null == guard || testGuard(guard, machine, eventOrdinal, stateOrdinal, toOrdinal)) {
+            return toOrdinal;
+        }
+        return NO_TRANSITION;
+    }
+
+    /**
+     * Evaluates a guard of the dispatch path, timing it if the listener asks for it
+     * */
+    boolean testGuard(TransitionGuard<S, E> guard, StateMachine<S, E> machine,
+                      int eventOrdinal, int stateOrdinal, int toOrdinal) {
+        if (!timingGuards) {
+            return guard.test(machine, stateOrdinal, toOrdinal);
+        }
+
+        long start = System.nanoTime();
+        boolean passed = guard.test(machine, stateOrdinal, toOrdinal);
+        listener.onGuardEvaluated(eventOrdinal, stateOrdinal, System.nanoTime() - start);
+
+        return passed;
+    }
+
+    /**
+     * Reports an event that {@link #dispatchStateOrdinal(StateMachine, int, int)} did not accept to the listener,
+     * and builds its result, telling a guard rejection apart from an undefined transition
+     * */
+    long notTransitioned(int eventOrdinal, int stateOrdinal) {
+        int toOrdinal = targets[eventOrdinal][stateOrdinal];
+
+        if (NO_TRANSITION == toOrdinal) {
+            listener.onUnmatched(eventOrdinal, stateOrdinal);
+            return TransitionResult.notTransitioned(TransitionResult.Status.UNMATCHED, eventOrdinal, stateOrdinal);
+        }
+
+        listener.onRejected(eventOrdinal, stateOrdinal, toOrdinal);
+        return TransitionResult.notTransitioned(TransitionResult.Status.REJECTED, eventOrdinal, stateOrdinal);
+    }
+
+    /**
+     * Reports a transition that has been committed by one of the state machines that share this definition,
+     * and runs its actions
+     * */
+    void onTransition(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        listener.onTransition(eventOrdinal, fromOrdinal, toOrdinal);
+
+        TransitionAction action = actions[eventOrdinal][fromOrdinal];
+        if (null != action) {
+            action.execute(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+        }
+    }
+
+    /**
+     * Exposes the row of target ordinals for the given event, indexed by the from state ordinal.
+     * The returned array must not be modified.
+     * */
+    int[] targetRow(int eventOrdinal) {
+        return targets[eventOrdinal];
+    }
+
+    /**
+     * Exposes the row of custom guards for the given event, indexed by the from state ordinal.
+     * The returned array must not be modified.
+     * */
+    TransitionGuard<S, E>[] guardRow(int eventOrdinal) {
+        return guards[eventOrdinal];
+    }
+
+    /**
+     * @return The ordinal of the parent of the state, or {@link #NO_PARENT}
+     * */
+    int parentOrdinal(int stateOrdinal) {
+        return parents[stateOrdinal];
+    }
+
+    /**
+     * @return true if any action runs after the transition for the given event and from state
+     * */
+    boolean hasActions(int eventOrdinal, int fromOrdinal) {
+        return null != actions[eventOrdinal][fromOrdinal];
+    }
+
+    /**
+     * @return true if the transition for the given event and from state has a custom guard
+     * */
+    boolean hasGuard(int eventOrdinal, int fromOrdinal) {
+        return null != guards[eventOrdinal][fromOrdinal];
+    }
+
+    /**
+     * Exposes the allowed transitions from the given state, or null if there are none. The returned BitStore must not be modified.
+     * */
+    BitStore<S> allowedRow(int fromOrdinal) {
+        return allowedTransitions[fromOrdinal];
+    }
+
+    /**
+     * @return The reachability index of this definition, which is computed on first use and then shared
+     * */
+    public ReachabilityIndex<S, E> reachability() {
+        ReachabilityIndex<S, E> index = reachability;
+
+        if (null == index) {
+            index = new ReachabilityIndex<>(this);
+            reachability = index;
+        }
+        return index;
+    }
+
+    public boolean isValidTransition(S fromState, S toState) {
+        return isValidTransition(fromState.ordinal(), toState.ordinal());
+    }
+
+    public boolean isValidTransition(int fromOrdinal, int toOrdinal) {
+        BitStore<S> allowed = allowedTransitions[fromOrdinal];
+        return null != allowed && allowed.get(toOrdinal);
+    }
+
+    /**
+     * @return The parent of the state, or null if it is a top-level state
+     * */
+    @Nullable
+    public S parent(S state) {
+        int parentOrdinal = parents[state.ordinal()];
+        return NO_PARENT == parentOrdinal ? null : states[parentOrdinal];
+    }
+
+    /**
+     * @return The ordinal of the state that is entered when an entity starts in, or a transition targets, the given state:
+     * its (nested) initial substate if it is composite, otherwise the state itself
+     * */
+    public int entryStateOrdinal(int stateOrdinal) {
+        return entryStates[stateOrdinal];
+    }
+
+    public S entryState(S state) {
+        return states[entryStates[state.ordinal()]];
+    }
+
+    /**
+     * @return true if the current state is the given state, or one of its (nested) substates
+     * */
+    public boolean isInState(int currentOrdinal, S state) {
+        int target = state.ordinal();
+
+        for (int ordinal = currentOrdinal; NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+            if (ordinal == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInState(S currentState, S state) {
+        return isInState(currentState.ordinal(), state);
+    }
+
+    /**
+     * @return The time after which an entity that entered the state receives its timeout event, or {@link #NO_TIMEOUT}
+     * */
+    public long timeoutMillis(int stateOrdinal) {
+        return timeouts[stateOrdinal];
+    }
+
+    /**
+     * @return The ordinal of the event fired when the state times out. Only meaningful if the state has a timeout
+     * */
+    public int timeoutEventOrdinal(int stateOrdinal) {
+        return timeoutEvents[stateOrdinal];
+    }
+
+    public S state(int ordinal) {
+        return states[ordinal];
+    }
+
+    public E event(int ordinal) {
+        return events[ordinal];
+    }
+
+    public int stateCount() {
+        return states.length;
+    }
+
+    public int eventCount() {
+        return events.length;
+    }
+
+    public Class<S> getStateType() {
+        return stateType;
+    }
+
+    public Class<E> getEventType() {
+        return eventType;
+    }
+
+
+    public static final class Builder<S extends Enum<S>, E extends Enum<E>> {
+        private final Class<S> stateType;
+        private final Class<E> eventType;
+        private final S[] states;
+        private final E[] events;
+        /**
+         * The declared transitions, before the hierarchy is flattened
+         * */
+        private final int[][] targets;
+        private final TransitionGuard<S, E>[][] guards;
+        private final int[] parents;
+        private final int[] initialSubstates;
+        private final long[] timeouts;
+        private final int[] timeoutEvents;
+        private final TransitionAction[] entryActions;
+        private final TransitionAction[] exitActions;
+        /**
+         * The declared transition actions, indexed like {@code targets}
+         * */
+        private final TransitionAction[][] transitionActions;
+        private TransitionAction anyTransitionAction;
+        private TransitionListener listener = TransitionListener.NOOP;
+        private boolean built;
+        // Computed by build()
+        private int[][] flatTargets;
+        private TransitionGuard<S, E>[][] flatGuards;
+        private BitStore<S>[] allowedTransitions;
+        private TransitionAction[][] flatActions;
+        private int[] entryStates;
+
+        @SuppressWarnings("unchecked")
+        private Builder(Class<S> stateType, Class<E> eventType) {
+            this.stateType = Objects.requireNonNull(stateType, "stateType");
+            this.eventType = Objects.requireNonNull(eventType, "eventType");
+            this.states = stateType.getEnumConstants();
+            this.events = eventType.getEnumConstants();
+
+            if (states.length > TransitionResult.MAX_STATES) {
+                throw new IllegalArgumentException(stateType.getSimpleName() + " has " + states.length
+                    + " states, but at most " + TransitionResult.MAX_STATES + " are supported");
+            }
+            this.targets = new int[events.length][states.length];
+            this.guards = new TransitionGuard[events.length][states.length];
+            this.parents = new int[states.length];
+            this.initialSubstates = new int[states.length];
+            this.timeouts = new long[states.length];
+            this.timeoutEvents = new int[states.length];
+            this.entryActions = new TransitionAction[states.length];
+            this.exitActions = new TransitionAction[states.length];
+            this.transitionActions = new TransitionAction[events.length][states.length];
+
+            for (int[] row : targets) {
+                Arrays.fill(row, NO_TRANSITION);
+            }
+            Arrays.fill(parents, NO_PARENT);
+            Arrays.fill(initialSubstates, NO_PARENT);
+            Arrays.fill(timeouts, NO_TIMEOUT);
+        }
+
+        /**
+         * Declares a transition that is guarded by the default guard,
+         * i.e. it is allowed whenever the current state is {@code from}
+         * */
+        public Builder<S, E> transition(E event, S from, S to) {
+            return transition(event, from, to, TransitionGuard.fromCurrent());
+        }
+
+        /**
+         * Declares a transition that is only taken when the current state is {@code from} and the predicate passes.
+         * <p>
+         * @throws IllegalStateException if a transition has already been declared for the same event and from state
+         * */
+        public Builder<S, E> transition(E event, S from, S to, BiPredicate<S, S> guard) {
+            Objects.requireNonNull(guard, "guard");
+            return transition(event, from, to, TransitionGuard.of(stateType, guard));
+        }
+
+        /**
+         * Declares a transition that is only taken when the current state is {@code from} and the guard passes.
+         * The {@link TransitionGuard#fromCurrent()} guard is dropped, since the table lookup already implies it.
+         * <p>
+         * @throws IllegalStateException if a transition has already been declared for the same event and from state
+         * */
+        public Builder<S, E> transition(E event, S from, S to, TransitionGuard<S, E> guard) {
+            Objects.requireNonNull(guard, "guard");
+            checkNotBuilt();
+
+            if (NO_TRANSITION != targets[event.ordinal()][from.ordinal()]) {
+                throw new IllegalStateException("More than one transition is defined for event " + event
+                    + " from state " + from);
+            }
+
+            targets[event.ordinal()][from.ordinal()] = to.ordinal();
+            guards[event.ordinal()][from.ordinal()] = TransitionGuard.isFromCurrent(guard) ? null : guard;
+
+            return this;
+        }
+
+        /**
+         * Nests {@code child} inside {@code parent}. While in the child, every event that the child does not handle
+         * itself is handled by the transition of its nearest ancestor, as if it had been declared from the child.
+         * Inherited guards are therefore called with the child (or its own substates) as the from state.
+         * A transition declared from the child replaces the inherited one for that event, even when its guard rejects
+         * the event: there is no fallback to the transition of the parent, which has to be repeated with the inverse
+         * guard from the child if it is wanted.
+         * <p>
+         * @throws IllegalStateException if the child already has a parent, or if the nesting would form a cycle
+         * */
+        public Builder<S, E> substate(S child, S parent) {
+            checkNotBuilt();
+
+            if (NO_PARENT != parents[child.ordinal()]) {
+                throw new IllegalStateException(child + " is already a substate of " + states[parents[child.ordinal()]]);
+            }
+            for (int ordinal = parent.ordinal(); NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+                if (ordinal == child.ordinal()) {
+                    throw new IllegalStateException("Nesting " + child + " inside " + parent + " would form a cycle");
+                }
+            }
+
+            parents[child.ordinal()] = parent.ordinal();
+            return this;
+        }
+
+        /**
+         * Declares the substate that is entered when a transition targets the composite {@code parent} state.
+         * If the initial substate is itself composite, its own initial substate is entered, and so on.
+         * <p>
+         * @throws IllegalStateException if {@code child} has not been declared as a substate of {@code parent}
+         * */
+        public Builder<S, E> initialSubstate(S parent, S child) {
+            checkNotBuilt();
+
+            if (parents[child.ordinal()] != parent.ordinal()) {
+                throw new IllegalStateException(child + " is not a substate of " + parent);
+            }
+
+            initialSubstates[parent.ordinal()] = child.ordinal();
+            return this;
+        }
+
+        /**
+         * Declares that an entity which stays in {@code state} for the given duration receives {@code event}.
+         * The event is handled like any other, so a transition for it should be declared from the state, e.g.
+         * {@code .timeout(PAUSED, Duration.ofMinutes(30), EXPIRE).transition(EXPIRE, PAUSED, EXPIRED)}.
+         * The timeouts are driven by a {@link io.github.steingen.statemachine.timer.TimeoutScheduler}.
+         * <p>
+         * @throws IllegalStateException if a timeout has already been declared for the state
+         * */
+        public Builder<S, E> timeout(S state, Duration after, E event) {
+            checkNotBuilt();
+
+            if (after.isNegative()) {
+                throw new IllegalArgumentException("The timeout of " + state + " must not be negative");
+            }
+            if (NO_TIMEOUT != timeouts[state.ordinal()]) {
+                throw new IllegalStateException("More than one timeout is defined for state " + state);
+            }
+
+            timeouts[state.ordinal()] = after.toMillis();
+            timeoutEvents[state.ordinal()] = event.ordinal();
+            return this;
+        }
+
+        /**
+         * Registers an action that runs whenever {@code state} is entered, i.e. after a transition from outside of it
+         * to it or one of its substates, and after a self-transition. Actions registered for the same state run in
+         * the order in which they were registered.
+         * */
+        public Builder<S, E> onEntry(S state, TransitionAction action) {
+            Objects.requireNonNull(action, "action");
+            checkNotBuilt();
+
+            entryActions[state.ordinal()] = append(entryActions[state.ordinal()], action);
+            return this;
+        }
+
+        /**
+         * Registers an action that runs whenever {@code state} is exited, i.e. after a transition from it or one of its
+         * substates to a state outside of it, and after a self-transition
+         * */
+        public Builder<S, E> onExit(S state, TransitionAction action) {
+            Objects.requireNonNull(action, "action");
+            checkNotBuilt();
+
+            exitActions[state.ordinal()] = append(exitActions[state.ordinal()], action);
+            return this;
+        }
+
+        /**
+         * Registers an action that runs after the transition declared for the event from the state. Like the transition
+         * itself, it is inherited by the substates of {@code from}. It runs after the exit actions and before the entry actions.
+         * <p>
+         * @throws IllegalStateException if no transition is declared for the event from the state, when the definition is built
+         * */
+        public Builder<S, E> onTransition(E event, S from, TransitionAction action) {
+            Objects.requireNonNull(action, "action");
+            checkNotBuilt();
+
+            transitionActions[event.ordinal()][from.ordinal()] =
+                append(transitionActions[event.ordinal()][from.ordinal()], action);
+            return this;
+        }
+
+        /**
+         * Registers an action that runs after every transition, after all the other actions of the transition,
+         * e.g. a {@link StateIndex}
+         * */
+        public Builder<S, E> onAnyTransition(TransitionAction action) {
+            Objects.requireNonNull(action, "action");
+            checkNotBuilt();
+
+            anyTransitionAction = append(anyTransitionAction, action);
+            return this;
+        }
+
+        /**
+         * Declares the transitions defined in the event rules of an {@link AbstractStateMachine}, so that a state machine
+         * written against the classic API can back a definition, e.g. for a {@link StateStore} or a {@link BatchDispatcher}.
+         * <p>
+         * Only transitions with the inlined default guard can be declared this way, i.e. the ones created by
+         * {@code newTransition(from, to)} in a state machine built with {@code AbstractStateMachine(true)}. They are
+         * declared with {@link TransitionGuard#fromCurrent()}. Any other guard would be evaluated against the state of the
+         * given state machine rather than the state of the entity the event is dispatched to, so such transitions must be
+         * left out of the state machine and declared with {@link #transition(Enum, Enum, Enum, TransitionGuard)} instead.
+         * <p>
+         * @throws IllegalArgumentException if a transition has a custom guard, or calls the default guard
+         * @throws IllegalStateException if more than one transition is declared for the same event and from state
+         * */
+        public Builder<S, E> transitions(AbstractStateMachine<S, E> stateMachine) {
+            for (Map.Entry<E, List<Transition<S>>> rule : stateMachine.eventRules.entrySet()) {
+                for (Transition<S> transition : rule.getValue()) {
+                    if (!transition.isFromCurrent()) {
+                        throw new IllegalArgumentException("The transition for event " + rule.getKey() + " from "
+                            + transition.getFromState() + " to " + transition.getToState() + " has a guard that"
+                            + " cannot be shared by a definition. Declare it with a TransitionGuard instead");
+                    }
+                    transition(rule.getKey(), transition.getFromState(), transition.getToState(), TransitionGuard.fromCurrent());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets the listener that is notified of the outcome of every event dispatched by the state machines
+         * that share the definition
+         * */
+        public Builder<S, E> listener(TransitionListener listener) {
+            this.listener = Objects.requireNonNull(listener, "listener");
+            return this;
+        }
+
+        public StateMachineDefinition<S, E> build() {
+            if (!built) {
+                flatten();
+                built = true;
+            }
+            return new StateMachineDefinition<>(this);
+        }
+
+        /**
+         * Resolves the inherited transitions and the initial substates into the flat dispatch table
+         * */
+        @SuppressWarnings("unchecked")
+        private void flatten() {
+            flatTargets = new int[events.length][states.length];
+            flatGuards = new TransitionGuard[events.length][states.length];
+            allowedTransitions = new BitStore[states.length];
+            flatActions = new TransitionAction[events.length][states.length];
+            entryStates = new int[states.length];
+            TransitionAction[] sequence = new TransitionAction[2 * states.length + 2];
+
+            for (int state = 0; state < states.length; state++) {
+                entryStates[state] = enter(state);
+            }
+
+            for (int event = 0; event < events.length; event++) {
+                for (int state = 0; state < states.length; state++) {
+                    if (null != transitionActions[event][state] && NO_TRANSITION == targets[event][state]) {
+                        throw new IllegalStateException("An action is registered for event " + events[event]
+                            + " from state " + states[state] + ", but no transition is defined for it");
+                    }
+
+                    // The transition declared from the state itself, or else from its nearest ancestor
+                    int owner = state;
+                    while (NO_PARENT != owner && NO_TRANSITION == targets[event][owner]) {
+                        owner = parents[owner];
+                    }
+
+                    if (NO_PARENT == owner) {
+                        flatTargets[event][state] = NO_TRANSITION;
+                        continue;
+                    }
+
+                    int target = entryStates[targets[event][owner]];
+                    flatTargets[event][state] = target;
+                    flatGuards[event][state] = guards[event][owner];
+                    flatActions[event][state] = ActionSequence.of(sequence,
+                        collectActions(sequence, state, target, transitionActions[event][owner]));
+
+                    if (null == allowedTransitions[state]) {
+                        allowedTransitions[state] = BitStore.empty();
+                    }
+                    allowedTransitions[state].set(states[target]);
+                }
+            }
+        }
+
+        /**
+         * Collects the actions of a transition in the order in which they run: the exit actions from the innermost
+         * state that is left outwards, the transition action, and the entry actions from the outermost state that is
+         * entered inwards, and last the actions that run after any transition. The states that contain both the from
+         * and the target state are neither left nor entered, except for a self-transition, which leaves and re-enters the state.
+         * <p>
+         * @return The number of collected actions
+         * */
+        private int collectActions(TransitionAction[] sequence, int from, int target, TransitionAction transitionAction) {
+            int length = 0;
+
+            for (int ordinal = from; NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+                if (isAncestorOrSelf(ordinal, target) && !(ordinal == from && from == target)) {
+                    break;
+                }
+                if (null != exitActions[ordinal]) {
+                    sequence[length++] = exitActions[ordinal];
+                }
+            }
+
+            if (null != transitionAction) {
+                sequence[length++] = transitionAction;
+            }
+
+            int entryStart = length;
+            for (int ordinal = target; NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+                if (isAncestorOrSelf(ordinal, from) && !(ordinal == target && from == target)) {
+                    break;
+                }
+                if (null != entryActions[ordinal]) {
+                    sequence[length++] = entryActions[ordinal];
+                }
+            }
+            // The entry actions were collected inwards-out
+            for (int i = entryStart, j = length - 1; i < j; i++, j--) {
+                TransitionAction action = sequence[i];
+                sequence[i] = sequence[j];
+                sequence[j] = action;
+            }
+
+            if (null != anyTransitionAction) {
+                sequence[length++] = anyTransitionAction;
+            }
+            return length;
+        }
+
+        /**
+         * @return true if {@code ancestor} is {@code state} or one of its (nested) parents
+         * */
+        private boolean isAncestorOrSelf(int ancestor, int state) {
+            for (int ordinal = state; NO_PARENT != ordinal; ordinal = parents[ordinal]) {
+                if (ordinal == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static TransitionAction append(TransitionAction existing, TransitionAction action) {
+            if (null == existing) {
+                return action;
+            }
+            return (entityId, eventOrdinal, fromOrdinal, toOrdinal) -> {
+                existing.execute(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+                action.execute(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+            };
+        }
+
+        /**
+         * @return The state that is entered when a transition targets the given state, following the initial substates
+         * */
+        private int enter(int stateOrdinal) {
+            int ordinal = stateOrdinal;
+
+            while (NO_PARENT != initialSubstates[ordinal]) {
+                ordinal = initialSubstates[ordinal];
+            }
+            return ordinal;
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("The definition has already been built");
+            }
+        }
+    }
+}
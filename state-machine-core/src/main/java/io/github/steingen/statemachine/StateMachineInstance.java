@@ -0,0 +1,84 @@
+package io.github.steingen.statemachine;
+
+/**
+ * A lightweight, per-entity state machine. The transition graph lives in a shared {@link StateMachineDefinition},
+ * so each instance only holds a reference to it and the ordinal of its current state.
+ * Instances are not thread-safe.
+ */
+public class StateMachineInstance<S extends Enum<S>, E extends Enum<E>> implements StateMachine<S, E> {
+    private final StateMachineDefinition<S, E> definition;
+    private final long entityId;
+    private int stateOrdinal;
+
+    StateMachineInstance(StateMachineDefinition<S, E> definition, long entityId, int stateOrdinal) {
+        this.definition = definition;
+        this.entityId = entityId;
+        this.stateOrdinal = stateOrdinal;
+    }
+
+    public StateMachineDefinition<S, E> getDefinition() {
+        return definition;
+    }
+
+    /**
+     * @return The id passed to the actions of this state machine, or {@link TransitionAction#NO_ENTITY}
+     * */
+    public long getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public S getCurrentState() {
+        return definition.state(stateOrdinal);
+    }
+
+    public int getCurrentStateOrdinal() {
+        return stateOrdinal;
+    }
+
+    /**
+     * @return true if the current state is the given state, or one of its (nested) substates
+     * */
+    public boolean isInState(S state) {
+        return definition.isInState(stateOrdinal, state);
+    }
+
+    public StateMachineInstance<S, E> setCurrentState(S currentState) {
+        this.stateOrdinal = currentState.ordinal();
+        return this;
+    }
+
+    @Override
+    public boolean isValidTransition(S newState) {
+        return definition.isValidTransition(stateOrdinal, newState.ordinal());
+    }
+
+    @Override
+    public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    @Override
+    public long sendEventForResult(E event) {
+        int eventOrdinal = event.ordinal();
+        int fromOrdinal = stateOrdinal;
+        int toOrdinal = definition.dispatchStateOrdinal(this, eventOrdinal, fromOrdinal);
+
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            return definition.notTransitioned(eventOrdinal, fromOrdinal);
+        }
+
+        this.stateOrdinal = toOrdinal;
+        definition.onTransition(entityId, eventOrdinal, fromOrdinal, toOrdinal);
+
+        return TransitionResult.transitioned(eventOrdinal, fromOrdinal, toOrdinal);
+    }
+
+    @Override
+    public long tryTransition(E event, S expectedState) {
+        if (stateOrdinal != expectedState.ordinal()) {
+            return TransitionResult.notTransitioned(TransitionResult.Status.CONFLICT, event.ordinal(), stateOrdinal);
+        }
+        return sendEventForResult(event);
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.steingen.statemachine;
+
+import java.util.Arrays;
+
+/**
+ * The effect of an event, or of a sequence of events, on every state: a total function from state ordinal to state
+ * ordinal, stored as an {@code int[]}. A state that does not handle an event maps to itself, like an unmatched
+ * {@code sendEvent(...)} leaves the state unchanged.
+ * <p>
+ * Mappings compose associatively, so the mapping of a long event sequence can be computed from the mappings of its
+ * parts, in any grouping (see {@link ParallelReplayer}). Instances are immutable.
+ */
+public final class StateMapping {
+    private final int[] targets;
+
+    StateMapping(int[] targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * @return The mapping that leaves every state unchanged, i.e. the mapping of an empty event sequence
+     * */
+    public static StateMapping identity(int stateCount) {
+        int[] targets = new int[stateCount];
+
+        for (int state = 0; state < stateCount; state++) {
+            targets[state] = state;
+        }
+        return new StateMapping(targets);
+    }
+
+    /**
+     * @return The state ordinal that the mapped events move the given state to
+     * */
+    public int apply(int stateOrdinal) {
+        return targets[stateOrdinal];
+    }
+
+    public <S extends Enum<S>> S apply(S state, StateMachineDefinition<S, ?> definition) {
+        return definition.state(targets[state.ordinal()]);
+    }
+
+    /**
+     * @return The mapping of the events of this mapping, followed by the events of {@code next}
+     * */
+    public StateMapping andThen(StateMapping next) {
+        checkStateCount(next);
+        int[] composed = new int[targets.length];
+
+        for (int state = 0; state < targets.length; state++) {
+            composed[state] = next.targets[targets[state]];
+        }
+        return new StateMapping(composed);
+    }
+
+    public int stateCount() {
+        return targets.length;
+    }
+
+    public boolean isIdentity() {
+        for (int state = 0; state < targets.length; state++) {
+            if (targets[state] != state) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Exposes the targets, indexed by state ordinal. The returned array must not be modified.
+     * */
+    int[] targets() {
+        return targets;
+    }
+
+    private void checkStateCount(StateMapping other) {
+        if (other.targets.length != targets.length) {
+            throw new IllegalArgumentException("Cannot compose a mapping of " + targets.length
+                + " states with a mapping of " + other.targets.length + " states");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof StateMapping other && Arrays.equals(targets, other.targets));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(targets);
+    }
+
+    @Override
+    public String toString() {
+        return "StateMapping" + Arrays.toString(targets);
+    }
+}
@@ -0,0 +1,440 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.statemachine.journal.EntityStateConsumer;
+import io.github.steingen.statemachine.journal.EntityStateSource;
+import io.github.steingen.statemachine.journal.StateSnapshotCodec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Keeps the current state of a large population of entities off-heap, as one state ordinal per slot, indexed by a
+ * dense entity index ({@code 0 <= index < capacity}). There are no per-entity objects, so the heap footprint and the
+ * GC pressure do not grow with the population.
+ * <p>
+ * A slot is one byte wide when the definition has up to 256 states, and two bytes wide otherwise
+ * (a definition has at most {@link TransitionResult#MAX_STATES} states).
+ * The slots are spread over buffers of at most 1 GiB each, so the capacity is not limited by the size of a single buffer.
+ * <p>
+ * The store is either allocated in direct memory ({@link #allocate(StateMachineDefinition, long, Enum)}), or backed
+ * by a memory-mapped file ({@link #map(StateMachineDefinition, Path, long, Enum)}), in which case the states survive
+ * a restart. Events are applied with the transition table of the shared {@link StateMachineDefinition}, directly
+ * against the slot. Custom guards are passed a null {@link StateMachine}.
+ * <p>
+ * A store is not thread-safe, but different entities may be updated concurrently, as long as each entity is only
+ * updated by one thread at a time (e.g. by the mailbox threads of an {@link EventDispatcher}).
+ * The definition can be replaced under live traffic with {@link #reload(StateMachineDefinition)}: each event reads it once.
+ */
+public final class StateStore<S extends Enum<S>, E extends Enum<E>> implements EntityStateSource, Closeable {
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+    /**
+     * The header of a mapped store: magic, version, slot width, state count, capacity, and the hash of the state names
+     * (see {@link StateSnapshotCodec#definitionHash()})
+     * */
+    static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x53544F52;
+    private static final int VERSION = 2;
+
+    private volatile StateMachineDefinition<S, E> definition;
+    private final long capacity;
+    private final int slotWidth;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final ByteBuffer[] chunks;
+    private final FileChannel channel;
+
+    private StateStore(StateMachineDefinition<S, E> definition, long capacity, int slotWidth, int chunkShift,
+                       ByteBuffer[] chunks, FileChannel channel) {
+        this.definition = definition;
+        this.capacity = capacity;
+        this.slotWidth = slotWidth;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.chunks = chunks;
+        this.channel = channel;
+    }
+
+    /**
+     * Allocates a store in direct memory, with every entity in the initial state, or its initial substate if it is composite
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateStore<S, E> allocate(
+        StateMachineDefinition<S, E> definition, long capacity, S initialState) {
+        return allocate(definition, capacity, initialState, DEFAULT_CHUNK_SHIFT);
+    }
+
+    static <S extends Enum<S>, E extends Enum<E>> StateStore<S, E> allocate(
+        StateMachineDefinition<S, E> definition, long capacity, S initialState, int chunkShift) {
+        int slotWidth = slotWidth(definition.stateCount());
+        long size = checkCapacity(capacity) * slotWidth;
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, chunkShift)];
+
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSize(size, i, chunkShift));
+        }
+
+        StateStore<S, E> store = new StateStore<>(definition, capacity, slotWidth, chunkShift, chunks, null);
+        store.fill(definition.entryStateOrdinal(initialState.ordinal()), true);
+
+        return store;
+    }
+
+    /**
+     * Opens a store backed by the given file. If the file does not exist, it is created with every entity in the
+     * initial state. Otherwise, the states it holds are used as they are.
+     * <p>
+     * @throws IOException if the existing file was written for a different capacity or different states. The states are
+     * compared by name, so a file is never read with states that were renamed or reordered since it was written
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateStore<S, E> map(
+        StateMachineDefinition<S, E> definition, Path file, long capacity, S initialState) throws IOException {
+        return map(definition, file, capacity, initialState, DEFAULT_CHUNK_SHIFT);
+    }
+
+    static <S extends Enum<S>, E extends Enum<E>> StateStore<S, E> map(
+        StateMachineDefinition<S, E> definition, Path file, long capacity, S initialState, int chunkShift) throws IOException {
+        int slotWidth = slotWidth(definition.stateCount());
+        long size = checkCapacity(capacity) * slotWidth;
+        long stateHash = StateSnapshotCodec.forDefinition(definition).definitionHash();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+
+        try {
+            boolean zeroed = 0 == channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            // The header is only written once the store is initialized, so a zero magic means it has to be (re)initialized
+            boolean created = 0 == header.getInt(0);
+
+            if (!created) {
+                checkHeader(header, file, slotWidth, definition.stateCount(), capacity, stateHash);
+            }
+
+            ByteBuffer[] chunks = mapChunks(channel, FileChannel.MapMode.READ_WRITE, size, chunkShift);
+            StateStore<S, E> store = new StateStore<>(definition, capacity, slotWidth, chunkShift, chunks, channel);
+
+            if (created) {
+                store.fill(definition.entryStateOrdinal(initialState.ordinal()), zeroed);
+                store.force();
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slotWidth).putInt(12, definition.stateCount())
+                    .putLong(16, capacity).putLong(24, stateHash);
+                header.force();
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a store backed by the given file, which may have been written for an old version of the states, e.g. before
+     * states were renamed or removed. If the file holds the old states of the migration, every state is migrated into a
+     * new file next to it, with the suffix {@code .migrating}, which then replaces it. Otherwise, the file is opened as
+     * by {@link #map(StateMachineDefinition, Path, long, Enum)}.
+     * <p>
+     * The old file is only replaced once the new one is complete, so an interrupted migration is simply run again the
+     * next time the store is opened, and a migrated file is not migrated twice. The migration needs the disk space of
+     * both files.
+     * <p>
+     * @throws IOException if the existing file was written neither for the old states of the migration nor for the
+     * states of the definition, or for a different capacity
+     * @throws IllegalArgumentException if the migration maps an old state outside of the definition
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> StateStore<S, E> map(
+        StateMachineDefinition<S, E> definition, Path file, long capacity, S initialState, OrdinalMigration migration)
+        throws IOException {
+        if (Files.exists(file)) {
+            migrateFile(definition, file, capacity, initialState, migration);
+        }
+        return map(definition, file, capacity, initialState, DEFAULT_CHUNK_SHIFT);
+    }
+
+    public StateMachineDefinition<S, E> getDefinition() {
+        return definition;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes used per entity, which is 1 or 2
+     * */
+    public int slotWidth() {
+        return slotWidth;
+    }
+
+    public S getState(long index) {
+        return definition.state(getStateOrdinal(index));
+    }
+
+    public int getStateOrdinal(long index) {
+        long offset = offset(index);
+        ByteBuffer chunk = chunks[(int) (offset >>> chunkShift)];
+        int position = (int) (offset & chunkMask);
+
+        return 1 == slotWidth
+            ? chunk.get(position) & 0xFF
+            : chunk.getShort(position) & 0xFFFF;
+    }
+
+    public StateStore<S, E> setState(long index, S state) {
+        setStateOrdinal(index, state.ordinal());
+        return this;
+    }
+
+    /**
+     * Overwrites the state of an entity. It has the shape of an {@link EntityStateConsumer}, so that a store can be
+     * rebuilt from a journal with {@code journal.recover(store::setStateOrdinal)}
+     * */
+    public void setStateOrdinal(long index, int stateOrdinal) {
+        if (stateOrdinal < 0 || stateOrdinal >= definition.stateCount()) {
+            throw new IllegalArgumentException("Invalid state ordinal: " + stateOrdinal);
+        }
+        write(index, stateOrdinal);
+    }
+
+    public boolean isValidTransition(long index, S newState) {
+        return definition.isValidTransition(getStateOrdinal(index), newState.ordinal());
+    }
+
+    /**
+     * Applies the event to the entity, in place.
+     * <p>
+     * @return The outcome of the event, encoded as described in {@link TransitionResult}
+     * */
+    public long sendEvent(long index, E event) {
+        StateMachineDefinition<S, E> definition = this.definition;
+        int eventOrdinal = event.ordinal();
+        int fromOrdinal = getStateOrdinal(index);
+        int toOrdinal = definition.dispatchStateOrdinal(null, eventOrdinal, fromOrdinal);
+
+        if (StateMachineDefinition.NO_TRANSITION == toOrdinal) {
+            return definition.notTransitioned(eventOrdinal, fromOrdinal);
+        }
+
+        write(index, toOrdinal);
+        definition.onTransition(index, eventOrdinal, fromOrdinal, toOrdinal);
+
+        return TransitionResult.transitioned(eventOrdinal, fromOrdinal, toOrdinal);
+    }
+
+    /**
+     * Replaces the definition, e.g. with the current version of a {@link ReloadableDefinition}. Events that are being
+     * applied finish with the previous definition, and the events applied after this returns use the new one
+     * <p>
+     * @throws IllegalArgumentException if the definition has different states, since the slots are sized for them
+     * */
+    public void reload(StateMachineDefinition<S, E> definition) {
+        Objects.requireNonNull(definition, "definition");
+
+        if (definition.getStateType() != this.definition.getStateType()) {
+            throw new IllegalArgumentException("The definition has the states " + definition.getStateType().getName()
+                + ", but the store holds " + this.definition.getStateType().getName());
+        }
+        this.definition = definition;
+    }
+
+    /**
+     * Rewrites the state of every entity with the migration, in place, e.g. to move the entities out of a state
+     * that the reloaded definition no longer uses. No events may be applied to the store meanwhile
+     * <p>
+     * @throws IllegalArgumentException if the migration does not map every state of the definition to one of its
+     * states. The migration is checked before any entity is rewritten, so the store is then left as it was
+     * */
+    public void migrate(OrdinalMigration migration) {
+        checkMigration(migration, definition.stateCount(), definition.stateCount());
+
+        for (long index = 0; index < capacity; index++) {
+            write(index, migration.apply(getStateOrdinal(index)));
+        }
+    }
+
+    /**
+     * Reports the state of every entity, using its index as the entity id
+     * */
+    @Override
+    public void forEachState(EntityStateConsumer consumer) {
+        for (long index = 0; index < capacity; index++) {
+            consumer.accept(index, getStateOrdinal(index));
+        }
+    }
+
+    /**
+     * Writes the states to the backing file. It does nothing for a store in direct memory
+     * */
+    public void force() {
+        if (null == channel) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    /**
+     * Writes the states to the backing file, if any, and closes it. The memory itself is released once the store
+     * is garbage collected, so the store must not be used after it is closed.
+     * */
+    @Override
+    public void close() throws IOException {
+        if (null != channel) {
+            force();
+            channel.close();
+        }
+    }
+
+    private void write(long index, int stateOrdinal) {
+        long offset = offset(index);
+        ByteBuffer chunk = chunks[(int) (offset >>> chunkShift)];
+        int position = (int) (offset & chunkMask);
+
+        if (1 == slotWidth) {
+            chunk.put(position, (byte) stateOrdinal);
+        } else {
+            chunk.putShort(position, (short) stateOrdinal);
+        }
+    }
+
+    private long offset(long index) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("Entity index " + index + " is out of bounds for capacity " + capacity);
+        }
+        return index * slotWidth;
+    }
+
+    /**
+     * @param zeroed - Whether the memory is known to be zeroed, as is the case for direct memory and newly created files
+     * */
+    private void fill(int stateOrdinal, boolean zeroed) {
+        if (zeroed && 0 == stateOrdinal) {
+            return;
+        }
+        for (long index = 0; index < capacity; index++) {
+            write(index, stateOrdinal);
+        }
+    }
+
+    private static int slotWidth(int stateCount) {
+        if (stateCount > TransitionResult.MAX_STATES) {
+            throw new IllegalArgumentException("The definition has " + stateCount
+                + " states, which cannot be represented in a state store");
+        }
+        return stateCount <= 256 ? 1 : 2;
+    }
+
+    /**
+     * Checks that the migration maps every old state to a state of the definition
+     * */
+    private static void checkMigration(OrdinalMigration migration, int oldStateCount, int stateCount) {
+        if (migration.oldStateCount() != oldStateCount) {
+            throw new IllegalArgumentException("The migration is for " + migration.oldStateCount()
+                + " states, but " + oldStateCount + " are stored");
+        }
+        for (int ordinal = 0; ordinal < oldStateCount; ordinal++) {
+            if (migration.apply(ordinal) >= stateCount) {
+                throw new IllegalArgumentException("The migration maps to state ordinal " + migration.apply(ordinal)
+                    + ", but the definition has " + stateCount + " states");
+            }
+        }
+    }
+
+    /**
+     * Migrates the file into a new one that replaces it, if it holds the old states of the migration
+     * */
+    private static <S extends Enum<S>, E extends Enum<E>> void migrateFile(
+        StateMachineDefinition<S, E> definition, Path file, long capacity, S initialState, OrdinalMigration migration)
+        throws IOException {
+        long stateHash = StateSnapshotCodec.forDefinition(definition).definitionHash();
+        if (migration.oldStateHash() == stateHash) {
+            return;
+        }
+
+        Path migrated = file.resolveSibling(file.getFileName() + ".migrating");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                // Left to map(), which initializes it
+                return;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new EOFException("The state store " + file + " is truncated");
+                }
+            }
+            // An uninitialized file, or one written for other states, is left to map(), which initializes or rejects it
+            if (0 == header.getInt(0) || header.getLong(24) != migration.oldStateHash()) {
+                return;
+            }
+
+            int oldSlotWidth = slotWidth(migration.oldStateCount());
+            checkHeader(header, file, oldSlotWidth, migration.oldStateCount(), capacity, migration.oldStateHash());
+            checkMigration(migration, migration.oldStateCount(), definition.stateCount());
+
+            ByteBuffer[] oldChunks = mapChunks(channel, FileChannel.MapMode.READ_ONLY, capacity * oldSlotWidth,
+                DEFAULT_CHUNK_SHIFT);
+            Files.deleteIfExists(migrated);
+            try (StateStore<S, E> store = map(definition, migrated, capacity, initialState, DEFAULT_CHUNK_SHIFT)) {
+                for (long index = 0; index < capacity; index++) {
+                    long offset = index * oldSlotWidth;
+                    ByteBuffer chunk = oldChunks[(int) (offset >>> DEFAULT_CHUNK_SHIFT)];
+                    int position = (int) (offset & ((1L << DEFAULT_CHUNK_SHIFT) - 1));
+
+                    store.write(index, migration.apply(1 == oldSlotWidth
+                        ? chunk.get(position) & 0xFF
+                        : chunk.getShort(position) & 0xFFFF));
+                }
+            }
+        }
+        Files.move(migrated, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer[] mapChunks(FileChannel channel, FileChannel.MapMode mode, long size, int chunkShift)
+        throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, chunkShift)];
+
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = channel.map(mode, HEADER_SIZE + ((long) i << chunkShift), chunkSize(size, i, chunkShift));
+        }
+        return chunks;
+    }
+
+    private static long checkCapacity(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        return capacity;
+    }
+
+    private static int chunkCount(long size, int chunkShift) {
+        return (int) ((size + (1L << chunkShift) - 1) >>> chunkShift);
+    }
+
+    private static int chunkSize(long size, int chunk, int chunkShift) {
+        return (int) Math.min(1L << chunkShift, size - ((long) chunk << chunkShift));
+    }
+
+    private static void checkHeader(ByteBuffer header, Path file, int slotWidth, int stateCount, long capacity,
+                                    long stateHash) throws IOException {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported state store format: " + file);
+        }
+        if (header.getLong(24) != stateHash) {
+            throw new IOException("The state store " + file + " was written for different states (hash "
+                + Long.toHexString(header.getLong(24)) + ", expected " + Long.toHexString(stateHash) + ")");
+        }
+        if (header.getInt(8) != slotWidth || header.getInt(12) != stateCount || header.getLong(16) != capacity) {
+            throw new IOException("The state store " + file + " holds " + header.getLong(16) + " entities with "
+                + header.getInt(12) + " states, but " + capacity + " entities with " + stateCount + " states were expected");
+        }
+    }
+}
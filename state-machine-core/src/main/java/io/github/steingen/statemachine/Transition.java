@@ -18,6 +18,15 @@ public class Transition<E extends Enum<E>> {
     @Getter
     private E toState;
     private BiPredicate<E, E> guard;
+    /**
+     * Set when the guard is the built-in "from == current state" check, which dispatchers evaluate inline
+     * instead of calling the guard
+     * */
+    private boolean fromCurrent;
+    /**
+     * Set when the guard is the {@code defaultGuard(...)} of the state machine that created the transition
+     * */
+    private boolean defaultGuard;
 
 
     public static <E extends Enum<E>> Transition<E> of(E fromState, E toState, BiPredicate<E, E> guard) {
@@ -30,6 +39,35 @@ public class Transition<E extends Enum<E>> {
         return transition;
     }
 
+    /**
+     * Creates a transition whose guard only checks that the current state is {@code fromState}.
+     * The guard is still used by {@link #canTransition()}, but dispatchers skip the call and compare the states directly.
+     * */
+    static <E extends Enum<E>> Transition<E> fromCurrent(E fromState, E toState, BiPredicate<E, E> guard) {
+        Transition<E> transition = ofDefaultGuard(fromState, toState, guard);
+        transition.fromCurrent = true;
+
+        return transition;
+    }
+
+    /**
+     * Creates a transition guarded by the {@code defaultGuard(...)} of a state machine
+     * */
+    static <E extends Enum<E>> Transition<E> ofDefaultGuard(E fromState, E toState, BiPredicate<E, E> guard) {
+        Transition<E> transition = of(fromState, toState, guard);
+        transition.defaultGuard = true;
+
+        return transition;
+    }
+
+    boolean isFromCurrent() {
+        return fromCurrent;
+    }
+
+    boolean isDefaultGuard() {
+        return defaultGuard;
+    }
+
     public boolean canTransition() {
         return guard.test(fromState, toState);
     }
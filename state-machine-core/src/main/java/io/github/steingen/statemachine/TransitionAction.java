@@ -0,0 +1,19 @@
+package io.github.steingen.statemachine;
+
+/**
+ * A side effect of a transition, such as a notification, a database write or a metric, registered on a
+ * {@link StateMachineDefinition} as an entry, exit or transition action. Actions run on the thread that applied
+ * the transition, right after it was committed, and only take primitives, so dispatching them allocates nothing.
+ * <p>
+ * The entity id is the index of the entity in a {@link StateStore} or in the array of a {@link BatchDispatcher},
+ * the id given to {@link StateMachineDefinition#newInstance(long, Enum)} or to a {@link ConcurrentStateMachine},
+ * or {@link #NO_ENTITY} for state machines created without one.
+ * To run the actions of many transitions together, e.g. in a single database round-trip, register a
+ * {@link TransitionBuffer}.
+ */
+@FunctionalInterface
+public interface TransitionAction {
+    long NO_ENTITY = -1;
+
+    void execute(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal);
+}
@@ -0,0 +1,100 @@
+package io.github.steingen.statemachine;
+
+/**
+ * A {@link TransitionAction} that records the transitions it is run for into primitive arrays, and hands them to a
+ * {@link Handler} as one batch, e.g. to write 1000 transitions to a database in a single round-trip.
+ * A batch is handed over when the buffer is full, and when {@link #flush()} is called, typically after the events of
+ * a batch have been dispatched. The buffer is reused, so recording a transition allocates nothing.
+ * <p>
+ * Buffers are not thread-safe, so the transitions they are registered for must all be applied by the same thread.
+ */
+public final class TransitionBuffer implements TransitionAction {
+
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Processes the buffered transitions. The buffer is cleared once this returns, so it must not be kept
+         * */
+        void onBatch(TransitionBuffer batch);
+    }
+
+    private final Handler handler;
+    private final long[] entityIds;
+    private final int[] eventOrdinals;
+    private final int[] fromOrdinals;
+    private final int[] toOrdinals;
+    private int size;
+
+    public TransitionBuffer(int capacity, Handler handler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.handler = handler;
+        this.entityIds = new long[capacity];
+        this.eventOrdinals = new int[capacity];
+        this.fromOrdinals = new int[capacity];
+        this.toOrdinals = new int[capacity];
+    }
+
+    @Override
+    public void execute(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        entityIds[size] = entityId;
+        eventOrdinals[size] = eventOrdinal;
+        fromOrdinals[size] = fromOrdinal;
+        toOrdinals[size] = toOrdinal;
+
+        if (++size == entityIds.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands the buffered transitions to the handler, if there are any
+     * */
+    public void flush() {
+        if (0 == size) {
+            return;
+        }
+
+        try {
+            handler.onBatch(this);
+        } finally {
+            size = 0;
+        }
+    }
+
+    /**
+     * @return The number of buffered transitions
+     * */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return entityIds.length;
+    }
+
+    public long entityId(int index) {
+        return entityIds[checkIndex(index)];
+    }
+
+    public int eventOrdinal(int index) {
+        return eventOrdinals[checkIndex(index)];
+    }
+
+    public int fromOrdinal(int index) {
+        return fromOrdinals[checkIndex(index)];
+    }
+
+    public int toOrdinal(int index) {
+        return toOrdinals[checkIndex(index)];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " buffered transitions");
+        }
+        return index;
+    }
+}
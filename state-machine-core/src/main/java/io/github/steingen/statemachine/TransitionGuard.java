@@ -0,0 +1,47 @@
+package io.github.steingen.statemachine;
+
+import java.util.function.BiPredicate;
+
+/**
+ * A guard that receives the state machine being dispatched and the primitive ordinals of the transition,
+ * so that evaluating it needs no enum lookups or boxing.
+ * <p>
+ * {@link #fromCurrent()} is the built-in "the current state is the from state" guard. Dispatchers recognise it by
+ * identity and handle it inline with a single integer compare (or no check at all when the transition table is
+ * indexed by the current state), so the common case never goes through a megamorphic call site.
+ */
+@FunctionalInterface
+public interface TransitionGuard<S extends Enum<S>, E extends Enum<E>> {
+
+    /**
+     * @param machine     - The state machine the event is dispatched to. It is null when the event is applied to
+     *                    bare state ordinals, e.g. by the {@link BatchDispatcher}
+     * @param fromOrdinal - The ordinal of the from state of the transition
+     * @param toOrdinal   - The ordinal of the to state of the transition
+     * */
+    boolean test(StateMachine<S, E> machine, int fromOrdinal, int toOrdinal);
+
+    /**
+     * @return The marker guard that only allows the transition when the current state is the from state
+     * */
+    @SuppressWarnings("unchecked")
+    static <S extends Enum<S>, E extends Enum<E>> TransitionGuard<S, E> fromCurrent() {
+        return FromCurrentGuard.INSTANCE;
+    }
+
+    /**
+     * @return true if the guard is the {@link #fromCurrent()} marker
+     * */
+    static boolean isFromCurrent(TransitionGuard<?, ?> guard) {
+        return FromCurrentGuard.INSTANCE == guard;
+    }
+
+    /**
+     * Adapts a {@code (from, to)} predicate to a TransitionGuard
+     * */
+    static <S extends Enum<S>, E extends Enum<E>> TransitionGuard<S, E> of(Class<S> stateType, BiPredicate<S, S> predicate) {
+        S[] states = stateType.getEnumConstants();
+
+        return (machine, fromOrdinal, toOrdinal) -> predicate.test(states[fromOrdinal], states[toOrdinal]);
+    }
+}
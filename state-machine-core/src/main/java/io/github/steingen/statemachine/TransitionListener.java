@@ -0,0 +1,45 @@
+package io.github.steingen.statemachine;
+
+/**
+ * Receives the outcome of every event that is dispatched. The callbacks only take ordinals, so implementations
+ * can record them into primitive arrays without boxing or allocating.
+ * <p>
+ * All the callbacks default to doing nothing. When no listener is configured, {@link #NOOP} is used,
+ * which the JIT inlines away.
+ */
+public interface TransitionListener {
+    TransitionListener NOOP = new TransitionListener() {
+    };
+
+    /**
+     * Called after the event has moved the state machine from one state to another
+     * */
+    default void onTransition(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+    }
+
+    /**
+     * Called when a transition is defined for the event from the current state, but its guard rejected it
+     * */
+    default void onRejected(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+    }
+
+    /**
+     * Called when no transition is defined for the event from the current state
+     * */
+    default void onUnmatched(int eventOrdinal, int fromOrdinal) {
+    }
+
+    /**
+     * @return true if guard evaluations should be timed and reported to {@link #onGuardEvaluated(int, int, long)}.
+     * This is read once, when the listener is configured
+     * */
+    default boolean isTimingGuards() {
+        return false;
+    }
+
+    /**
+     * Called after a custom guard has been evaluated, if {@link #isTimingGuards()} is true
+     * */
+    default void onGuardEvaluated(int eventOrdinal, int fromOrdinal, long nanos) {
+    }
+}
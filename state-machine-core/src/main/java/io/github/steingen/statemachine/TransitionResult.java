@@ -0,0 +1,117 @@
+package io.github.steingen.statemachine;
+
+/**
+ * Encodes the outcome of an event as a primitive {@code long}, so that it can be returned from the dispatch path
+ * without allocating. Use the static methods of this class to read the fields back:
+ * <pre>{@code
+ * long result = stateMachine.sendEventForResult(event);
+ * if (TransitionResult.isAccepted(result)) {
+ *     int from = TransitionResult.fromOrdinal(result);
+ *     int to = TransitionResult.toOrdinal(result);
+ * }
+ * }</pre>
+ * Layout: bits 0-15 hold the new state ordinal, bits 16-31 the previous state ordinal, bits 32-47 the event ordinal
+ * and bits 48-55 the {@link Status}. When the event is not accepted, the new state is the previous state.
+ * The all-ones ordinal {@code 0xFFFF} encodes {@link #NO_STATE}, so state enums are limited to {@link #MAX_STATES}
+ * constants, which {@link StateMachineDefinition#builder(Class, Class)} enforces.
+ */
+public final class TransitionResult {
+    /**
+     * Reported as the state ordinal when the state machine has no current state
+     * */
+    public static final int NO_STATE = -1;
+    /**
+     * The largest number of states that can be encoded, since the highest 16 bit ordinal stands for {@link #NO_STATE}
+     * */
+    public static final int MAX_STATES = 0xFFFF;
+
+    private static final int ORDINAL_MASK = 0xFFFF;
+    private static final Status[] STATUSES = Status.values();
+
+    public enum Status {
+        /**
+         * The event moved the state machine to the new state
+         * */
+        TRANSITIONED,
+        /**
+         * A transition is defined for the event from the current state, but its guard rejected it
+         * */
+        REJECTED,
+        /**
+         * No transition is defined for the event from the current state
+         * */
+        UNMATCHED,
+        /**
+         * The current state was not the expected one, or it was changed by another thread before the transition
+         * could be committed
+         * */
+        CONFLICT,
+        /**
+         * The event was applied, but its outcome is not known, e.g. because a replica skipped it by restoring a snapshot
+         * taken after it. The previous state is {@link #NO_STATE}, and the new state is the state as of the snapshot
+         * */
+        UNKNOWN
+    }
+
+    private TransitionResult() {
+    }
+
+    public static long of(Status status, int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        return ((long) status.ordinal() << 48)
+            | ((long) (eventOrdinal & ORDINAL_MASK) << 32)
+            | ((long) (fromOrdinal & ORDINAL_MASK) << 16)
+            | (toOrdinal & ORDINAL_MASK);
+    }
+
+    public static long transitioned(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        return of(Status.TRANSITIONED, eventOrdinal, fromOrdinal, toOrdinal);
+    }
+
+    /**
+     * Creates a result for an event that did not change the state
+     * */
+    public static long notTransitioned(Status status, int eventOrdinal, int stateOrdinal) {
+        return of(status, eventOrdinal, stateOrdinal, stateOrdinal);
+    }
+
+    /**
+     * @return The status, which is one of the cached enum constants
+     * */
+    public static Status status(long result) {
+        return STATUSES[(int) (result >>> 48) & 0xFF];
+    }
+
+    public static boolean isAccepted(long result) {
+        return (result >>> 48) == Status.TRANSITIONED.ordinal();
+    }
+
+    public static int eventOrdinal(long result) {
+        return (int) (result >>> 32) & ORDINAL_MASK;
+    }
+
+    /**
+     * @return The ordinal of the state before the event, or {@link #NO_STATE}
+     * */
+    public static int fromOrdinal(long result) {
+        return ordinal((int) (result >>> 16) & ORDINAL_MASK);
+    }
+
+    /**
+     * @return The ordinal of the state after the event, or {@link #NO_STATE}
+     * */
+    public static int toOrdinal(long result) {
+        return ordinal((int) result & ORDINAL_MASK);
+    }
+
+    /**
+     * @return A readable form of the result, for logging
+     * */
+    public static String toString(long result) {
+        return status(result) + "[event=" + eventOrdinal(result) + ", from=" + fromOrdinal(result)
+            + ", to=" + toOrdinal(result) + "]";
+    }
+
+    private static int ordinal(int encoded) {
+        return encoded == ORDINAL_MASK ? NO_STATE : encoded;
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.steingen.statemachine;
+
+import jakarta.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The problems found by a {@link DefinitionValidator}.
+ */
+public final class ValidationReport<S extends Enum<S>, E extends Enum<E>> {
+
+    public enum Kind {
+        /**
+         * More than one guarded transition is declared for the same event and from state, so the outcome depends on
+         * which guard passes first
+         * */
+        CONFLICT,
+        /**
+         * A transition can never be taken, because a transition for the same event and from state that is declared
+         * before it has no custom guard, and therefore always wins
+         * */
+        SHADOWED,
+        /**
+         * A state that cannot be reached from the initial state
+         * */
+        UNREACHABLE,
+        /**
+         * A state without any outgoing transition that is not one of the final states
+         * */
+        NO_EXIT,
+        /**
+         * A state with outgoing transitions, from which no final state can be reached
+         * */
+        DEAD_END,
+        /**
+         * A state whose timeout event has no transition from the state, so the timeout has no effect
+         * */
+        UNHANDLED_TIMEOUT
+    }
+
+    public static final class Issue<S extends Enum<S>, E extends Enum<E>> {
+        private final Kind kind;
+        private final S state;
+        private final E event;
+        private final String message;
+
+        Issue(Kind kind, S state, @Nullable E event, String message) {
+            this.kind = kind;
+            this.state = state;
+            this.event = event;
+            this.message = message;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The state the issue is about. For transitions, it is the from state
+         * */
+        public S getState() {
+            return state;
+        }
+
+        /**
+         * @return The event of the transitions the issue is about, or null for issues about a state
+         * */
+        @Nullable
+        public E getEvent() {
+            return event;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + message;
+        }
+    }
+
+    private final List<Issue<S, E>> issues = new ArrayList<>();
+
+    ValidationReport() {
+    }
+
+    void add(Kind kind, S state, @Nullable E event, String message) {
+        issues.add(new Issue<>(kind, state, event, message));
+    }
+
+    public boolean isValid() {
+        return issues.isEmpty();
+    }
+
+    public List<Issue<S, E>> getIssues() {
+        return List.copyOf(issues);
+    }
+
+    public List<Issue<S, E>> getIssues(Kind kind) {
+        List<Issue<S, E>> matching = new ArrayList<>();
+
+        for (Issue<S, E> issue : issues) {
+            if (kind == issue.kind) {
+                matching.add(issue);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Fails fast on an invalid definition, e.g. in a unit test or at build time
+     * <p>
+     * @throws IllegalStateException listing every issue, if there are any
+     * */
+    public void throwIfInvalid() {
+        if (issues.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder("The state machine definition is invalid:");
+        for (Issue<S, E> issue : issues) {
+            message.append(System.lineSeparator()).append("  ").append(issue);
+        }
+        throw new IllegalStateException(message.toString());
+    }
+
+    @Override
+    public String toString() {
+        return issues.isEmpty() ? "Valid" : issues.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.steingen.statemachine.journal;
+
+/**
+ * Receives the state ordinal of an entity, without boxing either value.
+ */
+@FunctionalInterface
+public interface EntityStateConsumer {
+    void accept(long entityId, int stateOrdinal);
+}
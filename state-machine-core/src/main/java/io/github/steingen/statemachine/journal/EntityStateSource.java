@@ -0,0 +1,9 @@
+package io.github.steingen.statemachine.journal;
+
+/**
+ * Supplies the current state of every entity when a snapshot is taken.
+ */
+@FunctionalInterface
+public interface EntityStateSource {
+    void forEachState(EntityStateConsumer consumer);
+}
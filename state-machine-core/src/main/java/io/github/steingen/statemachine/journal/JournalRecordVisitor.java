@@ -0,0 +1,9 @@
+package io.github.steingen.statemachine.journal;
+
+/**
+ * Receives the fields of each journal record, in the order in which they were appended.
+ */
+@FunctionalInterface
+public interface JournalRecordVisitor {
+    void visit(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal, long timestamp);
+}
@@ -0,0 +1,69 @@
+package io.github.steingen.statemachine.journal;
+
+import io.github.steingen.statemachine.StateMachine;
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+
+/**
+ * Decorates a {@link StateMachine} so that every transition it applies is appended to a {@link StateJournal}.
+ * Transitions are detected through {@link StateMachine#sendEventForResult(Enum)}, so self-transitions are recorded too.
+ */
+public class JournaledStateMachine<S extends Enum<S>, E extends Enum<E>> implements StateMachine<S, E> {
+    private final long entityId;
+    private final StateMachine<S, E> delegate;
+    private final StateJournal journal;
+    private final Clock clock;
+
+    public JournaledStateMachine(long entityId, StateMachine<S, E> delegate, StateJournal journal) {
+        this(entityId, delegate, journal, Clock.systemUTC());
+    }
+
+    public JournaledStateMachine(long entityId, StateMachine<S, E> delegate, StateJournal journal, Clock clock) {
+        this.entityId = entityId;
+        this.delegate = delegate;
+        this.journal = journal;
+        this.clock = clock;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public S getCurrentState() {
+        return delegate.getCurrentState();
+    }
+
+    @Override
+    public boolean isValidTransition(S newState) {
+        return delegate.isValidTransition(newState);
+    }
+
+    @Override
+    public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    /**
+     * Sends the event to the decorated state machine and journals the resulting transition, if any.
+     * <p>
+     * @throws UncheckedIOException if the transition was applied but could not be journaled
+     * */
+    @Override
+    public long sendEventForResult(E event) {
+        long result = delegate.sendEventForResult(event);
+
+        if (TransitionResult.isAccepted(result)) {
+            try {
+                journal.append(entityId, TransitionResult.eventOrdinal(result), TransitionResult.fromOrdinal(result),
+                    TransitionResult.toOrdinal(result), clock.millis());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,295 @@
+package io.github.steingen.statemachine.journal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A {@link StateJournal} on the local filesystem. Records are appended to fixed-size, memory-mapped segment files,
+ * and each record has the same binary layout, so recovery streams straight over the mapped bytes without
+ * deserializing any objects.
+ * <p>
+ * Record layout ({@value #RECORD_SIZE} bytes):
+ * <pre>
+ * int   marker      (written last, a zero marker means the end of the journal)
+ * short event ordinal
+ * short from ordinal
+ * short to ordinal
+ * short (padding)
+ * long  entity id
+ * long  timestamp
+ * int   (padding)
+ * </pre>
+ * Snapshot layout: {@code int magic, int version, long journal position, long entry count}, followed by
+ * {@code (long entity id, short state ordinal)} for each entity.
+ * Snapshots are written and read through a buffer of {@value #SNAPSHOT_BUFFER_ENTRIES} entries, so their size is not
+ * limited by the size of a single buffer. Taking a snapshot deletes the older snapshots and the segments that it
+ * fully covers.
+ * <p>
+ * Ordinals are stored as unsigned shorts, so up to 65536 states and events are supported.
+ * All the methods are synchronized, so the journal can be shared, but it is designed for a single writer.
+ */
+public class MappedFileJournal implements StateJournal {
+    public static final int RECORD_SIZE = 32;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int RECORD_MARKER = 0x4A524E4C;
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 24;
+    private static final int SNAPSHOT_ENTRY_SIZE = 10;
+    private static final int SNAPSHOT_BUFFER_ENTRIES = 8192;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long recordsPerSegment;
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+
+    public MappedFileJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in the given directory, creating it if needed, and positions it after the last record
+     * <p>
+     * @param segmentSize - The size of each segment file in bytes. It must be a positive multiple of {@value #RECORD_SIZE}
+     * */
+    public MappedFileJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= 0 || segmentSize % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("segmentSize must be a positive multiple of " + RECORD_SIZE);
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.recordsPerSegment = segmentSize / RECORD_SIZE;
+
+        List<Long> segments = listIndices(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        this.segmentIndex = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        this.segment = mapSegment(segmentIndex);
+        this.segment.position(recordCount(segment) * RECORD_SIZE);
+    }
+
+    @Override
+    public synchronized void append(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal, long timestamp)
+        throws IOException {
+        if (segment.remaining() < RECORD_SIZE) {
+            segment.force();
+            segmentIndex++;
+            segment = mapSegment(segmentIndex);
+        }
+
+        int offset = segment.position();
+        segment.putShort(offset + 4, (short) eventOrdinal)
+            .putShort(offset + 6, (short) fromOrdinal)
+            .putShort(offset + 8, (short) toOrdinal)
+            .putLong(offset + 12, entityId)
+            .putLong(offset + 20, timestamp)
+            // The marker is written last, so that a partially written record is not read back
+            .putInt(offset, RECORD_MARKER);
+        segment.position(offset + RECORD_SIZE);
+    }
+
+    @Override
+    public synchronized void flush() {
+        segment.force();
+    }
+
+    /**
+     * @return The number of records that have been appended to the journal since it was created
+     * */
+    public synchronized long position() {
+        return segmentIndex * recordsPerSegment + segment.position() / RECORD_SIZE;
+    }
+
+    @Override
+    public synchronized void snapshot(EntityStateSource source) throws IOException {
+        long journalPosition = position();
+        Path snapshotFile = directory.resolve(fileName(SNAPSHOT_PREFIX, journalPosition, SNAPSHOT_SUFFIX));
+        Path tempFile = directory.resolve(snapshotFile.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_ENTRY_SIZE * SNAPSHOT_BUFFER_ENTRIES);
+            long[] count = new long[1];
+
+            channel.position(SNAPSHOT_HEADER_SIZE);
+            source.forEachState((entityId, stateOrdinal) -> {
+                if (buffer.remaining() < SNAPSHOT_ENTRY_SIZE) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putLong(entityId).putShort((short) stateOrdinal);
+                count[0]++;
+            });
+            writeFully(channel, buffer);
+
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(journalPosition).putLong(count[0]);
+            channel.position(0);
+            writeFully(channel, buffer);
+            channel.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteCoveredFiles(journalPosition);
+    }
+
+    @Override
+    public synchronized void recover(EntityStateConsumer consumer) throws IOException {
+        List<Long> snapshots = listIndices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long journalPosition = 0;
+
+        if (!snapshots.isEmpty()) {
+            journalPosition = snapshots.get(snapshots.size() - 1);
+            readSnapshot(directory.resolve(fileName(SNAPSHOT_PREFIX, journalPosition, SNAPSHOT_SUFFIX)), consumer);
+        }
+
+        readRecordsFrom(journalPosition, (entityId, eventOrdinal, fromOrdinal, toOrdinal, timestamp) ->
+            consumer.accept(entityId, toOrdinal));
+    }
+
+    @Override
+    public synchronized void readRecords(JournalRecordVisitor visitor) throws IOException {
+        readRecordsFrom(0, visitor);
+    }
+
+    @Override
+    public synchronized void close() {
+        segment.force();
+    }
+
+    private void readRecordsFrom(long journalPosition, JournalRecordVisitor visitor) throws IOException {
+        for (long index : listIndices(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            long firstPosition = index * recordsPerSegment;
+            if (firstPosition + recordsPerSegment <= journalPosition) {
+                continue;
+            }
+
+            ByteBuffer records = index == segmentIndex ? segment.duplicate() : mapSegment(index);
+            int offset = (int) Math.max(0, journalPosition - firstPosition) * RECORD_SIZE;
+
+            for (; offset + RECORD_SIZE <= segmentSize && records.getInt(offset) == RECORD_MARKER; offset += RECORD_SIZE) {
+                visitor.visit(records.getLong(offset + 12),
+                    Short.toUnsignedInt(records.getShort(offset + 4)),
+                    Short.toUnsignedInt(records.getShort(offset + 6)),
+                    Short.toUnsignedInt(records.getShort(offset + 8)),
+                    records.getLong(offset + 20));
+            }
+        }
+    }
+
+    private void readSnapshot(Path snapshotFile, EntityStateConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_ENTRY_SIZE * SNAPSHOT_BUFFER_ENTRIES);
+
+            readFully(channel, buffer, SNAPSHOT_HEADER_SIZE, snapshotFile);
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot format: " + snapshotFile);
+            }
+            buffer.getLong();
+
+            for (long remaining = buffer.getLong(); remaining > 0; ) {
+                int entries = (int) Math.min(remaining, SNAPSHOT_BUFFER_ENTRIES);
+
+                readFully(channel, buffer, entries * SNAPSHOT_ENTRY_SIZE, snapshotFile);
+                for (int i = 0; i < entries; i++) {
+                    consumer.accept(buffer.getLong(), Short.toUnsignedInt(buffer.getShort()));
+                }
+                remaining -= entries;
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshots that are older than the given journal position,
+     * and the segments that only hold records from before it
+     * */
+    private void deleteCoveredFiles(long journalPosition) throws IOException {
+        for (long index : listIndices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (index < journalPosition) {
+                Files.deleteIfExists(directory.resolve(fileName(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX)));
+            }
+        }
+        for (long index : listIndices(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (index != segmentIndex && (index + 1) * recordsPerSegment <= journalPosition) {
+                Files.deleteIfExists(directory.resolve(fileName(SEGMENT_PREFIX, index, SEGMENT_SUFFIX)));
+            }
+        }
+    }
+
+    private MappedByteBuffer mapSegment(long index) throws IOException {
+        Path segmentFile = directory.resolve(fileName(SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private int recordCount(ByteBuffer records) {
+        int count = 0;
+
+        while ((count + 1) * RECORD_SIZE <= segmentSize && records.getInt(count * RECORD_SIZE) == RECORD_MARKER) {
+            count++;
+        }
+        return count;
+    }
+
+    private List<Long> listIndices(String prefix, String suffix) throws IOException {
+        List<Long> indices = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .forEach(name -> indices.add(Long.parseLong(name, prefix.length(), name.length() - suffix.length(), 10)));
+        }
+        indices.sort(null);
+
+        return indices;
+    }
+
+    private static String fileName(String prefix, long index, String suffix) {
+        return String.format("%s%019d%s", prefix, index, suffix);
+    }
+
+    /**
+     * Reads exactly the given number of bytes into the buffer, and flips it for reading them
+     * */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int length, Path file) throws IOException {
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The snapshot is truncated: " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.steingen.statemachine.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A durable, append-only history of the transitions applied to state machines.
+ * Each transition is recorded as {@code (entityId, event ordinal, from ordinal, to ordinal, timestamp)}.
+ * Snapshots of all the current states bound the amount of history that has to be replayed on recovery.
+ */
+public interface StateJournal extends Closeable {
+
+    /**
+     * Appends a transition to the journal
+     * */
+    void append(long entityId, int eventOrdinal, int fromOrdinal, int toOrdinal, long timestamp) throws IOException;
+
+    /**
+     * Forces the appended records to the storage device
+     * */
+    void flush() throws IOException;
+
+    /**
+     * Writes a snapshot of the current states. The source must reflect at least every record appended before this call.
+     * Records appended after it are replayed on top of the snapshot during recovery.
+     * */
+    void snapshot(EntityStateSource source) throws IOException;
+
+    /**
+     * Streams the latest snapshot followed by every record appended after it, so that the consumer ends up
+     * with the current state of each entity
+     * */
+    void recover(EntityStateConsumer consumer) throws IOException;
+
+    /**
+     * Streams every record that is still retained in the journal, in append order
+     * */
+    void readRecords(JournalRecordVisitor visitor) throws IOException;
+}
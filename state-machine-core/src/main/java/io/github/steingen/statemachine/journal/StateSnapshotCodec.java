@@ -0,0 +1,292 @@
+package io.github.steingen.statemachine.journal;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the current state of many entities as {@code (entity id, state ordinal)} pairs, e.g. to hand entities
+ * over to another node when they are rebalanced, and decodes them back without allocating an object per entity.
+ * The stream is framed in blocks, so it can be written to and read from any channel, including sockets.
+ * <p>
+ * Layout:
+ * <pre>
+ * int  magic
+ * int  version
+ * long definition hash
+ * blocks of (int entry count, entries of (long entity id, short state ordinal))
+ * int  0 (the end of the stream)
+ * </pre>
+ * The definition hash is derived from the names of the states, in ordinal order. Decoding fails if it does not
+ * match, so ordinals written against a different version of the state enum are never applied to the wrong states.
+ * Ordinals are stored as unsigned shorts, so up to 65536 states are supported.
+ * <p>
+ * A {@link io.github.steingen.statemachine.StateStore} is both a source and, through
+ * {@code store::setStateOrdinal}, a consumer of snapshots.
+ * Instances are immutable and thread safe, but a stream must not be shared by concurrent calls.
+ */
+public final class StateSnapshotCodec {
+    public static final int HEADER_SIZE = 16;
+    public static final int ENTRY_SIZE = 10;
+
+    private static final int MAGIC = 0x534D5353;
+    private static final int VERSION = 1;
+    private static final int BLOCK_HEADER_SIZE = 4;
+    private static final int END_OF_STREAM = 0;
+    private static final int ENTRIES_PER_BLOCK = 8192;
+    private static final int MAX_STATES = 1 << 16;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long definitionHash;
+
+    private StateSnapshotCodec(long definitionHash) {
+        this.definitionHash = definitionHash;
+    }
+
+    public static <S extends Enum<S>> StateSnapshotCodec forStates(Class<S> stateType) {
+        List<String> names = new ArrayList<>();
+
+        for (S state : stateType.getEnumConstants()) {
+            names.add(state.name());
+        }
+        return forStateNames(names);
+    }
+
+    /**
+     * A codec for the states with the given names, in ordinal order, e.g. to read a snapshot that was written before
+     * the states were renamed, and migrate it with an {@link io.github.steingen.statemachine.OrdinalMigration}
+     * */
+    public static StateSnapshotCodec forStateNames(List<String> stateNames) {
+        if (stateNames.size() > MAX_STATES) {
+            throw new IllegalArgumentException("Snapshots support up to " + MAX_STATES + " states, but "
+                + stateNames.size() + " were given");
+        }
+        return new StateSnapshotCodec(definitionHash(stateNames));
+    }
+
+    public static StateSnapshotCodec forDefinition(StateMachineDefinition<?, ?> definition) {
+        return forStates(definition.getStateType());
+    }
+
+    /**
+     * @return The number of bytes that {@link #write(EntityStateSource, ByteBuffer)} needs for the given number of entities
+     * */
+    public static long encodedSize(long entityCount) {
+        return HEADER_SIZE + BLOCK_HEADER_SIZE + entityCount * ENTRY_SIZE + BLOCK_HEADER_SIZE;
+    }
+
+    public long definitionHash() {
+        return definitionHash;
+    }
+
+    /**
+     * Writes every state of the source into the buffer, as a single block
+     * <p>
+     * @return The number of entities written
+     * @throws java.nio.BufferOverflowException if the buffer does not have {@link #encodedSize(long)} bytes remaining
+     * */
+    public long write(EntityStateSource source, ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(definitionHash);
+
+        int blockStart = buffer.position();
+        long[] count = new long[1];
+
+        buffer.position(blockStart + BLOCK_HEADER_SIZE);
+        source.forEachState((entityId, stateOrdinal) -> {
+            buffer.putLong(entityId).putShort((short) stateOrdinal);
+            count[0]++;
+        });
+
+        if (count[0] > Integer.MAX_VALUE) {
+            throw new IllegalStateException("A single buffer can hold up to " + Integer.MAX_VALUE + " entities");
+        }
+        if (0 == count[0]) {
+            // An empty block would read as the end of the stream
+            buffer.position(blockStart);
+        } else {
+            buffer.putInt(blockStart, (int) count[0]);
+        }
+        buffer.putInt(END_OF_STREAM);
+
+        return count[0];
+    }
+
+    /**
+     * Streams every state of the source to the channel, in blocks of up to {@value #ENTRIES_PER_BLOCK} entities
+     * <p>
+     * @return The number of entities written
+     * */
+    public long write(EntityStateSource source, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_HEADER_SIZE + ENTRIES_PER_BLOCK * ENTRY_SIZE);
+        long[] count = new long[1];
+
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(definitionHash);
+        writeFully(channel, buffer);
+
+        buffer.position(BLOCK_HEADER_SIZE);
+        try {
+            source.forEachState((entityId, stateOrdinal) -> {
+                if (!buffer.hasRemaining()) {
+                    writeBlock(channel, buffer);
+                }
+                buffer.putLong(entityId).putShort((short) stateOrdinal);
+                count[0]++;
+            });
+            if (buffer.position() > BLOCK_HEADER_SIZE) {
+                writeBlock(channel, buffer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        buffer.clear();
+        buffer.putInt(END_OF_STREAM);
+        writeFully(channel, buffer);
+
+        return count[0];
+    }
+
+    /**
+     * Reads the states from the buffer, up to and including the end of the stream
+     * <p>
+     * @return The number of entities read
+     * @throws IOException if the stream is not a snapshot, is truncated, or was written for different states
+     * */
+    public long read(ByteBuffer buffer, EntityStateConsumer consumer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new EOFException("The snapshot is truncated");
+        }
+        checkHeader(buffer);
+
+        long count = 0;
+        while (true) {
+            if (buffer.remaining() < BLOCK_HEADER_SIZE) {
+                throw new EOFException("The snapshot is truncated");
+            }
+
+            int entries = buffer.getInt();
+            if (END_OF_STREAM == entries) {
+                return count;
+            }
+            if (entries < 0 || buffer.remaining() / ENTRY_SIZE < entries) {
+                throw new EOFException("The snapshot is truncated");
+            }
+
+            for (int i = 0; i < entries; i++) {
+                consumer.accept(buffer.getLong(), Short.toUnsignedInt(buffer.getShort()));
+            }
+            count += entries;
+        }
+    }
+
+    /**
+     * Reads the states from the channel, up to and including the end of the stream
+     * <p>
+     * @return The number of entities read
+     * @throws IOException if the stream is not a snapshot, is truncated, or was written for different states
+     * */
+    public long read(ReadableByteChannel channel, EntityStateConsumer consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_HEADER_SIZE + ENTRIES_PER_BLOCK * ENTRY_SIZE);
+
+        readFully(channel, buffer, HEADER_SIZE);
+        checkHeader(buffer);
+
+        long count = 0;
+        while (true) {
+            readFully(channel, buffer, BLOCK_HEADER_SIZE);
+
+            int entries = buffer.getInt();
+            if (END_OF_STREAM == entries) {
+                return count;
+            }
+            if (entries < 0) {
+                throw new IOException("Invalid snapshot block of " + entries + " entries");
+            }
+
+            // Blocks written to a ByteBuffer can be larger than the read buffer, so they are read in parts
+            for (int remaining = entries; remaining > 0; ) {
+                int part = Math.min(remaining, ENTRIES_PER_BLOCK);
+
+                readFully(channel, buffer, part * ENTRY_SIZE);
+                for (int i = 0; i < part; i++) {
+                    consumer.accept(buffer.getLong(), Short.toUnsignedInt(buffer.getShort()));
+                }
+                remaining -= part;
+            }
+            count += entries;
+        }
+    }
+
+    private void checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported snapshot format");
+        }
+
+        long hash = buffer.getLong();
+        if (hash != definitionHash) {
+            throw new IOException("The snapshot was written for a different version of the states (definition hash "
+                + Long.toHexString(hash) + ", expected " + Long.toHexString(definitionHash) + ")");
+        }
+    }
+
+    /**
+     * FNV-1a over the state names, each followed by a zero byte so that the names cannot run into each other
+     * */
+    private static long definitionHash(List<String> stateNames) {
+        long hash = FNV_OFFSET_BASIS;
+
+        for (String name : stateNames) {
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+            }
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static void writeBlock(WritableByteChannel channel, ByteBuffer buffer) {
+        int entries = (buffer.position() - BLOCK_HEADER_SIZE) / ENTRY_SIZE;
+
+        buffer.putInt(0, entries);
+        try {
+            writeFully(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.position(BLOCK_HEADER_SIZE);
+    }
+
+    /**
+     * Writes the buffer from its start up to its position, and clears it
+     * */
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads exactly the given number of bytes into the buffer, and flips it for reading them
+     * */
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
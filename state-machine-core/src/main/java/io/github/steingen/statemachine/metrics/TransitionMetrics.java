@@ -0,0 +1,198 @@
+package io.github.steingen.statemachine.metrics;
+
+import io.github.steingen.statemachine.TransitionListener;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link TransitionListener} that counts transitions and guard rejections per (event, from state, to state),
+ * unmatched events per (event, from state), and optionally records guard latencies in power-of-two histograms per event.
+ * <p>
+ * The counters live in a single primitive array indexed by ordinal. It is split into stripes, and each thread
+ * increments the stripe picked from its id, so that threads rarely contend on the same counter or cache line.
+ * Recording never allocates, and only ever writes to the counters. Reading sums up the stripes, which is cheap
+ * enough for periodic export.
+ * <p>
+ * A stripe holds two counters per (event, from state, to state), one for the transitions and one for the rejections,
+ * so it grows with the square of the number of states: {@code 2 * E * S * S + E * S} counters for {@code E} events
+ * and {@code S} states, plus {@code 64 * E} when timing the guards. All the stripes together hold at most
+ * {@link #MAX_COUNTERS} counters, so fewer stripes are used for large enums, and enums that do not fit in a single
+ * stripe are rejected.
+ */
+public class TransitionMetrics<S extends Enum<S>, E extends Enum<E>> implements TransitionListener {
+    private static final int HISTOGRAM_BUCKETS = 64;
+    /**
+     * Two cache lines of longs between the stripes, to prevent false sharing
+     * */
+    private static final int STRIPE_PADDING = 16;
+    private static final int TRANSITIONS = 0;
+    private static final int REJECTIONS = 1;
+    /**
+     * The total number of counters over all stripes, which bounds the memory used by the stripes to 8MB
+     * */
+    public static final int MAX_COUNTERS = 1 << 20;
+
+    private final S[] states;
+    private final E[] events;
+    private final boolean timingGuards;
+    /**
+     * The number of (event, from state, to state) slots. The unmatched counters follow the rejection counters
+     * */
+    private final int slotCount;
+    private final int unmatchedOffset;
+    private final int histogramOffset;
+    private final int stripeLength;
+    private final int stripeMask;
+    private final AtomicLongArray counters;
+
+    public TransitionMetrics(Class<S> stateType, Class<E> eventType) {
+        this(stateType, eventType, false);
+    }
+
+    /**
+     * @param timingGuards - Whether to time the guard evaluations, which costs two {@link System#nanoTime()} calls per guard
+     * <p>
+     * @throws IllegalArgumentException if a single stripe of counters for the enums would exceed {@link #MAX_COUNTERS}
+     * */
+    public TransitionMetrics(Class<S> stateType, Class<E> eventType, boolean timingGuards) {
+        this.states = stateType.getEnumConstants();
+        this.events = eventType.getEnumConstants();
+        this.timingGuards = timingGuards;
+
+        long pairs = (long) events.length * states.length;
+        long counterCount = 2 * pairs * states.length + pairs + (timingGuards ? (long) events.length * HISTOGRAM_BUCKETS : 0)
+            + STRIPE_PADDING;
+        if (counterCount > MAX_COUNTERS) {
+            throw new IllegalArgumentException(events.length + " events and " + states.length + " states need "
+                + counterCount + " counters, which exceeds the maximum of " + MAX_COUNTERS);
+        }
+
+        this.slotCount = (int) pairs * states.length;
+        this.unmatchedOffset = 2 * slotCount;
+        this.histogramOffset = unmatchedOffset + (int) pairs;
+        this.stripeLength = (int) counterCount;
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        stripes = Math.min(stripes, Integer.highestOneBit(MAX_COUNTERS / stripeLength));
+        this.stripeMask = stripes - 1;
+        this.counters = new AtomicLongArray(stripes * stripeLength);
+    }
+
+    @Override
+    public void onTransition(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        counters.incrementAndGet(stripeOffset() + TRANSITIONS * slotCount + slot(eventOrdinal, fromOrdinal, toOrdinal));
+    }
+
+    @Override
+    public void onRejected(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        counters.incrementAndGet(stripeOffset() + REJECTIONS * slotCount + slot(eventOrdinal, fromOrdinal, toOrdinal));
+    }
+
+    @Override
+    public void onUnmatched(int eventOrdinal, int fromOrdinal) {
+        counters.incrementAndGet(stripeOffset() + unmatchedOffset + eventOrdinal * states.length + fromOrdinal);
+    }
+
+    @Override
+    public boolean isTimingGuards() {
+        return timingGuards;
+    }
+
+    @Override
+    public void onGuardEvaluated(int eventOrdinal, int fromOrdinal, long nanos) {
+        // Bucket b holds the latencies in [2^(b-1), 2^b)
+        int bucket = Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+
+        counters.incrementAndGet(stripeOffset() + histogramOffset + eventOrdinal * HISTOGRAM_BUCKETS + bucket);
+    }
+
+    public long transitionCount(E event, S from, S to) {
+        return sum(TRANSITIONS * slotCount + slot(event.ordinal(), from.ordinal(), to.ordinal()));
+    }
+
+    /**
+     * @return The number of transitions for the event from the state, to any state
+     * */
+    public long transitionCount(E event, S from) {
+        return sumTargets(TRANSITIONS * slotCount, event, from);
+    }
+
+    public long rejectionCount(E event, S from, S to) {
+        return sum(REJECTIONS * slotCount + slot(event.ordinal(), from.ordinal(), to.ordinal()));
+    }
+
+    /**
+     * @return The number of guard rejections for the event from the state, of transitions to any state
+     * */
+    public long rejectionCount(E event, S from) {
+        return sumTargets(REJECTIONS * slotCount, event, from);
+    }
+
+    public long unmatchedCount(E event, S from) {
+        return sum(unmatchedOffset + event.ordinal() * states.length + from.ordinal());
+    }
+
+    /**
+     * Reports every non-zero counter to the visitor
+     * */
+    public void forEach(TransitionMetricsVisitor<S, E> visitor) {
+        for (E event : events) {
+            for (S from : states) {
+                for (S to : states) {
+                    int slot = slot(event.ordinal(), from.ordinal(), to.ordinal());
+
+                    long transitions = sum(TRANSITIONS * slotCount + slot);
+                    if (transitions != 0) {
+                        visitor.transitions(event, from, to, transitions);
+                    }
+
+                    long rejections = sum(REJECTIONS * slotCount + slot);
+                    if (rejections != 0) {
+                        visitor.rejections(event, from, to, rejections);
+                    }
+                }
+
+                long unmatched = unmatchedCount(event, from);
+                if (unmatched != 0) {
+                    visitor.unmatched(event, from, unmatched);
+                }
+            }
+
+            if (timingGuards) {
+                for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+                    long count = sum(histogramOffset + event.ordinal() * HISTOGRAM_BUCKETS + bucket);
+                    if (count != 0) {
+                        visitor.guardLatency(event, bucket == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket, count);
+                    }
+                }
+            }
+        }
+    }
+
+    private int slot(int eventOrdinal, int fromOrdinal, int toOrdinal) {
+        return (eventOrdinal * states.length + fromOrdinal) * states.length + toOrdinal;
+    }
+
+    private long sumTargets(int offset, E event, S from) {
+        int first = offset + slot(event.ordinal(), from.ordinal(), 0);
+        long sum = 0;
+
+        for (int to = 0; to < states.length; to++) {
+            sum += sum(first + to);
+        }
+        return sum;
+    }
+
+    private int stripeOffset() {
+        return ((int) Thread.currentThread().getId() & stripeMask) * stripeLength;
+    }
+
+    private long sum(int index) {
+        long sum = 0;
+
+        for (int offset = 0; offset < counters.length(); offset += stripeLength) {
+            sum += counters.get(offset + index);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.steingen.statemachine.metrics;
+
+/**
+ * Receives the non-zero counters of a {@link TransitionMetrics} snapshot.
+ * Implement this to export the metrics to a metrics library such as Micrometer.
+ */
+public interface TransitionMetricsVisitor<S extends Enum<S>, E extends Enum<E>> {
+
+    /**
+     * The number of times the event moved an entity from one state to another
+     * */
+    default void transitions(E event, S from, S to, long count) {
+    }
+
+    /**
+     * The number of times the guard of the transition rejected the event
+     * */
+    default void rejections(E event, S from, S to, long count) {
+    }
+
+    /**
+     * The number of times the event was sent while no transition was defined for it from the state
+     * */
+    default void unmatched(E event, S from, long count) {
+    }
+
+    /**
+     * The number of guard evaluations for the event that took less than {@code upperBoundNanos},
+     * and at least half of it
+     * */
+    default void guardLatency(E event, long upperBoundNanos, long count) {
+    }
+}
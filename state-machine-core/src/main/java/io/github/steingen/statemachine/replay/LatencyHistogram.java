@@ -0,0 +1,91 @@
+package io.github.steingen.statemachine.replay;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds. Each power of two is split into {@value #SUB_BUCKETS} buckets,
+ * so a recorded value is reported with an error of at most about 3%, over the whole range of {@code long}.
+ * Recording is a few bit operations and an array increment, and never allocates.
+ * Instances are not thread-safe: each replay thread records into its own histogram, which are merged at the end.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int ROWS = 64 - SUB_BUCKET_BITS + 1;
+
+    private final long[] counts = new long[ROWS * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /**
+     * @param percentile - Between 0 and 100
+     * <p>
+     * @return The highest value that is equivalent to the value at the percentile, or 0 if nothing was recorded
+     * */
+    long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        if (0 == count) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Values below {@value #SUB_BUCKETS} are counted exactly, in row 0. A larger value is shifted so that its top
+     * {@value #SUB_BUCKET_BITS} + 1 bits remain, and the shift picks the row
+     * */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        int row = index / SUB_BUCKETS;
+        int column = index % SUB_BUCKETS;
+
+        if (0 == row) {
+            return column;
+        }
+
+        int shift = row - 1;
+        return ((long) (SUB_BUCKETS + column) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,327 @@
+package io.github.steingen.statemachine.replay;
+
+import io.github.steingen.statemachine.StateMachine;
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * Replays a {@link TrafficTrace} against state machines, to measure how a definition behaves under a real event mix
+ * rather than under a microbenchmark:
+ * <pre>{@code
+ * ReplayReport report = ReplayHarness.builder(trace, entityId -> definition.newInstance(entityId, OrderState.NEW))
+ *     .threads(4)
+ *     .warmupRuns(3)
+ *     .build()
+ *     .run();
+ * }</pre>
+ * The entities are split over the threads by their id, like the mailboxes of an
+ * {@link io.github.steingen.statemachine.EventDispatcher}, so the events of each entity are applied in order, by
+ * a single thread. Each run creates new state machines for every entity in the trace before the clock starts, and
+ * then applies the events with {@link StateMachine#sendEventForResult(Enum)}.
+ * <p>
+ * By default, events are replayed as fast as possible. With {@link Builder#pacing(double)}, each event is applied
+ * at its recorded time, scaled by the rate. The latency of a paced event is then measured from its scheduled time,
+ * not from when it was actually sent, so a stall also counts against the events that queued up behind it.
+ * <p>
+ * Allocations are measured per replay thread, where the JVM supports it. Since the machines are created before the
+ * clock starts, a replay against allocation-free state machines should report close to 0 bytes per event.
+ */
+public final class ReplayHarness<S extends Enum<S>, E extends Enum<E>> {
+    private static final long SPIN_THRESHOLD_NANOS = 50_000;
+
+    private final TrafficTrace<E> trace;
+    private final LongFunction<? extends StateMachine<S, E>> stateMachineFactory;
+    private final int threads;
+    private final double pacingRate;
+    private final int warmupRuns;
+    /**
+     * The indices of the events in the trace that each thread applies
+     * */
+    private final int[][] partitions;
+
+    private ReplayHarness(Builder<S, E> builder) {
+        this.trace = builder.trace;
+        this.stateMachineFactory = builder.stateMachineFactory;
+        this.threads = builder.threads;
+        this.pacingRate = builder.pacingRate;
+        this.warmupRuns = builder.warmupRuns;
+        this.partitions = partition(trace, threads);
+    }
+
+    /**
+     * @param stateMachineFactory - Creates the state machine of an entity, given its id. It is called once per entity
+     *                            and run, before the run starts
+     * */
+    public static <S extends Enum<S>, E extends Enum<E>> Builder<S, E> builder(
+        TrafficTrace<E> trace, LongFunction<? extends StateMachine<S, E>> stateMachineFactory) {
+        return new Builder<>(trace, stateMachineFactory);
+    }
+
+    private static int[][] partition(TrafficTrace<?> trace, int threads) {
+        int[] sizes = new int[threads];
+
+        for (int i = 0; i < trace.size(); i++) {
+            sizes[partitionOf(trace.entityId(i), threads)]++;
+        }
+
+        int[][] partitions = new int[threads][];
+        for (int thread = 0; thread < threads; thread++) {
+            partitions[thread] = new int[sizes[thread]];
+            sizes[thread] = 0;
+        }
+
+        for (int i = 0; i < trace.size(); i++) {
+            int thread = partitionOf(trace.entityId(i), threads);
+            partitions[thread][sizes[thread]++] = i;
+        }
+        return partitions;
+    }
+
+    private static int partitionOf(long entityId, int threads) {
+        return Math.floorMod(Long.hashCode(entityId), threads);
+    }
+
+    /**
+     * Runs the warmup runs, whose results are discarded, and then the measured run
+     * */
+    public ReplayReport run() {
+        for (int i = 0; i < warmupRuns; i++) {
+            runOnce();
+        }
+        return runOnce();
+    }
+
+    private ReplayReport runOnce() {
+        List<Worker> workers = new ArrayList<>(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int thread = 0; thread < threads; thread++) {
+            Worker worker = new Worker(partitions[thread], start, failure);
+            worker.thread = new Thread(worker, "replay-" + thread);
+            workers.add(worker);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+
+        long startNanos = System.nanoTime();
+        for (Worker worker : workers) {
+            worker.startNanos = startNanos;
+        }
+        start.countDown();
+
+        long endNanos = startNanos;
+        try {
+            for (Worker worker : workers) {
+                worker.thread.join();
+                endNanos = Math.max(endNanos, worker.endNanos);
+            }
+        } catch (InterruptedException e) {
+            for (Worker worker : workers) {
+                worker.thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying", e);
+        }
+
+        if (null != failure.get()) {
+            throw new IllegalStateException("The replay failed", failure.get());
+        }
+
+        long[] statusCounts = new long[TransitionResult.Status.values().length];
+        LatencyHistogram latencies = new LatencyHistogram();
+        long allocatedBytes = 0;
+
+        for (Worker worker : workers) {
+            for (int i = 0; i < statusCounts.length; i++) {
+                statusCounts[i] += worker.statusCounts[i];
+            }
+            latencies.merge(worker.latencies);
+            allocatedBytes = worker.allocatedBytes < 0 || allocatedBytes < 0 ? -1 : allocatedBytes + worker.allocatedBytes;
+        }
+        return new ReplayReport(threads, endNanos - startNanos, statusCounts, latencies, allocatedBytes);
+    }
+
+    /**
+     * Creates the state machines of the entities of a partition, and resolves the machine of each event up front,
+     * so that the replay loop does not look them up
+     * */
+    @SuppressWarnings("unchecked")
+    private StateMachine<S, E>[] machinesOf(int[] partition) {
+        Map<Long, StateMachine<S, E>> byEntity = new HashMap<>();
+        StateMachine<S, E>[] machines = new StateMachine[partition.length];
+
+        for (int j = 0; j < partition.length; j++) {
+            machines[j] = byEntity.computeIfAbsent(trace.entityId(partition[j]), stateMachineFactory::apply);
+        }
+        return machines;
+    }
+
+    private final class Worker implements Runnable {
+        private final int[] partition;
+        private final StateMachine<S, E>[] machines;
+        private final E[] events;
+        private final CountDownLatch start;
+        private final AtomicReference<Throwable> failure;
+        private final long[] statusCounts = new long[TransitionResult.Status.values().length];
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private Thread thread;
+        private volatile long startNanos;
+        private long endNanos;
+        private long allocatedBytes = -1;
+
+        Worker(int[] partition, CountDownLatch start, AtomicReference<Throwable> failure) {
+            this.partition = partition;
+            this.machines = machinesOf(partition);
+            this.events = trace.getEventType().getEnumConstants();
+            this.start = start;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+
+                long allocatedBefore = allocatedBytes();
+                replay(startNanos);
+                endNanos = System.nanoTime();
+                long allocatedAfter = allocatedBytes();
+
+                if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                    allocatedBytes = allocatedAfter - allocatedBefore;
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void replay(long runStartNanos) {
+            boolean paced = pacingRate > 0;
+
+            for (int j = 0; j < partition.length; j++) {
+                int index = partition[j];
+                long sentNanos;
+
+                if (paced) {
+                    sentNanos = runStartNanos + (long) (trace.timestampNanos(index) / pacingRate);
+                    waitUntil(sentNanos);
+                } else {
+                    sentNanos = System.nanoTime();
+                }
+
+                long result = machines[j].sendEventForResult(events[trace.eventOrdinal(index)]);
+
+                latencies.record(System.nanoTime() - sentNanos);
+                statusCounts[TransitionResult.status(result).ordinal()]++;
+            }
+        }
+    }
+
+    /**
+     * Parks until shortly before the deadline, and spins for the rest, since parking is not precise enough for
+     * sub-millisecond gaps
+     * */
+    private static void waitUntil(long deadlineNanos) {
+        while (true) {
+            long remaining = deadlineNanos - System.nanoTime();
+
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or -1 if the JVM does not measure it
+     * */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean threadBean && threadBean.isThreadAllocatedMemorySupported()
+            && threadBean.isThreadAllocatedMemoryEnabled()) {
+            return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+
+    public static final class Builder<S extends Enum<S>, E extends Enum<E>> {
+        private final TrafficTrace<E> trace;
+        private final LongFunction<? extends StateMachine<S, E>> stateMachineFactory;
+        private int threads = 1;
+        private double pacingRate;
+        private int warmupRuns;
+
+        private Builder(TrafficTrace<E> trace, LongFunction<? extends StateMachine<S, E>> stateMachineFactory) {
+            this.trace = Objects.requireNonNull(trace, "trace");
+            this.stateMachineFactory = Objects.requireNonNull(stateMachineFactory, "stateMachineFactory");
+        }
+
+        /**
+         * Sets the number of threads the entities are split over. Defaults to 1
+         * */
+        public Builder<S, E> threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Replays the events at their recorded times, sped up by the rate, e.g. 1 for the original pacing, or 10 to
+         * replay a 10 minute trace in 1 minute
+         * */
+        public Builder<S, E> pacing(double rate) {
+            if (!(rate > 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("The rate must be positive");
+            }
+            this.pacingRate = rate;
+            return this;
+        }
+
+        /**
+         * Replays the events as fast as possible, which is the default
+         * */
+        public Builder<S, E> maxSpeed() {
+            this.pacingRate = 0;
+            return this;
+        }
+
+        /**
+         * Sets the number of runs before the measured run, to let the JIT compile the replayed code. Defaults to 0
+         * */
+        public Builder<S, E> warmupRuns(int warmupRuns) {
+            if (warmupRuns < 0) {
+                throw new IllegalArgumentException("warmupRuns must not be negative");
+            }
+            this.warmupRuns = warmupRuns;
+            return this;
+        }
+
+        public ReplayHarness<S, E> build() {
+            return new ReplayHarness<>(this);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.steingen.statemachine.replay;
+
+import io.github.steingen.statemachine.TransitionResult;
+
+/**
+ * The outcome of a {@link ReplayHarness} run: throughput, latency percentiles, the share of events that guards
+ * rejected or no transition matched, and the bytes allocated per event by the replay threads.
+ */
+public final class ReplayReport {
+    private final int threads;
+    private final long eventCount;
+    private final long elapsedNanos;
+    private final long[] statusCounts;
+    private final LatencyHistogram latencies;
+    private final long allocatedBytes;
+
+    ReplayReport(int threads, long elapsedNanos, long[] statusCounts, LatencyHistogram latencies, long allocatedBytes) {
+        this.threads = threads;
+        this.eventCount = latencies.count();
+        this.elapsedNanos = elapsedNanos;
+        this.statusCounts = statusCounts;
+        this.latencies = latencies;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public long eventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return The time from the start of the replay until the last thread finished
+     * */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The number of events replayed per second
+     * */
+    public double throughput() {
+        return 0 == elapsedNanos ? 0 : eventCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return The number of events with the given outcome (see {@link TransitionResult#status(long)})
+     * */
+    public long count(TransitionResult.Status status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * @return The share of the events that a guard rejected, between 0 and 1
+     * */
+    public double rejectionRate() {
+        return rate(TransitionResult.Status.REJECTED);
+    }
+
+    /**
+     * @return The share of the events for which no transition was defined from the current state, between 0 and 1
+     * */
+    public double unmatchedRate() {
+        return rate(TransitionResult.Status.UNMATCHED);
+    }
+
+    private double rate(TransitionResult.Status status) {
+        return 0 == eventCount ? 0 : (double) count(status) / eventCount;
+    }
+
+    /**
+     * @param percentile - Between 0 and 100, e.g. 99.9
+     * <p>
+     * @return The latency of an event at the percentile, within about 3%
+     * */
+    public long latencyNanos(double percentile) {
+        return latencies.valueAtPercentile(percentile);
+    }
+
+    public long maxLatencyNanos() {
+        return latencies.max();
+    }
+
+    /**
+     * @return The bytes allocated by the replay threads per event, or {@link Double#NaN} if the JVM does not measure
+     * allocations per thread
+     * */
+    public double allocatedBytesPerEvent() {
+        return allocatedBytes < 0 || 0 == eventCount ? Double.NaN : (double) allocatedBytes / eventCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReplayReport{events=%d, threads=%d, throughput=%.0f/s, p50=%dns, p99=%dns, p99.9=%dns, max=%dns, "
+                + "rejected=%.4f, unmatched=%.4f, allocated=%.2fB/event}",
+            eventCount, threads, throughput(), latencyNanos(50), latencyNanos(99), latencyNanos(99.9), maxLatencyNanos(),
+            rejectionRate(), unmatchedRate(), allocatedBytesPerEvent());
+    }
+}
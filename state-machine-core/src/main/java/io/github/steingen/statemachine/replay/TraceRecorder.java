@@ -0,0 +1,140 @@
+package io.github.steingen.statemachine.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a stream of events as a compact binary trace, e.g. a sample of production traffic, so that it can be
+ * replayed later with a {@link ReplayHarness}. The trace is read back as a {@link TrafficTrace}.
+ * <p>
+ * The layout is:
+ * <pre>
+ * int magic, int version, short event count, per event: short length, UTF-8 name
+ * per record: long entity id, short event ordinal, int microseconds since the previous record
+ * </pre>
+ * The event names are recorded so that the trace can be replayed against a later version of the event enum,
+ * whose ordinals may differ. Gaps longer than {@link Integer#MAX_VALUE} microseconds (about 35 minutes) are shortened.
+ * <p>
+ * Records are buffered, and {@link #record(long, Enum)} may be called by concurrent threads.
+ */
+public final class TraceRecorder<E extends Enum<E>> implements Closeable {
+    static final int MAGIC = 0x534D5452;
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 14;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long firstNanos = Long.MIN_VALUE;
+    private long lastMicros;
+    private boolean closed;
+
+    private TraceRecorder(WritableByteChannel channel, Class<E> eventType) throws IOException {
+        this.channel = channel;
+
+        E[] events = eventType.getEnumConstants();
+        buffer.putInt(MAGIC).putInt(VERSION).putShort((short) events.length);
+
+        for (E event : events) {
+            byte[] name = event.name().getBytes(StandardCharsets.UTF_8);
+
+            if (buffer.remaining() < Short.BYTES + name.length) {
+                flushBuffer();
+            }
+            buffer.putShort((short) name.length).put(name);
+        }
+    }
+
+    /**
+     * Records into the channel, which is closed with the recorder
+     * */
+    public static <E extends Enum<E>> TraceRecorder<E> open(WritableByteChannel channel, Class<E> eventType) throws IOException {
+        return new TraceRecorder<>(channel, eventType);
+    }
+
+    /**
+     * Records into a new file, or truncates an existing one
+     * */
+    public static <E extends Enum<E>> TraceRecorder<E> open(Path path, Class<E> eventType) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        return new TraceRecorder<>(channel, eventType);
+    }
+
+    /**
+     * Records the event at the current time
+     * */
+    public synchronized void record(long entityId, E event) {
+        record(entityId, event.ordinal(), System.nanoTime());
+    }
+
+    /**
+     * Records an event at the given time, e.g. taken from a log. The timestamps must not decrease
+     * <p>
+     * @param timestampNanos - A {@link System#nanoTime()}-like timestamp, only the differences between timestamps are recorded
+     * */
+    public synchronized void record(long entityId, int eventOrdinal, long timestampNanos) {
+        if (closed) {
+            throw new IllegalStateException("The recorder is closed");
+        }
+        if (Long.MIN_VALUE == firstNanos) {
+            firstNanos = timestampNanos;
+        }
+
+        long micros = (timestampNanos - firstNanos) / 1000;
+        if (micros < lastMicros) {
+            throw new IllegalArgumentException("The timestamps must not decrease");
+        }
+
+        if (buffer.remaining() < RECORD_SIZE) {
+            try {
+                flushBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        buffer.putLong(entityId)
+            .putShort((short) eventOrdinal)
+            .putInt((int) Math.min(micros - lastMicros, Integer.MAX_VALUE));
+        lastMicros = micros;
+    }
+
+    /**
+     * Writes the buffered records to the channel
+     * */
+    public synchronized void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
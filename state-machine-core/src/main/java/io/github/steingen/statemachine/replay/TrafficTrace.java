@@ -0,0 +1,222 @@
+package io.github.steingen.statemachine.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A trace of events held in memory column-wise, with one entity id, event ordinal and timestamp per event, in the
+ * order they were recorded. It is read from a file written by a {@link TraceRecorder}, or built directly, e.g. to
+ * replay a synthetic event mix.
+ * <p>
+ * Events are matched to the given event enum by name, so a trace recorded with an older version of the enum can
+ * still be replayed as long as none of its events were removed. Instances are immutable.
+ */
+public final class TrafficTrace<E extends Enum<E>> {
+    private final Class<E> eventType;
+    private final E[] events;
+    private final long[] entityIds;
+    private final int[] eventOrdinals;
+    private final long[] timestampsNanos;
+    private final int size;
+
+    private TrafficTrace(Class<E> eventType, long[] entityIds, int[] eventOrdinals, long[] timestampsNanos, int size) {
+        this.eventType = eventType;
+        this.events = eventType.getEnumConstants();
+        this.entityIds = entityIds;
+        this.eventOrdinals = eventOrdinals;
+        this.timestampsNanos = timestampsNanos;
+        this.size = size;
+    }
+
+    public static <E extends Enum<E>> Builder<E> builder(Class<E> eventType) {
+        return new Builder<>(eventType);
+    }
+
+    public static <E extends Enum<E>> TrafficTrace<E> read(Path path, Class<E> eventType) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, eventType);
+        }
+    }
+
+    /**
+     * Reads a whole trace from the channel
+     * <p>
+     * @throws IOException if the channel does not hold a trace, or the trace has events that the enum does not have
+     * @throws EOFException if the trace ends in the middle of a record
+     * */
+    public static <E extends Enum<E>> TrafficTrace<E> read(ReadableByteChannel channel, Class<E> eventType) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        readFully(channel, buffer, 10);
+
+        if (buffer.getInt() != TraceRecorder.MAGIC) {
+            throw new IOException("Not a traffic trace");
+        }
+        int version = buffer.getInt();
+        if (version != TraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version: " + version);
+        }
+
+        int[] ordinalMapping = readEventNames(channel, buffer, buffer.getShort() & 0xFFFF, eventType);
+        Builder<E> builder = new Builder<>(eventType);
+        long timestampMicros = 0;
+
+        buffer.clear();
+        while (true) {
+            int read = channel.read(buffer);
+            buffer.flip();
+
+            while (buffer.remaining() >= TraceRecorder.RECORD_SIZE) {
+                long entityId = buffer.getLong();
+                int recordedOrdinal = buffer.getShort() & 0xFFFF;
+                timestampMicros += buffer.getInt();
+
+                if (recordedOrdinal >= ordinalMapping.length) {
+                    throw new IOException("Invalid event ordinal in the trace: " + recordedOrdinal);
+                }
+                builder.add(entityId, ordinalMapping[recordedOrdinal], timestampMicros * 1000);
+            }
+
+            if (read < 0) {
+                if (buffer.hasRemaining()) {
+                    throw new EOFException("The trace is truncated");
+                }
+                break;
+            }
+            buffer.compact();
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The ordinal in the given enum of each recorded event ordinal
+     * */
+    private static <E extends Enum<E>> int[] readEventNames(ReadableByteChannel channel, ByteBuffer buffer,
+                                                            int eventCount, Class<E> eventType) throws IOException {
+        int[] mapping = new int[eventCount];
+
+        for (int ordinal = 0; ordinal < eventCount; ordinal++) {
+            readFully(channel, buffer, Short.BYTES);
+            int length = buffer.getShort() & 0xFFFF;
+
+            readFully(channel, buffer, length);
+            String name = StandardCharsets.UTF_8.decode(buffer).toString();
+
+            try {
+                mapping[ordinal] = Enum.valueOf(eventType, name).ordinal();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("The trace has the event " + name + ", which " + eventType.getName() + " does not have");
+            }
+        }
+        return mapping;
+    }
+
+    public Class<E> getEventType() {
+        return eventType;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long entityId(int index) {
+        return entityIds[index];
+    }
+
+    public int eventOrdinal(int index) {
+        return eventOrdinals[index];
+    }
+
+    public E event(int index) {
+        return events[eventOrdinals[index]];
+    }
+
+    /**
+     * @return The time of the event, relative to the first event of the trace
+     * */
+    public long timestampNanos(int index) {
+        return timestampsNanos[index];
+    }
+
+    /**
+     * @return The time between the first and the last event
+     * */
+    public long durationNanos() {
+        return 0 == size ? 0 : timestampsNanos[size - 1];
+    }
+
+    /**
+     * Writes the trace in the format of a {@link TraceRecorder}, e.g. to keep a synthetic trace next to the recorded ones
+     * */
+    public void write(TraceRecorder<E> recorder) {
+        for (int i = 0; i < size; i++) {
+            recorder.record(entityIds[i], eventOrdinals[i], timestampsNanos[i]);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The trace is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    public static final class Builder<E extends Enum<E>> {
+        private final Class<E> eventType;
+        private final int eventCount;
+        private long[] entityIds = new long[1024];
+        private int[] eventOrdinals = new int[1024];
+        private long[] timestampsNanos = new long[1024];
+        private int size;
+
+        private Builder(Class<E> eventType) {
+            this.eventType = eventType;
+            this.eventCount = eventType.getEnumConstants().length;
+        }
+
+        public Builder<E> add(long entityId, E event, long timestampNanos) {
+            return add(entityId, event.ordinal(), timestampNanos);
+        }
+
+        /**
+         * Adds an event. The timestamps are relative to the first event, and must not decrease
+         * */
+        public Builder<E> add(long entityId, int eventOrdinal, long timestampNanos) {
+            if (eventOrdinal < 0 || eventOrdinal >= eventCount) {
+                throw new IllegalArgumentException("Invalid event ordinal: " + eventOrdinal);
+            }
+            if (size > 0 && timestampNanos < timestampsNanos[size - 1]) {
+                throw new IllegalArgumentException("The timestamps must not decrease");
+            }
+
+            if (size == entityIds.length) {
+                int capacity = size * 2;
+                entityIds = Arrays.copyOf(entityIds, capacity);
+                eventOrdinals = Arrays.copyOf(eventOrdinals, capacity);
+                timestampsNanos = Arrays.copyOf(timestampsNanos, capacity);
+            }
+
+            entityIds[size] = entityId;
+            eventOrdinals[size] = eventOrdinal;
+            timestampsNanos[size] = timestampNanos;
+            size++;
+
+            return this;
+        }
+
+        public TrafficTrace<E> build() {
+            return new TrafficTrace<>(eventType, Arrays.copyOf(entityIds, size), Arrays.copyOf(eventOrdinals, size),
+                Arrays.copyOf(timestampsNanos, size), size);
+        }
+    }
+}
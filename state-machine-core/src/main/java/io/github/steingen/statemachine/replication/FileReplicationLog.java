@@ -0,0 +1,273 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.journal.EntityStateConsumer;
+import io.github.steingen.statemachine.journal.EntityStateSource;
+import io.github.steingen.statemachine.journal.StateSnapshotCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ReplicationLog} in a directory of the local filesystem, which survives a restart of the process.
+ * Entries are appended to a log file as fixed-size records of {@value #RECORD_SIZE} bytes:
+ * {@code long entity id, int event ordinal, int marker}. A record that was only partly written when the process
+ * died is dropped when the log is opened again.
+ * <p>
+ * By default each append is forced to the storage device before it returns, so appending entries in batches
+ * amortizes the cost of the force over the whole batch.
+ * Snapshots are written with a {@link StateSnapshotCodec}. Taking one starts a new log file with the entries that
+ * follow it, and deletes the previous log file and snapshot.
+ */
+public class FileReplicationLog implements ReplicationLog {
+    public static final int RECORD_SIZE = 16;
+
+    private static final int RECORD_MARKER = 0x524C4F47;
+    private static final int RECORDS_PER_READ = 4096;
+    private static final String LOG_PREFIX = "log-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final StateSnapshotCodec codec;
+    private final boolean forceOnAppend;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(RECORDS_PER_READ * RECORD_SIZE);
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RECORDS_PER_READ * RECORD_SIZE);
+    private FileChannel channel;
+    private long startIndex;
+    private long endIndex;
+
+    public FileReplicationLog(Path directory, StateSnapshotCodec codec) throws IOException {
+        this(directory, codec, true);
+    }
+
+    /**
+     * @param forceOnAppend - Whether each append is forced to the storage device before it returns
+     * */
+    public FileReplicationLog(Path directory, StateSnapshotCodec codec, boolean forceOnAppend) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.codec = codec;
+        this.forceOnAppend = forceOnAppend;
+
+        List<Long> logs = listIndices(LOG_PREFIX, LOG_SUFFIX);
+        this.startIndex = logs.isEmpty() ? 0 : logs.get(logs.size() - 1);
+        // A snapshot was interrupted after its log file was written, so the older log files are fully covered
+        for (long index : logs) {
+            if (index != startIndex) {
+                Files.deleteIfExists(logFile(index));
+            }
+        }
+
+        this.channel = FileChannel.open(logFile(startIndex), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.endIndex = startIndex + recoverRecordCount();
+    }
+
+    @Override
+    public synchronized long append(long entityId, int eventOrdinal) throws IOException {
+        writeBuffer.clear();
+        putRecord(entityId, eventOrdinal);
+        write();
+
+        return endIndex++;
+    }
+
+    @Override
+    public synchronized long append(long[] entityIds, int[] eventOrdinals, int length) throws IOException {
+        if (writeBuffer.capacity() < length * RECORD_SIZE) {
+            writeBuffer = ByteBuffer.allocateDirect(length * RECORD_SIZE);
+        }
+
+        writeBuffer.clear();
+        for (int i = 0; i < length; i++) {
+            putRecord(entityIds[i], eventOrdinals[i]);
+        }
+        write();
+
+        endIndex += length;
+        return endIndex - 1;
+    }
+
+    @Override
+    public synchronized long startIndex() {
+        return startIndex;
+    }
+
+    @Override
+    public synchronized long endIndex() {
+        return endIndex;
+    }
+
+    @Override
+    public synchronized long read(long fromIndex, int maxEntries, LogEntryVisitor visitor) throws IOException {
+        if (fromIndex < startIndex) {
+            throw new IllegalArgumentException("Entry " + fromIndex + " was dropped after a snapshot at " + startIndex);
+        }
+
+        long toIndex = Math.min(endIndex, fromIndex + maxEntries);
+        long index = fromIndex;
+
+        while (index < toIndex) {
+            int count = (int) Math.min(RECORDS_PER_READ, toIndex - index);
+
+            readBuffer.clear().limit(count * RECORD_SIZE);
+            long position = (index - startIndex) * RECORD_SIZE;
+            while (readBuffer.hasRemaining()) {
+                if (channel.read(readBuffer, position + readBuffer.position()) < 0) {
+                    throw new IOException("The log file ends before entry " + index);
+                }
+            }
+            readBuffer.flip();
+
+            for (int i = 0; i < count; i++, index++) {
+                long entityId = readBuffer.getLong();
+                int eventOrdinal = readBuffer.getInt();
+                readBuffer.getInt();
+
+                visitor.visit(index, entityId, eventOrdinal);
+            }
+        }
+        return Math.max(fromIndex, toIndex);
+    }
+
+    @Override
+    public synchronized void snapshot(long index, EntityStateSource source) throws IOException {
+        if (index < startIndex || index > endIndex) {
+            throw new IllegalArgumentException("Cannot take a snapshot at " + index + ", the log holds entries "
+                + startIndex + " to " + endIndex);
+        }
+
+        Path snapshotFile = snapshotFile(index);
+        Path tempSnapshot = directory.resolve(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(tempSnapshot, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            codec.write(source, snapshotChannel);
+            snapshotChannel.force(true);
+        }
+        Files.move(tempSnapshot, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (index == startIndex) {
+            deleteSnapshotsBefore(index);
+            return;
+        }
+
+        // Start a new log file with the entries that follow the snapshot
+        Path logFile = logFile(index);
+        Path tempLog = directory.resolve(logFile.getFileName() + ".tmp");
+        try (FileChannel logChannel = FileChannel.open(tempLog, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = (index - startIndex) * RECORD_SIZE;
+            long length = (endIndex - index) * RECORD_SIZE;
+
+            for (long copied = 0; copied < length; ) {
+                copied += channel.transferTo(position + copied, length - copied, logChannel);
+            }
+            logChannel.force(true);
+        }
+        Files.move(tempLog, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel.close();
+        Files.deleteIfExists(logFile(startIndex));
+        deleteSnapshotsBefore(index);
+
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        startIndex = index;
+    }
+
+    @Override
+    public synchronized long restoreSnapshot(EntityStateConsumer consumer) throws IOException {
+        List<Long> snapshots = listIndices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+
+        long index = snapshots.get(snapshots.size() - 1);
+        try (FileChannel snapshotChannel = FileChannel.open(snapshotFile(index), StandardOpenOption.READ)) {
+            codec.read(snapshotChannel, consumer);
+        }
+        return index;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(true);
+        channel.close();
+    }
+
+    private void putRecord(long entityId, int eventOrdinal) {
+        writeBuffer.putLong(entityId).putInt(eventOrdinal).putInt(RECORD_MARKER);
+    }
+
+    private void write() throws IOException {
+        long position = (endIndex - startIndex) * RECORD_SIZE;
+
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            position += channel.write(writeBuffer, position);
+        }
+        if (forceOnAppend) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Counts the complete records, and truncates whatever follows them
+     * */
+    private long recoverRecordCount() throws IOException {
+        long count = channel.size() / RECORD_SIZE;
+        ByteBuffer marker = ByteBuffer.allocate(Integer.BYTES);
+
+        while (count > 0) {
+            marker.clear();
+            channel.read(marker, count * RECORD_SIZE - Integer.BYTES);
+            if (marker.flip().remaining() == Integer.BYTES && marker.getInt() == RECORD_MARKER) {
+                break;
+            }
+            count--;
+        }
+
+        channel.truncate(count * RECORD_SIZE);
+        return count;
+    }
+
+    private void deleteSnapshotsBefore(long index) throws IOException {
+        for (long snapshot : listIndices(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (snapshot < index) {
+                Files.deleteIfExists(snapshotFile(snapshot));
+            }
+        }
+    }
+
+    private Path logFile(long index) {
+        return directory.resolve(fileName(LOG_PREFIX, index, LOG_SUFFIX));
+    }
+
+    private Path snapshotFile(long index) {
+        return directory.resolve(fileName(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX));
+    }
+
+    private List<Long> listIndices(String prefix, String suffix) throws IOException {
+        List<Long> indices = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .forEach(name -> indices.add(Long.parseLong(name, prefix.length(), name.length() - suffix.length(), 10)));
+        }
+        indices.sort(null);
+
+        return indices;
+    }
+
+    private static String fileName(String prefix, long index, String suffix) {
+        return String.format("%s%019d%s", prefix, index, suffix);
+    }
+}
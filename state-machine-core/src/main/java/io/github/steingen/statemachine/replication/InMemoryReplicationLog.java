@@ -0,0 +1,119 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.journal.EntityStateConsumer;
+import io.github.steingen.statemachine.journal.EntityStateSource;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ReplicationLog} on the heap, for tests and for replicas in the same process.
+ * Entries are held in parallel primitive arrays, so appending does not allocate an object per entry.
+ */
+public class InMemoryReplicationLog implements ReplicationLog {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] entityIds = new long[INITIAL_CAPACITY];
+    private int[] eventOrdinals = new int[INITIAL_CAPACITY];
+    // The index of the entry at position 0 of the arrays
+    private long startIndex;
+    private int size;
+
+    private long[] snapshotEntityIds = new long[0];
+    private int[] snapshotStateOrdinals = new int[0];
+    private int snapshotSize;
+    private long snapshotIndex;
+
+    @Override
+    public synchronized long append(long entityId, int eventOrdinal) {
+        ensureCapacity(size + 1);
+
+        entityIds[size] = entityId;
+        eventOrdinals[size] = eventOrdinal;
+        size++;
+
+        return startIndex + size - 1;
+    }
+
+    @Override
+    public synchronized long append(long[] entityIds, int[] eventOrdinals, int length) {
+        ensureCapacity(size + length);
+
+        System.arraycopy(entityIds, 0, this.entityIds, size, length);
+        System.arraycopy(eventOrdinals, 0, this.eventOrdinals, size, length);
+        size += length;
+
+        return startIndex + size - 1;
+    }
+
+    @Override
+    public synchronized long startIndex() {
+        return startIndex;
+    }
+
+    @Override
+    public synchronized long endIndex() {
+        return startIndex + size;
+    }
+
+    @Override
+    public synchronized long read(long fromIndex, int maxEntries, LogEntryVisitor visitor) {
+        if (fromIndex < startIndex) {
+            throw new IllegalArgumentException("Entry " + fromIndex + " was dropped after a snapshot at " + startIndex);
+        }
+
+        long toIndex = Math.min(startIndex + size, fromIndex + maxEntries);
+        for (long index = fromIndex; index < toIndex; index++) {
+            int position = (int) (index - startIndex);
+            visitor.visit(index, entityIds[position], eventOrdinals[position]);
+        }
+        return Math.max(fromIndex, toIndex);
+    }
+
+    @Override
+    public synchronized void snapshot(long index, EntityStateSource source) {
+        if (index < snapshotIndex || index > startIndex + size) {
+            throw new IllegalArgumentException("Cannot take a snapshot at " + index + ", the log holds entries "
+                + startIndex + " to " + (startIndex + size));
+        }
+
+        snapshotSize = 0;
+        source.forEachState((entityId, stateOrdinal) -> {
+            if (snapshotSize == snapshotEntityIds.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, snapshotSize * 2);
+                snapshotEntityIds = Arrays.copyOf(snapshotEntityIds, capacity);
+                snapshotStateOrdinals = Arrays.copyOf(snapshotStateOrdinals, capacity);
+            }
+            snapshotEntityIds[snapshotSize] = entityId;
+            snapshotStateOrdinals[snapshotSize] = stateOrdinal;
+            snapshotSize++;
+        });
+        snapshotIndex = index;
+
+        // Drop the entries covered by the snapshot
+        int dropped = (int) (index - startIndex);
+        System.arraycopy(entityIds, dropped, entityIds, 0, size - dropped);
+        System.arraycopy(eventOrdinals, dropped, eventOrdinals, 0, size - dropped);
+        size -= dropped;
+        startIndex = index;
+    }
+
+    @Override
+    public synchronized long restoreSnapshot(EntityStateConsumer consumer) {
+        for (int i = 0; i < snapshotSize; i++) {
+            consumer.accept(snapshotEntityIds[i], snapshotStateOrdinals[i]);
+        }
+        return snapshotIndex;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > entityIds.length) {
+            int newCapacity = Math.max(capacity, entityIds.length * 2);
+            entityIds = Arrays.copyOf(entityIds, newCapacity);
+            eventOrdinals = Arrays.copyOf(eventOrdinals, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.steingen.statemachine.replication;
+
+/**
+ * Receives the entries of a {@link ReplicationLog}, without boxing any of their fields.
+ */
+@FunctionalInterface
+public interface LogEntryVisitor {
+    void visit(long index, long entityId, int eventOrdinal);
+}
@@ -0,0 +1,62 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.StateMachine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * One entity of a {@link StateMachineReplica}, behind the {@link StateMachine} interface.
+ * {@link #getCurrentState()} is a linearizable read, and events go through the replication log.
+ */
+public class ReplicatedStateMachine<S extends Enum<S>, E extends Enum<E>> implements StateMachine<S, E> {
+    private final StateMachineReplica<S, E> replica;
+    private final long entityId;
+
+    ReplicatedStateMachine(StateMachineReplica<S, E> replica, long entityId) {
+        this.replica = replica;
+        this.entityId = entityId;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * @throws UncheckedIOException if the replica could not catch up with the log
+     * */
+    @Override
+    public S getCurrentState() {
+        try {
+            return replica.getState(entityId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isValidTransition(S newState) {
+        try {
+            return replica.isValidTransition(entityId, newState);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendEvent(E event) {
+        sendEventForResult(event);
+    }
+
+    /**
+     * @throws UncheckedIOException if the event could not be appended to the log, or the log could not be applied
+     * */
+    @Override
+    public long sendEventForResult(E event) {
+        try {
+            return replica.sendEvent(entityId, event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.journal.EntityStateConsumer;
+import io.github.steingen.statemachine.journal.EntityStateSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A totally ordered log of events, shared by the {@link StateMachineReplica}s of all the nodes. The log, not the
+ * order in which events reach a node, decides the order in which they are applied, so every replica that has applied
+ * the log up to the same index holds the same states.
+ * <p>
+ * Each entry is {@code (entity id, event ordinal)} and is identified by its index, starting at 0.
+ * A snapshot of the states at some index lets the log drop the entries before it, and lets a replica that has
+ * fallen behind them catch up.
+ * <p>
+ * Implementations must be thread safe. {@link InMemoryReplicationLog} and {@link FileReplicationLog} are
+ * reference implementations for a single process; a multi-node deployment plugs in a log backed by a consensus
+ * protocol or a replicated broker.
+ */
+public interface ReplicationLog extends Closeable {
+
+    /**
+     * Appends an entry
+     * <p>
+     * @return The index of the entry
+     * */
+    long append(long entityId, int eventOrdinal) throws IOException;
+
+    /**
+     * Appends the first {@code length} entries of the arrays, in order and as a single write
+     * <p>
+     * @return The index of the last entry
+     * */
+    long append(long[] entityIds, int[] eventOrdinals, int length) throws IOException;
+
+    /**
+     * @return The index of the first entry that is still held. The entries before it are covered by the snapshot
+     * */
+    long startIndex();
+
+    /**
+     * @return The index that the next entry will get, i.e. the number of entries ever appended
+     * */
+    long endIndex();
+
+    /**
+     * Visits up to {@code maxEntries} entries, starting at {@code fromIndex}
+     * <p>
+     * @return The index after the last visited entry
+     * @throws IllegalArgumentException if the entry at {@code fromIndex} has been dropped after a snapshot
+     * */
+    long read(long fromIndex, int maxEntries, LogEntryVisitor visitor) throws IOException;
+
+    /**
+     * Stores the states after the first {@code index} entries were applied, and drops those entries.
+     * The source must not change while it is written
+     * */
+    void snapshot(long index, EntityStateSource source) throws IOException;
+
+    /**
+     * Streams the latest snapshot
+     * <p>
+     * @return The index the snapshot was taken at, i.e. the index of the first entry to apply after it,
+     * or 0 if there is no snapshot
+     * */
+    long restoreSnapshot(EntityStateConsumer consumer) throws IOException;
+}
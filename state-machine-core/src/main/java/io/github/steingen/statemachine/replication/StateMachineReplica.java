@@ -0,0 +1,184 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The states of a {@link StateStore}, kept in sync with the other nodes through a shared {@link ReplicationLog}.
+ * Events are not applied when they are sent: they are appended to the log, and every replica applies the log in
+ * order. Entity ids are the indices of the store.
+ * <p>
+ * For the replicas to agree, they must start from the same initial states and their definitions must be
+ * deterministic, i.e. their guards may only depend on the from and to states.
+ * <p>
+ * Reads come in two flavours:
+ * <ul>
+ *     <li>{@link #getState(long)} first applies every entry appended before it was called, so it is linearizable:
+ *     it reflects every event whose {@code sendEvent(...)} returned before the read started, on any node</li>
+ *     <li>{@link #getLocalState(long)} returns the state as of the last applied entry, without touching the log,
+ *     which is what spreads reads over many replicas</li>
+ * </ul>
+ * A replica that has fallen behind the entries dropped after a snapshot catches up from the snapshot. If another
+ * replica takes a snapshot between appending the events of {@code sendEvent(...)} and applying them, the events
+ * are only applied through the snapshot, so their outcome is reported as {@link TransitionResult.Status#UNKNOWN}.
+ * All the methods are synchronized.
+ */
+public class StateMachineReplica<S extends Enum<S>, E extends Enum<E>> {
+    private static final int ENTRIES_PER_READ = 4096;
+    /**
+     * Marks the result slots of the entries that have not been applied, which is not a valid result
+     * */
+    private static final long NOT_APPLIED = -1L;
+
+    private final StateStore<S, E> store;
+    private final StateMachineDefinition<S, E> definition;
+    private final ReplicationLog log;
+    private final LogEntryVisitor applier = this::apply;
+    private final long[] singleResult = new long[1];
+    // The index of the next entry to apply
+    private long appliedIndex;
+    // The entries whose results are reported to the current caller
+    private long resultsFrom = -1;
+    private long[] results;
+
+    public StateMachineReplica(StateStore<S, E> store, ReplicationLog log) {
+        this.store = store;
+        this.definition = store.getDefinition();
+        this.log = log;
+    }
+
+    /**
+     * Appends the event to the log and applies the log up to it
+     * <p>
+     * @return The outcome of the event, encoded as described in {@link TransitionResult}
+     * */
+    public synchronized long sendEvent(long entityId, E event) throws IOException {
+        long index = log.append(entityId, event.ordinal());
+
+        singleResult[0] = NOT_APPLIED;
+        applyTo(index, 1, singleResult);
+        return NOT_APPLIED == singleResult[0] ? unknown(entityId, event.ordinal()) : singleResult[0];
+    }
+
+    /**
+     * Appends the first {@code length} events to the log as a single batch, and applies the log up to them.
+     * The outcome of each event is stored at the same position in {@code results}
+     * */
+    public synchronized void sendEvents(long[] entityIds, E[] events, int length, long[] results) throws IOException {
+        if (0 == length) {
+            return;
+        }
+
+        int[] eventOrdinals = new int[length];
+        for (int i = 0; i < length; i++) {
+            eventOrdinals[i] = events[i].ordinal();
+        }
+
+        long lastIndex = log.append(entityIds, eventOrdinals, length);
+
+        Arrays.fill(results, 0, length, NOT_APPLIED);
+        applyTo(lastIndex - length + 1, length, results);
+
+        for (int i = 0; i < length; i++) {
+            if (NOT_APPLIED == results[i]) {
+                results[i] = unknown(entityIds[i], eventOrdinals[i]);
+            }
+        }
+    }
+
+    /**
+     * Applies every entry appended to the log before this call
+     * <p>
+     * @return The index of the next entry to apply
+     * */
+    public synchronized long sync() throws IOException {
+        catchUp(log.endIndex());
+        return appliedIndex;
+    }
+
+    /**
+     * A linearizable read of the state of the entity
+     * */
+    public synchronized S getState(long entityId) throws IOException {
+        sync();
+        return store.getState(entityId);
+    }
+
+    /**
+     * A read of the state of the entity as of the last applied entry, which may lag behind the other replicas
+     * */
+    public synchronized S getLocalState(long entityId) {
+        return store.getState(entityId);
+    }
+
+    public synchronized boolean isValidTransition(long entityId, S newState) throws IOException {
+        sync();
+        return store.isValidTransition(entityId, newState);
+    }
+
+    /**
+     * @return The index of the next entry to apply, i.e. the number of entries this replica has applied
+     * */
+    public synchronized long appliedIndex() {
+        return appliedIndex;
+    }
+
+    /**
+     * Catches up with the log, and stores a snapshot of the states in it, so that the log can drop the entries
+     * before it. Only one replica needs to take snapshots
+     * */
+    public synchronized void snapshot() throws IOException {
+        sync();
+        log.snapshot(appliedIndex, store);
+    }
+
+    /**
+     * @return A {@link io.github.steingen.statemachine.StateMachine} view of one entity of this replica
+     * */
+    public ReplicatedStateMachine<S, E> forEntity(long entityId) {
+        return new ReplicatedStateMachine<>(this, entityId);
+    }
+
+    private void applyTo(long firstIndex, int length, long[] results) throws IOException {
+        this.resultsFrom = firstIndex;
+        this.results = results;
+
+        try {
+            catchUp(firstIndex + length);
+        } finally {
+            this.resultsFrom = -1;
+            this.results = null;
+        }
+    }
+
+    private void catchUp(long toIndex) throws IOException {
+        while (appliedIndex < toIndex) {
+            if (appliedIndex < log.startIndex()) {
+                // The entries this replica still needs were dropped after a snapshot
+                appliedIndex = log.restoreSnapshot(store::setStateOrdinal);
+                continue;
+            }
+            appliedIndex = log.read(appliedIndex, (int) Math.min(ENTRIES_PER_READ, toIndex - appliedIndex), applier);
+        }
+    }
+
+    /**
+     * The result of an entry that was skipped by restoring a snapshot
+     * */
+    private long unknown(long entityId, int eventOrdinal) {
+        return TransitionResult.of(TransitionResult.Status.UNKNOWN, eventOrdinal, TransitionResult.NO_STATE,
+            store.getStateOrdinal(entityId));
+    }
+
+    private void apply(long index, long entityId, int eventOrdinal) {
+        long result = store.sendEvent(entityId, definition.event(eventOrdinal));
+
+        if (resultsFrom >= 0 && index >= resultsFrom && index - resultsFrom < results.length) {
+            results[(int) (index - resultsFrom)] = result;
+        }
+    }
+}
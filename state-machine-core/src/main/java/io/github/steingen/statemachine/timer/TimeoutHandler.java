@@ -0,0 +1,9 @@
+package io.github.steingen.statemachine.timer;
+
+/**
+ * Receives the timeouts that are due, without boxing either value.
+ */
+@FunctionalInterface
+public interface TimeoutHandler {
+    void onTimeout(long entityId, int eventOrdinal);
+}
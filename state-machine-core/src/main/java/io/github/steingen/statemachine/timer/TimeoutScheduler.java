@@ -0,0 +1,124 @@
+package io.github.steingen.statemachine.timer;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Drives the state timeouts declared on a {@link StateMachineDefinition} (see
+ * {@link StateMachineDefinition.Builder#timeout(Enum, Duration, Enum)}) for a population of entities, with one
+ * {@link TimingWheel} instead of one scheduled task per entity.
+ * <p>
+ * Every time an entity enters a state, {@link #onStateEntered(long, int)} replaces its pending timer, if any, with the
+ * timeout of the new state, so leaving a state cancels its timeout in O(1). An accepted self-transition restarts it.
+ * {@link #advance(TimeoutHandler)} fires the timeouts that are due as a batch of events; {@link #advance(StateStore)}
+ * applies them to a {@link StateStore} directly.
+ * The timer of each entity is kept in a {@link TimerTable}, and reused when it is re-armed, so that the steady state
+ * does not allocate.
+ * <p>
+ * The time is read from the given {@link Clock}, so tests can control it. The scheduler is not thread-safe: it should
+ * be owned by the thread that applies the events of its entities.
+ */
+public final class TimeoutScheduler<S extends Enum<S>, E extends Enum<E>> {
+    private static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+
+    private final StateMachineDefinition<S, E> definition;
+    private final Clock clock;
+    private final TimingWheel wheel;
+    private final TimerTable timers = new TimerTable();
+
+    public TimeoutScheduler(StateMachineDefinition<S, E> definition, Clock clock) {
+        this(definition, clock, DEFAULT_TICK);
+    }
+
+    /**
+     * @param tick - The resolution of the timeouts. A timeout fires at most one tick late
+     * */
+    public TimeoutScheduler(StateMachineDefinition<S, E> definition, Clock clock, Duration tick) {
+        this.definition = Objects.requireNonNull(definition, "definition");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.wheel = new TimingWheel(tick.toMillis(), clock.millis());
+    }
+
+    /**
+     * Arms the timeout of the state that the entity has just entered, replacing any pending timeout of the entity
+     * */
+    public void onStateEntered(long entityId, int stateOrdinal) {
+        long timeoutMillis = definition.timeoutMillis(stateOrdinal);
+
+        if (StateMachineDefinition.NO_TIMEOUT == timeoutMillis) {
+            cancel(entityId);
+            return;
+        }
+
+        int eventOrdinal = definition.timeoutEventOrdinal(stateOrdinal);
+        long deadlineMillis = clock.millis() + timeoutMillis;
+        TimingWheel.Timer timer = timers.get(entityId);
+
+        if (null == timer) {
+            timers.put(wheel.schedule(entityId, eventOrdinal, deadlineMillis));
+        } else {
+            wheel.reschedule(timer, eventOrdinal, deadlineMillis);
+        }
+    }
+
+    /**
+     * Re-arms the timeout of the entity after an event, if the event was accepted
+     * */
+    public void onResult(long entityId, long result) {
+        if (TransitionResult.isAccepted(result)) {
+            onStateEntered(entityId, TransitionResult.toOrdinal(result));
+        }
+    }
+
+    /**
+     * Cancels the pending timeout of the entity, e.g. when it is removed
+     * <p>
+     * @return false if the entity had no pending timeout
+     * */
+    public boolean cancel(long entityId) {
+        TimingWheel.Timer timer = timers.remove(entityId);
+        return null != timer && wheel.cancel(timer);
+    }
+
+    /**
+     * Applies the event to the entity in the store, and re-arms its timeout
+     * */
+    public long sendEvent(StateStore<S, E> store, long entityIndex, E event) {
+        long result = store.sendEvent(entityIndex, event);
+        onResult(entityIndex, result);
+
+        return result;
+    }
+
+    /**
+     * Fires the timeouts that are due. The handler is expected to dispatch the event, and to report the outcome with
+     * {@link #onResult(long, long)} so that the timeout of the next state is armed.
+     * <p>
+     * @return The number of timeouts that fired
+     * */
+    public int advance(TimeoutHandler handler) {
+        // The timers that fired stay mapped to their entity, so that re-arming them does not allocate
+        return wheel.advance(clock.millis(), handler);
+    }
+
+    /**
+     * Fires the timeouts that are due as events into the store, using the entity id as the index of the entity
+     * <p>
+     * @return The number of timeouts that fired
+     * */
+    public int advance(StateStore<S, E> store) {
+        return advance((entityId, eventOrdinal) -> sendEvent(store, entityId, definition.event(eventOrdinal)));
+    }
+
+    /**
+     * @return The number of entities with a pending timeout
+     * */
+    public int pendingCount() {
+        return wheel.size();
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.steingen.statemachine.timer;
+
+/**
+ * The timer of each entity of a {@link TimeoutScheduler}, in an open-addressing hash table with linear probing.
+ * A timer holds its own entity id, so the table is a single array of timers, and looking an entity up does not box
+ * its id. A removal shifts the following timers of its probe sequence back, so the table needs no tombstones.
+ * It is not thread-safe.
+ */
+final class TimerTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private TimingWheel.Timer[] timers = new TimingWheel.Timer[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+
+    /**
+     * @return The timer of the entity, or null if it has none
+     * */
+    TimingWheel.Timer get(long entityId) {
+        for (int index = slot(entityId); ; index = (index + 1) & mask) {
+            TimingWheel.Timer timer = timers[index];
+
+            if (null == timer || timer.getEntityId() == entityId) {
+                return timer;
+            }
+        }
+    }
+
+    /**
+     * Adds the timer of an entity that has none yet
+     * */
+    void put(TimingWheel.Timer timer) {
+        // At most half full, so that the probe sequences stay short
+        if (2 * (size + 1) > timers.length) {
+            resize();
+        }
+        insert(timers, mask, timer);
+        size++;
+    }
+
+    /**
+     * @return The removed timer of the entity, or null if it had none
+     * */
+    TimingWheel.Timer remove(long entityId) {
+        int index = slot(entityId);
+        TimingWheel.Timer removed;
+
+        while (true) {
+            removed = timers[index];
+            if (null == removed) {
+                return null;
+            }
+            if (removed.getEntityId() == entityId) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+
+        // Moves back every following timer whose home slot is not between the hole and its current slot
+        int hole = index;
+        timers[hole] = null;
+        for (int next = (hole + 1) & mask; null != timers[next]; next = (next + 1) & mask) {
+            int home = slot(timers[next].getEntityId());
+
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                timers[hole] = timers[next];
+                timers[next] = null;
+                hole = next;
+            }
+        }
+        size--;
+
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        TimingWheel.Timer[] resized = new TimingWheel.Timer[2 * timers.length];
+        int resizedMask = resized.length - 1;
+
+        for (TimingWheel.Timer timer : timers) {
+            if (null != timer) {
+                insert(resized, resizedMask, timer);
+            }
+        }
+        timers = resized;
+        mask = resizedMask;
+    }
+
+    private static void insert(TimingWheel.Timer[] timers, int mask, TimingWheel.Timer timer) {
+        int index = slot(timer.getEntityId(), mask);
+
+        while (null != timers[index]) {
+            index = (index + 1) & mask;
+        }
+        timers[index] = timer;
+    }
+
+    private int slot(long entityId) {
+        return slot(entityId, mask);
+    }
+
+    /**
+     * Fibonacci hashing, so that dense entity ids do not fill runs of adjacent slots
+     * */
+    private static int slot(long entityId, int mask) {
+        return (int) ((entityId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,276 @@
+package io.github.steingen.statemachine.timer;
+
+/**
+ * A hierarchical hashed timing wheel. Scheduling, rescheduling and cancelling a timer are O(1), and advancing the
+ * wheel costs O(1) per tick plus the work of firing the due timers, regardless of how many timers are pending.
+ * <p>
+ * Time is divided into ticks of a fixed duration. Level 0 has one bucket per tick; each bucket of level {@code n}
+ * covers as many ticks as the whole of level {@code n - 1}. A timer is put on the lowest level whose current
+ * revolution contains its deadline, and is moved down a level whenever the wheel reaches its bucket, until it expires
+ * from level 0. Each bucket is an intrusive doubly-linked list, so a {@link Timer} can unlink itself without a search.
+ * <p>
+ * A timer never fires before its deadline, and fires at most one tick after it. The wheel does not read the time
+ * itself: it is driven by {@link #advance(long, TimeoutHandler)}. It is not thread-safe.
+ */
+public final class TimingWheel {
+    public static final int DEFAULT_WHEEL_BITS = 8;
+
+    private final long tickMillis;
+    private final int wheelBits;
+    private final int wheelMask;
+    /**
+     * The bucket sentinels of each level, allocated when the level is first used
+     * */
+    private final Timer[][] levels;
+    /**
+     * The list the due timers of a tick are moved to before they fire. It is empty between ticks
+     * */
+    private final Timer due = new Timer(-1);
+    /**
+     * The next tick to process. Timers whose deadline has passed are scheduled on it
+     * */
+    private long nextTick;
+    private int size;
+
+    /**
+     * @param tickMillis - The resolution of the wheel
+     * @param nowMillis  - The current time
+     * */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this(tickMillis, DEFAULT_WHEEL_BITS, nowMillis);
+    }
+
+    /**
+     * @param wheelBits - The number of buckets per level, as a power of 2
+     * */
+    public TimingWheel(long tickMillis, int wheelBits, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        if (wheelBits < 1 || wheelBits > 16) {
+            throw new IllegalArgumentException("wheelBits must be between 1 and 16");
+        }
+
+        this.tickMillis = tickMillis;
+        this.wheelBits = wheelBits;
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.levels = new Timer[(Long.SIZE + wheelBits - 1) / wheelBits][];
+        this.nextTick = Math.floorDiv(nowMillis, tickMillis) + 1;
+    }
+
+    /**
+     * Schedules a new timer
+     * <p>
+     * @param entityId       - Passed back to the handler when the timer fires
+     * @param eventOrdinal   - Passed back to the handler when the timer fires
+     * @param deadlineMillis - The time at which the timer is due. A time in the past fires on the next tick
+     * */
+    public Timer schedule(long entityId, int eventOrdinal, long deadlineMillis) {
+        Timer timer = new Timer(entityId);
+        timer.eventOrdinal = eventOrdinal;
+        insert(timer, deadlineTick(deadlineMillis));
+        size++;
+
+        return timer;
+    }
+
+    /**
+     * Moves a timer to a new deadline, whether it is still pending, or has already fired or been cancelled
+     * */
+    public void reschedule(Timer timer, int eventOrdinal, long deadlineMillis) {
+        if (timer.isScheduled()) {
+            timer.unlink();
+        } else {
+            size++;
+        }
+        timer.eventOrdinal = eventOrdinal;
+        insert(timer, deadlineTick(deadlineMillis));
+    }
+
+    /**
+     * @return false if the timer had already fired or been cancelled
+     * */
+    public boolean cancel(Timer timer) {
+        if (!timer.isScheduled()) {
+            return false;
+        }
+
+        timer.unlink();
+        size--;
+        return true;
+    }
+
+    /**
+     * @return The number of pending timers
+     * */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Processes every tick up to the given time, firing the timers that are due. The handler may schedule, reschedule
+     * or cancel timers, including the one that fired; new timers are never fired by the same tick. It must not advance
+     * the wheel itself.
+     * <p>
+     * @return The number of timers that fired
+     * */
+    public int advance(long nowMillis, TimeoutHandler handler) {
+        long lastTick = Math.floorDiv(nowMillis, tickMillis);
+        int fired = 0;
+
+        while (nextTick <= lastTick) {
+            if (0 == size) {
+                // Nothing to cascade or fire, so the remaining ticks can be skipped
+                nextTick = lastTick + 1;
+                break;
+            }
+
+            long tick = nextTick;
+            cascade(tick);
+            nextTick = tick + 1;
+            fired += expire(tick, handler);
+        }
+        return fired;
+    }
+
+    private long deadlineTick(long deadlineMillis) {
+        // Rounded up, so that a timer never fires early
+        return Math.max(-Math.floorDiv(-deadlineMillis, tickMillis), nextTick);
+    }
+
+    private void insert(Timer timer, long deadlineTick) {
+        int level = 0;
+
+        // The lowest level on which the deadline is in the same revolution as the next tick
+        while (!sameRevolution(deadlineTick, nextTick, level)) {
+            level++;
+        }
+
+        timer.deadlineTick = deadlineTick;
+        bucket(level, (int) (deadlineTick >>> (wheelBits * level)) & wheelMask).append(timer);
+    }
+
+    private boolean sameRevolution(long firstTick, long secondTick, int level) {
+        int shift = wheelBits * (level + 1);
+        return shift >= Long.SIZE || (firstTick >>> shift) == (secondTick >>> shift);
+    }
+
+    /**
+     * Moves the timers of the higher level buckets that start at the given tick down to the lower levels
+     */
+    private void cascade(long tick) {
+        for (int level = levels.length - 1; level > 0; level--) {
+            int shift = wheelBits * level;
+
+            if (null == levels[level] || (shift < Long.SIZE && 0 != (tick & ((1L << shift) - 1)))) {
+                continue;
+            }
+
+            Timer sentinel = levels[level][(int) (tick >>> shift) & wheelMask];
+            Timer timer = sentinel.next;
+
+            while (sentinel != timer) {
+                Timer next = timer.next;
+                timer.unlink();
+                insert(timer, timer.deadlineTick);
+                timer = next;
+            }
+        }
+    }
+
+    private int expire(long tick, TimeoutHandler handler) {
+        if (null == levels[0]) {
+            return 0;
+        }
+
+        Timer bucket = levels[0][(int) tick & wheelMask];
+        if (bucket.next == bucket) {
+            return 0;
+        }
+
+        // Take the whole bucket first, so that timers scheduled by the handler cannot end up in it
+        due.spliceFrom(bucket);
+        int fired = 0;
+
+        while (due.next != due) {
+            Timer timer = due.next;
+            timer.unlink();
+            size--;
+            fired++;
+            handler.onTimeout(timer.entityId, timer.eventOrdinal);
+        }
+        return fired;
+    }
+
+    private Timer bucket(int level, int index) {
+        Timer[] buckets = levels[level];
+
+        if (null == buckets) {
+            buckets = new Timer[wheelMask + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new Timer(-1);
+            }
+            levels[level] = buckets;
+        }
+        return buckets[index];
+    }
+
+
+    /**
+     * A pending timeout. Also used as the sentinel of each bucket list, in which case it links to itself when empty
+     * */
+    public static final class Timer {
+        private final long entityId;
+        private int eventOrdinal;
+        private long deadlineTick;
+        private Timer prev;
+        private Timer next;
+
+        private Timer(long entityId) {
+            this.entityId = entityId;
+            this.prev = this;
+            this.next = this;
+        }
+
+        public long getEntityId() {
+            return entityId;
+        }
+
+        public int getEventOrdinal() {
+            return eventOrdinal;
+        }
+
+        /**
+         * @return true until the timer fires or is cancelled
+         * */
+        public boolean isScheduled() {
+            return this != next;
+        }
+
+        private void append(Timer timer) {
+            timer.prev = prev;
+            timer.next = this;
+            prev.next = timer;
+            prev = timer;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+
+        /**
+         * Moves all the timers of the given (non-empty) list into this empty list
+         * */
+        private void spliceFrom(Timer sentinel) {
+            next = sentinel.next;
+            prev = sentinel.prev;
+            next.prev = this;
+            prev.next = this;
+            sentinel.next = sentinel;
+            sentinel.prev = sentinel;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.steingen.statemachine.replay;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.TransitionResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays an order workflow trace through the whole record, read and replay path, and fails the build if the
+ * outcomes or the allocation rate regress. The throughput and tail latency depend on the machine, so their bounds
+ * are only checked when the {@code replay.gate} system property is true, e.g. on dedicated hardware. The bounds can
+ * be tightened with the {@code replay.minThroughput}, {@code replay.maxP99Nanos} and {@code replay.maxBytesPerEvent}
+ * system properties.
+ */
+class ReplayPerformanceGateTest {
+
+    public enum OrderState {
+        NEW,
+        PAID,
+        PACKED,
+        SHIPPED,
+        DELIVERED,
+        CANCELLED
+    }
+
+    public enum OrderEvent {
+        PAY,
+        PACK,
+        SHIP,
+        DELIVER,
+        CANCEL
+    }
+
+    private static final int ORDERS = 20_000;
+
+    private static final boolean GATE = Boolean.getBoolean("replay.gate");
+    private static final double MIN_THROUGHPUT = Double.parseDouble(System.getProperty("replay.minThroughput", "200000"));
+    private static final long MAX_P99_NANOS = Long.getLong("replay.maxP99Nanos", 1_000_000);
+    private static final double MAX_BYTES_PER_EVENT = Double.parseDouble(System.getProperty("replay.maxBytesPerEvent", "8"));
+
+    private final StateMachineDefinition<OrderState, OrderEvent> definition =
+            StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+                    .transition(OrderEvent.PAY, OrderState.NEW, OrderState.PAID)
+                    .transition(OrderEvent.PACK, OrderState.PAID, OrderState.PACKED)
+                    .transition(OrderEvent.SHIP, OrderState.PACKED, OrderState.SHIPPED)
+                    .transition(OrderEvent.DELIVER, OrderState.SHIPPED, OrderState.DELIVERED)
+                    .transition(OrderEvent.CANCEL, OrderState.NEW, OrderState.CANCELLED)
+                    // Paid orders are refunded by a separate flow, so cancelling them is rejected
+                    .transition(OrderEvent.CANCEL, OrderState.PAID, OrderState.CANCELLED, (from, to) -> false)
+                    .build();
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Every order is paid, packed, shipped and delivered, the events of different orders interleaving. Every tenth
+     * order is cancelled instead of delivered, once while new and otherwise after it was paid
+     * */
+    private Path recordTrace() throws IOException {
+        Path path = directory.resolve("orders.trace");
+        Random random = new Random(42);
+        int[] progress = new int[ORDERS];
+        OrderEvent[] lifecycle = {OrderEvent.PAY, OrderEvent.PACK, OrderEvent.SHIP, OrderEvent.DELIVER};
+        long timestampNanos = 0;
+
+        try (TraceRecorder<OrderEvent> recorder = TraceRecorder.open(path, OrderEvent.class)) {
+            for (int remaining = ORDERS; remaining > 0; ) {
+                int order = random.nextInt(ORDERS);
+                if (progress[order] == lifecycle.length) {
+                    continue;
+                }
+
+                timestampNanos += random.nextInt(2_000);
+                if (order % 10 == 0 && progress[order] == order % 20 / 10) {
+                    recorder.record(order, OrderEvent.CANCEL.ordinal(), timestampNanos);
+                    progress[order] = lifecycle.length;
+                } else {
+                    recorder.record(order, lifecycle[progress[order]++].ordinal(), timestampNanos);
+                }
+
+                if (progress[order] == lifecycle.length) {
+                    remaining--;
+                }
+            }
+        }
+        return path;
+    }
+
+    @Test
+    void testReplayMeetsPerformanceBounds() throws IOException {
+        TrafficTrace<OrderEvent> trace = TrafficTrace.read(recordTrace(), OrderEvent.class);
+
+        ReplayReport report = ReplayHarness.<OrderState, OrderEvent>builder(trace,
+                        entityId -> definition.newInstance(entityId, OrderState.NEW))
+                .threads(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())))
+                .warmupRuns(5)
+                .build()
+                .run();
+
+        assertEquals(trace.size(), report.eventCount());
+        // Only the cancellations of paid orders are rejected
+        assertEquals(ORDERS / 20, report.count(TransitionResult.Status.REJECTED));
+        assertEquals(0, report.count(TransitionResult.Status.UNMATCHED));
+
+        if (GATE) {
+            assertTrue(report.throughput() >= MIN_THROUGHPUT, report.toString());
+            assertTrue(report.latencyNanos(99) <= MAX_P99_NANOS, report.toString());
+        }
+        if (!Double.isNaN(report.allocatedBytesPerEvent())) {
+            assertTrue(report.allocatedBytesPerEvent() <= MAX_BYTES_PER_EVENT, report.toString());
+        }
+    }
+}
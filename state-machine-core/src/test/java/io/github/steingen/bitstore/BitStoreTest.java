@@ -2,8 +2,10 @@ package io.github.steingen.bitstore;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -26,6 +28,138 @@ class BitStoreTest {
         OPS_CANCELLED,
         PARTIALLY_DELIVERED
     }
+    private enum LargeTestEnum {
+        VALUE_0,
+        VALUE_1,
+        VALUE_2,
+        VALUE_3,
+        VALUE_4,
+        VALUE_5,
+        VALUE_6,
+        VALUE_7,
+        VALUE_8,
+        VALUE_9,
+        VALUE_10,
+        VALUE_11,
+        VALUE_12,
+        VALUE_13,
+        VALUE_14,
+        VALUE_15,
+        VALUE_16,
+        VALUE_17,
+        VALUE_18,
+        VALUE_19,
+        VALUE_20,
+        VALUE_21,
+        VALUE_22,
+        VALUE_23,
+        VALUE_24,
+        VALUE_25,
+        VALUE_26,
+        VALUE_27,
+        VALUE_28,
+        VALUE_29,
+        VALUE_30,
+        VALUE_31,
+        VALUE_32,
+        VALUE_33,
+        VALUE_34,
+        VALUE_35,
+        VALUE_36,
+        VALUE_37,
+        VALUE_38,
+        VALUE_39,
+        VALUE_40,
+        VALUE_41,
+        VALUE_42,
+        VALUE_43,
+        VALUE_44,
+        VALUE_45,
+        VALUE_46,
+        VALUE_47,
+        VALUE_48,
+        VALUE_49,
+        VALUE_50,
+        VALUE_51,
+        VALUE_52,
+        VALUE_53,
+        VALUE_54,
+        VALUE_55,
+        VALUE_56,
+        VALUE_57,
+        VALUE_58,
+        VALUE_59,
+        VALUE_60,
+        VALUE_61,
+        VALUE_62,
+        VALUE_63,
+        VALUE_64,
+        VALUE_65,
+        VALUE_66,
+        VALUE_67,
+        VALUE_68,
+        VALUE_69,
+        VALUE_70,
+        VALUE_71,
+        VALUE_72,
+        VALUE_73,
+        VALUE_74,
+        VALUE_75,
+        VALUE_76,
+        VALUE_77,
+        VALUE_78,
+        VALUE_79,
+        VALUE_80,
+        VALUE_81,
+        VALUE_82,
+        VALUE_83,
+        VALUE_84,
+        VALUE_85,
+        VALUE_86,
+        VALUE_87,
+        VALUE_88,
+        VALUE_89,
+        VALUE_90,
+        VALUE_91,
+        VALUE_92,
+        VALUE_93,
+        VALUE_94,
+        VALUE_95,
+        VALUE_96,
+        VALUE_97,
+        VALUE_98,
+        VALUE_99,
+        VALUE_100,
+        VALUE_101,
+        VALUE_102,
+        VALUE_103,
+        VALUE_104,
+        VALUE_105,
+        VALUE_106,
+        VALUE_107,
+        VALUE_108,
+        VALUE_109,
+        VALUE_110,
+        VALUE_111,
+        VALUE_112,
+        VALUE_113,
+        VALUE_114,
+        VALUE_115,
+        VALUE_116,
+        VALUE_117,
+        VALUE_118,
+        VALUE_119,
+        VALUE_120,
+        VALUE_121,
+        VALUE_122,
+        VALUE_123,
+        VALUE_124,
+        VALUE_125,
+        VALUE_126,
+        VALUE_127,
+        VALUE_128,
+        VALUE_129
+    }
     private final BitStore<TestEnum> bitStore = BitStore.empty();
 
 
@@ -173,4 +307,78 @@ class BitStoreTest {
         assertFalse(bitStore1.getAllExcept(bitStore2, TestEnum.EXPIRED),
             "Expected bitStore1 NOT to contain all bits of bitStore2 except EXPIRED, as CANCELLED is missing");
     }
+
+    @Test
+    void testClear() {
+        bitStore.setAll(TestEnum.COMPLETED, TestEnum.DISPATCHED);
+
+        bitStore.clear(TestEnum.COMPLETED);
+        assertFalse(bitStore.get(TestEnum.COMPLETED));
+        assertTrue(bitStore.get(TestEnum.DISPATCHED));
+
+        bitStore.clear();
+        assertTrue(bitStore.isEmpty());
+    }
+
+    @Test
+    void testAndOrAndNot() {
+        BitStore<TestEnum> other = BitStore.ofAll(TestEnum.DISPATCHED, TestEnum.EXPIRED);
+        bitStore.setAll(TestEnum.COMPLETED, TestEnum.DISPATCHED);
+
+        bitStore.or(other);
+        assertTrue(bitStore.getAll(BitStore.ofAll(TestEnum.COMPLETED, TestEnum.DISPATCHED, TestEnum.EXPIRED)));
+
+        bitStore.andNot(BitStore.ofAll(TestEnum.COMPLETED));
+        assertFalse(bitStore.get(TestEnum.COMPLETED));
+
+        bitStore.and(BitStore.ofAll(TestEnum.EXPIRED));
+        assertTrue(bitStore.get(TestEnum.EXPIRED));
+        assertEquals(1, bitStore.cardinality());
+    }
+
+    @Test
+    void testOrdinalIteration() {
+        bitStore.setAll(TestEnum.PARTIALLY_DELIVERED, TestEnum.SUBMITTED, TestEnum.DELIVERED);
+        List<Integer> ordinals = new ArrayList<>();
+
+        bitStore.forEachOrdinal(ordinals::add);
+
+        assertEquals(List.of(TestEnum.SUBMITTED.ordinal(), TestEnum.DELIVERED.ordinal(),
+            TestEnum.PARTIALLY_DELIVERED.ordinal()), ordinals);
+        assertEquals(-1, bitStore.nextSetBit(TestEnum.PARTIALLY_DELIVERED.ordinal() + 1));
+    }
+
+    @Test
+    void testLargeEnumDoesNotWrapAround() {
+        BitStore<LargeTestEnum> largeBitStore = BitStore.empty();
+
+        largeBitStore.set(LargeTestEnum.VALUE_65);
+        largeBitStore.set(LargeTestEnum.VALUE_129);
+
+        assertTrue(largeBitStore.get(LargeTestEnum.VALUE_65));
+        assertTrue(largeBitStore.get(LargeTestEnum.VALUE_129));
+        assertFalse(largeBitStore.get(LargeTestEnum.VALUE_1));
+        assertFalse(largeBitStore.get(LargeTestEnum.VALUE_128));
+        assertEquals(2, largeBitStore.cardinality());
+        assertEquals(65, largeBitStore.nextSetBit(0));
+        assertEquals(129, largeBitStore.nextSetBit(66));
+    }
+
+    @Test
+    void testLargeEnumSetOperations() {
+        BitStore<LargeTestEnum> largeBitStore = BitStore.noneOf(LargeTestEnum.class);
+        BitStore<LargeTestEnum> other = BitStore.ofAll(LargeTestEnum.VALUE_3, LargeTestEnum.VALUE_100);
+
+        largeBitStore.or(other);
+        assertTrue(largeBitStore.getAll(other));
+        assertTrue(largeBitStore.getAllExcept(BitStore.ofAll(LargeTestEnum.VALUE_100, LargeTestEnum.VALUE_120),
+            LargeTestEnum.VALUE_120));
+        assertFalse(largeBitStore.getAll(BitStore.ofAll(LargeTestEnum.VALUE_100, LargeTestEnum.VALUE_120)));
+
+        largeBitStore.andNot(BitStore.ofAll(LargeTestEnum.VALUE_100));
+        assertFalse(largeBitStore.get(LargeTestEnum.VALUE_100));
+
+        largeBitStore.clear(LargeTestEnum.VALUE_3);
+        assertTrue(largeBitStore.isEmpty());
+    }
 }
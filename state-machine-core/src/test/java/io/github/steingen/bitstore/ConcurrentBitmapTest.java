@@ -0,0 +1,104 @@
+package io.github.steingen.bitstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentBitmapTest {
+
+    @Test
+    void testSetAndClear() {
+        ConcurrentBitmap bitmap = new ConcurrentBitmap();
+
+        assertTrue(bitmap.set(3));
+        assertFalse(bitmap.set(3));
+        assertTrue(bitmap.set(ConcurrentBitmap.CHUNK_SIZE * 5L + 64));
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.get(3));
+        assertFalse(bitmap.get(4));
+        // Ids in chunks that were never allocated
+        assertFalse(bitmap.get(ConcurrentBitmap.CHUNK_SIZE * 100L));
+        assertFalse(bitmap.clear(ConcurrentBitmap.CHUNK_SIZE * 100L));
+
+        assertTrue(bitmap.clear(3));
+        assertFalse(bitmap.clear(3));
+        assertEquals(1, bitmap.cardinality());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.set(-1));
+    }
+
+    @Test
+    void testIteration() {
+        ConcurrentBitmap bitmap = new ConcurrentBitmap();
+        long[] ids = {0, 63, 64, ConcurrentBitmap.CHUNK_SIZE - 1, ConcurrentBitmap.CHUNK_SIZE * 3L + 7};
+        for (long id : ids) {
+            bitmap.set(id);
+        }
+
+        List<Long> iterated = new ArrayList<>();
+        for (long id = bitmap.nextSetBit(0); id >= 0; id = bitmap.nextSetBit(id + 1)) {
+            iterated.add(id);
+        }
+        List<Long> visited = new ArrayList<>();
+        bitmap.forEach(visited::add);
+
+        List<Long> expected = List.of(ids[0], ids[1], ids[2], ids[3], ids[4]);
+        assertEquals(expected, iterated);
+        assertEquals(expected, visited);
+        assertEquals(ids[4], bitmap.nextSetBit(ids[3] + 1));
+        assertEquals(-1, bitmap.nextSetBit(ids[4] + 1));
+    }
+
+    @Test
+    void testUnion() {
+        ConcurrentBitmap first = new ConcurrentBitmap();
+        ConcurrentBitmap second = new ConcurrentBitmap();
+        first.set(1);
+        first.set(100);
+        second.set(100);
+        second.set(ConcurrentBitmap.CHUNK_SIZE * 2L);
+
+        List<Long> union = new ArrayList<>();
+        ConcurrentBitmap.forEachUnion(union::add, first, second);
+
+        assertEquals(List.of(1L, 100L, ConcurrentBitmap.CHUNK_SIZE * 2L), union);
+        assertEquals(3, ConcurrentBitmap.unionCardinality(first, second));
+    }
+
+    @Test
+    void testConcurrentUpdates() throws Exception {
+        ConcurrentBitmap bitmap = new ConcurrentBitmap();
+        int threads = 4;
+        int idsPerThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                // The threads interleave on the same words and allocate the same chunks
+                futures.add(executor.submit(() -> {
+                    for (long id = offset; id < (long) threads * idsPerThread; id += threads) {
+                        bitmap.set(id);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals((long) threads * idsPerThread, bitmap.cardinality());
+        assertEquals((long) threads * idsPerThread, ConcurrentBitmap.unionCardinality(bitmap));
+    }
+}
@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -31,6 +33,11 @@ class AbstractStateMachineTest {
 
     public static class TestStateMachine extends AbstractStateMachine<TestState, TestEvent> {
         public TestStateMachine() {
+            this(false);
+        }
+
+        protected TestStateMachine(boolean inlineDefaultGuard) {
+            super(inlineDefaultGuard);
             // Define event rules for state transitions
             this.eventRules.putAll(
                     Map.of(
@@ -45,6 +52,28 @@ class AbstractStateMachineTest {
         }
     }
 
+    public static class CompiledTestStateMachine extends TestStateMachine {
+        public CompiledTestStateMachine() {
+            super();
+            compileTransitions();
+        }
+    }
+
+    public static class InlineTestStateMachine extends TestStateMachine {
+        public InlineTestStateMachine() {
+            super(true);
+        }
+    }
+
+    public static class LockableTestStateMachine extends TestStateMachine {
+        private boolean locked;
+
+        @Override
+        protected boolean defaultGuard(TestState from, TestState to) {
+            return !locked && super.defaultGuard(from, to);
+        }
+    }
+
     private final TestStateMachine stateMachine = new TestStateMachine();
 
     @BeforeEach
@@ -97,4 +126,92 @@ class AbstractStateMachineTest {
 
         assertTrue(transition.canTransition());
     }
+
+    @Test
+    void testDefaultGuardIsCalledByDefault() {
+        assertFalse(stateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING).isFromCurrent());
+        assertFalse(new AbstractStateMachine<TestState, TestEvent>().newTransition(TestState.INITIAL, TestState.PROCESSING)
+                .isFromCurrent());
+    }
+
+    @Test
+    void testDefaultGuardIsHandledInline() {
+        InlineTestStateMachine inlineStateMachine = new InlineTestStateMachine();
+        inlineStateMachine.setCurrentState(TestState.INITIAL);
+        Transition<TestState> transition = inlineStateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING);
+
+        assertTrue(transition.isFromCurrent());
+        assertTrue(transition.canTransition());
+        assertFalse(inlineStateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING, (from, to) -> true)
+                .isFromCurrent());
+    }
+
+    @Test
+    void testInlineSendEvent() {
+        InlineTestStateMachine inlineStateMachine = new InlineTestStateMachine();
+        inlineStateMachine.setCurrentState(TestState.INITIAL);
+
+        inlineStateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, inlineStateMachine.getCurrentState());
+
+        inlineStateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.COMPLETED, inlineStateMachine.getCurrentState());
+
+        inlineStateMachine.sendEvent(TestEvent.START_PROCESS); // No transition is defined from COMPLETED
+        assertEquals(TestState.COMPLETED, inlineStateMachine.getCurrentState());
+    }
+
+    @Test
+    void testOverriddenDefaultGuardIsCalled() {
+        LockableTestStateMachine lockableStateMachine = new LockableTestStateMachine();
+        lockableStateMachine.setCurrentState(TestState.INITIAL);
+        lockableStateMachine.locked = true;
+
+        assertFalse(lockableStateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING).isFromCurrent());
+
+        lockableStateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.INITIAL, lockableStateMachine.getCurrentState());
+
+        lockableStateMachine.locked = false;
+        lockableStateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, lockableStateMachine.getCurrentState());
+    }
+
+    @Test
+    void testCompiledSendEvent() {
+        CompiledTestStateMachine compiledStateMachine = new CompiledTestStateMachine();
+        compiledStateMachine.setCurrentState(TestState.INITIAL);
+
+        compiledStateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, compiledStateMachine.getCurrentState());
+
+        compiledStateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.COMPLETED, compiledStateMachine.getCurrentState());
+
+        compiledStateMachine.sendEvent(TestEvent.START_PROCESS); // No transition is defined from COMPLETED
+        assertEquals(TestState.COMPLETED, compiledStateMachine.getCurrentState());
+    }
+
+    @Test
+    void testCompiledSendEventEvaluatesGuard() {
+        AbstractStateMachine<TestState, TestEvent> compiledStateMachine = new AbstractStateMachine<>();
+        compiledStateMachine.eventRules.put(TestEvent.START_PROCESS,
+                List.of(compiledStateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING, (from, to) -> false)));
+        compiledStateMachine.compileTransitions();
+        compiledStateMachine.setCurrentState(TestState.INITIAL);
+
+        compiledStateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.INITIAL, compiledStateMachine.getCurrentState());
+    }
+
+    @Test
+    void testCompileTransitionsRejectsDuplicateFromState() {
+        AbstractStateMachine<TestState, TestEvent> compiledStateMachine = new AbstractStateMachine<>();
+        compiledStateMachine.eventRules.put(TestEvent.START_PROCESS, List.of(
+                compiledStateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING),
+                compiledStateMachine.newTransition(TestState.INITIAL, TestState.COMPLETED)
+        ));
+
+        assertThrows(IllegalStateException.class, compiledStateMachine::compileTransitions);
+    }
 }
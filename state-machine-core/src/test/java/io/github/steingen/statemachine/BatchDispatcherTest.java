@@ -0,0 +1,89 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchDispatcherTest {
+
+    public enum TestState {
+        ACTIVE,
+        PAUSED,
+        EXPIRED
+    }
+
+    public enum TestEvent {
+        PAUSE,
+        EXPIRE
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.PAUSE, TestState.ACTIVE, TestState.PAUSED)
+                    .transition(TestEvent.EXPIRE, TestState.ACTIVE, TestState.EXPIRED)
+                    .transition(TestEvent.EXPIRE, TestState.PAUSED, TestState.EXPIRED)
+                    .build();
+
+    private static final byte ACTIVE = (byte) TestState.ACTIVE.ordinal();
+    private static final byte PAUSED = (byte) TestState.PAUSED.ordinal();
+    private static final byte EXPIRED = (byte) TestState.EXPIRED.ordinal();
+
+    @Test
+    void testApplySingleEvent() {
+        byte[] states = {ACTIVE, PAUSED, EXPIRED, ACTIVE};
+
+        BatchResult result = new BatchDispatcher<>(definition).apply(states, TestEvent.EXPIRE);
+
+        assertArrayEquals(new byte[]{EXPIRED, EXPIRED, EXPIRED, EXPIRED}, states);
+        assertEquals(1, result.rejectedCount());
+        assertEquals(3, result.acceptedCount());
+        assertTrue(result.isRejected(2));
+        assertFalse(result.isRejected(0));
+        assertEquals(2, result.nextRejected(0));
+        assertEquals(-1, result.nextRejected(3));
+    }
+
+    @Test
+    void testApplyEventPerEntity() {
+        short[] states = {ACTIVE, ACTIVE, PAUSED};
+        TestEvent[] events = {TestEvent.PAUSE, TestEvent.EXPIRE, TestEvent.PAUSE};
+
+        BatchResult result = new BatchDispatcher<>(definition).apply(states, events);
+
+        assertArrayEquals(new short[]{PAUSED, EXPIRED, PAUSED}, states);
+        assertEquals(1, result.rejectedCount());
+        assertTrue(result.isRejected(2));
+    }
+
+    @Test
+    void testApplyInParallel() {
+        int size = 100_003;
+        byte[] states = new byte[size];
+        for (int i = 0; i < size; i++) {
+            states[i] = i % 3 == 0 ? PAUSED : ACTIVE;
+        }
+
+        BatchResult result = new BatchDispatcher<>(definition, ForkJoinPool.commonPool(), 64)
+                .apply(states, TestEvent.PAUSE);
+
+        assertEquals((size + 2) / 3, result.rejectedCount());
+        for (int i = 0; i < size; i++) {
+            assertEquals(PAUSED, states[i]);
+            assertEquals(i % 3 == 0, result.isRejected(i));
+        }
+    }
+
+    @Test
+    void testApplyRejectsMismatchedLengths() {
+        BatchDispatcher<TestState, TestEvent> dispatcher = new BatchDispatcher<>(definition);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> dispatcher.apply(new byte[2], new TestEvent[]{TestEvent.PAUSE}));
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentStateMachineTest {
+
+    public enum TestState {
+        LEVEL_0,
+        LEVEL_1,
+        LEVEL_2,
+        LEVEL_3,
+        LEVEL_4,
+        LEVEL_5,
+        LEVEL_6,
+        LEVEL_7
+    }
+
+    public enum TestEvent {
+        NEXT,
+        RESET
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition = levels();
+
+    private static StateMachineDefinition<TestState, TestEvent> levels() {
+        StateMachineDefinition.Builder<TestState, TestEvent> builder =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class);
+        TestState[] states = TestState.values();
+
+        for (int i = 0; i < states.length - 1; i++) {
+            builder.transition(TestEvent.NEXT, states[i], states[i + 1]);
+        }
+        return builder.transition(TestEvent.RESET, TestState.LEVEL_7, TestState.LEVEL_0).build();
+    }
+
+    @Test
+    void testSendEvent() {
+        ConcurrentStateMachine<TestState, TestEvent> stateMachine =
+                new ConcurrentStateMachine<>(definition, TestState.LEVEL_0);
+
+        stateMachine.sendEvent(TestEvent.NEXT);
+        assertEquals(TestState.LEVEL_1, stateMachine.getCurrentState());
+
+        stateMachine.sendEvent(TestEvent.RESET); // No transition is defined from LEVEL_1
+        assertEquals(TestState.LEVEL_1, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testTrySendEvent() {
+        ConcurrentStateMachine<TestState, TestEvent> stateMachine =
+                new ConcurrentStateMachine<>(definition, TestState.LEVEL_7);
+
+        assertEquals(ConcurrentStateMachine.Attempt.REJECTED, stateMachine.trySendEvent(TestEvent.NEXT));
+        assertEquals(ConcurrentStateMachine.Attempt.TRANSITIONED, stateMachine.trySendEvent(TestEvent.RESET));
+        assertEquals(TestState.LEVEL_0, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testConcurrentEventsAreNotLost() throws Exception {
+        int threads = TestState.values().length - 1;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ConcurrentStateMachine<TestState, TestEvent> stateMachine =
+                new ConcurrentStateMachine<>(definition, TestState.LEVEL_0);
+
+        try {
+            for (int round = 0; round < 200; round++) {
+                stateMachine.setCurrentState(TestState.LEVEL_0);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        stateMachine.sendEvent(TestEvent.NEXT);
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                // Each thread must have advanced the state exactly once
+                assertEquals(TestState.LEVEL_7, stateMachine.getCurrentState());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefinitionImageTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        EXPIRED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS,
+        EXPIRE
+    }
+
+    public enum OtherEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    public static class TestDefinition implements Supplier<StateMachineDefinition<TestState, TestEvent>> {
+        @Override
+        public StateMachineDefinition<TestState, TestEvent> get() {
+            return StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .substate(TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.EXPIRE, TestState.PAUSED, TestState.EXPIRED)
+                    // Inherited by PAUSED
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED,
+                            (from, to) -> true)
+                    .timeout(TestState.PAUSED, Duration.ofMinutes(30), TestEvent.EXPIRE)
+                    .build();
+        }
+    }
+
+    private static byte[] toBytes(StateMachineDefinition<?, ?> definition) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DefinitionImage.write(definition, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        StateMachineDefinition<TestState, TestEvent> original = new TestDefinition().get();
+        TransitionGuard<TestState, TestEvent> rejectAll = (machine, fromOrdinal, toOrdinal) -> false;
+
+        StateMachineDefinition<TestState, TestEvent> loaded = DefinitionImage.read(
+                new ByteArrayInputStream(toBytes(original)), TestState.class, TestEvent.class,
+                (event, from) -> TestEvent.COMPLETE_PROCESS == event ? rejectAll : null, TransitionListener.NOOP);
+
+        for (TestEvent event : TestEvent.values()) {
+            for (TestState state : TestState.values()) {
+                assertEquals(original.targetRow(event.ordinal())[state.ordinal()],
+                        loaded.targetRow(event.ordinal())[state.ordinal()]);
+                assertEquals(original.hasGuard(event.ordinal(), state.ordinal()),
+                        loaded.hasGuard(event.ordinal(), state.ordinal()));
+            }
+        }
+        for (TestState state : TestState.values()) {
+            assertEquals(original.parent(state), loaded.parent(state));
+            assertEquals(original.entryState(state), loaded.entryState(state));
+            assertEquals(original.timeoutMillis(state.ordinal()), loaded.timeoutMillis(state.ordinal()));
+        }
+
+        assertTrue(loaded.isValidTransition(TestState.PAUSED, TestState.COMPLETED));
+        assertTrue(loaded.isInState(TestState.PAUSED, TestState.PROCESSING));
+
+        // The supplied guard is used
+        StateMachineInstance<TestState, TestEvent> stateMachine = loaded.newInstance(TestState.PAUSED);
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.PAUSED, stateMachine.getCurrentState());
+        stateMachine.sendEvent(TestEvent.EXPIRE);
+        assertEquals(TestState.EXPIRED, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testInitialSubstates() throws IOException {
+        StateMachineDefinition<TestState, TestEvent> original = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .substate(TestState.PAUSED, TestState.PROCESSING)
+                .initialSubstate(TestState.PROCESSING, TestState.PAUSED)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                .build();
+
+        StateMachineDefinition<TestState, TestEvent> loaded = DefinitionImage.read(
+                new ByteArrayInputStream(toBytes(original)), TestState.class, TestEvent.class);
+
+        assertEquals(TestState.PAUSED, loaded.entryState(TestState.PROCESSING));
+        assertEquals(TestState.PAUSED, loaded.newInstance(TestState.PROCESSING).getCurrentState());
+        assertEquals(TestState.PAUSED, loaded.state(loaded.nextStateOrdinal(TestEvent.START_PROCESS.ordinal(),
+                TestState.INITIAL.ordinal())));
+    }
+
+    @Test
+    void testMissingGuard() throws IOException {
+        byte[] image = toBytes(new TestDefinition().get());
+
+        assertThrows(IOException.class,
+                () -> DefinitionImage.read(new ByteArrayInputStream(image), TestState.class, TestEvent.class));
+    }
+
+    @Test
+    void testDifferentEnumIsRejected() throws IOException {
+        byte[] image = toBytes(new TestDefinition().get());
+
+        assertThrows(IOException.class,
+                () -> DefinitionImage.read(new ByteArrayInputStream(image), TestState.class, OtherEvent.class));
+        assertThrows(IOException.class,
+                () -> DefinitionImage.read(new ByteArrayInputStream(new byte[16]), TestState.class, TestEvent.class));
+    }
+
+    @Test
+    void testCompilerMain(@TempDir Path directory) throws Exception {
+        DefinitionImageCompiler.main(new String[]{directory.toString(),
+                AbstractStateMachineTest.InlineTestStateMachine.class.getName(), "classic"});
+
+        Path image = directory.resolve("classic" + DefinitionImage.FILE_EXTENSION);
+        assertTrue(Files.exists(image));
+
+        try (InputStream in = Files.newInputStream(image)) {
+            StateMachineDefinition<AbstractStateMachineTest.TestState, AbstractStateMachineTest.TestEvent> definition =
+                    DefinitionImage.read(in, AbstractStateMachineTest.TestState.class, AbstractStateMachineTest.TestEvent.class);
+
+            assertTrue(definition.isValidTransition(AbstractStateMachineTest.TestState.INITIAL,
+                    AbstractStateMachineTest.TestState.PROCESSING));
+            assertFalse(definition.isValidTransition(AbstractStateMachineTest.TestState.INITIAL,
+                    AbstractStateMachineTest.TestState.COMPLETED));
+        }
+    }
+}
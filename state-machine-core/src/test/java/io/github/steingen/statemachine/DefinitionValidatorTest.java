@@ -0,0 +1,194 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefinitionValidatorTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        STUCK,
+        ORPHANED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS,
+        EXPIRE
+    }
+
+    public static class AmbiguousStateMachine extends AbstractStateMachine<TestState, TestEvent> {
+        public AmbiguousStateMachine() {
+            this(true);
+        }
+
+        public AmbiguousStateMachine(boolean inlineDefaultGuard) {
+            super(inlineDefaultGuard);
+            this.currentState = TestState.INITIAL;
+            this.eventRules.put(TestEvent.START_PROCESS, List.of(
+                    newTransition(TestState.INITIAL, TestState.PROCESSING, (from, to) -> true),
+                    newTransition(TestState.INITIAL, TestState.PAUSED, (from, to) -> true),
+                    newTransition(TestState.INITIAL, TestState.COMPLETED),
+                    newTransition(TestState.INITIAL, TestState.STUCK)
+            ));
+            this.eventRules.put(TestEvent.COMPLETE_PROCESS, List.of(
+                    newTransition(TestState.PROCESSING, TestState.COMPLETED),
+                    newTransition(TestState.PAUSED, TestState.COMPLETED)
+            ));
+            populateAllowedTransitions();
+        }
+    }
+
+    @Test
+    void testValidDefinition() {
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                        .build();
+
+        ValidationReport<TestState, TestEvent> report =
+                DefinitionValidator.validate(definition, TestState.INITIAL, TestState.COMPLETED);
+
+        // Only the states that are never used are reported
+        assertEquals(List.of(TestState.PAUSED, TestState.STUCK, TestState.ORPHANED),
+                report.getIssues().stream().map(ValidationReport.Issue::getState).toList());
+        assertEquals(3, report.getIssues(ValidationReport.Kind.UNREACHABLE).size());
+    }
+
+    @Test
+    void testDefinitionGraph() {
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                        .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.STUCK)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                        .transition(TestEvent.START_PROCESS, TestState.ORPHANED, TestState.COMPLETED)
+                        .timeout(TestState.PROCESSING, Duration.ofMinutes(5), TestEvent.EXPIRE)
+                        .build();
+
+        ValidationReport<TestState, TestEvent> report =
+                DefinitionValidator.validate(definition, TestState.INITIAL, TestState.COMPLETED);
+
+        assertEquals(TestState.ORPHANED, report.getIssues(ValidationReport.Kind.UNREACHABLE).get(0).getState());
+        assertEquals(TestState.STUCK, report.getIssues(ValidationReport.Kind.NO_EXIT).get(0).getState());
+        assertEquals(TestState.PAUSED, report.getIssues(ValidationReport.Kind.DEAD_END).get(0).getState());
+
+        ValidationReport.Issue<TestState, TestEvent> timeout =
+                report.getIssues(ValidationReport.Kind.UNHANDLED_TIMEOUT).get(0);
+        assertEquals(TestState.PROCESSING, timeout.getState());
+        assertEquals(TestEvent.EXPIRE, timeout.getEvent());
+        assertEquals(4, report.getIssues().size());
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, report::throwIfInvalid);
+        assertTrue(exception.getMessage().contains("NO_EXIT"));
+    }
+
+    @Test
+    void testStatesWithoutExitsAreFinalByDefault() {
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                        .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                        .transition(TestEvent.EXPIRE, TestState.PROCESSING, TestState.STUCK)
+                        .transition(TestEvent.START_PROCESS, TestState.ORPHANED, TestState.INITIAL)
+                        .build();
+
+        ValidationReport<TestState, TestEvent> report = DefinitionValidator.validate(definition, TestState.INITIAL);
+
+        assertEquals(1, report.getIssues().size());
+        assertEquals(TestState.ORPHANED, report.getIssues(ValidationReport.Kind.UNREACHABLE).get(0).getState());
+    }
+
+    @Test
+    void testHierarchicalDefinition() {
+        // PROCESSING only groups PAUSED and STUCK, and declares the transition that both of them inherit
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .substate(TestState.PAUSED, TestState.PROCESSING)
+                        .substate(TestState.STUCK, TestState.PROCESSING)
+                        .initialSubstate(TestState.PROCESSING, TestState.PAUSED)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.PAUSE_PROCESS, TestState.PAUSED, TestState.STUCK)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                        .transition(TestEvent.START_PROCESS, TestState.ORPHANED, TestState.INITIAL)
+                        .build();
+
+        ValidationReport<TestState, TestEvent> report =
+                DefinitionValidator.validate(definition, TestState.INITIAL, TestState.COMPLETED);
+
+        assertEquals(1, report.getIssues().size());
+        assertEquals(TestState.ORPHANED, report.getIssues(ValidationReport.Kind.UNREACHABLE).get(0).getState());
+
+        // Starting in the composite state starts in its initial substate
+        assertEquals(List.of(TestState.INITIAL, TestState.ORPHANED),
+                DefinitionValidator.validate(definition, TestState.PROCESSING, TestState.COMPLETED).getIssues().stream()
+                        .map(ValidationReport.Issue::getState).toList());
+    }
+
+    @Test
+    void testConflictingAndShadowedTransitions() {
+        ValidationReport<TestState, TestEvent> report =
+                DefinitionValidator.validate(new AmbiguousStateMachine(), TestState.INITIAL, TestState.COMPLETED);
+
+        ValidationReport.Issue<TestState, TestEvent> conflict = report.getIssues(ValidationReport.Kind.CONFLICT).get(0);
+        assertEquals(TestState.INITIAL, conflict.getState());
+        assertEquals(TestEvent.START_PROCESS, conflict.getEvent());
+        assertTrue(conflict.getMessage().contains("[PROCESSING, PAUSED, COMPLETED]"));
+
+        ValidationReport.Issue<TestState, TestEvent> shadowed = report.getIssues(ValidationReport.Kind.SHADOWED).get(0);
+        assertEquals(TestEvent.START_PROCESS, shadowed.getEvent());
+        assertTrue(shadowed.getMessage().contains("[STUCK]"));
+
+        // The shadowed transition still counts as an exit, so STUCK is reachable, but it has no exit itself
+        assertEquals(TestState.STUCK, report.getIssues(ValidationReport.Kind.NO_EXIT).get(0).getState());
+        assertEquals(TestState.ORPHANED, report.getIssues(ValidationReport.Kind.UNREACHABLE).get(0).getState());
+        assertEquals(4, report.getIssues().size());
+    }
+
+    @Test
+    void testDefaultGuardedTransitions() {
+        // The default guard only checks the current state, whether it is inlined or not
+        ValidationReport<TestState, TestEvent> report =
+                DefinitionValidator.validate(new AmbiguousStateMachine(false), TestState.INITIAL, TestState.COMPLETED);
+
+        assertTrue(report.getIssues(ValidationReport.Kind.CONFLICT).get(0).getMessage()
+                .contains("[PROCESSING, PAUSED, COMPLETED]"));
+        assertTrue(report.getIssues(ValidationReport.Kind.SHADOWED).get(0).getMessage().contains("[STUCK]"));
+
+        // An overridden default guard may fail, so the transitions after it can still be taken
+        report = DefinitionValidator.validate(new AmbiguousStateMachine(false) {
+            @Override
+            protected boolean defaultGuard(TestState from, TestState to) {
+                return TestState.STUCK != to && super.defaultGuard(from, to);
+            }
+        }, TestState.INITIAL, TestState.COMPLETED);
+
+        assertTrue(report.getIssues(ValidationReport.Kind.CONFLICT).get(0).getMessage()
+                .contains("[PROCESSING, PAUSED, COMPLETED, STUCK]"));
+        assertTrue(report.getIssues(ValidationReport.Kind.SHADOWED).isEmpty());
+    }
+
+    @Test
+    void testClassicStateMachine() {
+        ValidationReport<AbstractStateMachineTest.TestState, AbstractStateMachineTest.TestEvent> report =
+                DefinitionValidator.validate(new AbstractStateMachineTest.TestStateMachine(),
+                        AbstractStateMachineTest.TestState.INITIAL, AbstractStateMachineTest.TestState.COMPLETED);
+
+        assertTrue(report.getIssues(ValidationReport.Kind.CONFLICT).isEmpty());
+        assertTrue(report.getIssues(ValidationReport.Kind.SHADOWED).isEmpty());
+    }
+}
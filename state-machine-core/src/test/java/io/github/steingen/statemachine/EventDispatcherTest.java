@@ -0,0 +1,218 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventDispatcherTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    @Test
+    void testEventsOfAnEntityAreAppliedInOrder() throws Exception {
+        Map<Integer, StateMachineInstance<TestState, TestEvent>> stateMachines = new ConcurrentHashMap<>();
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+
+        try (EventDispatcher<Integer, TestState, TestEvent> dispatcher = EventDispatcher
+                .<Integer, TestState, TestEvent>builder(key -> stateMachines.computeIfAbsent(key,
+                        k -> definition.newInstance(TestState.INITIAL)))
+                .shards(4)
+                .mailboxCapacity(16)
+                .batchSize(8)
+                .build()) {
+
+            for (int key = 0; key < 100; key++) {
+                dispatcher.dispatch(key, TestEvent.START_PROCESS);
+                dispatcher.dispatch(key, TestEvent.PAUSE_PROCESS);
+                dispatcher.dispatch(key, TestEvent.START_PROCESS);
+                results.add(dispatcher.dispatch(key, TestEvent.COMPLETE_PROCESS));
+            }
+        }
+
+        assertEquals(100, stateMachines.size());
+        for (StateMachineInstance<TestState, TestEvent> stateMachine : stateMachines.values()) {
+            assertEquals(TestState.COMPLETED, stateMachine.getCurrentState());
+        }
+        for (CompletableFuture<Long> result : results) {
+            assertTrue(TransitionResult.isAccepted(result.get()));
+            assertEquals(TestState.COMPLETED.ordinal(), TransitionResult.toOrdinal(result.get()));
+        }
+    }
+
+    @Test
+    void testResultReportsRejectedEvent() throws Exception {
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> definition.newInstance(TestState.INITIAL))
+                .shards(2)
+                .build()) {
+
+            long result = dispatcher.dispatch("order-1", TestEvent.COMPLETE_PROCESS).get(5, TimeUnit.SECONDS);
+
+            assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(result));
+        }
+    }
+
+    @Test
+    void testTryDispatchWhenMailboxIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(1);
+        StateMachineDefinition<TestState, TestEvent> blockingDefinition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING,
+                                (machine, fromOrdinal, toOrdinal) -> {
+                                    entered.countDown();
+                                    try {
+                                        return release.await(5, TimeUnit.SECONDS);
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                        return false;
+                                    }
+                                })
+                        .build();
+
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> blockingDefinition.newInstance(TestState.INITIAL))
+                .shards(1)
+                .mailboxCapacity(1)
+                .build()) {
+
+            CompletableFuture<Long> first = dispatcher.dispatch("order-1", TestEvent.START_PROCESS);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            assertNotNull(dispatcher.tryDispatch("order-2", TestEvent.START_PROCESS));
+            // The mailbox thread is blocked in the guard, and the mailbox holds one event already
+            assertNull(dispatcher.tryDispatch("order-3", TestEvent.START_PROCESS));
+
+            release.countDown();
+            assertTrue(TransitionResult.isAccepted(first.get(5, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    void testStateMachineFailureCompletesFutureExceptionally() throws Exception {
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> {
+                    throw new IllegalArgumentException("Unknown entity " + key);
+                })
+                .shards(1)
+                .build()) {
+
+            CompletableFuture<Long> result = dispatcher.dispatch("order-1", TestEvent.START_PROCESS);
+
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    void testErrorStopsTheMailbox() throws Exception {
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> {
+                    if ("broken".equals(key)) {
+                        throw new StackOverflowError();
+                    }
+                    return definition.newInstance(TestState.INITIAL);
+                })
+                .shards(1)
+                .build()) {
+
+            CompletableFuture<Long> failed = dispatcher.dispatch("broken", TestEvent.START_PROCESS);
+            CompletableFuture<Long> next = dispatcher.dispatch("order-1", TestEvent.START_PROCESS);
+
+            // The Error is not swallowed, so the events of the mailbox fail instead of hanging
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalStateException);
+            assertThrows(ExecutionException.class, () -> next.get(5, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class, () -> dispatcher.remove("order-1").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testRemoveAndEviction() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> {
+                    created.incrementAndGet();
+                    return definition.newInstance(TestState.INITIAL);
+                })
+                .evictWhen(state -> TestState.COMPLETED == state)
+                .shards(1)
+                .build()) {
+
+            dispatcher.dispatch("order-1", TestEvent.START_PROCESS);
+            assertTrue(dispatcher.remove("order-1").get(5, TimeUnit.SECONDS));
+            assertFalse(dispatcher.remove("order-1").get(5, TimeUnit.SECONDS));
+
+            // A new state machine is created after the removal
+            assertTrue(TransitionResult.isAccepted(dispatcher.dispatch("order-1", TestEvent.START_PROCESS).get(5, TimeUnit.SECONDS)));
+            assertEquals(2, created.get());
+
+            // And evicted once it is completed
+            dispatcher.dispatch("order-1", TestEvent.COMPLETE_PROCESS).get(5, TimeUnit.SECONDS);
+            assertFalse(dispatcher.remove("order-1").get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testDispatchAfterClose() throws Exception {
+        EventDispatcher<String, TestState, TestEvent> dispatcher = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> definition.newInstance(TestState.INITIAL))
+                .shards(1)
+                .build();
+        dispatcher.close();
+
+        assertThrows(IllegalStateException.class, () -> dispatcher.dispatch("order-1", TestEvent.START_PROCESS));
+    }
+
+    @Test
+    void testVirtualThreads() throws Exception {
+        EventDispatcher.Builder<String, TestState, TestEvent> builder = EventDispatcher
+                .<String, TestState, TestEvent>builder(key -> definition.newInstance(TestState.INITIAL))
+                .virtualThreads();
+
+        if (Runtime.version().feature() < 21) {
+            assertThrows(UnsupportedOperationException.class, builder::build);
+            return;
+        }
+
+        try (EventDispatcher<String, TestState, TestEvent> dispatcher = builder.build()) {
+            assertTrue(TransitionResult.isAccepted(
+                    dispatcher.dispatch("order-1", TestEvent.START_PROCESS).get(5, TimeUnit.SECONDS)));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.statemachine.journal.StateSnapshotCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrdinalMigrationTest {
+
+    public enum OldState {
+        NEW,
+        RUNNING,
+        PAUSED,
+        DONE
+    }
+
+    public enum TestState {
+        INITIAL,
+        NEW,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    @TempDir
+    Path directory;
+
+    private static OrdinalMigration migration() {
+        return OrdinalMigration.builder(OldState.class, TestState.class)
+                .rename("RUNNING", TestState.PROCESSING)
+                .remove("PAUSED", TestState.PROCESSING)
+                .rename("DONE", TestState.COMPLETED)
+                .build();
+    }
+
+    @Test
+    void testRenameAndRemove() {
+        OrdinalMigration migration = migration();
+
+        // Same name, different ordinal
+        assertEquals(TestState.NEW.ordinal(), migration.apply(OldState.NEW.ordinal()));
+        assertEquals(TestState.PROCESSING.ordinal(), migration.apply(OldState.RUNNING.ordinal()));
+        assertEquals(TestState.PROCESSING.ordinal(), migration.apply(OldState.PAUSED.ordinal()));
+        assertEquals(TestState.COMPLETED.ordinal(), migration.apply(OldState.DONE.ordinal()));
+        assertFalse(migration.isIdentity());
+
+        assertThrows(IllegalArgumentException.class, () -> migration.apply(4));
+        assertThrows(IllegalArgumentException.class, () -> migration.apply(-1));
+    }
+
+    @Test
+    void testUnmappedStates() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> OrdinalMigration.builder(OldState.class, TestState.class).rename("RUNNING", TestState.PROCESSING).build());
+        assertTrue(e.getMessage().contains("PAUSED"));
+        assertTrue(e.getMessage().contains("DONE"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> OrdinalMigration.builder(OldState.class, TestState.class).rename("STOPPED", TestState.PROCESSING));
+    }
+
+    @Test
+    void testNamesWithoutOldEnum() {
+        OrdinalMigration byName = OrdinalMigration.builder(List.of("NEW", "RUNNING", "PAUSED", "DONE"), TestState.class)
+                .rename("RUNNING", TestState.PROCESSING)
+                .remove("PAUSED", TestState.PROCESSING)
+                .rename("DONE", TestState.COMPLETED)
+                .build();
+
+        assertEquals(migration().toString(), byName.toString());
+        assertTrue(OrdinalMigration.builder(TestState.class, TestState.class).build().isIdentity());
+    }
+
+    @Test
+    void testArrays() {
+        OrdinalMigration migration = migration();
+
+        byte[] bytes = {0, 1, 2, 3, 2};
+        migration.apply(bytes);
+        assertArrayEquals(new byte[] {1, 2, 2, 3, 2}, bytes);
+
+        short[] shorts = {3, 0};
+        migration.apply(shorts);
+        assertArrayEquals(new short[] {3, 1}, shorts);
+    }
+
+    @Test
+    void testStoreMigration() {
+        StateMachineDefinition<TestState, TestEvent> definition = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.NEW, TestState.PROCESSING)
+                .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                .build();
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 6, TestState.NEW);
+        store.setState(1, TestState.PROCESSING);
+        store.setState(2, TestState.INITIAL);
+
+        store.migrate(OrdinalMigration.retire(TestState.class, TestState.INITIAL, TestState.NEW));
+
+        assertEquals(TestState.NEW, store.getState(0));
+        assertEquals(TestState.PROCESSING, store.getState(1));
+        assertEquals(TestState.NEW, store.getState(2));
+
+        store.sendEvent(2, TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, store.getState(2));
+    }
+
+    @Test
+    void testStoreMigrationIsCheckedFirst() {
+        StateMachineDefinition<TestState, TestEvent> definition = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.NEW, TestState.PROCESSING)
+                .build();
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 4, TestState.INITIAL);
+        store.setState(3, TestState.COMPLETED);
+
+        // Swaps INITIAL and NEW, but has no mapping for COMPLETED
+        OrdinalMigration partial = OrdinalMigration.builder(List.of("NEW", "INITIAL", "PROCESSING"), TestState.class)
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> store.migrate(partial));
+        assertEquals(TestState.INITIAL, store.getState(0));
+        assertEquals(TestState.COMPLETED, store.getState(3));
+    }
+
+    @Test
+    void testMappedStoreMigration() throws IOException {
+        Path file = directory.resolve("states.store");
+        StateMachineDefinition<OldState, TestEvent> oldDefinition =
+                StateMachineDefinition.builder(OldState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, OldState.NEW, OldState.RUNNING)
+                        .build();
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.NEW, TestState.PROCESSING)
+                        .build();
+
+        try (StateStore<OldState, TestEvent> store = StateStore.map(oldDefinition, file, 5, OldState.NEW)) {
+            store.setState(1, OldState.RUNNING);
+            store.setState(2, OldState.PAUSED);
+            store.setState(3, OldState.DONE);
+        }
+
+        // The old ordinals are not read as new ones
+        assertThrows(IOException.class, () -> StateStore.map(definition, file, 5, TestState.INITIAL));
+
+        try (StateStore<TestState, TestEvent> store =
+                     StateStore.map(definition, file, 5, TestState.INITIAL, migration())) {
+            assertEquals(TestState.NEW, store.getState(0));
+            assertEquals(TestState.PROCESSING, store.getState(1));
+            assertEquals(TestState.PROCESSING, store.getState(2));
+            assertEquals(TestState.COMPLETED, store.getState(3));
+            store.sendEvent(0, TestEvent.START_PROCESS);
+        }
+        assertFalse(Files.exists(directory.resolve("states.store.migrating")));
+
+        // Once migrated, the file is opened as it is, with or without the migration
+        try (StateStore<TestState, TestEvent> store =
+                     StateStore.map(definition, file, 5, TestState.INITIAL, migration())) {
+            assertEquals(TestState.PROCESSING, store.getState(0));
+            assertEquals(TestState.COMPLETED, store.getState(3));
+        }
+        try (StateStore<TestState, TestEvent> store = StateStore.map(definition, file, 5, TestState.INITIAL)) {
+            assertEquals(TestState.PROCESSING, store.getState(0));
+        }
+    }
+
+    @Test
+    void testSnapshotMigration() throws IOException {
+        Map<Long, Integer> oldStates = Map.of(10L, OldState.RUNNING.ordinal(), 11L, OldState.PAUSED.ordinal(),
+                12L, OldState.DONE.ordinal());
+        StateSnapshotCodec oldCodec = StateSnapshotCodec.forStates(OldState.class);
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(oldStates.size()));
+        oldCodec.write(consumer -> oldStates.forEach(consumer::accept), buffer);
+
+        // The snapshot was written for the old states, so it is read by their names
+        StateSnapshotCodec byName = StateSnapshotCodec.forStateNames(List.of("NEW", "RUNNING", "PAUSED", "DONE"));
+        assertEquals(oldCodec.definitionHash(), byName.definitionHash());
+        assertThrows(IOException.class, () -> StateSnapshotCodec.forStates(TestState.class)
+                .read(buffer.duplicate().flip(), (entityId, stateOrdinal) -> { }));
+
+        Map<Long, Integer> restored = new HashMap<>();
+        assertEquals(3, byName.read(buffer.flip(), migration().migrating(restored::put)));
+
+        assertEquals(Map.of(10L, TestState.PROCESSING.ordinal(), 11L, TestState.PROCESSING.ordinal(),
+                12L, TestState.COMPLETED.ordinal()), restored);
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrthogonalRegionsTest {
+
+    public enum PaymentState {
+        UNPAID,
+        PAID
+    }
+
+    public enum ShippingState {
+        WAITING,
+        SHIPPED,
+        DELIVERED
+    }
+
+    public enum OrderEvent {
+        PAY,
+        SHIP,
+        DELIVER
+    }
+
+    private final StateMachineInstance<PaymentState, OrderEvent> payment =
+            StateMachineDefinition.builder(PaymentState.class, OrderEvent.class)
+                    .transition(OrderEvent.PAY, PaymentState.UNPAID, PaymentState.PAID)
+                    .build()
+                    .newInstance(PaymentState.UNPAID);
+
+    private final StateMachineInstance<ShippingState, OrderEvent> shipping =
+            StateMachineDefinition.builder(ShippingState.class, OrderEvent.class)
+                    .transition(OrderEvent.SHIP, ShippingState.WAITING, ShippingState.SHIPPED)
+                    .transition(OrderEvent.DELIVER, ShippingState.SHIPPED, ShippingState.DELIVERED)
+                    .build()
+                    .newInstance(ShippingState.WAITING);
+
+    @Test
+    void testEventsAreSentToEveryRegion() {
+        OrthogonalRegions<OrderEvent> regions = OrthogonalRegions.of(payment, shipping);
+
+        assertEquals(1, regions.sendEvent(OrderEvent.SHIP));
+        assertEquals(1, regions.sendEvent(OrderEvent.PAY));
+
+        assertEquals(PaymentState.PAID, payment.getCurrentState());
+        assertEquals(ShippingState.SHIPPED, shipping.getCurrentState());
+        assertEquals(2, regions.regionCount());
+    }
+
+    @Test
+    void testResultsPerRegion() {
+        OrthogonalRegions<OrderEvent> regions = OrthogonalRegions.of(payment, shipping);
+        long[] results = new long[regions.regionCount()];
+
+        regions.sendEvent(OrderEvent.SHIP, results);
+
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(results[0]));
+        assertTrue(TransitionResult.isAccepted(results[1]));
+        assertThrows(IllegalArgumentException.class, () -> regions.sendEvent(OrderEvent.PAY, new long[1]));
+    }
+}
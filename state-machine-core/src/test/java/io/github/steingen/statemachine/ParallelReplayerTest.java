@@ -0,0 +1,171 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelReplayerTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS,
+        RESET
+    }
+
+    // More threads than states plus one, so that the replays are split
+    private static final ForkJoinPool POOL = new ForkJoinPool(8);
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .transition(TestEvent.RESET, TestState.COMPLETED, TestState.INITIAL)
+                    .build();
+
+    private static int[] randomLog(int length, long seed) {
+        Random random = new Random(seed);
+        int[] log = new int[length];
+
+        for (int i = 0; i < length; i++) {
+            log[i] = random.nextInt(TestEvent.values().length);
+        }
+        return log;
+    }
+
+    private int sendEach(int[] log) {
+        StateMachineInstance<TestState, TestEvent> machine = definition.newInstance(TestState.INITIAL);
+
+        for (int eventOrdinal : log) {
+            machine.sendEvent(TestEvent.values()[eventOrdinal]);
+        }
+        return machine.getCurrentState().ordinal();
+    }
+
+    @Test
+    void testEventMappings() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition);
+        StateMapping start = replayer.mapping(TestEvent.START_PROCESS);
+
+        assertEquals(TestState.PROCESSING.ordinal(), start.apply(TestState.INITIAL.ordinal()));
+        // Unmatched events leave the state unchanged
+        assertEquals(TestState.COMPLETED.ordinal(), start.apply(TestState.COMPLETED.ordinal()));
+        assertEquals(TestState.PROCESSING, start.apply(TestState.PAUSED, definition));
+
+        StateMapping startThenComplete = start.andThen(replayer.mapping(TestEvent.COMPLETE_PROCESS));
+        assertEquals(TestState.COMPLETED.ordinal(), startThenComplete.apply(TestState.INITIAL.ordinal()));
+        assertTrue(StateMapping.identity(4).andThen(start).equals(start));
+        assertThrows(IllegalArgumentException.class, () -> start.andThen(StateMapping.identity(3)));
+    }
+
+    @Test
+    void testCompositionIsAssociative() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition);
+        StateMapping a = replayer.mapping(TestEvent.START_PROCESS);
+        StateMapping b = replayer.mapping(TestEvent.PAUSE_PROCESS);
+        StateMapping c = replayer.mapping(TestEvent.RESET);
+
+        assertEquals(a.andThen(b).andThen(c), a.andThen(b.andThen(c)));
+        assertEquals(replayer.compose(new TestEvent[] {TestEvent.START_PROCESS, TestEvent.PAUSE_PROCESS, TestEvent.RESET}),
+                a.andThen(b).andThen(c));
+        assertTrue(replayer.compose(new TestEvent[0]).isIdentity());
+    }
+
+    @Test
+    void testSequentialReplay() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition);
+        int[] log = randomLog(10_000, 1);
+
+        assertEquals(sendEach(log), replayer.replay(TestState.INITIAL.ordinal(), log));
+        assertEquals(TestState.COMPLETED, replayer.replay(TestState.INITIAL,
+                new TestEvent[] {TestEvent.START_PROCESS, TestEvent.PAUSE_PROCESS, TestEvent.START_PROCESS, TestEvent.COMPLETE_PROCESS}));
+    }
+
+    @Test
+    void testParallelReplay() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition, POOL, 1000, 16);
+
+        for (long seed = 0; seed < 10; seed++) {
+            int[] log = randomLog(100_000 + (int) seed, seed);
+            int expected = sendEach(log);
+
+            assertEquals(expected, replayer.replay(TestState.INITIAL.ordinal(), log));
+            assertEquals(expected, replayer.compose(log, 0, log.length).apply(TestState.INITIAL.ordinal()));
+        }
+
+        int[] log = randomLog(50_000, 42);
+        assertEquals(new ParallelReplayer<>(definition).replay(TestState.PAUSED.ordinal(), log, 123, 45_678),
+                replayer.replay(TestState.PAUSED.ordinal(), log, 123, 45_678));
+        assertThrows(IndexOutOfBoundsException.class, () -> replayer.replay(0, log, 10, log.length + 1));
+    }
+
+    @Test
+    void testSplitDecision() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition, POOL, 1000, 16);
+        ParallelReplayer<TestState, TestEvent> smallPool = new ParallelReplayer<>(definition, new ForkJoinPool(4), 1000, 16);
+
+        assertTrue(replayer.isParallelFaster(1001, definition.stateCount()));
+        assertFalse(replayer.isParallelFaster(1000, definition.stateCount()));
+        // Four threads do not make up for four lookups per event
+        assertFalse(smallPool.isParallelFaster(1_000_000, definition.stateCount()));
+        assertFalse(new ParallelReplayer<>(definition).isParallelFaster(1_000_000, 1));
+    }
+
+    @Test
+    void testReplayStates() {
+        ParallelReplayer<TestState, TestEvent> sequential = new ParallelReplayer<>(definition);
+        ParallelReplayer<TestState, TestEvent> parallel = new ParallelReplayer<>(definition, POOL, 777, 16);
+        int[] log = randomLog(20_000, 7);
+
+        int[] states = parallel.replayStates(TestState.INITIAL.ordinal(), log);
+        assertArrayEquals(sequential.replayStates(TestState.INITIAL.ordinal(), log), states);
+
+        StateMachineInstance<TestState, TestEvent> machine = definition.newInstance(TestState.INITIAL);
+        for (int i = 0; i < log.length; i++) {
+            machine.sendEvent(TestEvent.values()[log[i]]);
+            assertEquals(machine.getCurrentState().ordinal(), states[i]);
+        }
+        assertEquals(0, parallel.replayStates(0, new int[0]).length);
+    }
+
+    @Test
+    void testMemoizedSequences() {
+        ParallelReplayer<TestState, TestEvent> replayer = new ParallelReplayer<>(definition, null, 1000, 1);
+
+        StateMapping first = replayer.sequence(TestEvent.START_PROCESS, TestEvent.COMPLETE_PROCESS);
+        assertSame(first, replayer.sequence(TestEvent.START_PROCESS, TestEvent.COMPLETE_PROCESS));
+        assertEquals(1, replayer.memoizedCount());
+
+        // Beyond the limit, sequences are still composed, but not memoized
+        StateMapping second = replayer.sequence(TestEvent.COMPLETE_PROCESS, TestEvent.RESET);
+        assertEquals(second, replayer.sequence(TestEvent.COMPLETE_PROCESS, TestEvent.RESET));
+        assertEquals(1, replayer.memoizedCount());
+    }
+
+    @Test
+    void testRejectsCustomGuards() {
+        StateMachineDefinition<TestState, TestEvent> guarded = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING, (from, to) -> true)
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> new ParallelReplayer<>(guarded));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelReplayer<>(definition, POOL, 0, 16));
+    }
+}
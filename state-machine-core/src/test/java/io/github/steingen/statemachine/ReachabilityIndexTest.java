@@ -0,0 +1,94 @@
+package io.github.steingen.statemachine;
+
+import io.github.steingen.bitstore.BitStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReachabilityIndexTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED,
+        STUCK,
+        STILL_STUCK,
+        ORPHANED
+    }
+
+    public enum TestEvent {
+        START,
+        PAUSE,
+        RESUME,
+        COMPLETE,
+        FAIL,
+        RETRY
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.RESUME, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.COMPLETE, TestState.PROCESSING, TestState.COMPLETED)
+                    .transition(TestEvent.FAIL, TestState.PAUSED, TestState.STUCK)
+                    .transition(TestEvent.RETRY, TestState.STUCK, TestState.STILL_STUCK)
+                    .transition(TestEvent.RETRY, TestState.STILL_STUCK, TestState.STUCK)
+                    .build();
+
+    private final ReachabilityIndex<TestState, TestEvent> index = definition.reachability();
+
+    @Test
+    void testCanReach() {
+        assertTrue(index.canReach(TestState.INITIAL, TestState.COMPLETED));
+        assertTrue(index.canReach(TestState.PAUSED, TestState.PAUSED)); // Through PROCESSING
+        assertFalse(index.canReach(TestState.INITIAL, TestState.INITIAL));
+        assertFalse(index.canReach(TestState.STUCK, TestState.COMPLETED));
+        assertFalse(index.canReach(TestState.INITIAL, TestState.ORPHANED));
+    }
+
+    @Test
+    void testReachableFrom() {
+        assertEquals(2, index.reachableFrom(TestState.STUCK).cardinality());
+        assertTrue(index.reachableFrom(TestState.STUCK)
+                .getAll(BitStore.ofAll(TestState.STUCK, TestState.STILL_STUCK)));
+    }
+
+    @Test
+    void testShortestPath() {
+        assertEquals(List.of(TestEvent.START, TestEvent.PAUSE, TestEvent.FAIL),
+                index.shortestPath(TestState.INITIAL, TestState.STUCK));
+        assertEquals(List.of(TestEvent.RESUME, TestEvent.COMPLETE),
+                index.shortestPath(TestState.PAUSED, TestState.COMPLETED));
+        assertEquals(List.of(), index.shortestPath(TestState.PAUSED, TestState.PAUSED));
+        assertNull(index.shortestPath(TestState.COMPLETED, TestState.INITIAL));
+        assertEquals(TestEvent.START.ordinal(),
+                index.nextEventOrdinal(TestState.INITIAL.ordinal(), TestState.COMPLETED.ordinal()));
+    }
+
+    @Test
+    void testTerminalDeadEndAndUnreachableStates() {
+        BitStore<TestState> terminal = index.terminalStates();
+        BitStore<TestState> deadEnds = index.deadEndStates();
+        BitStore<TestState> unreachable = index.unreachableFrom(TestState.INITIAL);
+
+        assertTrue(terminal.getAll(BitStore.ofAll(TestState.COMPLETED, TestState.ORPHANED)));
+        assertEquals(2, terminal.cardinality());
+        assertTrue(deadEnds.getAll(BitStore.ofAll(TestState.STUCK, TestState.STILL_STUCK)));
+        assertEquals(2, deadEnds.cardinality());
+        assertTrue(unreachable.get(TestState.ORPHANED));
+        assertEquals(1, unreachable.cardinality());
+    }
+
+    @Test
+    void testIndexIsComputedOnce() {
+        assertSame(index, definition.reachability());
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReloadableDefinitionTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    public enum OtherState {
+        A,
+        B
+    }
+
+    private static StateMachineDefinition<TestState, TestEvent> withPause() {
+        return StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                .build();
+    }
+
+    private static StateMachineDefinition<TestState, TestEvent> withoutPause() {
+        return StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                .build();
+    }
+
+    @Test
+    void testReloadChangesTransitions() {
+        ReloadableDefinition<TestState, TestEvent> definitions = ReloadableDefinition.of(withPause());
+        ReloadableStateMachine<TestState, TestEvent> machine = definitions.newInstance(TestState.INITIAL);
+
+        machine.sendEvent(TestEvent.START_PROCESS);
+        assertTrue(machine.isValidTransition(TestState.PAUSED));
+
+        definitions.reload(withoutPause());
+
+        assertFalse(machine.isValidTransition(TestState.PAUSED));
+        long result = machine.sendEventForResult(TestEvent.PAUSE_PROCESS);
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(result));
+        assertEquals(TestState.PROCESSING, machine.getCurrentState());
+
+        machine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.COMPLETED, machine.getCurrentState());
+    }
+
+    @Test
+    void testVersionNumbers() {
+        StateMachineDefinition<TestState, TestEvent> first = withPause();
+        StateMachineDefinition<TestState, TestEvent> second = withoutPause();
+        ReloadableDefinition<TestState, TestEvent> definitions = ReloadableDefinition.of(first);
+
+        assertEquals(1, definitions.current().number());
+        assertSame(first, definitions.current().definition());
+
+        assertEquals(2, definitions.reload(second));
+        assertEquals(2, definitions.current().number());
+        assertSame(second, definitions.definition());
+
+        assertThrows(NullPointerException.class, () -> definitions.reload(null));
+    }
+
+    @Test
+    void testInFlightEventFinishesOnItsVersion() throws Exception {
+        CountDownLatch inGuard = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+
+        StateMachineDefinition<TestState, TestEvent> guarded = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING, (from, to) -> {
+                    inGuard.countDown();
+                    try {
+                        return reloaded.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                })
+                .build();
+        StateMachineDefinition<TestState, TestEvent> paused = StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PAUSED)
+                .build();
+
+        ReloadableDefinition<TestState, TestEvent> definitions = ReloadableDefinition.of(guarded);
+        ReloadableStateMachine<TestState, TestEvent> inFlight = definitions.newInstance(1, TestState.INITIAL);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> result = executor.submit(() -> inFlight.sendEventForResult(TestEvent.START_PROCESS));
+
+            assertTrue(inGuard.await(5, TimeUnit.SECONDS));
+            definitions.reload(paused);
+            reloaded.countDown();
+
+            // The event started on the first version, so it uses its transition
+            assertEquals(TestState.PROCESSING.ordinal(), TransitionResult.toOrdinal(result.get(5, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ReloadableStateMachine<TestState, TestEvent> later = definitions.newInstance(2, TestState.INITIAL);
+        later.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PAUSED, later.getCurrentState());
+        assertEquals(2, later.getEntityId());
+    }
+
+    @Test
+    void testMigrateRetiredState() {
+        ReloadableDefinition<TestState, TestEvent> definitions = ReloadableDefinition.of(withPause());
+        ReloadableStateMachine<TestState, TestEvent> machine = definitions.newInstance(TestState.PAUSED);
+
+        definitions.reload(withoutPause());
+        machine.migrate(OrdinalMigration.retire(TestState.class, TestState.PAUSED, TestState.PROCESSING));
+
+        assertEquals(TestState.PROCESSING, machine.getCurrentState());
+        machine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.COMPLETED, machine.getCurrentState());
+    }
+
+    @Test
+    void testStoreReload() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(withPause(), 4, TestState.INITIAL);
+        store.sendEvent(0, TestEvent.START_PROCESS);
+        store.sendEvent(0, TestEvent.PAUSE_PROCESS);
+        assertEquals(TestState.PAUSED, store.getState(0));
+
+        store.reload(withoutPause());
+        store.sendEvent(1, TestEvent.START_PROCESS);
+        long result = store.sendEvent(1, TestEvent.PAUSE_PROCESS);
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(result));
+
+        StateMachineDefinition<OtherState, TestEvent> other = StateMachineDefinition.builder(OtherState.class, TestEvent.class)
+                .transition(TestEvent.START_PROCESS, OtherState.A, OtherState.B)
+                .build();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        StateStore<OtherState, TestEvent> mismatched = (StateStore) store;
+        assertThrows(IllegalArgumentException.class, () -> mismatched.reload(other));
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateIndexTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateIndex<TestState> index = StateIndex.of(TestState.class);
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PAUSED, TestState.PAUSED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .onAnyTransition(index)
+                    .build();
+
+    @Test
+    void testIndexFollowsTransitions() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 10, TestState.INITIAL);
+        store.forEachState(index::add);
+        assertEquals(10, index.count(TestState.INITIAL));
+
+        for (long entityId = 0; entityId < 10; entityId++) {
+            store.sendEvent(entityId, TestEvent.START_PROCESS);
+        }
+        store.sendEvent(2, TestEvent.PAUSE_PROCESS);
+        store.sendEvent(5, TestEvent.PAUSE_PROCESS);
+        // Self-transition
+        store.sendEvent(5, TestEvent.PAUSE_PROCESS);
+        store.sendEvent(7, TestEvent.COMPLETE_PROCESS);
+        // Unmatched, so the index is not touched
+        store.sendEvent(7, TestEvent.COMPLETE_PROCESS);
+
+        assertArrayEquals(new long[]{0, 7, 2, 1}, index.counts());
+        assertTrue(index.contains(2, TestState.PAUSED));
+        assertFalse(index.contains(2, TestState.PROCESSING));
+
+        List<Long> paused = new ArrayList<>();
+        index.forEach(TestState.PAUSED, paused::add);
+        assertEquals(List.of(2L, 5L), paused);
+
+        List<Long> unfinished = new ArrayList<>();
+        index.forEachIn(unfinished::add, TestState.PAUSED, TestState.COMPLETED);
+        assertEquals(List.of(2L, 5L, 7L), unfinished);
+        assertEquals(3, index.countIn(TestState.PAUSED, TestState.COMPLETED));
+    }
+
+    @Test
+    void testInstancesWithEntityIds() {
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(42, TestState.INITIAL);
+        index.add(stateMachine.getEntityId(), stateMachine.getCurrentState());
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertTrue(index.contains(42, TestState.PROCESSING));
+        assertEquals(0, index.count(TestState.INITIAL));
+
+        index.remove(42, TestState.PROCESSING);
+        assertEquals(0, index.count(TestState.PROCESSING));
+        assertEquals(-1, index.bitmap(TestState.PROCESSING).nextSetBit(0));
+    }
+}
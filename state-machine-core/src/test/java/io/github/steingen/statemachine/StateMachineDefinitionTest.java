@@ -0,0 +1,357 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateMachineDefinitionTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    @Test
+    void testSendEvent() {
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(TestState.INITIAL);
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, stateMachine.getCurrentState());
+
+        stateMachine.sendEvent(TestEvent.PAUSE_PROCESS);
+        assertEquals(TestState.PAUSED, stateMachine.getCurrentState());
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TestState.COMPLETED, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testSendEventWithNoTransition() {
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(TestState.COMPLETED);
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.COMPLETED, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testInstancesShareTheDefinition() {
+        StateMachineInstance<TestState, TestEvent> first = definition.newInstance(TestState.INITIAL);
+        StateMachineInstance<TestState, TestEvent> second = definition.newInstance(TestState.INITIAL);
+
+        first.sendEvent(TestEvent.START_PROCESS);
+
+        assertSame(first.getDefinition(), second.getDefinition());
+        assertEquals(TestState.PROCESSING, first.getCurrentState());
+        assertEquals(TestState.INITIAL, second.getCurrentState());
+    }
+
+    @Test
+    void testGuardRejectsTransition() {
+        StateMachineDefinition<TestState, TestEvent> guardedDefinition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING, (from, to) -> false)
+                        .build();
+
+        assertEquals(StateMachineDefinition.NO_TRANSITION,
+                guardedDefinition.nextStateOrdinal(TestEvent.START_PROCESS.ordinal(), TestState.INITIAL.ordinal()));
+    }
+
+    @Test
+    void testTransitionGuardReceivesTheStateMachine() {
+        StateMachineDefinition<TestState, TestEvent> guardedDefinition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING,
+                                (machine, fromOrdinal, toOrdinal) -> null != machine
+                                        && TestState.INITIAL == machine.getCurrentState()
+                                        && TestState.PROCESSING.ordinal() == toOrdinal)
+                        .build();
+        StateMachineInstance<TestState, TestEvent> stateMachine = guardedDefinition.newInstance(TestState.INITIAL);
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+
+        assertEquals(TestState.PROCESSING, stateMachine.getCurrentState());
+        // Without a state machine, the guard has nothing to check against
+        assertEquals(StateMachineDefinition.NO_TRANSITION,
+                guardedDefinition.nextStateOrdinal(TestEvent.START_PROCESS.ordinal(), TestState.INITIAL.ordinal()));
+    }
+
+    @Test
+    void testFromCurrentGuard() {
+        TransitionGuard<TestState, TestEvent> guard = TransitionGuard.fromCurrent();
+        StateMachineDefinition<TestState, TestEvent> guardedDefinition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING, guard)
+                        .build();
+        StateMachineInstance<TestState, TestEvent> stateMachine = guardedDefinition.newInstance(TestState.INITIAL);
+
+        assertTrue(TransitionGuard.isFromCurrent(guard));
+        assertFalse(TransitionGuard.isFromCurrent(TransitionGuard.of(TestState.class, (from, to) -> true)));
+        assertTrue(guard.test(stateMachine, TestState.INITIAL.ordinal(), TestState.PROCESSING.ordinal()));
+        assertFalse(guard.test(stateMachine, TestState.PAUSED.ordinal(), TestState.PROCESSING.ordinal()));
+        assertFalse(guard.test(null, TestState.INITIAL.ordinal(), TestState.PROCESSING.ordinal()));
+
+        // The marker is implied by the table lookup, so it also passes without a state machine
+        assertEquals(TestState.PROCESSING.ordinal(),
+                guardedDefinition.nextStateOrdinal(TestEvent.START_PROCESS.ordinal(), TestState.INITIAL.ordinal()));
+    }
+
+    public enum OrderState {
+        CREATED,
+        PROCESSING,
+        PAYMENT,
+        AUTHORIZING,
+        CAPTURING,
+        PACKING,
+        CANCELLED,
+        COMPLETED
+    }
+
+    public enum OrderEvent {
+        SUBMIT,
+        AUTHORIZED,
+        CAPTURED,
+        PACKED,
+        CANCEL
+    }
+
+    private static StateMachineDefinition<OrderState, OrderEvent> orderDefinition() {
+        return StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+                .substate(OrderState.PAYMENT, OrderState.PROCESSING)
+                .substate(OrderState.AUTHORIZING, OrderState.PAYMENT)
+                .substate(OrderState.CAPTURING, OrderState.PAYMENT)
+                .substate(OrderState.PACKING, OrderState.PROCESSING)
+                .initialSubstate(OrderState.PROCESSING, OrderState.PAYMENT)
+                .initialSubstate(OrderState.PAYMENT, OrderState.AUTHORIZING)
+                .transition(OrderEvent.SUBMIT, OrderState.CREATED, OrderState.PROCESSING)
+                .transition(OrderEvent.AUTHORIZED, OrderState.AUTHORIZING, OrderState.CAPTURING)
+                .transition(OrderEvent.CAPTURED, OrderState.CAPTURING, OrderState.PACKING)
+                .transition(OrderEvent.PACKED, OrderState.PACKING, OrderState.COMPLETED)
+                // Inherited by every substate of PROCESSING
+                .transition(OrderEvent.CANCEL, OrderState.PROCESSING, OrderState.CANCELLED)
+                // Overrides the inherited transition
+                .transition(OrderEvent.CANCEL, OrderState.CAPTURING, OrderState.CAPTURING, (from, to) -> false)
+                .build();
+    }
+
+    @Test
+    void testHierarchicalStates() {
+        StateMachineDefinition<OrderState, OrderEvent> hierarchicalDefinition = orderDefinition();
+        StateMachineInstance<OrderState, OrderEvent> stateMachine = hierarchicalDefinition.newInstance(OrderState.CREATED);
+
+        // Entering a composite state enters its initial substates
+        stateMachine.sendEvent(OrderEvent.SUBMIT);
+        assertEquals(OrderState.AUTHORIZING, stateMachine.getCurrentState());
+        assertTrue(stateMachine.isInState(OrderState.PAYMENT));
+        assertTrue(stateMachine.isInState(OrderState.PROCESSING));
+        assertFalse(stateMachine.isInState(OrderState.PACKING));
+        assertEquals(OrderState.PAYMENT, hierarchicalDefinition.parent(OrderState.AUTHORIZING));
+        assertNull(hierarchicalDefinition.parent(OrderState.CREATED));
+
+        // Inherited from PROCESSING
+        assertTrue(stateMachine.isValidTransition(OrderState.CANCELLED));
+        assertTrue(hierarchicalDefinition.isValidTransition(OrderState.PACKING, OrderState.CANCELLED));
+        assertTrue(hierarchicalDefinition.isValidTransition(OrderState.CREATED, OrderState.AUTHORIZING));
+
+        stateMachine.sendEvent(OrderEvent.AUTHORIZED);
+        stateMachine.sendEvent(OrderEvent.CANCEL);
+        assertEquals(OrderState.CAPTURING, stateMachine.getCurrentState());
+
+        stateMachine.sendEvent(OrderEvent.CAPTURED);
+        stateMachine.sendEvent(OrderEvent.CANCEL);
+        assertEquals(OrderState.CANCELLED, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testStartInCompositeState() throws IOException {
+        StateMachineDefinition<OrderState, OrderEvent> hierarchicalDefinition = orderDefinition();
+
+        assertEquals(OrderState.AUTHORIZING, hierarchicalDefinition.entryState(OrderState.PROCESSING));
+        assertEquals(OrderState.CREATED, hierarchicalDefinition.entryState(OrderState.CREATED));
+        assertEquals(OrderState.AUTHORIZING, hierarchicalDefinition.newInstance(OrderState.PROCESSING).getCurrentState());
+        assertEquals(OrderState.AUTHORIZING,
+                new ConcurrentStateMachine<>(hierarchicalDefinition, OrderState.PAYMENT).getCurrentState());
+        assertEquals(OrderState.AUTHORIZING,
+                ReloadableDefinition.of(hierarchicalDefinition).newInstance(OrderState.PROCESSING).getCurrentState());
+
+        try (StateStore<OrderState, OrderEvent> store = StateStore.allocate(hierarchicalDefinition, 4, OrderState.PROCESSING)) {
+            assertEquals(OrderState.AUTHORIZING, store.getState(3));
+        }
+    }
+
+    @Test
+    void testInvalidHierarchy() {
+        StateMachineDefinition.Builder<OrderState, OrderEvent> builder =
+                StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+                        .substate(OrderState.PAYMENT, OrderState.PROCESSING)
+                        .substate(OrderState.AUTHORIZING, OrderState.PAYMENT);
+
+        assertThrows(IllegalStateException.class, () -> builder.substate(OrderState.PROCESSING, OrderState.AUTHORIZING));
+        assertThrows(IllegalStateException.class, () -> builder.substate(OrderState.PAYMENT, OrderState.CREATED));
+        assertThrows(IllegalStateException.class, () -> builder.initialSubstate(OrderState.PROCESSING, OrderState.AUTHORIZING));
+    }
+
+    @Test
+    void testIsValidTransition() {
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(TestState.INITIAL);
+
+        assertTrue(stateMachine.isValidTransition(TestState.PROCESSING));
+        assertFalse(stateMachine.isValidTransition(TestState.COMPLETED));
+        assertTrue(definition.isValidTransition(TestState.PAUSED, TestState.PROCESSING));
+    }
+
+    @Test
+    void testDuplicateTransitionIsRejected() {
+        StateMachineDefinition.Builder<TestState, TestEvent> builder =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING);
+
+        assertThrows(IllegalStateException.class,
+                () -> builder.transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.COMPLETED));
+    }
+
+    @Test
+    void testImportedGuardsAreRejected() {
+        AbstractStateMachine<TestState, TestEvent> guarded = new AbstractStateMachine<>() {
+            {
+                this.eventRules.put(TestEvent.START_PROCESS,
+                        List.of(newTransition(TestState.INITIAL, TestState.PROCESSING, (from, to) -> true)));
+            }
+        };
+        // Calls defaultGuard, which would read the state of this template rather than the state of each entity
+        AbstractStateMachine<TestState, TestEvent> defaultGuarded = new AbstractStateMachine<>() {
+            {
+                this.eventRules.put(TestEvent.START_PROCESS, List.of(newTransition(TestState.INITIAL, TestState.PROCESSING)));
+            }
+        };
+
+        assertThrows(IllegalArgumentException.class,
+                () -> StateMachineDefinition.builder(TestState.class, TestEvent.class).transitions(guarded));
+        assertThrows(IllegalArgumentException.class,
+                () -> StateMachineDefinition.builder(TestState.class, TestEvent.class).transitions(defaultGuarded));
+    }
+
+    private static TransitionAction record(List<String> log, String name) {
+        return (entityId, eventOrdinal, fromOrdinal, toOrdinal) -> log.add(name + "@" + entityId);
+    }
+
+    @Test
+    void testActionsRunInOrder() {
+        List<String> log = new ArrayList<>();
+        StateMachineDefinition<OrderState, OrderEvent> actionDefinition =
+                StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+                        .substate(OrderState.PAYMENT, OrderState.PROCESSING)
+                        .substate(OrderState.AUTHORIZING, OrderState.PAYMENT)
+                        .substate(OrderState.CAPTURING, OrderState.PAYMENT)
+                        .substate(OrderState.PACKING, OrderState.PROCESSING)
+                        .initialSubstate(OrderState.PROCESSING, OrderState.PAYMENT)
+                        .initialSubstate(OrderState.PAYMENT, OrderState.AUTHORIZING)
+                        .transition(OrderEvent.SUBMIT, OrderState.CREATED, OrderState.PROCESSING)
+                        .transition(OrderEvent.AUTHORIZED, OrderState.AUTHORIZING, OrderState.CAPTURING)
+                        .transition(OrderEvent.CAPTURED, OrderState.CAPTURING, OrderState.PACKING)
+                        .transition(OrderEvent.CANCEL, OrderState.PROCESSING, OrderState.CANCELLED)
+                        .transition(OrderEvent.PACKED, OrderState.PACKING, OrderState.PACKING)
+                        .onExit(OrderState.CREATED, record(log, "exit CREATED"))
+                        .onEntry(OrderState.PROCESSING, record(log, "enter PROCESSING"))
+                        .onEntry(OrderState.PAYMENT, record(log, "enter PAYMENT"))
+                        .onEntry(OrderState.AUTHORIZING, record(log, "enter AUTHORIZING"))
+                        .onExit(OrderState.AUTHORIZING, record(log, "exit AUTHORIZING"))
+                        .onEntry(OrderState.CAPTURING, record(log, "enter CAPTURING"))
+                        .onExit(OrderState.PAYMENT, record(log, "exit PAYMENT"))
+                        .onExit(OrderState.PROCESSING, record(log, "exit PROCESSING"))
+                        .onEntry(OrderState.PACKING, record(log, "enter PACKING"))
+                        .onExit(OrderState.PACKING, record(log, "exit PACKING"))
+                        .onTransition(OrderEvent.SUBMIT, OrderState.CREATED, record(log, "submit"))
+                        .onTransition(OrderEvent.CANCEL, OrderState.PROCESSING, record(log, "cancel"))
+                        .onTransition(OrderEvent.CANCEL, OrderState.PROCESSING, record(log, "notify"))
+                        .build();
+        StateMachineInstance<OrderState, OrderEvent> stateMachine = actionDefinition.newInstance(7L, OrderState.CREATED);
+
+        stateMachine.sendEvent(OrderEvent.SUBMIT);
+        assertEquals(List.of("exit CREATED@7", "submit@7", "enter PROCESSING@7", "enter PAYMENT@7", "enter AUTHORIZING@7"), log);
+
+        // Between siblings, the common parents are neither left nor entered
+        log.clear();
+        stateMachine.sendEvent(OrderEvent.AUTHORIZED);
+        assertEquals(List.of("exit AUTHORIZING@7", "enter CAPTURING@7"), log);
+
+        log.clear();
+        stateMachine.sendEvent(OrderEvent.CAPTURED);
+        assertEquals(List.of("exit PAYMENT@7", "enter PACKING@7"), log);
+
+        // A self-transition leaves and re-enters the state
+        log.clear();
+        stateMachine.sendEvent(OrderEvent.PACKED);
+        assertEquals(List.of("exit PACKING@7", "enter PACKING@7"), log);
+
+        // The inherited transition inherits its actions
+        log.clear();
+        stateMachine.sendEvent(OrderEvent.CANCEL);
+        assertEquals(List.of("exit PACKING@7", "exit PROCESSING@7", "cancel@7", "notify@7"), log);
+
+        // Without a transition, nothing runs
+        log.clear();
+        stateMachine.sendEvent(OrderEvent.CANCEL);
+        assertTrue(log.isEmpty());
+        assertFalse(actionDefinition.hasActions(OrderEvent.CANCEL.ordinal(), OrderState.CANCELLED.ordinal()));
+    }
+
+    @Test
+    void testActionWithoutTransitionIsRejected() {
+        StateMachineDefinition.Builder<TestState, TestEvent> builder =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .onTransition(TestEvent.COMPLETE_PROCESS, TestState.INITIAL,
+                                (entityId, eventOrdinal, fromOrdinal, toOrdinal) -> { });
+
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    @Test
+    void testActionsOfStateStore() {
+        long[] entered = new long[4];
+        int[] notified = new int[1];
+        StateMachineDefinition<TestState, TestEvent> actionDefinition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .onEntry(TestState.PROCESSING,
+                                (entityId, eventOrdinal, fromOrdinal, toOrdinal) -> entered[(int) entityId]++)
+                        .onEntry(TestState.PROCESSING,
+                                (entityId, eventOrdinal, fromOrdinal, toOrdinal) -> notified[0]++)
+                        .build();
+        StateStore<TestState, TestEvent> store = StateStore.allocate(actionDefinition, 4, TestState.INITIAL);
+
+        // The entity id is the index in the store
+        store.sendEvent(2, TestEvent.START_PROCESS);
+        store.sendEvent(2, TestEvent.START_PROCESS);
+
+        assertEquals(1, entered[2]);
+        assertEquals(0, entered[1]);
+        assertEquals(1, notified[0]);
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateStoreTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    public enum RenamedState {
+        INITIAL,
+        RUNNING,
+        PAUSED,
+        COMPLETED
+    }
+
+    /**
+     * 16-byte chunks, so that the tests span several buffers
+     * */
+    private static final int SMALL_CHUNK_SHIFT = 4;
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSendEvent() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 100, TestState.INITIAL, SMALL_CHUNK_SHIFT);
+
+        long result = store.sendEvent(42, TestEvent.START_PROCESS);
+
+        assertTrue(TransitionResult.isAccepted(result));
+        assertEquals(TestState.PROCESSING, store.getState(42));
+        assertEquals(TestState.INITIAL, store.getState(41));
+        assertEquals(TestState.INITIAL, store.getState(43));
+
+        result = store.sendEvent(42, TestEvent.START_PROCESS);
+
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(result));
+        assertEquals(TestState.PROCESSING, store.getState(42));
+        assertTrue(store.isValidTransition(42, TestState.COMPLETED));
+        assertFalse(store.isValidTransition(41, TestState.COMPLETED));
+        assertEquals(1, store.slotWidth());
+    }
+
+    @Test
+    void testInitialStateIsFilledAcrossChunks() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 50, TestState.PAUSED, SMALL_CHUNK_SHIFT);
+        int[] counts = new int[TestState.values().length];
+
+        store.setState(49, TestState.COMPLETED);
+        store.forEachState((index, stateOrdinal) -> counts[stateOrdinal]++);
+
+        assertEquals(49, counts[TestState.PAUSED.ordinal()]);
+        assertEquals(1, counts[TestState.COMPLETED.ordinal()]);
+    }
+
+    @Test
+    void testIndexOutOfBounds() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 10, TestState.INITIAL);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getState(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.sendEvent(-1, TestEvent.START_PROCESS));
+        assertThrows(IllegalArgumentException.class, () -> store.setStateOrdinal(0, TestState.values().length));
+    }
+
+    @Test
+    void testMappedStoreSurvivesReopening() throws IOException {
+        Path file = directory.resolve("states.store");
+
+        try (StateStore<TestState, TestEvent> store =
+                     StateStore.map(definition, file, 100, TestState.INITIAL, SMALL_CHUNK_SHIFT)) {
+            store.sendEvent(7, TestEvent.START_PROCESS);
+            store.sendEvent(99, TestEvent.START_PROCESS);
+            store.sendEvent(99, TestEvent.PAUSE_PROCESS);
+        }
+
+        try (StateStore<TestState, TestEvent> store =
+                     StateStore.map(definition, file, 100, TestState.COMPLETED, SMALL_CHUNK_SHIFT)) {
+            // The existing states are used, not the initial state
+            assertEquals(TestState.PROCESSING, store.getState(7));
+            assertEquals(TestState.PAUSED, store.getState(99));
+            assertEquals(TestState.INITIAL, store.getState(0));
+        }
+    }
+
+    @Test
+    void testMappedStoreRejectsDifferentCapacity() throws IOException {
+        Path file = directory.resolve("states.store");
+
+        StateStore.map(definition, file, 100, TestState.INITIAL).close();
+
+        assertThrows(IOException.class, () -> StateStore.map(definition, file, 200, TestState.INITIAL));
+    }
+
+    @Test
+    void testMappedStoreRejectsRenamedStates() throws IOException {
+        Path file = directory.resolve("states.store");
+        StateMachineDefinition<RenamedState, TestEvent> renamed =
+                StateMachineDefinition.builder(RenamedState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, RenamedState.INITIAL, RenamedState.RUNNING)
+                        .build();
+
+        StateStore.map(definition, file, 100, TestState.INITIAL).close();
+
+        // Same number of states, so only the names tell them apart
+        IOException exception = assertThrows(IOException.class,
+                () -> StateStore.map(renamed, file, 100, RenamedState.INITIAL));
+        assertTrue(exception.getMessage().contains("different states"));
+    }
+
+    @Test
+    void testStoreFromAbstractStateMachine() {
+        StateMachineDefinition<AbstractStateMachineTest.TestState, AbstractStateMachineTest.TestEvent> classicDefinition =
+                StateMachineDefinition.builder(AbstractStateMachineTest.TestState.class, AbstractStateMachineTest.TestEvent.class)
+                        .transitions(new AbstractStateMachineTest.InlineTestStateMachine())
+                        .build();
+        StateStore<AbstractStateMachineTest.TestState, AbstractStateMachineTest.TestEvent> store =
+                StateStore.allocate(classicDefinition, 10, AbstractStateMachineTest.TestState.INITIAL);
+
+        store.sendEvent(3, AbstractStateMachineTest.TestEvent.START_PROCESS);
+        store.sendEvent(3, AbstractStateMachineTest.TestEvent.COMPLETE_PROCESS);
+
+        assertEquals(AbstractStateMachineTest.TestState.COMPLETED, store.getState(3));
+        assertEquals(AbstractStateMachineTest.TestState.INITIAL, store.getState(4));
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransitionBufferTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    @Test
+    void testBatchesAreFlushed() {
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Long> completed = new ArrayList<>();
+        TransitionBuffer buffer = new TransitionBuffer(4, batch -> {
+            batchSizes.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(TestEvent.COMPLETE_PROCESS.ordinal(), batch.eventOrdinal(i));
+                assertEquals(TestState.PROCESSING.ordinal(), batch.fromOrdinal(i));
+                assertEquals(TestState.COMPLETED.ordinal(), batch.toOrdinal(i));
+                completed.add(batch.entityId(i));
+            }
+        });
+
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                        .onEntry(TestState.COMPLETED, buffer)
+                        .build();
+        byte[] states = new byte[10];
+
+        BatchDispatcher<TestState, TestEvent> dispatcher = new BatchDispatcher<>(definition);
+        dispatcher.apply(states, TestEvent.START_PROCESS);
+        dispatcher.apply(states, TestEvent.COMPLETE_PROCESS);
+
+        // Two full batches were handed over, and the rest waits for the flush
+        assertEquals(List.of(4, 4), batchSizes);
+        assertEquals(2, buffer.size());
+
+        buffer.flush();
+        buffer.flush();
+        assertEquals(List.of(4, 4, 2), batchSizes);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), completed);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testBufferIsClearedWhenTheHandlerFails() {
+        TransitionBuffer buffer = new TransitionBuffer(8, batch -> {
+            throw new IllegalStateException("The database is down");
+        });
+
+        buffer.execute(1, 0, 0, 1);
+        assertThrows(IllegalStateException.class, buffer::flush);
+        assertEquals(0, buffer.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.entityId(0));
+        assertThrows(IllegalArgumentException.class, () -> new TransitionBuffer(0, batch -> { }));
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.steingen.statemachine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransitionResultTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED, (from, to) -> false)
+                    .build();
+
+    @Test
+    void testEncoding() {
+        long result = TransitionResult.transitioned(3, 1, 2);
+
+        assertTrue(TransitionResult.isAccepted(result));
+        assertEquals(TransitionResult.Status.TRANSITIONED, TransitionResult.status(result));
+        assertEquals(3, TransitionResult.eventOrdinal(result));
+        assertEquals(1, TransitionResult.fromOrdinal(result));
+        assertEquals(2, TransitionResult.toOrdinal(result));
+
+        long noState = TransitionResult.notTransitioned(TransitionResult.Status.UNMATCHED, 0, TransitionResult.NO_STATE);
+        assertFalse(TransitionResult.isAccepted(noState));
+        assertEquals(TransitionResult.NO_STATE, TransitionResult.fromOrdinal(noState));
+    }
+
+    @Test
+    void testInstanceResults() {
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(TestState.INITIAL);
+
+        assertEquals(TransitionResult.Status.UNMATCHED,
+                TransitionResult.status(stateMachine.sendEventForResult(TestEvent.COMPLETE_PROCESS)));
+
+        long result = stateMachine.sendEventForResult(TestEvent.START_PROCESS);
+        assertEquals(TransitionResult.Status.TRANSITIONED, TransitionResult.status(result));
+        assertEquals(TestState.INITIAL.ordinal(), TransitionResult.fromOrdinal(result));
+        assertEquals(TestState.PROCESSING.ordinal(), TransitionResult.toOrdinal(result));
+
+        result = stateMachine.sendEventForResult(TestEvent.COMPLETE_PROCESS);
+        assertEquals(TransitionResult.Status.REJECTED, TransitionResult.status(result));
+        assertEquals(TestState.PROCESSING.ordinal(), TransitionResult.toOrdinal(result));
+    }
+
+    @Test
+    void testTryTransition() {
+        ConcurrentStateMachine<TestState, TestEvent> stateMachine =
+                new ConcurrentStateMachine<>(definition, TestState.INITIAL);
+
+        long conflict = stateMachine.tryTransition(TestEvent.START_PROCESS, TestState.PROCESSING);
+        assertEquals(TransitionResult.Status.CONFLICT, TransitionResult.status(conflict));
+        assertEquals(TestState.INITIAL, stateMachine.getCurrentState());
+
+        assertTrue(TransitionResult.isAccepted(stateMachine.tryTransition(TestEvent.START_PROCESS, TestState.INITIAL)));
+        assertEquals(TestState.PROCESSING, stateMachine.getCurrentState());
+    }
+
+    @Test
+    void testAbstractStateMachineResults() {
+        AbstractStateMachine<TestState, TestEvent> stateMachine = new AbstractStateMachine<>();
+        stateMachine.eventRules.put(TestEvent.START_PROCESS,
+                List.of(stateMachine.newTransition(TestState.INITIAL, TestState.PROCESSING)));
+        stateMachine.setCurrentState(TestState.INITIAL);
+
+        assertEquals(TransitionResult.Status.UNMATCHED,
+                TransitionResult.status(stateMachine.sendEventForResult(TestEvent.COMPLETE_PROCESS)));
+        assertTrue(TransitionResult.isAccepted(stateMachine.sendEventForResult(TestEvent.START_PROCESS)));
+        assertEquals(TransitionResult.Status.CONFLICT,
+                TransitionResult.status(stateMachine.tryTransition(TestEvent.START_PROCESS, TestState.INITIAL)));
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.steingen.statemachine.journal;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedFileJournalTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private static final int SMALL_SEGMENT_SIZE = MappedFileJournal.RECORD_SIZE * 4;
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendAndReadRecords() throws IOException {
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            journal.append(42L, 1, 1, 2, 1_000L);
+        }
+
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            long[] fields = new long[5];
+            journal.readRecords((entityId, eventOrdinal, fromOrdinal, toOrdinal, timestamp) -> {
+                fields[0] = entityId;
+                fields[1] = eventOrdinal;
+                fields[2] = fromOrdinal;
+                fields[3] = toOrdinal;
+                fields[4] = timestamp;
+            });
+
+            assertEquals(42L, fields[0]);
+            assertEquals(1L, fields[1]);
+            assertEquals(1L, fields[2]);
+            assertEquals(2L, fields[3]);
+            assertEquals(1_000L, fields[4]);
+            assertEquals(1L, journal.position());
+        }
+    }
+
+    @Test
+    void testRecoverAcrossSegments() throws IOException {
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            for (long entityId = 0; entityId < 10; entityId++) {
+                journal.append(entityId, 0, 0, 1, entityId);
+            }
+            journal.append(3L, 1, 1, 2, 10L);
+        }
+
+        Map<Long, Integer> states = recover();
+
+        assertEquals(10, states.size());
+        assertEquals(1, states.get(0L));
+        assertEquals(2, states.get(3L));
+    }
+
+    @Test
+    void testRecoverFromSnapshot() throws IOException {
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            for (long entityId = 0; entityId < 10; entityId++) {
+                journal.append(entityId, 0, 0, 1, entityId);
+            }
+            journal.snapshot(consumer -> {
+                for (long entityId = 0; entityId < 10; entityId++) {
+                    consumer.accept(entityId, 1);
+                }
+            });
+            journal.append(7L, 1, 1, 2, 11L);
+        }
+
+        Map<Long, Integer> states = recover();
+
+        assertEquals(10, states.size());
+        assertEquals(1, states.get(6L));
+        assertEquals(2, states.get(7L));
+        // The segments that were fully covered by the snapshot have been deleted
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.toString().endsWith(".journal")).count());
+        }
+    }
+
+    @Test
+    void testRecoverSnapshotLargerThanItsBuffer() throws IOException {
+        // The snapshot is read back 8192 entries at a time
+        int entityCount = 20_000;
+
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            journal.snapshot(consumer -> {
+                for (long entityId = 0; entityId < entityCount; entityId++) {
+                    consumer.accept(entityId, (int) (entityId % 3));
+                }
+            });
+        }
+
+        Map<Long, Integer> states = recover();
+
+        assertEquals(entityCount, states.size());
+        assertEquals(0, states.get(0L));
+        assertEquals(8192 % 3, states.get(8192L));
+        assertEquals((entityCount - 1) % 3, states.get(entityCount - 1L));
+    }
+
+    @Test
+    void testJournaledStateMachine() throws IOException {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(5_000L), ZoneOffset.UTC);
+
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            JournaledStateMachine<TestState, TestEvent> stateMachine =
+                    new JournaledStateMachine<>(9L, definition.newInstance(TestState.INITIAL), journal, clock);
+
+            stateMachine.sendEvent(TestEvent.START_PROCESS);
+            stateMachine.sendEvent(TestEvent.START_PROCESS); // Not applicable, so not journaled
+            stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+
+            assertEquals(2L, journal.position());
+        }
+
+        assertEquals(TestState.COMPLETED.ordinal(), recover().get(9L));
+    }
+
+    private Map<Long, Integer> recover() throws IOException {
+        Map<Long, Integer> states = new HashMap<>();
+
+        try (MappedFileJournal journal = new MappedFileJournal(directory, SMALL_SEGMENT_SIZE)) {
+            journal.recover(states::put);
+        }
+        return states;
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.steingen.statemachine.journal;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StateSnapshotCodecTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum ReorderedState {
+        INITIAL,
+        COMPLETED,
+        PROCESSING
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    private final StateSnapshotCodec codec = StateSnapshotCodec.forDefinition(definition);
+
+    private StateStore<TestState, TestEvent> newStore(int capacity) {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, capacity, TestState.INITIAL);
+
+        for (int i = 0; i < capacity; i += 3) {
+            store.sendEvent(i, TestEvent.START_PROCESS);
+        }
+        for (int i = 0; i < capacity; i += 6) {
+            store.sendEvent(i, TestEvent.COMPLETE_PROCESS);
+        }
+        return store;
+    }
+
+    @Test
+    void testBufferRoundTrip() throws IOException {
+        StateStore<TestState, TestEvent> source = newStore(100);
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(source.capacity()));
+
+        assertEquals(100, codec.write(source, buffer));
+        assertEquals(0, buffer.remaining());
+
+        StateStore<TestState, TestEvent> target = StateStore.allocate(definition, 100, TestState.INITIAL);
+        assertEquals(100, codec.read(buffer.flip(), target::setStateOrdinal));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(source.getState(i), target.getState(i));
+        }
+    }
+
+    @Test
+    void testChannelRoundTrip(@TempDir Path directory) throws IOException {
+        // More entities than fit in one block
+        StateStore<TestState, TestEvent> source = newStore(20_000);
+        Path file = directory.resolve("states.snapshot");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertEquals(20_000, codec.write(source, channel));
+            assertEquals(StateSnapshotCodec.HEADER_SIZE + 20_000L * StateSnapshotCodec.ENTRY_SIZE + 3 * 4 + 4,
+                    channel.size());
+        }
+
+        StateStore<TestState, TestEvent> target = StateStore.allocate(definition, 20_000, TestState.INITIAL);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(20_000, codec.read(channel, target::setStateOrdinal));
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(source.getState(i), target.getState(i));
+        }
+    }
+
+    @Test
+    void testBufferIsReadFromChannel(@TempDir Path directory) throws IOException {
+        Map<Long, Integer> states = new HashMap<>();
+        for (long entityId = 0; entityId < 10_000; entityId++) {
+            states.put(entityId * 7, (int) (entityId % 3));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(states.size()));
+        codec.write(consumer -> states.forEach(consumer::accept), buffer);
+
+        Path file = directory.resolve("states.snapshot");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(buffer.flip());
+        }
+
+        Map<Long, Integer> restored = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            codec.read(channel, restored::put);
+        }
+        assertEquals(states, restored);
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(0));
+
+        assertEquals(0, codec.write(consumer -> { }, buffer));
+        assertEquals(0, codec.read(buffer.flip(), (entityId, stateOrdinal) -> { }));
+    }
+
+    @Test
+    void testIncompatibleStatesAreRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(10));
+        codec.write(newStore(10), buffer);
+        buffer.flip();
+
+        StateSnapshotCodec reordered = StateSnapshotCodec.forStates(ReorderedState.class);
+        assertNotEquals(codec.definitionHash(), reordered.definitionHash());
+        assertThrows(IOException.class, () -> reordered.read(buffer, (entityId, stateOrdinal) -> { }));
+    }
+
+    @Test
+    void testTruncatedSnapshotIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate((int) StateSnapshotCodec.encodedSize(10));
+        codec.write(newStore(10), buffer);
+        buffer.flip().limit(buffer.limit() - 8);
+
+        assertThrows(EOFException.class, () -> codec.read(buffer, (entityId, stateOrdinal) -> { }));
+    }
+}
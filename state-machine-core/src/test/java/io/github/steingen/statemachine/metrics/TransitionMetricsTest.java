@@ -0,0 +1,156 @@
+package io.github.steingen.statemachine.metrics;
+
+import io.github.steingen.statemachine.AbstractStateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateMachineInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransitionMetricsTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    public enum LargeState {
+        S0, S1, S2, S3, S4, S5, S6, S7, S8, S9, S10, S11, S12, S13, S14, S15,
+        S16, S17, S18, S19, S20, S21, S22, S23, S24, S25, S26, S27, S28, S29, S30, S31,
+        S32, S33, S34, S35, S36, S37, S38, S39, S40, S41, S42, S43, S44, S45, S46, S47,
+        S48, S49, S50, S51, S52, S53, S54, S55, S56, S57, S58, S59, S60, S61, S62, S63,
+        S64, S65, S66, S67, S68, S69, S70, S71, S72, S73, S74, S75, S76, S77, S78, S79,
+        S80, S81, S82, S83, S84, S85, S86, S87, S88, S89, S90, S91, S92, S93, S94, S95,
+        S96, S97, S98, S99, S100, S101, S102, S103, S104, S105, S106, S107, S108, S109, S110, S111,
+        S112, S113, S114, S115, S116, S117, S118, S119, S120, S121, S122, S123, S124, S125, S126, S127
+    }
+
+    public enum LargeEvent {
+        E0, E1, E2, E3, E4, E5, E6, E7, E8, E9, E10, E11, E12, E13, E14, E15,
+        E16, E17, E18, E19, E20, E21, E22, E23, E24, E25, E26, E27, E28, E29, E30, E31
+    }
+
+    public static class TestStateMachine extends AbstractStateMachine<TestState, TestEvent> {
+        public TestStateMachine() {
+            this.eventRules.put(TestEvent.START_PROCESS, List.of(newTransition(TestState.INITIAL, TestState.PROCESSING)));
+            this.eventRules.put(TestEvent.COMPLETE_PROCESS,
+                    List.of(newTransition(TestState.PROCESSING, TestState.COMPLETED, (from, to) -> false)));
+            populateAllowedTransitions();
+        }
+    }
+
+    @Test
+    void testDefinitionMetrics() {
+        TransitionMetrics<TestState, TestEvent> metrics = new TransitionMetrics<>(TestState.class, TestEvent.class, true);
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED,
+                                (from, to) -> false)
+                        .listener(metrics)
+                        .build();
+        StateMachineInstance<TestState, TestEvent> stateMachine = definition.newInstance(TestState.INITIAL);
+
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS); // Nothing is defined from INITIAL
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS); // Rejected by the guard
+
+        assertEquals(1, metrics.unmatchedCount(TestEvent.COMPLETE_PROCESS, TestState.INITIAL));
+        assertEquals(1, metrics.transitionCount(TestEvent.START_PROCESS, TestState.INITIAL));
+        assertEquals(1, metrics.rejectionCount(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING));
+
+        AtomicLong guardEvaluations = new AtomicLong();
+        metrics.forEach(new TransitionMetricsVisitor<>() {
+            @Override
+            public void guardLatency(TestEvent event, long upperBoundNanos, long count) {
+                assertEquals(TestEvent.COMPLETE_PROCESS, event);
+                guardEvaluations.addAndGet(count);
+            }
+        });
+        assertEquals(1, guardEvaluations.get());
+    }
+
+    @Test
+    void testAbstractStateMachineMetrics() {
+        TransitionMetrics<TestState, TestEvent> metrics = new TransitionMetrics<>(TestState.class, TestEvent.class);
+        TestStateMachine stateMachine = new TestStateMachine();
+        stateMachine.setTransitionListener(metrics).setCurrentState(TestState.INITIAL);
+
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        stateMachine.sendEvent(TestEvent.START_PROCESS); // Nothing is defined from PROCESSING
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS); // Rejected by the guard
+
+        assertEquals(1, metrics.transitionCount(TestEvent.START_PROCESS, TestState.INITIAL));
+        assertEquals(1, metrics.unmatchedCount(TestEvent.START_PROCESS, TestState.PROCESSING));
+        assertEquals(1, metrics.rejectionCount(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING));
+
+        AtomicLong transitions = new AtomicLong();
+        metrics.forEach(new TransitionMetricsVisitor<>() {
+            @Override
+            public void transitions(TestEvent event, TestState from, TestState to, long count) {
+                assertEquals(TestState.PROCESSING, to);
+                transitions.addAndGet(count);
+            }
+        });
+        assertEquals(1, transitions.get());
+    }
+
+    @Test
+    void testCountsPerTargetState() {
+        TransitionMetrics<TestState, TestEvent> metrics = new TransitionMetrics<>(TestState.class, TestEvent.class);
+        AbstractStateMachine<TestState, TestEvent> stateMachine = new AbstractStateMachine<>() {
+            {
+                // Two guarded targets for the same (event, from state)
+                this.eventRules.put(TestEvent.COMPLETE_PROCESS, List.of(
+                        newTransition(TestState.INITIAL, TestState.COMPLETED, (from, to) -> false),
+                        newTransition(TestState.INITIAL, TestState.PROCESSING)));
+                populateAllowedTransitions();
+            }
+        };
+        stateMachine.setTransitionListener(metrics).setCurrentState(TestState.INITIAL);
+
+        stateMachine.sendEvent(TestEvent.COMPLETE_PROCESS);
+
+        assertEquals(1, metrics.transitionCount(TestEvent.COMPLETE_PROCESS, TestState.INITIAL, TestState.PROCESSING));
+        assertEquals(0, metrics.transitionCount(TestEvent.COMPLETE_PROCESS, TestState.INITIAL, TestState.COMPLETED));
+        assertEquals(1, metrics.transitionCount(TestEvent.COMPLETE_PROCESS, TestState.INITIAL));
+    }
+
+    @Test
+    void testQueriesAreNotCounted() {
+        TransitionMetrics<TestState, TestEvent> metrics = new TransitionMetrics<>(TestState.class, TestEvent.class);
+        StateMachineDefinition<TestState, TestEvent> definition =
+                StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                        .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED,
+                                (from, to) -> false)
+                        .listener(metrics)
+                        .build();
+
+        assertEquals(StateMachineDefinition.NO_TRANSITION,
+                definition.nextStateOrdinal(TestEvent.COMPLETE_PROCESS.ordinal(), TestState.INITIAL.ordinal()));
+        assertEquals(StateMachineDefinition.NO_TRANSITION,
+                definition.nextStateOrdinal(TestEvent.COMPLETE_PROCESS.ordinal(), TestState.PROCESSING.ordinal()));
+
+        assertEquals(0, metrics.unmatchedCount(TestEvent.COMPLETE_PROCESS, TestState.INITIAL));
+        assertEquals(0, metrics.rejectionCount(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING));
+    }
+
+    @Test
+    void testCounterLimit() {
+        // 2 * 32 * 128 * 128 counters for the transitions and rejections alone
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> new TransitionMetrics<>(LargeState.class, LargeEvent.class));
+        assertEquals("32 events and 128 states need 1052688 counters, which exceeds the maximum of 1048576",
+                exception.getMessage());
+    }
+}
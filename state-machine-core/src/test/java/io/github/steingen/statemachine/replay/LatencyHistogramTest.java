@@ -0,0 +1,60 @@
+package io.github.steingen.statemachine.replay;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int value = 1; value <= 20; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(20, histogram.count());
+        assertEquals(10, histogram.valueAtPercentile(50));
+        assertEquals(20, histogram.valueAtPercentile(100));
+        assertEquals(1, histogram.valueAtPercentile(0));
+    }
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 100);
+        }
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long expected = (long) (percentile / 100 * 1_000_000) * 100;
+            long actual = histogram.valueAtPercentile(percentile);
+
+            assertTrue(actual >= expected && actual <= expected * 1.04, percentile + ": " + actual + " vs " + expected);
+        }
+        assertEquals(100_000_000, histogram.valueAtPercentile(100));
+        assertEquals(100_000_000, histogram.max());
+    }
+
+    @Test
+    void testMerge() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(5);
+        second.record(Long.MAX_VALUE);
+        second.record(-3);
+
+        first.merge(second);
+
+        assertEquals(3, first.count());
+        assertEquals(Long.MAX_VALUE, first.max());
+        assertEquals(0, first.valueAtPercentile(1));
+        assertEquals(Long.MAX_VALUE, first.valueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().valueAtPercentile(99));
+        assertThrows(IllegalArgumentException.class, () -> first.valueAtPercentile(101));
+    }
+}
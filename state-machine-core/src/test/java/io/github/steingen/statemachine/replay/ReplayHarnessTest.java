@@ -0,0 +1,143 @@
+package io.github.steingen.statemachine.replay;
+
+import io.github.steingen.statemachine.StateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateMachineInstance;
+import io.github.steingen.statemachine.TransitionResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayHarnessTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    // Rejects completing odd entities
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED,
+                            (machine, from, to) -> ((StateMachineInstance<TestState, TestEvent>) machine).getEntityId() % 2 == 0)
+                    .build();
+
+    private static TrafficTrace<TestEvent> randomTrace(int events, int entities, long seed) {
+        Random random = new Random(seed);
+        TrafficTrace.Builder<TestEvent> builder = TrafficTrace.builder(TestEvent.class);
+
+        for (int i = 0; i < events; i++) {
+            builder.add(random.nextInt(entities), TestEvent.values()[random.nextInt(3)], i * 1_000L);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void testCountsMatchSerialReplay() {
+        TrafficTrace<TestEvent> trace = randomTrace(50_000, 500, 1);
+
+        Map<Long, StateMachineInstance<TestState, TestEvent>> serial = new HashMap<>();
+        long[] expected = new long[TransitionResult.Status.values().length];
+        for (int i = 0; i < trace.size(); i++) {
+            long entityId = trace.entityId(i);
+            long result = serial.computeIfAbsent(entityId, id -> definition.newInstance(id, TestState.INITIAL))
+                    .sendEventForResult(trace.event(i));
+            expected[TransitionResult.status(result).ordinal()]++;
+        }
+
+        Map<Long, StateMachineInstance<TestState, TestEvent>> replayed = new ConcurrentHashMap<>();
+        ReplayReport report = ReplayHarness.<TestState, TestEvent>builder(trace, entityId -> {
+                    StateMachineInstance<TestState, TestEvent> machine = definition.newInstance(entityId, TestState.INITIAL);
+                    replayed.put(entityId, machine);
+                    return machine;
+                })
+                .threads(4)
+                .warmupRuns(1)
+                .build()
+                .run();
+
+        assertEquals(50_000, report.eventCount());
+        assertEquals(4, report.threads());
+        for (TransitionResult.Status status : TransitionResult.Status.values()) {
+            assertEquals(expected[status.ordinal()], report.count(status), status.name());
+        }
+        assertTrue(report.rejectionRate() > 0);
+        assertEquals((double) expected[TransitionResult.Status.UNMATCHED.ordinal()] / 50_000, report.unmatchedRate());
+
+        // The events of each entity are applied in order, so the final states match
+        serial.forEach((entityId, machine) -> assertEquals(machine.getCurrentState(), replayed.get(entityId).getCurrentState()));
+
+        assertTrue(report.throughput() > 0);
+        assertTrue(report.latencyNanos(50) <= report.latencyNanos(99));
+        assertTrue(report.latencyNanos(99) <= report.maxLatencyNanos());
+    }
+
+    @Test
+    void testOriginalPacing() {
+        TrafficTrace<TestEvent> trace = TrafficTrace.builder(TestEvent.class)
+                .add(1, TestEvent.START_PROCESS, 0)
+                .add(2, TestEvent.START_PROCESS, 20_000_000)
+                .add(1, TestEvent.PAUSE_PROCESS, 40_000_000)
+                .build();
+
+        ReplayReport paced = ReplayHarness.<TestState, TestEvent>builder(trace, entityId -> definition.newInstance(entityId, TestState.INITIAL))
+                .pacing(1)
+                .build()
+                .run();
+        assertTrue(paced.elapsedNanos() >= 40_000_000, paced.toString());
+
+        ReplayReport faster = ReplayHarness.<TestState, TestEvent>builder(trace, entityId -> definition.newInstance(entityId, TestState.INITIAL))
+                .pacing(4)
+                .build()
+                .run();
+        assertTrue(faster.elapsedNanos() >= 10_000_000, faster.toString());
+        assertTrue(faster.elapsedNanos() < paced.elapsedNanos(), faster.toString());
+    }
+
+    @Test
+    void testFailuresAreReported() {
+        TrafficTrace<TestEvent> trace = randomTrace(10, 2, 2);
+
+        assertThrows(IllegalStateException.class, () -> ReplayHarness.<TestState, TestEvent>builder(trace,
+                entityId -> new BrokenStateMachine()).build().run());
+        assertThrows(IllegalArgumentException.class, () -> ReplayHarness.<TestState, TestEvent>builder(trace,
+                entityId -> definition.newInstance(TestState.INITIAL)).threads(0));
+        assertThrows(IllegalArgumentException.class, () -> ReplayHarness.<TestState, TestEvent>builder(trace,
+                entityId -> definition.newInstance(TestState.INITIAL)).pacing(0));
+    }
+
+    private static final class BrokenStateMachine implements StateMachine<TestState, TestEvent> {
+        @Override
+        public TestState getCurrentState() {
+            return TestState.INITIAL;
+        }
+
+        @Override
+        public boolean isValidTransition(TestState newState) {
+            return false;
+        }
+
+        @Override
+        public void sendEvent(TestEvent event) {
+            throw new IllegalStateException("Broken");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.steingen.statemachine.replay;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrafficTraceTest {
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    /**
+     * A later version of the events, reordered and extended
+     * */
+    public enum ReorderedEvent {
+        CANCEL_PROCESS,
+        COMPLETE_PROCESS,
+        START_PROCESS,
+        PAUSE_PROCESS
+    }
+
+    public enum RemovedEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    @TempDir
+    Path directory;
+
+    private Path record(int events) throws IOException {
+        Path path = directory.resolve("trace.bin");
+
+        try (TraceRecorder<TestEvent> recorder = TraceRecorder.open(path, TestEvent.class)) {
+            for (int i = 0; i < events; i++) {
+                recorder.record(i % 100, i % 3, 1_000_000_000L + i * 1_500L);
+            }
+        }
+        return path;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        // Spans several buffers
+        Path path = record(20_000);
+        assertEquals(10 + 3 * 2 + "START_PROCESS".length() + "PAUSE_PROCESS".length() + "COMPLETE_PROCESS".length()
+                + 20_000L * TraceRecorder.RECORD_SIZE, Files.size(path));
+
+        TrafficTrace<TestEvent> trace = TrafficTrace.read(path, TestEvent.class);
+
+        assertEquals(20_000, trace.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(i % 100, trace.entityId(i));
+            assertEquals(TestEvent.values()[i % 3], trace.event(i));
+            // Microsecond precision, relative to the first event
+            assertEquals((i * 1_500L) / 1000 * 1000, trace.timestampNanos(i));
+        }
+        assertEquals(19_999L * 1_500 / 1000 * 1000, trace.durationNanos());
+    }
+
+    @Test
+    void testEventsAreMatchedByName() throws IOException {
+        TrafficTrace<ReorderedEvent> trace = TrafficTrace.read(record(3), ReorderedEvent.class);
+
+        assertEquals(ReorderedEvent.START_PROCESS, trace.event(0));
+        assertEquals(ReorderedEvent.PAUSE_PROCESS, trace.event(1));
+        assertEquals(ReorderedEvent.COMPLETE_PROCESS, trace.event(2));
+
+        assertThrows(IOException.class, () -> TrafficTrace.read(record(3), RemovedEvent.class));
+    }
+
+    @Test
+    void testTruncatedTrace() throws IOException {
+        Path path = record(10);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 3);
+        }
+        assertThrows(EOFException.class, () -> TrafficTrace.read(path, TestEvent.class));
+
+        Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        assertThrows(IOException.class, () -> TrafficTrace.read(path, TestEvent.class));
+    }
+
+    @Test
+    void testBuilderAndWrite() throws IOException {
+        TrafficTrace<TestEvent> built = TrafficTrace.builder(TestEvent.class)
+                .add(7, TestEvent.START_PROCESS, 0)
+                .add(8, TestEvent.START_PROCESS, 2_000)
+                .add(7, TestEvent.COMPLETE_PROCESS, 5_000)
+                .build();
+        Path path = directory.resolve("built.bin");
+
+        try (TraceRecorder<TestEvent> recorder = TraceRecorder.open(path, TestEvent.class)) {
+            built.write(recorder);
+        }
+        TrafficTrace<TestEvent> read = TrafficTrace.read(path, TestEvent.class);
+
+        assertEquals(3, read.size());
+        assertEquals(8, read.entityId(1));
+        assertEquals(TestEvent.COMPLETE_PROCESS, read.event(2));
+        assertEquals(5_000, read.timestampNanos(2));
+
+        assertThrows(IllegalArgumentException.class, () -> TrafficTrace.builder(TestEvent.class)
+                .add(1, TestEvent.START_PROCESS, 10)
+                .add(1, TestEvent.START_PROCESS, 5));
+    }
+
+    @Test
+    void testEmptyTrace() throws IOException {
+        TrafficTrace<TestEvent> trace = TrafficTrace.read(record(0), TestEvent.class);
+
+        assertEquals(0, trace.size());
+        assertEquals(0, trace.durationNanos());
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import io.github.steingen.statemachine.journal.StateSnapshotCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileReplicationLogTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    private final StateSnapshotCodec codec = StateSnapshotCodec.forDefinition(definition);
+
+    @TempDir
+    Path directory;
+
+    private static List<long[]> readAll(ReplicationLog log) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        log.read(log.startIndex(), Integer.MAX_VALUE,
+                (index, entityId, eventOrdinal) -> entries.add(new long[]{index, entityId, eventOrdinal}));
+        return entries;
+    }
+
+    @Test
+    void testEntriesSurviveReopening() throws IOException {
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec)) {
+            assertEquals(0, log.append(10, 0));
+            assertEquals(3, log.append(new long[]{11, 12, 13}, new int[]{0, 0, 1}, 3));
+        }
+
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec)) {
+            assertEquals(4, log.endIndex());
+
+            List<long[]> entries = readAll(log);
+            assertEquals(4, entries.size());
+            assertEquals(13, entries.get(3)[1]);
+            assertEquals(1, entries.get(3)[2]);
+
+            assertEquals(4, log.append(14, 1));
+        }
+    }
+
+    @Test
+    void testPartialRecordIsDropped() throws IOException {
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec)) {
+            log.append(new long[]{1, 2}, new int[]{0, 0}, 2);
+        }
+
+        Path logFile;
+        try (Stream<Path> files = Files.list(directory)) {
+            logFile = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(FileReplicationLog.RECORD_SIZE - 4));
+        }
+
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec)) {
+            assertEquals(2, log.endIndex());
+            assertEquals(2, log.append(3, 1));
+            assertEquals(3, readAll(log).size());
+        }
+    }
+
+    @Test
+    void testSnapshotDropsEntries() throws IOException {
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec, false)) {
+            StateMachineReplica<TestState, TestEvent> replica =
+                    new StateMachineReplica<>(StateStore.allocate(definition, 8, TestState.INITIAL), log);
+
+            replica.sendEvent(1, TestEvent.START_PROCESS);
+            replica.sendEvent(1, TestEvent.COMPLETE_PROCESS);
+            replica.snapshot();
+            replica.sendEvent(2, TestEvent.START_PROCESS);
+        }
+
+        try (FileReplicationLog log = new FileReplicationLog(directory, codec)) {
+            assertEquals(2, log.startIndex());
+            assertEquals(3, log.endIndex());
+            assertEquals(1, readAll(log).size());
+
+            StateMachineReplica<TestState, TestEvent> replica =
+                    new StateMachineReplica<>(StateStore.allocate(definition, 8, TestState.INITIAL), log);
+            assertEquals(TestState.COMPLETED, replica.getState(1));
+            assertEquals(TestState.PROCESSING, replica.getState(2));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.steingen.statemachine.replication;
+
+import io.github.steingen.statemachine.StateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import io.github.steingen.statemachine.TransitionResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateMachineReplicaTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        CANCELLED,
+        COMPLETED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        CANCEL_PROCESS,
+        COMPLETE_PROCESS
+    }
+
+    private static final int ENTITIES = 64;
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.CANCEL_PROCESS, TestState.PROCESSING, TestState.CANCELLED)
+                    .transition(TestEvent.COMPLETE_PROCESS, TestState.PROCESSING, TestState.COMPLETED)
+                    .build();
+
+    private StateMachineReplica<TestState, TestEvent> newReplica(ReplicationLog log) {
+        return new StateMachineReplica<>(StateStore.allocate(definition, ENTITIES, TestState.INITIAL), log);
+    }
+
+    @Test
+    void testReplicasAgreeOnTheOrderOfTheLog() throws Exception {
+        InMemoryReplicationLog log = new InMemoryReplicationLog();
+        StateMachineReplica<TestState, TestEvent> first = newReplica(log);
+        StateMachineReplica<TestState, TestEvent> second = newReplica(log);
+
+        // Both nodes race to cancel or complete every entity
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> sendToAll(first, TestEvent.CANCEL_PROCESS)));
+            futures.add(executor.submit(() -> sendToAll(second, TestEvent.COMPLETE_PROCESS)));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (long entityId = 0; entityId < ENTITIES; entityId++) {
+            TestState state = first.getState(entityId);
+            assertTrue(TestState.CANCELLED == state || TestState.COMPLETED == state);
+            assertEquals(state, second.getState(entityId));
+        }
+        assertEquals(log.endIndex(), first.appliedIndex());
+    }
+
+    private Void sendToAll(StateMachineReplica<TestState, TestEvent> replica, TestEvent event) throws IOException {
+        for (long entityId = 0; entityId < ENTITIES; entityId++) {
+            replica.sendEvent(entityId, TestEvent.START_PROCESS);
+            replica.sendEvent(entityId, event);
+        }
+        return null;
+    }
+
+    @Test
+    void testLinearizableAndLocalReads() throws IOException {
+        InMemoryReplicationLog log = new InMemoryReplicationLog();
+        StateMachineReplica<TestState, TestEvent> writer = newReplica(log);
+        StateMachineReplica<TestState, TestEvent> reader = newReplica(log);
+
+        long result = writer.sendEvent(7, TestEvent.START_PROCESS);
+        assertEquals(TransitionResult.Status.TRANSITIONED, TransitionResult.status(result));
+
+        assertEquals(TestState.INITIAL, reader.getLocalState(7));
+        assertEquals(TestState.PROCESSING, reader.getState(7));
+        assertEquals(TestState.PROCESSING, reader.getLocalState(7));
+    }
+
+    @Test
+    void testBatchedEvents() throws IOException {
+        InMemoryReplicationLog log = new InMemoryReplicationLog();
+        StateMachineReplica<TestState, TestEvent> replica = newReplica(log);
+        long[] results = new long[3];
+
+        replica.sendEvents(new long[]{1, 1, 2},
+                new TestEvent[]{TestEvent.START_PROCESS, TestEvent.COMPLETE_PROCESS, TestEvent.COMPLETE_PROCESS},
+                3, results);
+
+        assertEquals(TransitionResult.Status.TRANSITIONED, TransitionResult.status(results[0]));
+        assertEquals(TransitionResult.Status.TRANSITIONED, TransitionResult.status(results[1]));
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(results[2]));
+        assertEquals(TestState.COMPLETED, replica.getLocalState(1));
+        assertEquals(3, log.endIndex());
+    }
+
+    @Test
+    void testCatchUpFromSnapshot() throws IOException {
+        InMemoryReplicationLog log = new InMemoryReplicationLog();
+        StateMachineReplica<TestState, TestEvent> leader = newReplica(log);
+
+        leader.sendEvent(1, TestEvent.START_PROCESS);
+        leader.sendEvent(1, TestEvent.COMPLETE_PROCESS);
+        leader.sendEvent(2, TestEvent.START_PROCESS);
+        leader.snapshot();
+        assertEquals(3, log.startIndex());
+        assertThrows(IllegalArgumentException.class, () -> log.read(0, 1, (index, entityId, eventOrdinal) -> { }));
+
+        leader.sendEvent(2, TestEvent.CANCEL_PROCESS);
+
+        // A node that joins later starts from the snapshot
+        StateMachineReplica<TestState, TestEvent> follower = newReplica(log);
+        assertEquals(4, follower.sync());
+        assertEquals(TestState.COMPLETED, follower.getLocalState(1));
+        assertEquals(TestState.CANCELLED, follower.getLocalState(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEntriesSkippedBySnapshot() throws IOException {
+        StateMachineReplica<TestState, TestEvent>[] leader = new StateMachineReplica[1];
+        // Lets the leader snapshot past every entry right after it is appended, before the follower applies it
+        InMemoryReplicationLog log = new InMemoryReplicationLog() {
+            @Override
+            public synchronized long append(long entityId, int eventOrdinal) {
+                long index = super.append(entityId, eventOrdinal);
+                snapshotByLeader();
+                return index;
+            }
+
+            @Override
+            public synchronized long append(long[] entityIds, int[] eventOrdinals, int length) {
+                long index = super.append(entityIds, eventOrdinals, length);
+                snapshotByLeader();
+                return index;
+            }
+
+            private void snapshotByLeader() {
+                try {
+                    leader[0].snapshot();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        leader[0] = newReplica(log);
+        StateMachineReplica<TestState, TestEvent> follower = newReplica(log);
+
+        long result = follower.sendEvent(3, TestEvent.START_PROCESS);
+        assertEquals(TransitionResult.Status.UNKNOWN, TransitionResult.status(result));
+        assertEquals(TestEvent.START_PROCESS.ordinal(), TransitionResult.eventOrdinal(result));
+        assertEquals(TransitionResult.NO_STATE, TransitionResult.fromOrdinal(result));
+        assertEquals(TestState.PROCESSING.ordinal(), TransitionResult.toOrdinal(result));
+
+        // The previous result is not reported again
+        long[] results = new long[2];
+        follower.sendEvents(new long[]{3, 4}, new TestEvent[]{TestEvent.COMPLETE_PROCESS, TestEvent.START_PROCESS}, 2, results);
+        assertEquals(TransitionResult.Status.UNKNOWN, TransitionResult.status(results[0]));
+        assertEquals(TestState.COMPLETED.ordinal(), TransitionResult.toOrdinal(results[0]));
+        assertEquals(TransitionResult.Status.UNKNOWN, TransitionResult.status(results[1]));
+        assertEquals(TestState.PROCESSING, follower.getLocalState(4));
+    }
+
+    @Test
+    void testStateMachineView() {
+        StateMachineReplica<TestState, TestEvent> replica = newReplica(new InMemoryReplicationLog());
+        StateMachine<TestState, TestEvent> stateMachine = replica.forEntity(5);
+
+        assertTrue(stateMachine.isValidTransition(TestState.PROCESSING));
+        stateMachine.sendEvent(TestEvent.START_PROCESS);
+        assertEquals(TestState.PROCESSING, stateMachine.getCurrentState());
+        assertEquals(TransitionResult.Status.CONFLICT,
+                TransitionResult.status(stateMachine.tryTransition(TestEvent.START_PROCESS, TestState.INITIAL)));
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.steingen.statemachine.timer;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeoutSchedulerTest {
+
+    public enum TestState {
+        INITIAL,
+        PROCESSING,
+        PAUSED,
+        EXPIRED
+    }
+
+    public enum TestEvent {
+        START_PROCESS,
+        PAUSE_PROCESS,
+        EXPIRE
+    }
+
+    /**
+     * A clock that only moves when the test tells it to
+     * */
+    private static final class TestClock extends Clock {
+        private long millis;
+
+        void advance(Duration duration) {
+            millis += duration.toMillis();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    private final StateMachineDefinition<TestState, TestEvent> definition =
+            StateMachineDefinition.builder(TestState.class, TestEvent.class)
+                    .transition(TestEvent.START_PROCESS, TestState.INITIAL, TestState.PROCESSING)
+                    .transition(TestEvent.START_PROCESS, TestState.PAUSED, TestState.PROCESSING)
+                    .transition(TestEvent.PAUSE_PROCESS, TestState.PROCESSING, TestState.PAUSED)
+                    .transition(TestEvent.EXPIRE, TestState.PAUSED, TestState.EXPIRED)
+                    .timeout(TestState.PAUSED, Duration.ofMinutes(30), TestEvent.EXPIRE)
+                    .build();
+
+    private final TestClock clock = new TestClock();
+
+    @Test
+    void testPausedEntityExpires() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 10, TestState.INITIAL);
+        TimeoutScheduler<TestState, TestEvent> scheduler = new TimeoutScheduler<>(definition, clock, Duration.ofSeconds(1));
+
+        scheduler.sendEvent(store, 1, TestEvent.START_PROCESS);
+        scheduler.sendEvent(store, 1, TestEvent.PAUSE_PROCESS);
+        scheduler.sendEvent(store, 2, TestEvent.START_PROCESS);
+        scheduler.sendEvent(store, 2, TestEvent.PAUSE_PROCESS);
+        assertEquals(2, scheduler.pendingCount());
+
+        clock.advance(Duration.ofMinutes(10));
+        // Entity 2 leaves PAUSED, which cancels its timeout
+        scheduler.sendEvent(store, 2, TestEvent.START_PROCESS);
+        assertEquals(1, scheduler.pendingCount());
+
+        clock.advance(Duration.ofMinutes(19));
+        assertEquals(0, scheduler.advance(store));
+
+        clock.advance(Duration.ofMinutes(1));
+        assertEquals(1, scheduler.advance(store));
+
+        assertEquals(TestState.EXPIRED, store.getState(1));
+        assertEquals(TestState.PROCESSING, store.getState(2));
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    void testReenteringStateRestartsTimeout() {
+        StateStore<TestState, TestEvent> store = StateStore.allocate(definition, 10, TestState.PROCESSING);
+        TimeoutScheduler<TestState, TestEvent> scheduler = new TimeoutScheduler<>(definition, clock);
+
+        scheduler.sendEvent(store, 3, TestEvent.PAUSE_PROCESS);
+        clock.advance(Duration.ofMinutes(20));
+        scheduler.sendEvent(store, 3, TestEvent.START_PROCESS);
+        scheduler.sendEvent(store, 3, TestEvent.PAUSE_PROCESS);
+
+        clock.advance(Duration.ofMinutes(20));
+        assertEquals(0, scheduler.advance(store));
+        assertEquals(TestState.PAUSED, store.getState(3));
+
+        clock.advance(Duration.ofMinutes(10));
+        assertEquals(1, scheduler.advance(store));
+        assertEquals(TestState.EXPIRED, store.getState(3));
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.steingen.statemachine.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TimerTableTest {
+
+    @Test
+    void testMatchesMap() {
+        TimingWheel wheel = new TimingWheel(10, 0);
+        TimerTable table = new TimerTable();
+        Map<Long, TimingWheel.Timer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // Few distinct ids, so that the probe sequences collide and removals shift timers back
+        for (int i = 0; i < 100_000; i++) {
+            long entityId = random.nextInt(2000) * 1024L;
+
+            if (random.nextBoolean()) {
+                assertSame(expected.remove(entityId), table.remove(entityId));
+            } else if (null == table.get(entityId)) {
+                TimingWheel.Timer timer = wheel.schedule(entityId, 0, 100);
+                table.put(timer);
+                expected.put(entityId, timer);
+            }
+            assertEquals(expected.size(), table.size());
+        }
+
+        for (Map.Entry<Long, TimingWheel.Timer> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), table.get(entry.getKey()));
+        }
+        assertNull(table.get(-1));
+    }
+}
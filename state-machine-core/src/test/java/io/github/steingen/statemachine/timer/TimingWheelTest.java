@@ -0,0 +1,101 @@
+package io.github.steingen.statemachine.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void testTimersFireOnTime() {
+        // 4 buckets per level, so that the deadlines span several levels
+        TimingWheel wheel = new TimingWheel(10, 2, 0);
+        Random random = new Random(42);
+        Map<Long, Long> deadlines = new HashMap<>();
+
+        for (long entityId = 0; entityId < 1000; entityId++) {
+            long deadline = random.nextInt(100_000);
+            deadlines.put(entityId, deadline);
+            wheel.schedule(entityId, 0, deadline);
+        }
+
+        long[] now = new long[1];
+        List<Long> fired = new ArrayList<>();
+
+        for (now[0] = 0; now[0] <= 100_010; now[0] += 7) {
+            wheel.advance(now[0], (entityId, eventOrdinal) -> {
+                long deadline = deadlines.get(entityId);
+                // Never early, and at most one tick (plus the step of the test clock) late
+                assertTrue(deadline <= now[0], "Fired early: " + entityId);
+                assertTrue(now[0] - deadline < 10 + 7, "Fired late: " + entityId);
+                fired.add(entityId);
+            });
+        }
+
+        assertEquals(1000, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelAndReschedule() {
+        TimingWheel wheel = new TimingWheel(10, 0);
+        List<Long> fired = new ArrayList<>();
+
+        TimingWheel.Timer cancelled = wheel.schedule(1, 0, 50);
+        TimingWheel.Timer rescheduled = wheel.schedule(2, 0, 50);
+        wheel.schedule(3, 7, 50);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        wheel.reschedule(rescheduled, 5, 5_000);
+        assertEquals(2, wheel.size());
+
+        assertEquals(1, wheel.advance(100, (entityId, eventOrdinal) -> fired.add(entityId)));
+        assertEquals(List.of(3L), fired);
+
+        assertEquals(1, wheel.advance(5_000, (entityId, eventOrdinal) -> {
+            assertEquals(5, eventOrdinal);
+            fired.add(entityId);
+        }));
+        assertEquals(List.of(3L, 2L), fired);
+        assertFalse(rescheduled.isScheduled());
+    }
+
+    @Test
+    void testHandlerCanRescheduleTheFiredTimer() {
+        TimingWheel wheel = new TimingWheel(10, 2, 0);
+        TimingWheel.Timer[] timer = new TimingWheel.Timer[1];
+        List<Long> firedAt = new ArrayList<>();
+        long[] now = new long[1];
+
+        timer[0] = wheel.schedule(1, 0, 40);
+
+        for (now[0] = 0; now[0] <= 200; now[0] += 10) {
+            wheel.advance(now[0], (entityId, eventOrdinal) -> {
+                firedAt.add(now[0]);
+                wheel.reschedule(timer[0], eventOrdinal, now[0] + 40);
+            });
+        }
+
+        assertEquals(List.of(40L, 80L, 120L, 160L, 200L), firedAt);
+    }
+
+    @Test
+    void testPastDeadlineFiresOnNextTick() {
+        TimingWheel wheel = new TimingWheel(10, 1_000);
+        List<Long> fired = new ArrayList<>();
+
+        wheel.schedule(1, 0, 0);
+
+        assertEquals(0, wheel.advance(1_005, (entityId, eventOrdinal) -> fired.add(entityId)));
+        assertEquals(1, wheel.advance(1_010, (entityId, eventOrdinal) -> fired.add(entityId)));
+    }
+}
@@ -1,19 +1,32 @@
 plugins {
-    id("java")
+    id("app-base")
+    id("test-suites")
+    application
 }
 
-group = "io.azerim.libs"
+group = "io.github.steingen"
 version = "1.0-SNAPSHOT"
 
-repositories {
-    mavenCentral()
-}
 
 dependencies {
-    testImplementation(platform("org.junit:junit-bom:5.10.0"))
-    testImplementation("org.junit.jupiter:junit-jupiter")
+    implementation(platform(springboot.bom))
+
+    implementation(project(":state-machine-core"))
+    implementation("jakarta.annotation:jakarta.annotation-api")
+}
+
+application {
+    mainClass.set("io.github.steingen.demo.DemoApplication")
+
+    // A fixed heap, so that the heap figures of a soak test are comparable between runs.
+    // Raise it for the instances and machines storages with many millions of orders (see the run task below)
+    applicationDefaultJvmArgs = listOf("-Xms2g", "-Xmx2g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch")
 }
 
-tasks.test {
-    useJUnitPlatform()
-}
\ No newline at end of file
+tasks.named<JavaExec>("run") {
+    // The run task ignores JAVA_OPTS, so extra JVM arguments are passed as a project property. They come after the
+    // defaults, so they override them, e.g.
+    // `gradle :state-machine-demo:run -PdemoJvmArgs="-Xms8g -Xmx8g" --args="--storage=instances --entities=10000000"`.
+    // The start script of `gradle :state-machine-demo:installDist` reads JAVA_OPTS as usual.
+    providers.gradleProperty("demoJvmArgs").orNull?.let { jvmArgs(it.trim().split(Regex("\\s+"))) }
+}
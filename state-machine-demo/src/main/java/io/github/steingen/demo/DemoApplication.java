@@ -0,0 +1,165 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reference service for soak tests: it keeps the state of a population of orders, drives them with a synthetic
+ * load (see {@link LoadGenerator}), and reports the throughput, latency, heap, off-heap and GC figures of every
+ * interval, followed by a summary of the whole run. It stops after the configured duration, or when the process
+ * is stopped. The settings are described by {@link DemoConfig}.
+ */
+public final class DemoApplication {
+    private static final double MB = 1024 * 1024;
+
+    private final DemoConfig config;
+    private final PrintStream out;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final BufferPoolMXBean directBuffers = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+        .stream()
+        .filter(pool -> "direct".equals(pool.getName()))
+        .findFirst()
+        .orElse(null);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private long gcCount;
+    private long gcMillis;
+
+    DemoApplication(DemoConfig config, PrintStream out) {
+        this.config = config;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        DemoConfig config;
+        try {
+            config = DemoConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: [--entities=N] [--threads=N] [--rate=EVENTS_PER_SECOND] [--duration=SECONDS] "
+                + "[--report-interval=SECONDS] [--latency-sample=N] [--storage=off_heap|instances|machines]");
+            System.exit(2);
+            return;
+        }
+
+        DemoApplication application = new DemoApplication(config, System.out);
+        Thread main = Thread.currentThread();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            application.stop();
+            try {
+                main.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "demo-shutdown"));
+
+        application.run();
+    }
+
+    /**
+     * Makes {@link #run()} return at the end of the current interval
+     * */
+    void stop() {
+        stopped.countDown();
+    }
+
+    /**
+     * Runs the load until the duration elapsed or {@link #stop()} is called
+     * <p>
+     * @return The totals of the run
+     * */
+    LoadSnapshot run() throws InterruptedException {
+        out.println("Starting: " + config);
+
+        StateMachineDefinition<OrderState, OrderEvent> definition = OrderStateMachine.definition();
+        long allocationStart = System.nanoTime();
+        LoadSnapshot total;
+
+        try (OrderStates orders = OrderStates.create(config.storage(), definition, (int) config.entities())) {
+            out.printf(Locale.ROOT, "Allocated %,d orders in %d ms%n",
+                orders.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - allocationStart));
+            printMemory();
+            readGc();
+
+            try (LoadGenerator generator = LoadGenerator.start(config, orders)) {
+                long reportNanos = TimeUnit.SECONDS.toNanos(config.reportIntervalSeconds());
+                long endNanos = 0 == config.durationSeconds()
+                    ? Long.MAX_VALUE
+                    : System.nanoTime() + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+                LoadSnapshot first = generator.snapshot();
+                LoadSnapshot previous = first;
+
+                while (generator.isRunning()) {
+                    long waitNanos = Math.min(reportNanos, endNanos - System.nanoTime());
+                    boolean stopping = waitNanos <= 0 || stopped.await(waitNanos, TimeUnit.NANOSECONDS);
+
+                    LoadSnapshot current = generator.snapshot();
+                    report(current.minus(previous));
+                    previous = current;
+
+                    if (stopping || System.nanoTime() >= endNanos) {
+                        break;
+                    }
+                }
+                total = generator.snapshot().minus(first);
+            }
+        }
+
+        out.println("Summary:");
+        report(total);
+        return total;
+    }
+
+    private void report(LoadSnapshot interval) {
+        long events = interval.events();
+
+        out.printf(Locale.ROOT,
+            "%,12.0f events/s | transitioned %5.1f%% rejected %4.1f%% unmatched %4.1f%% | latency p50 <%,dns p99 <%,dns p99.9 <%,dns%n",
+            interval.throughput(),
+            percent(interval.count(TransitionResult.Status.TRANSITIONED), events),
+            percent(interval.count(TransitionResult.Status.REJECTED), events),
+            percent(interval.count(TransitionResult.Status.UNMATCHED), events),
+            interval.latencyNanos(50), interval.latencyNanos(99), interval.latencyNanos(99.9));
+        printMemory();
+    }
+
+    private void printMemory() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long previousCount = gcCount;
+        long previousMillis = gcMillis;
+        readGc();
+
+        out.printf(Locale.ROOT,
+            "%12s heap used %,.0f MB committed %,.0f MB max %,.0f MB | direct %,.0f MB | gc %d collections %d ms%n",
+            "",
+            heap.getUsed() / MB, heap.getCommitted() / MB, heap.getMax() / MB,
+            null == directBuffers ? 0 : directBuffers.getMemoryUsed() / MB,
+            gcCount - previousCount, gcMillis - previousMillis);
+    }
+
+    private void readGc() {
+        long count = 0;
+        long millis = 0;
+
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        gcCount = count;
+        gcMillis = millis;
+    }
+
+    private static double percent(long count, long events) {
+        return 0 == events ? 0 : count * 100.0 / events;
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.steingen.demo;
+
+import java.util.Locale;
+
+/**
+ * The settings of a demo run, parsed from {@code --name=value} arguments, e.g.
+ * {@code --entities=5000000 --threads=8 --rate=2000000 --duration=600 --storage=instances}
+ */
+public final class DemoConfig {
+
+    /**
+     * Where the state of the orders is kept
+     * */
+    public enum Storage {
+        /**
+         * One byte per order in a {@link io.github.steingen.statemachine.StateStore}, outside the heap
+         * */
+        OFF_HEAP,
+        /**
+         * A {@link io.github.steingen.statemachine.StateMachineInstance} per order, sharing one definition
+         * */
+        INSTANCES,
+        /**
+         * An {@link OrderStateMachine} per order, each with its own transition maps. Only practical for smaller populations
+         * */
+        MACHINES
+    }
+
+    private long entities = 1_000_000;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private long eventsPerSecond;
+    private long durationSeconds;
+    private long reportIntervalSeconds = 5;
+    private int latencySampleInterval = 64;
+    private Storage storage = Storage.OFF_HEAP;
+
+    /**
+     * @throws IllegalArgumentException for unknown settings and invalid values
+     * */
+    public static DemoConfig parse(String... args) {
+        DemoConfig config = new DemoConfig();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, but got " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+
+            switch (name) {
+                case "entities" -> config.entities(Long.parseLong(value));
+                case "threads" -> config.threads(Integer.parseInt(value));
+                case "rate" -> config.eventsPerSecond(Long.parseLong(value));
+                case "duration" -> config.durationSeconds(Long.parseLong(value));
+                case "report-interval" -> config.reportIntervalSeconds(Long.parseLong(value));
+                case "latency-sample" -> config.latencySampleInterval(Integer.parseInt(value));
+                case "storage" -> config.storage(Storage.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')));
+                default -> throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+        return config;
+    }
+
+    public long entities() {
+        return entities;
+    }
+
+    /**
+     * Sets the number of orders. Defaults to 1 million
+     * */
+    public DemoConfig entities(long entities) {
+        if (entities <= 0 || entities > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("entities must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.entities = entities;
+        return this;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads that send events. Defaults to one less than the number of processors
+     * */
+    public DemoConfig threads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public long eventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    /**
+     * Sets the target rate over all threads, or 0 to send events as fast as possible, which is the default
+     * */
+    public DemoConfig eventsPerSecond(long eventsPerSecond) {
+        if (eventsPerSecond < 0) {
+            throw new IllegalArgumentException("rate must not be negative");
+        }
+        this.eventsPerSecond = eventsPerSecond;
+        return this;
+    }
+
+    public long durationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Sets how long to run, or 0 to run until the process is stopped, which is the default
+     * */
+    public DemoConfig durationSeconds(long durationSeconds) {
+        if (durationSeconds < 0) {
+            throw new IllegalArgumentException("duration must not be negative");
+        }
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    public long reportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public DemoConfig reportIntervalSeconds(long reportIntervalSeconds) {
+        if (reportIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("report-interval must be positive");
+        }
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        return this;
+    }
+
+    public int latencySampleInterval() {
+        return latencySampleInterval;
+    }
+
+    /**
+     * Sets how often an event is timed, e.g. 64 to time every 64th event. It is rounded up to a power of two,
+     * since timing every event would add two {@link System#nanoTime()} calls to each of them
+     * */
+    public DemoConfig latencySampleInterval(int latencySampleInterval) {
+        if (latencySampleInterval <= 0 || latencySampleInterval > 1 << 30) {
+            throw new IllegalArgumentException("latency-sample must be between 1 and " + (1 << 30));
+        }
+        this.latencySampleInterval = 1 == latencySampleInterval ? 1 : Integer.highestOneBit(latencySampleInterval - 1) << 1;
+        return this;
+    }
+
+    public Storage storage() {
+        return storage;
+    }
+
+    public DemoConfig storage(Storage storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "entities=" + entities + ", threads=" + threads
+            + ", rate=" + (0 == eventsPerSecond ? "unlimited" : eventsPerSecond + "/s")
+            + ", duration=" + (0 == durationSeconds ? "unlimited" : durationSeconds + "s")
+            + ", storage=" + storage.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,229 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.TransitionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes a synthetic order workload through {@link OrderStates} from a number of threads. The orders are sharded
+ * over the threads by id, like the mailboxes of an {@link io.github.steingen.statemachine.EventDispatcher}, so that
+ * each order is only updated by one thread. Each thread repeatedly picks a random order of its shard and sends it
+ * the event that the workload picks for its current state (see {@link #workload()}).
+ * <p>
+ * The event loop does not allocate. The counters of each thread are published once per batch, and every
+ * {@code latencySampleInterval}-th event is timed into a power-of-two histogram, so that timing does not dominate
+ * the cost of the events. With a target rate, each thread paces itself once per batch.
+ */
+public final class LoadGenerator implements AutoCloseable {
+    static final int BATCH_SIZE = 1024;
+    /**
+     * The workload is drawn from a 10 bit random number
+     * */
+    private static final int CHOICES = 1024;
+
+    private final OrderStates orders;
+    private final List<Worker> workers;
+    private final int[][] workload = workload();
+    private volatile boolean running = true;
+
+    private LoadGenerator(DemoConfig config, OrderStates orders) {
+        this.orders = orders;
+        this.workers = new ArrayList<>(config.threads());
+
+        double eventsPerSecondPerThread = (double) config.eventsPerSecond() / config.threads();
+        for (int thread = 0; thread < config.threads(); thread++) {
+            workers.add(new Worker(thread, config.threads(), config.latencySampleInterval(), eventsPerSecondPerThread));
+        }
+    }
+
+    /**
+     * Starts sending events to the orders, until {@link #close()} is called
+     * */
+    public static LoadGenerator start(DemoConfig config, OrderStates orders) {
+        LoadGenerator generator = new LoadGenerator(config, orders);
+
+        for (Worker worker : generator.workers) {
+            worker.thread.start();
+        }
+        return generator;
+    }
+
+    /**
+     * The event to send per state ordinal and random choice in [0, 1024). Most orders follow the happy path, some are
+     * cancelled or returned, and 1% of the events are random, like duplicated or reordered deliveries, most of which
+     * do not match a transition
+     * */
+    static int[][] workload() {
+        OrderState[] states = OrderState.values();
+        OrderEvent[] events = OrderEvent.values();
+        int[][] workload = new int[states.length][CHOICES];
+
+        for (OrderState state : states) {
+            for (int choice = 0; choice < CHOICES; choice++) {
+                int percent = choice * 100 / CHOICES;
+                OrderEvent event;
+
+                if (choice < CHOICES / 100) {
+                    event = events[choice % events.length];
+                } else {
+                    event = switch (state) {
+                        case NEW -> percent < 4 ? OrderEvent.CANCEL : OrderEvent.PAY;
+                        case PAID -> percent < 3 ? OrderEvent.CANCEL : OrderEvent.PACK;
+                        case PACKED -> OrderEvent.SHIP;
+                        case SHIPPED -> OrderEvent.DELIVER;
+                        case DELIVERED -> percent < 6 ? OrderEvent.RETURN : OrderEvent.ARCHIVE;
+                        case CANCELLED, RETURNED -> OrderEvent.ARCHIVE;
+                    };
+                }
+                workload[state.ordinal()][choice] = event.ordinal();
+            }
+        }
+        return workload;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public OrderStates orders() {
+        return orders;
+    }
+
+    /**
+     * Sums up the counters of every thread. The counters are published once per batch, so the events of the
+     * batches in progress are not included
+     * */
+    public LoadSnapshot snapshot() {
+        long[] counters = new long[LoadSnapshot.LENGTH];
+
+        for (Worker worker : workers) {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] += worker.published.get(i);
+            }
+        }
+        return new LoadSnapshot(System.nanoTime(), counters);
+    }
+
+    /**
+     * Stops the threads, and waits until they finished their current batch
+     * <p>
+     * @throws IllegalStateException if a thread failed
+     * */
+    @Override
+    public void close() {
+        running = false;
+
+        try {
+            for (Worker worker : workers) {
+                worker.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Worker worker : workers) {
+            if (null != worker.failure) {
+                throw new IllegalStateException("The load generator failed", worker.failure);
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final int shard;
+        private final int shards;
+        private final int shardSize;
+        private final int sampleMask;
+        private final double eventsPerSecond;
+        /**
+         * The counters of this thread: written to {@code counters}, and published to {@code published} once per batch
+         * */
+        private final long[] counters = new long[LoadSnapshot.LENGTH];
+        private final AtomicLongArray published = new AtomicLongArray(LoadSnapshot.LENGTH);
+        private final Thread thread;
+        private volatile Throwable failure;
+        private long random;
+        /**
+         * Counts the events across batches, so that sampling intervals longer than a batch are honoured
+         * */
+        private long sampleCounter;
+
+        Worker(int shard, int shards, int latencySampleInterval, double eventsPerSecond) {
+            this.shard = shard;
+            this.shards = shards;
+            // The ids of the shard are shard, shard + shards, shard + 2 * shards, ...
+            this.shardSize = (orders.size() - shard + shards - 1) / shards;
+            this.sampleMask = latencySampleInterval - 1;
+            this.eventsPerSecond = eventsPerSecond;
+            this.random = 0x9E3779B97F4A7C15L * (shard + 1);
+            this.thread = new Thread(this, "load-" + shard);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            if (0 == shardSize) {
+                return;
+            }
+
+            OrderEvent[] events = OrderEvent.values();
+            long startNanos = System.nanoTime();
+            long sent = 0;
+
+            try {
+                while (running) {
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        long next = nextRandom();
+                        int orderId = shard + (int) ((next >>> 32) % shardSize) * shards;
+                        OrderEvent event = events[workload[orders.stateOrdinal(orderId)][(int) next & (CHOICES - 1)]];
+                        long result;
+
+                        if (0 == (sampleCounter++ & sampleMask)) {
+                            long start = System.nanoTime();
+                            result = orders.sendEvent(orderId, event);
+                            counters[LoadSnapshot.STATUSES + LoadSnapshot.bucket(System.nanoTime() - start)]++;
+                        } else {
+                            result = orders.sendEvent(orderId, event);
+                        }
+                        counters[TransitionResult.status(result).ordinal()]++;
+                    }
+
+                    publish();
+                    sent += BATCH_SIZE;
+
+                    if (eventsPerSecond > 0) {
+                        pace(startNanos + (long) (sent * 1e9 / eventsPerSecond));
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+                running = false;
+            }
+        }
+
+        private void publish() {
+            for (int i = 0; i < counters.length; i++) {
+                published.lazySet(i, counters[i]);
+            }
+        }
+
+        /**
+         * xorshift64*, which is fast enough not to show up next to the events
+         * */
+        private long nextRandom() {
+            random ^= random >>> 12;
+            random ^= random << 25;
+            random ^= random >>> 27;
+            return random * 0x2545F4914F6CDD1DL;
+        }
+
+        private void pace(long deadlineNanos) {
+            for (long remaining = deadlineNanos - System.nanoTime(); remaining > 0 && running;
+                 remaining = deadlineNanos - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+}
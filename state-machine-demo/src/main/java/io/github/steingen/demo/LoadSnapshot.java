@@ -0,0 +1,105 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.TransitionResult;
+
+/**
+ * The totals of a {@link LoadGenerator} at a point in time: the number of events per outcome, and a power-of-two
+ * histogram of the sampled event latencies. The difference of two snapshots describes the interval between them.
+ */
+public final class LoadSnapshot {
+    static final int STATUSES = TransitionResult.Status.values().length;
+    static final int HISTOGRAM_BUCKETS = 64;
+    /**
+     * The length of the counters: one per status, followed by the histogram buckets
+     * */
+    static final int LENGTH = STATUSES + HISTOGRAM_BUCKETS;
+
+    private final long nanoTime;
+    private final long[] counters;
+
+    LoadSnapshot(long nanoTime, long[] counters) {
+        this.nanoTime = nanoTime;
+        this.counters = counters;
+    }
+
+    /**
+     * Bucket b holds the latencies in [2^(b-1), 2^b)
+     * */
+    static int bucket(long nanos) {
+        return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    /**
+     * @return The counts between the previous snapshot and this one
+     * */
+    public LoadSnapshot minus(LoadSnapshot previous) {
+        long[] difference = new long[LENGTH];
+
+        for (int i = 0; i < LENGTH; i++) {
+            difference[i] = counters[i] - previous.counters[i];
+        }
+        return new LoadSnapshot(nanoTime - previous.nanoTime, difference);
+    }
+
+    /**
+     * @return The time the snapshot was taken, or the length of the interval for a difference of snapshots
+     * */
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    public long events() {
+        long events = 0;
+
+        for (int status = 0; status < STATUSES; status++) {
+            events += counters[status];
+        }
+        return events;
+    }
+
+    public long count(TransitionResult.Status status) {
+        return counters[status.ordinal()];
+    }
+
+    /**
+     * @return The events per second, for a difference of snapshots
+     * */
+    public double throughput() {
+        return 0 == nanoTime ? 0 : events() * 1e9 / nanoTime;
+    }
+
+    /**
+     * @return The number of events whose latency was sampled
+     * */
+    public long samples() {
+        long samples = 0;
+
+        for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+            samples += counters[STATUSES + bucket];
+        }
+        return samples;
+    }
+
+    /**
+     * @param percentile - Between 0 and 100
+     * <p>
+     * @return The upper bound of the bucket of the sampled latency at the percentile, which is at most twice the latency
+     * */
+    public long latencyNanos(double percentile) {
+        long samples = samples();
+        if (0 == samples) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * samples));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+            seen += counters[STATUSES + bucket];
+            if (seen >= rank) {
+                return bucket == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.steingen.demo;
+
+public enum OrderEvent {
+    PAY,
+    PACK,
+    SHIP,
+    DELIVER,
+    CANCEL,
+    RETURN,
+    /**
+     * Closes a finished order, so that its slot is reused by a new order
+     * */
+    ARCHIVE
+}
@@ -0,0 +1,11 @@
+package io.github.steingen.demo;
+
+public enum OrderState {
+    NEW,
+    PAID,
+    PACKED,
+    SHIPPED,
+    DELIVERED,
+    CANCELLED,
+    RETURNED
+}
@@ -0,0 +1,52 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.AbstractStateMachine;
+import io.github.steingen.statemachine.StateMachineDefinition;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order workflow:
+ * <pre>
+ * NEW -> PAID -> PACKED -> SHIPPED -> DELIVERED -> RETURNED
+ * NEW, PAID, PACKED -> CANCELLED
+ * DELIVERED, CANCELLED, RETURNED -> NEW (the order is archived, and its slot reused)
+ * </pre>
+ * It is declared once, here, and {@link #definition()} compiles it into a shared {@link StateMachineDefinition}
+ * for the storages that do not hold a state machine object per order.
+ */
+public class OrderStateMachine extends AbstractStateMachine<OrderState, OrderEvent> {
+
+    public OrderStateMachine() {
+        super(true);
+        this.eventRules.putAll(
+            Map.of(
+                OrderEvent.PAY, List.of(newTransition(OrderState.NEW, OrderState.PAID)),
+                OrderEvent.PACK, List.of(newTransition(OrderState.PAID, OrderState.PACKED)),
+                OrderEvent.SHIP, List.of(newTransition(OrderState.PACKED, OrderState.SHIPPED)),
+                OrderEvent.DELIVER, List.of(newTransition(OrderState.SHIPPED, OrderState.DELIVERED)),
+                OrderEvent.CANCEL, List.of(
+                    newTransition(OrderState.NEW, OrderState.CANCELLED),
+                    newTransition(OrderState.PAID, OrderState.CANCELLED),
+                    newTransition(OrderState.PACKED, OrderState.CANCELLED)
+                ),
+                OrderEvent.RETURN, List.of(newTransition(OrderState.DELIVERED, OrderState.RETURNED)),
+                OrderEvent.ARCHIVE, List.of(
+                    newTransition(OrderState.DELIVERED, OrderState.NEW),
+                    newTransition(OrderState.CANCELLED, OrderState.NEW),
+                    newTransition(OrderState.RETURNED, OrderState.NEW)
+                )
+            )
+        );
+        populateAllowedTransitions();
+        compileTransitions();
+        setCurrentState(OrderState.NEW);
+    }
+
+    public static StateMachineDefinition<OrderState, OrderEvent> definition() {
+        return StateMachineDefinition.builder(OrderState.class, OrderEvent.class)
+            .transitions(new OrderStateMachine())
+            .build();
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.StateMachineInstance;
+import io.github.steingen.statemachine.StateStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The current state of every order, indexed by order id, in one of the {@link DemoConfig.Storage}s.
+ * Like a {@link StateStore}, different orders may be updated concurrently, as long as each order is only updated
+ * by one thread.
+ */
+public interface OrderStates extends AutoCloseable {
+
+    static OrderStates create(DemoConfig.Storage storage, StateMachineDefinition<OrderState, OrderEvent> definition, int orders) {
+        return switch (storage) {
+            case OFF_HEAP -> new OffHeap(StateStore.allocate(definition, orders, OrderState.NEW));
+            case INSTANCES -> new Instances(definition, orders);
+            case MACHINES -> new Machines(orders);
+        };
+    }
+
+    int stateOrdinal(int orderId);
+
+    /**
+     * @return The {@link io.github.steingen.statemachine.TransitionResult} of the event
+     * */
+    long sendEvent(int orderId, OrderEvent event);
+
+    int size();
+
+    @Override
+    default void close() {
+    }
+
+    final class OffHeap implements OrderStates {
+        private final StateStore<OrderState, OrderEvent> store;
+
+        OffHeap(StateStore<OrderState, OrderEvent> store) {
+            this.store = store;
+        }
+
+        @Override
+        public int stateOrdinal(int orderId) {
+            return store.getStateOrdinal(orderId);
+        }
+
+        @Override
+        public long sendEvent(int orderId, OrderEvent event) {
+            return store.sendEvent(orderId, event);
+        }
+
+        @Override
+        public int size() {
+            return (int) store.capacity();
+        }
+
+        @Override
+        public void close() {
+            try {
+                store.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    final class Instances implements OrderStates {
+        private final StateMachineInstance<OrderState, OrderEvent>[] instances;
+
+        @SuppressWarnings("unchecked")
+        Instances(StateMachineDefinition<OrderState, OrderEvent> definition, int orders) {
+            this.instances = new StateMachineInstance[orders];
+
+            for (int orderId = 0; orderId < orders; orderId++) {
+                instances[orderId] = definition.newInstance(orderId, OrderState.NEW);
+            }
+        }
+
+        @Override
+        public int stateOrdinal(int orderId) {
+            return instances[orderId].getCurrentStateOrdinal();
+        }
+
+        @Override
+        public long sendEvent(int orderId, OrderEvent event) {
+            return instances[orderId].sendEventForResult(event);
+        }
+
+        @Override
+        public int size() {
+            return instances.length;
+        }
+    }
+
+    final class Machines implements OrderStates {
+        private final OrderStateMachine[] machines;
+
+        Machines(int orders) {
+            this.machines = new OrderStateMachine[orders];
+
+            for (int orderId = 0; orderId < orders; orderId++) {
+                machines[orderId] = new OrderStateMachine();
+            }
+        }
+
+        @Override
+        public int stateOrdinal(int orderId) {
+            return machines[orderId].getCurrentState().ordinal();
+        }
+
+        @Override
+        public long sendEvent(int orderId, OrderEvent event) {
+            return machines[orderId].sendEventForResult(event);
+        }
+
+        @Override
+        public int size() {
+            return machines.length;
+        }
+    }
+}
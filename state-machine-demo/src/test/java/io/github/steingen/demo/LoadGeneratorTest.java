@@ -0,0 +1,141 @@
+package io.github.steingen.demo;
+
+import io.github.steingen.statemachine.StateMachineDefinition;
+import io.github.steingen.statemachine.TransitionResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    private final StateMachineDefinition<OrderState, OrderEvent> definition = OrderStateMachine.definition();
+
+    @Test
+    void testWorkflow() {
+        OrderStateMachine machine = new OrderStateMachine();
+
+        machine.sendEvent(OrderEvent.PAY);
+        machine.sendEvent(OrderEvent.PACK);
+        machine.sendEvent(OrderEvent.SHIP);
+        machine.sendEvent(OrderEvent.DELIVER);
+        assertEquals(OrderState.DELIVERED, machine.getCurrentState());
+
+        assertEquals(TransitionResult.Status.UNMATCHED, TransitionResult.status(machine.sendEventForResult(OrderEvent.CANCEL)));
+        machine.sendEvent(OrderEvent.ARCHIVE);
+        assertEquals(OrderState.NEW, machine.getCurrentState());
+    }
+
+    @Test
+    void testWorkloadMostlyTransitions() {
+        int[][] workload = LoadGenerator.workload();
+
+        for (OrderState state : OrderState.values()) {
+            int transitions = 0;
+            for (int eventOrdinal : workload[state.ordinal()]) {
+                if (StateMachineDefinition.NO_TRANSITION != definition.nextStateOrdinal(eventOrdinal, state.ordinal())) {
+                    transitions++;
+                }
+            }
+            assertTrue(transitions > 0.95 * workload[state.ordinal()].length, state.name());
+        }
+    }
+
+    @Test
+    void testCountsEveryEvent() throws InterruptedException {
+        for (DemoConfig.Storage storage : DemoConfig.Storage.values()) {
+            DemoConfig config = new DemoConfig().entities(10_000).threads(2).storage(storage);
+
+            try (OrderStates orders = OrderStates.create(storage, definition, 10_000)) {
+                LoadGenerator generator = LoadGenerator.start(config, orders);
+                Thread.sleep(100);
+                assertTrue(generator.isRunning());
+                generator.close();
+
+                // Every batch has been published once the threads stopped
+                LoadSnapshot snapshot = generator.snapshot();
+                assertTrue(snapshot.events() > 0, storage.name());
+                assertEquals(0, snapshot.events() % LoadGenerator.BATCH_SIZE);
+
+                for (int orderId = 0; orderId < orders.size(); orderId++) {
+                    int ordinal = orders.stateOrdinal(orderId);
+                    assertTrue(ordinal >= 0 && ordinal < OrderState.values().length);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSnapshot() throws InterruptedException {
+        DemoConfig config = new DemoConfig().entities(10_000).threads(2).latencySampleInterval(16);
+
+        try (OrderStates orders = OrderStates.create(config.storage(), definition, 10_000);
+             LoadGenerator generator = LoadGenerator.start(config, orders)) {
+            LoadSnapshot first = generator.snapshot();
+            Thread.sleep(200);
+            LoadSnapshot interval = generator.snapshot().minus(first);
+
+            long events = interval.events();
+            long counted = 0;
+            for (TransitionResult.Status status : TransitionResult.Status.values()) {
+                counted += interval.count(status);
+            }
+
+            assertTrue(events > 0);
+            assertEquals(events, counted);
+            assertTrue(interval.count(TransitionResult.Status.TRANSITIONED) > 0.9 * events);
+            assertTrue(interval.count(TransitionResult.Status.UNMATCHED) > 0);
+            assertTrue(interval.throughput() > 0);
+            assertTrue(interval.latencyNanos(50) > 0);
+            assertTrue(interval.latencyNanos(50) <= interval.latencyNanos(99.9));
+        }
+    }
+
+    @Test
+    void testSampleIntervalLongerThanBatch() throws InterruptedException {
+        DemoConfig config = new DemoConfig().entities(10_000).threads(2).latencySampleInterval(4 * LoadGenerator.BATCH_SIZE);
+
+        try (OrderStates orders = OrderStates.create(config.storage(), definition, 10_000)) {
+            LoadGenerator generator = LoadGenerator.start(config, orders);
+            Thread.sleep(200);
+            generator.close();
+
+            // One sample every 4 batches per thread, rather than one per batch
+            LoadSnapshot snapshot = generator.snapshot();
+            assertTrue(snapshot.samples() > 0);
+            assertTrue(snapshot.samples() <= snapshot.events() / config.latencySampleInterval() + config.threads(),
+                snapshot.samples() + " samples for " + snapshot.events() + " events");
+        }
+    }
+
+    @Test
+    void testRateLimit() throws InterruptedException {
+        // One batch per thread per second at most
+        DemoConfig config = new DemoConfig().entities(10_000).threads(2).eventsPerSecond(2 * LoadGenerator.BATCH_SIZE);
+
+        try (OrderStates orders = OrderStates.create(config.storage(), definition, 10_000);
+             LoadGenerator generator = LoadGenerator.start(config, orders)) {
+            long start = System.nanoTime();
+            Thread.sleep(500);
+            LoadSnapshot snapshot = generator.snapshot();
+            long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+
+            assertTrue(snapshot.events() <= (elapsedSeconds + 1) * 2 * LoadGenerator.BATCH_SIZE, "" + snapshot.events());
+        }
+    }
+
+    @Test
+    void testConfig() {
+        DemoConfig config = DemoConfig.parse("--entities=5000000", "--threads=3", "--rate=100000",
+            "--duration=60", "--latency-sample=100", "--storage=instances");
+
+        assertEquals(5_000_000, config.entities());
+        assertEquals(3, config.threads());
+        assertEquals(100_000, config.eventsPerSecond());
+        assertEquals(60, config.durationSeconds());
+        assertEquals(128, config.latencySampleInterval());
+        assertEquals(DemoConfig.Storage.INSTANCES, config.storage());
+    }
+}